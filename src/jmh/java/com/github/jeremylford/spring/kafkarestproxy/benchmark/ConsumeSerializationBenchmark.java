@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.protobuf.ByteString;
+import io.confluent.kafkarest.entities.ConsumerRecord;
+import io.confluent.kafkarest.entities.v2.BinaryConsumerRecord;
+import io.confluent.kafkarest.entities.v2.JsonConsumerRecord;
+import io.confluent.kafkarest.entities.v2.SchemaConsumerRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of v2 consume responses for each embedded format. The records are served by a benchmark-only
+ * resource registered next to the proxy's own, so the response goes through the same providers and filters a real
+ * consume response does without needing a consumer instance.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ConsumeSerializationBenchmark {
+
+    @Param({"30", "500"})
+    public int records;
+
+    @Param({"100", "4096"})
+    public int valueSize;
+
+    private InProcessProxy proxy;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        byte[] bytes = new byte[valueSize];
+        new Random(42).nextBytes(bytes);
+        ByteString value = ByteString.copyFrom(bytes);
+
+        ObjectNode jsonValue = JsonNodeFactory.instance.objectNode()
+                .put("id", 1)
+                .put("name", "benchmark")
+                .put("payload", new String(new char[valueSize]).replace('\0', 'x'));
+
+        List<BinaryConsumerRecord> binary = new ArrayList<>(records);
+        List<JsonConsumerRecord> json = new ArrayList<>(records);
+        List<SchemaConsumerRecord> avro = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            String key = "key-" + i;
+            binary.add(BinaryConsumerRecord.fromConsumerRecord(
+                    ConsumerRecord.create(ProduceBenchmark.TOPIC, ByteString.copyFromUtf8(key), value, i % 6, i)));
+            json.add(JsonConsumerRecord.fromConsumerRecord(
+                    ConsumerRecord.create(ProduceBenchmark.TOPIC, (Object) key, (Object) jsonValue, i % 6, i)));
+            avro.add(SchemaConsumerRecord.fromConsumerRecord(
+                    ConsumerRecord.create(ProduceBenchmark.TOPIC, (JsonNode) JsonNodeFactory.instance.textNode(key), (JsonNode) jsonValue, i % 6, i)));
+        }
+
+        Map<String, List<?>> responses = new HashMap<>();
+        responses.put("binary", binary);
+        responses.put("json", json);
+        responses.put("avro", avro);
+
+        proxy = new InProcessProxy(ProduceBenchmark.TOPIC, 6, new ConsumeRecordsResource(responses));
+        // each benchmark has to measure the success path, not an error response
+        proxy.get("/benchmark/records/binary", "application/vnd.kafka.binary.v2+json").requireSuccess();
+        proxy.get("/benchmark/records/json", "application/vnd.kafka.json.v2+json").requireSuccess();
+        proxy.get("/benchmark/records/avro", "application/vnd.kafka.avro.v2+json").requireSuccess();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        proxy.close();
+    }
+
+    @Benchmark
+    public byte[] binary() throws Exception {
+        return proxy.get("/benchmark/records/binary", "application/vnd.kafka.binary.v2+json").getBody();
+    }
+
+    @Benchmark
+    public byte[] json() throws Exception {
+        return proxy.get("/benchmark/records/json", "application/vnd.kafka.json.v2+json").getBody();
+    }
+
+    @Benchmark
+    public byte[] avro() throws Exception {
+        return proxy.get("/benchmark/records/avro", "application/vnd.kafka.avro.v2+json").getBody();
+    }
+
+    @Path("/benchmark/records")
+    public static final class ConsumeRecordsResource {
+
+        private final Map<String, List<?>> responses;
+
+        ConsumeRecordsResource(Map<String, List<?>> responses) {
+            this.responses = Collections.unmodifiableMap(responses);
+        }
+
+        @GET
+        @Path("/binary")
+        @Produces("application/vnd.kafka.binary.v2+json")
+        @SuppressWarnings("unchecked")
+        public List<BinaryConsumerRecord> binary() {
+            return (List<BinaryConsumerRecord>) responses.get("binary");
+        }
+
+        @GET
+        @Path("/json")
+        @Produces("application/vnd.kafka.json.v2+json")
+        @SuppressWarnings("unchecked")
+        public List<JsonConsumerRecord> json() {
+            return (List<JsonConsumerRecord>) responses.get("json");
+        }
+
+        @GET
+        @Path("/avro")
+        @Produces("application/vnd.kafka.avro.v2+json")
+        @SuppressWarnings("unchecked")
+        public List<SchemaConsumerRecord> avro() {
+            return (List<SchemaConsumerRecord>) responses.get("avro");
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Error responses produced by the registered exception mappers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExceptionMappingBenchmark {
+
+    private static final byte[] MALFORMED = "{\"value\":{\"type\":\"BINARY\",\"data\":".getBytes(StandardCharsets.UTF_8);
+
+    private InProcessProxy proxy;
+    private String clusterPath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        proxy = new InProcessProxy(ProduceBenchmark.TOPIC, 1);
+        clusterPath = "/v3/clusters/" + proxy.getClusterId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        proxy.close();
+    }
+
+    /**
+     * JsonParseExceptionMapper.
+     */
+    @Benchmark
+    public byte[] malformedProduceRequest() throws Exception {
+        return proxy.post(clusterPath + "/topics/" + ProduceBenchmark.TOPIC + "/records",
+                ProduceBenchmark.JSON, ProduceBenchmark.JSON, MALFORMED).getBody();
+    }
+
+    /**
+     * KafkaRestExceptionMapper, for a topic the admin client does not know.
+     */
+    @Benchmark
+    public byte[] unknownTopic() throws Exception {
+        return proxy.get(clusterPath + "/topics/missing", ProduceBenchmark.JSON).getBody();
+    }
+
+    /**
+     * WebApplicationExceptionMapper, for a path no resource matches.
+     */
+    @Benchmark
+    public byte[] unknownPath() throws Exception {
+        return proxy.get("/v3/unknown", ProduceBenchmark.JSON).getBody();
+    }
+}
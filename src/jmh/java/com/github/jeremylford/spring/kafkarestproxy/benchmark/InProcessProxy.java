@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.benchmark;
+
+import com.github.jeremylford.spring.kafkarestproxy.JerseyConfiguration;
+import com.github.jeremylford.spring.kafkarestproxy.affinity.ConsumerAffinityFilter;
+import com.github.jeremylford.spring.kafkarestproxy.bulk.BulkProduceExtension;
+import com.github.jeremylford.spring.kafkarestproxy.cache.MetadataCacheFilter;
+import com.github.jeremylford.spring.kafkarestproxy.cluster.ClusterRoutingFilter;
+import com.github.jeremylford.spring.kafkarestproxy.cluster.KafkaClustersBinder;
+import com.github.jeremylford.spring.kafkarestproxy.compression.ContentEncodingFilter;
+import com.github.jeremylford.spring.kafkarestproxy.concurrency.BulkheadFilter;
+import com.github.jeremylford.spring.kafkarestproxy.concurrency.ConcurrencyLimitFilter;
+import com.github.jeremylford.spring.kafkarestproxy.consumer.ConsumerInstanceLimitFilter;
+import com.github.jeremylford.spring.kafkarestproxy.consumer.PrefetchingConsumerBinder;
+import com.github.jeremylford.spring.kafkarestproxy.executor.KafkaRestExecutors;
+import com.github.jeremylford.spring.kafkarestproxy.jackson.KafkaRestJackson;
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import com.github.jeremylford.spring.kafkarestproxy.ratelimit.RateLimitFilter;
+import com.github.jeremylford.spring.kafkarestproxy.stream.StreamingConsumeResource;
+import com.github.jeremylford.spring.kafkarestproxy.timing.RequestTimingListener;
+import com.github.jeremylford.spring.kafkarestproxy.warmup.KafkaRestWarmup;
+import io.confluent.kafkarest.KafkaRestConfig;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.MockAdminClient;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.glassfish.hk2.api.TypeLiteral;
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.HttpHeaders;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the proxy's Jersey application in-process, with the Kafka admin client and producer replaced by the mocks
+ * from kafka-clients so that benchmarks only measure the proxy itself.
+ */
+public final class InProcessProxy {
+
+    static final URI BASE_URI = URI.create("http://localhost/");
+
+    private final ApplicationHandler handler;
+    private final MockAdminClient admin;
+    private final String clusterId;
+
+    public InProcessProxy(String topic, int partitions, Object... extraComponents) throws Exception {
+        Node broker = new Node(0, "localhost", 9092);
+        this.admin = MockAdminClient.create()
+                .brokers(Collections.singletonList(broker))
+                .build();
+        List<TopicPartitionInfo> partitionInfos = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            partitionInfos.add(new TopicPartitionInfo(i, broker, Collections.singletonList(broker), Collections.singletonList(broker)));
+        }
+        this.admin.addTopic(false, topic, partitionInfos, Collections.emptyMap());
+        this.clusterId = admin.describeCluster().clusterId().get();
+
+        MockProducer<byte[], byte[]> producer = new DiscardingProducer();
+
+        Properties properties = new Properties();
+        properties.put(KafkaRestConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+        properties.put(KafkaRestConfig.KAFKA_REST_RESOURCE_EXTENSION_CONFIG, BulkProduceExtension.class.getName());
+
+        JerseyConfiguration configuration = new JerseyConfiguration(
+                new KafkaRestConfig(properties),
+                new KafkaRestJackson(KafkaRestJackson.builder().build()),
+                new KafkaRestExecutors(Collections.emptyMap(), null),
+                none(KafkaRestMetrics.class),
+                none(RateLimitFilter.class),
+                none(MetadataCacheFilter.class),
+                none(StreamingConsumeResource.class),
+                none(ContentEncodingFilter.class),
+                none(KafkaRestWarmup.class),
+                none(ConsumerAffinityFilter.class),
+                none(ConsumerInstanceLimitFilter.class),
+                none(ConcurrencyLimitFilter.class),
+                none(BulkheadFilter.class),
+                none(RequestTimingListener.class),
+                none(PrefetchingConsumerBinder.class),
+                none(ClusterRoutingFilter.class),
+                none(KafkaClustersBinder.class)
+        );
+        configuration.register(new AbstractBinder() {
+            @Override
+            protected void configure() {
+                bind(admin).to(Admin.class).ranked(100);
+                bind(producer).to(new TypeLiteral<Producer<byte[], byte[]>>() {
+                }).ranked(100);
+            }
+        });
+        for (Object component : extraComponents) {
+            configuration.register(component);
+        }
+
+        this.handler = new ApplicationHandler(configuration);
+    }
+
+    private static <T> ObjectProvider<T> none(Class<T> type) {
+        return new StaticListableBeanFactory().getBeanProvider(type);
+    }
+
+    public String getClusterId() {
+        return clusterId;
+    }
+
+    public Response get(String path, String accept) throws ExecutionException, InterruptedException {
+        return apply(HttpMethod.GET, path, null, accept, null);
+    }
+
+    public Response post(String path, String contentType, String accept, byte[] body) throws ExecutionException, InterruptedException {
+        return apply(HttpMethod.POST, path, contentType, accept, body);
+    }
+
+    private Response apply(String method, String path, String contentType, String accept, byte[] body) throws ExecutionException, InterruptedException {
+        ContainerRequest request = new ContainerRequest(
+                BASE_URI,
+                BASE_URI.resolve(path),
+                method,
+                null,
+                new MapPropertiesDelegate(),
+                handler.getConfiguration()
+        );
+        if (accept != null) {
+            request.header(HttpHeaders.ACCEPT, accept);
+        }
+        if (body != null) {
+            request.header(HttpHeaders.CONTENT_TYPE, contentType);
+            request.setEntityStream(new ByteArrayInputStream(body));
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ContainerResponse response = handler.apply(request, output).get();
+        return new Response(response.getStatus(), output.toByteArray());
+    }
+
+    public void close() {
+        admin.close();
+    }
+
+    /**
+     * A {@link MockProducer} that forgets every record once sent, so long runs do not fill the heap with its history.
+     */
+    private static final class DiscardingProducer extends MockProducer<byte[], byte[]> {
+
+        DiscardingProducer() {
+            super(true, new ByteArraySerializer(), new ByteArraySerializer());
+        }
+
+        @Override
+        public synchronized Future<RecordMetadata> send(ProducerRecord<byte[], byte[]> record, Callback callback) {
+            Future<RecordMetadata> result = super.send(record, callback);
+            clear();
+            return result;
+        }
+    }
+
+    public static final class Response {
+
+        // streaming produce answers 200 and reports failed records in the body
+        private static final Pattern RECORD_ERROR = Pattern.compile("\"error_code\"\\s*:\\s*(?!200\\b)\\d+");
+
+        private final int status;
+        private final byte[] body;
+
+        Response(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Fails unless the request succeeded, so a benchmark cannot silently measure an error path.
+         */
+        public Response requireSuccess() {
+            String text = new String(body, StandardCharsets.UTF_8);
+            if (status < 200 || status >= 300 || RECORD_ERROR.matcher(text).find()) {
+                throw new IllegalStateException("Request failed with status " + status + ": " + text);
+            }
+            return this;
+        }
+    }
+}
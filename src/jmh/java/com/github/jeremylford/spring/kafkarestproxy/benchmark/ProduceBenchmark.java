@@ -0,0 +1,210 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.benchmark;
+
+import com.github.jeremylford.spring.kafkarestproxy.bulk.BulkProduceFormat;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Produce requests through the Jersey application: request parsing, mapping to producer records and the response.
+ * The {@link RequestBytes} counters report the request and response bytes per second each format needs for the same
+ * records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProduceBenchmark {
+
+    static final String TOPIC = "benchmark";
+
+    static final String V2_BINARY = "application/vnd.kafka.binary.v2+json";
+    static final String V2_JSON = "application/vnd.kafka.json.v2+json";
+    static final String V2 = "application/vnd.kafka.v2+json";
+    static final String JSON = "application/json";
+
+    @Param({"1", "100"})
+    public int records;
+
+    @Param({"100", "4096"})
+    public int valueSize;
+
+    private InProcessProxy proxy;
+    private String v3Path;
+
+    private byte[] v2BinaryBody;
+    private byte[] v2JsonBody;
+    private byte[] v3Body;
+    private byte[] v3StreamBody;
+    private byte[] bulkBody;
+    private String bulkPath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        proxy = new InProcessProxy(TOPIC, 6);
+        v3Path = "/v3/clusters/" + proxy.getClusterId() + "/topics/" + TOPIC + "/records";
+        bulkPath = v3Path + ":bulk";
+
+        byte[] value = new byte[valueSize];
+        new Random(42).nextBytes(value);
+        String base64 = Base64.getEncoder().encodeToString(value);
+        String json = jsonValue(valueSize);
+
+        StringBuilder v2Binary = new StringBuilder("{\"records\":[");
+        StringBuilder v2Json = new StringBuilder("{\"records\":[");
+        StringBuilder v3Stream = new StringBuilder();
+        ByteArrayOutputStream bulk = new ByteArrayOutputStream();
+        for (int i = 0; i < records; i++) {
+            if (i > 0) {
+                v2Binary.append(',');
+                v2Json.append(',');
+            }
+            v2Binary.append("{\"key\":\"").append(Base64.getEncoder().encodeToString(("key-" + i).getBytes(StandardCharsets.UTF_8)))
+                    .append("\",\"value\":\"").append(base64).append("\"}");
+            v2Json.append("{\"key\":\"key-").append(i).append("\",\"value\":").append(json).append('}');
+            v3Stream.append(v3Record(i, base64));
+            BulkProduceFormat.writeRecord(bulk, null, ("key-" + i).getBytes(StandardCharsets.UTF_8), value, Collections.emptyList());
+        }
+        v2Binary.append("]}");
+        v2Json.append("]}");
+
+        v2BinaryBody = v2Binary.toString().getBytes(StandardCharsets.UTF_8);
+        v2JsonBody = v2Json.toString().getBytes(StandardCharsets.UTF_8);
+        v3Body = v3Record(0, base64).getBytes(StandardCharsets.UTF_8);
+        v3StreamBody = v3Stream.toString().getBytes(StandardCharsets.UTF_8);
+        bulkBody = bulk.toByteArray();
+
+        // each benchmark has to measure the success path, not an error response
+        proxy.post("/topics/" + TOPIC, V2_BINARY, V2, v2BinaryBody).requireSuccess();
+        proxy.post("/topics/" + TOPIC, V2_JSON, V2, v2JsonBody).requireSuccess();
+        proxy.post(v3Path, JSON, JSON, v3Body).requireSuccess();
+        proxy.post(v3Path, JSON, JSON, v3StreamBody).requireSuccess();
+        proxy.post(bulkPath, BulkProduceFormat.MEDIA_TYPE, BulkProduceFormat.MEDIA_TYPE, bulkBody).requireSuccess();
+        proxy.post(v3Path + "?response_mode=acks", JSON, JSON, v3StreamBody).requireSuccess();
+        proxy.post(bulkPath + "?response_mode=summary", BulkProduceFormat.MEDIA_TYPE, BulkProduceFormat.MEDIA_TYPE, bulkBody).requireSuccess();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        proxy.close();
+    }
+
+    @Benchmark
+    public byte[] v2Binary(RequestBytes requestBytes) throws Exception {
+        return post(requestBytes, "/topics/" + TOPIC, V2_BINARY, V2, v2BinaryBody);
+    }
+
+    @Benchmark
+    public byte[] v2Json(RequestBytes requestBytes) throws Exception {
+        return post(requestBytes, "/topics/" + TOPIC, V2_JSON, V2, v2JsonBody);
+    }
+
+    @Benchmark
+    public byte[] v3Single(RequestBytes requestBytes) throws Exception {
+        return post(requestBytes, v3Path, JSON, JSON, v3Body);
+    }
+
+    /**
+     * One v3 request carrying {@link #records} concatenated produce requests, read through JsonStreamMessageBodyReader.
+     */
+    @Benchmark
+    public byte[] v3Streaming(RequestBytes requestBytes) throws Exception {
+        return post(requestBytes, v3Path, JSON, JSON, v3StreamBody);
+    }
+
+    /**
+     * The same {@link #records} as {@link #v3Streaming} in the framed binary format of the bulk produce endpoint.
+     */
+    @Benchmark
+    public byte[] bulkBinary(RequestBytes requestBytes) throws Exception {
+        return post(requestBytes, bulkPath, BulkProduceFormat.MEDIA_TYPE, BulkProduceFormat.MEDIA_TYPE, bulkBody);
+    }
+
+    /**
+     * {@link #v3Streaming} with {@code response_mode=acks}, which reports only partitions and offsets.
+     */
+    @Benchmark
+    public byte[] v3StreamingAcks(RequestBytes requestBytes) throws Exception {
+        return post(requestBytes, v3Path + "?response_mode=acks", JSON, JSON, v3StreamBody);
+    }
+
+    /**
+     * {@link #bulkBinary} with {@code response_mode=summary}, which replaces the per-record results with one summary.
+     */
+    @Benchmark
+    public byte[] bulkBinarySummary(RequestBytes requestBytes) throws Exception {
+        return post(requestBytes, bulkPath + "?response_mode=summary", BulkProduceFormat.MEDIA_TYPE, BulkProduceFormat.MEDIA_TYPE, bulkBody);
+    }
+
+    private byte[] post(RequestBytes requestBytes, String path, String contentType, String accept, byte[] body) throws Exception {
+        byte[] response = proxy.post(path, contentType, accept, body).getBody();
+        requestBytes.requestBytes += body.length;
+        requestBytes.responseBytes += response.length;
+        return response;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RequestBytes {
+
+        public long requestBytes;
+        public long responseBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            requestBytes = 0;
+            responseBytes = 0;
+        }
+    }
+
+    private static String v3Record(int i, String base64) {
+        return "{\"key\":{\"type\":\"STRING\",\"data\":\"key-" + i + "\"},"
+                + "\"value\":{\"type\":\"BINARY\",\"data\":\"" + base64 + "\"}}";
+    }
+
+    private static String jsonValue(int size) {
+        StringBuilder json = new StringBuilder("{\"id\":1,\"name\":\"benchmark\",\"payload\":\"");
+        while (json.length() < size) {
+            json.append('x');
+        }
+        return json.append("\"}").toString();
+    }
+}
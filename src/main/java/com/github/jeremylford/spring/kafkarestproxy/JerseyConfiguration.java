@@ -18,13 +18,28 @@
  */
 package com.github.jeremylford.spring.kafkarestproxy;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.guava.GuavaModule;
-import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.jaxrs.base.JsonMappingExceptionMapper;
 import com.fasterxml.jackson.jaxrs.base.JsonParseExceptionMapper;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.github.jeremylford.spring.kafkarestproxy.affinity.ConsumerAffinityFilter;
+import com.github.jeremylford.spring.kafkarestproxy.cache.MetadataCacheFilter;
+import com.github.jeremylford.spring.kafkarestproxy.cluster.ClusterRoutingFilter;
+import com.github.jeremylford.spring.kafkarestproxy.cluster.KafkaClustersBinder;
+import com.github.jeremylford.spring.kafkarestproxy.compression.ContentEncodingFilter;
+import com.github.jeremylford.spring.kafkarestproxy.concurrency.BulkheadFilter;
+import com.github.jeremylford.spring.kafkarestproxy.concurrency.ConcurrencyLimitFilter;
+import com.github.jeremylford.spring.kafkarestproxy.consumer.ConsumerInstanceLimitFilter;
+import com.github.jeremylford.spring.kafkarestproxy.consumer.PrefetchingConsumerBinder;
+import com.github.jeremylford.spring.kafkarestproxy.executor.KafkaRestExecutors;
+import com.github.jeremylford.spring.kafkarestproxy.executor.ManagedAsyncExecutorProvider;
+import com.github.jeremylford.spring.kafkarestproxy.jackson.KafkaRestJackson;
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import com.github.jeremylford.spring.kafkarestproxy.metrics.RequestMetricsListener;
+import com.github.jeremylford.spring.kafkarestproxy.produce.ProduceResponseModeFilter;
+import com.github.jeremylford.spring.kafkarestproxy.ratelimit.RateLimitFilter;
+import com.github.jeremylford.spring.kafkarestproxy.stream.StreamingConsumeResource;
+import com.github.jeremylford.spring.kafkarestproxy.timing.RequestTimingListener;
+import com.github.jeremylford.spring.kafkarestproxy.warmup.KafkaRestWarmup;
 import io.confluent.kafkarest.KafkaRestConfig;
 import io.confluent.kafkarest.backends.BackendsModule;
 import io.confluent.kafkarest.config.ConfigModule;
@@ -41,17 +56,17 @@ import io.confluent.kafkarest.response.JsonStreamMessageBodyReader;
 import io.confluent.kafkarest.response.ResponseModule;
 import io.confluent.rest.exceptions.ConstraintViolationExceptionMapper;
 import io.confluent.rest.exceptions.WebApplicationExceptionMapper;
+import org.glassfish.jersey.internal.InternalProperties;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.server.ServerProperties;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 import org.springframework.boot.autoconfigure.jersey.JerseyAutoConfiguration;
 import org.springframework.context.annotation.Configuration;
 
 import javax.ws.rs.core.Configurable;
-import java.text.SimpleDateFormat;
 import java.util.List;
-import java.util.TimeZone;
 
 @Configuration
 @AutoConfigureBefore(JerseyAutoConfiguration.class)
@@ -59,11 +74,30 @@ public class JerseyConfiguration extends ResourceConfig {
 
     @Autowired
     public JerseyConfiguration(
-            KafkaRestConfig kafkaRestConfig
+            KafkaRestConfig kafkaRestConfig,
+            KafkaRestJackson kafkaRestJackson,
+            KafkaRestExecutors kafkaRestExecutors,
+            ObjectProvider<KafkaRestMetrics> kafkaRestMetrics,
+            ObjectProvider<RateLimitFilter> rateLimitFilter,
+            ObjectProvider<MetadataCacheFilter> metadataCacheFilter,
+            ObjectProvider<StreamingConsumeResource> streamingConsumeResource,
+            ObjectProvider<ContentEncodingFilter> contentEncodingFilter,
+            ObjectProvider<KafkaRestWarmup> kafkaRestWarmup,
+            ObjectProvider<ConsumerAffinityFilter> consumerAffinityFilter,
+            ObjectProvider<ConsumerInstanceLimitFilter> consumerInstanceLimitFilter,
+            ObjectProvider<ConcurrencyLimitFilter> concurrencyLimitFilter,
+            ObjectProvider<BulkheadFilter> bulkheadFilter,
+            ObjectProvider<RequestTimingListener> requestTimingListener,
+            ObjectProvider<PrefetchingConsumerBinder> prefetchingConsumerBinder,
+            ObjectProvider<ClusterRoutingFilter> clusterRoutingFilter,
+            ObjectProvider<KafkaClustersBinder> kafkaClustersBinder
     ) {
 
         this.property(ServerProperties.OUTBOUND_CONTENT_LENGTH_BUFFER, 0);
-        this.register(new JsonStreamMessageBodyReader(getJsonMapper()));
+        // keeps JacksonFeature, registered by Spring Boot with its own ObjectMapper, from installing a second provider
+        this.property(InternalProperties.JSON_FEATURE, KafkaRestJackson.class.getSimpleName());
+        this.register(new JacksonJsonProvider(kafkaRestJackson.getObjectMapper()));
+        this.register(new JsonStreamMessageBodyReader(kafkaRestJackson.getObjectMapper()));
         this.register(new BackendsModule());
         this.register(new ConfigModule(kafkaRestConfig));
         this.register(new ControllersModule());
@@ -79,6 +113,24 @@ public class JerseyConfiguration extends ResourceConfig {
 
         registerExceptionMappers(this, kafkaRestConfig);
 
+        this.register(new ManagedAsyncExecutorProvider(kafkaRestExecutors));
+        this.register(new ProduceResponseModeFilter());
+
+        kafkaRestMetrics.ifAvailable(metrics -> this.register(new RequestMetricsListener(metrics)));
+        rateLimitFilter.ifAvailable(this::register);
+        metadataCacheFilter.ifAvailable(this::register);
+        streamingConsumeResource.ifAvailable(this::register);
+        contentEncodingFilter.ifAvailable(this::register);
+        kafkaRestWarmup.ifAvailable(this::register);
+        consumerAffinityFilter.ifAvailable(this::register);
+        consumerInstanceLimitFilter.ifAvailable(this::register);
+        concurrencyLimitFilter.ifAvailable(this::register);
+        bulkheadFilter.ifAvailable(this::register);
+        requestTimingListener.ifAvailable(this::register);
+        prefetchingConsumerBinder.ifAvailable(this::register);
+        clusterRoutingFilter.ifAvailable(this::register);
+        kafkaClustersBinder.ifAvailable(this::register);
+
         property(ServerProperties.BV_SEND_ERROR_IN_RESPONSE, true);
         property(ServerProperties.WADL_FEATURE_DISABLE, true);
 
@@ -91,16 +143,6 @@ public class JerseyConfiguration extends ResourceConfig {
         }
     }
 
-    protected static ObjectMapper getJsonMapper() {
-        return new ObjectMapper()
-                .registerModule(new GuavaModule())
-                .registerModule(new Jdk8Module())
-                .registerModule(new JavaTimeModule())
-                .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
-                .setDateFormat(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'"))
-                .setTimeZone(TimeZone.getTimeZone("UTC"));
-    }
-
     protected static void registerExceptionMappers(Configurable<?> config, KafkaRestConfig restConfig) {
         config.register(JsonParseExceptionMapper.class);
         config.register(JsonMappingExceptionMapper.class);
@@ -18,12 +18,61 @@
  */
 package com.github.jeremylford.spring.kafkarestproxy;
 
+import com.github.jeremylford.spring.kafkarestproxy.cache.MetadataCache;
+import com.github.jeremylford.spring.kafkarestproxy.cache.MetadataCacheFilter;
+import com.github.jeremylford.spring.kafkarestproxy.affinity.ConsumerAffinityFilter;
+import com.github.jeremylford.spring.kafkarestproxy.cluster.ClusterRoutingFilter;
+import com.github.jeremylford.spring.kafkarestproxy.cluster.KafkaClusters;
+import com.github.jeremylford.spring.kafkarestproxy.cluster.KafkaClustersBinder;
+import com.github.jeremylford.spring.kafkarestproxy.compression.ContentEncodingFilter;
+import com.github.jeremylford.spring.kafkarestproxy.concurrency.BulkheadFilter;
+import com.github.jeremylford.spring.kafkarestproxy.concurrency.ConcurrencyLimitFilter;
+import com.github.jeremylford.spring.kafkarestproxy.consumer.ConsumerInstanceLimitFilter;
+import com.github.jeremylford.spring.kafkarestproxy.consumer.ConsumerInstanceRegistry;
+import com.github.jeremylford.spring.kafkarestproxy.consumer.PrefetchingConsumerBinder;
+import com.github.jeremylford.spring.kafkarestproxy.executor.KafkaRestExecutors;
+import com.github.jeremylford.spring.kafkarestproxy.jackson.KafkaRestJackson;
+import com.github.jeremylford.spring.kafkarestproxy.jackson.KafkaRestJacksonCustomizer;
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaClientMetricsReporter;
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import com.github.jeremylford.spring.kafkarestproxy.properties.ClusterProperties;
 import com.github.jeremylford.spring.kafkarestproxy.properties.KafkaRestProperties;
+import com.github.jeremylford.spring.kafkarestproxy.ratelimit.RateLimitFilter;
+import com.github.jeremylford.spring.kafkarestproxy.reload.KafkaRestReconfigurationEndpoint;
+import com.github.jeremylford.spring.kafkarestproxy.reload.KafkaRestReconfigurer;
+import com.github.jeremylford.spring.kafkarestproxy.reload.ReloadableKafkaRestConfig;
+import com.github.jeremylford.spring.kafkarestproxy.schema.SchemaRegistryCache;
+import com.github.jeremylford.spring.kafkarestproxy.stream.StreamingConsumeResource;
+import com.github.jeremylford.spring.kafkarestproxy.stream.StreamingConsumerRegistry;
+import com.github.jeremylford.spring.kafkarestproxy.timing.RequestTimingListener;
+import com.github.jeremylford.spring.kafkarestproxy.timing.TimingProducerInterceptor;
+import com.github.jeremylford.spring.kafkarestproxy.warmup.KafkaRestWarmup;
 import io.confluent.kafkarest.KafkaRestConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.Properties;
 
 @EnableConfigurationProperties({KafkaRestProperties.class})
 @Configuration
@@ -32,9 +81,201 @@ public class KafkaRestProxyAutoConfiguration {
 
 
     @Bean
-    public KafkaRestConfig kafkaRestConfig(KafkaRestProperties kafkaRestProperties) {
-        return new KafkaRestConfig(kafkaRestProperties.asProperties());
+    public KafkaRestConfig kafkaRestConfig(KafkaRestProperties kafkaRestProperties, ObjectProvider<KafkaRestMetrics> kafkaRestMetrics,
+                                           ObjectProvider<SchemaRegistryCache> schemaRegistryCache,
+                                           ObjectProvider<RequestTimingListener> requestTimingListener) {
+        Properties properties = kafkaRestProperties.asProperties();
+        schemaRegistryCache.ifAvailable(cache -> properties.put(KafkaRestConfig.SCHEMA_REGISTRY_URL_CONFIG, cache.getUrl()));
+        if (requestTimingListener.getIfAvailable() != null) {
+            String interceptors = properties.getProperty("producer.interceptor.classes");
+            String interceptor = TimingProducerInterceptor.class.getName();
+            properties.put("producer.interceptor.classes", interceptors == null ? interceptor : interceptors + "," + interceptor);
+        }
+        if (kafkaRestMetrics.getIfAvailable() != null && kafkaRestProperties.getMetrics().isKafkaClients()) {
+            String reporters = properties.getProperty("client.metric.reporters");
+            String reporter = KafkaClientMetricsReporter.class.getName();
+            properties.put("client.metric.reporters", reporters == null ? reporter : reporters + "," + reporter);
+        }
+        if (kafkaRestProperties.getReload().isEnabled()) {
+            return new ReloadableKafkaRestConfig(properties);
+        }
+        return new KafkaRestConfig(properties);
+    }
+
+    @Bean
+    public KafkaRestJackson kafkaRestJackson(ObjectProvider<KafkaRestJacksonCustomizer> customizers) {
+        Jackson2ObjectMapperBuilder builder = KafkaRestJackson.builder();
+        customizers.orderedStream().forEach(customizer -> customizer.customize(builder));
+        return new KafkaRestJackson(builder.build());
+    }
+
+    @Bean
+    public KafkaRestExecutors kafkaRestExecutors(KafkaRestProperties kafkaRestProperties, ObjectProvider<KafkaRestMetrics> kafkaRestMetrics) {
+        return new KafkaRestExecutors(kafkaRestProperties.getExecutors(), kafkaRestMetrics.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.rate-limit", name = "enabled")
+    public RateLimitFilter kafkaRestRateLimitFilter(KafkaRestProperties kafkaRestProperties, ObjectProvider<KafkaRestMetrics> kafkaRestMetrics) {
+        return new RateLimitFilter(kafkaRestProperties.getRateLimit(), kafkaRestMetrics.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.metadata-cache", name = "enabled")
+    public MetadataCache kafkaRestMetadataCache(KafkaRestProperties kafkaRestProperties, ObjectProvider<KafkaRestMetrics> kafkaRestMetrics) {
+        return new MetadataCache(kafkaRestProperties.getMetadataCache(), kafkaRestMetrics.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.metadata-cache", name = "enabled")
+    public MetadataCacheFilter kafkaRestMetadataCacheFilter(MetadataCache metadataCache) {
+        return new MetadataCacheFilter(metadataCache);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.compression", name = "enabled")
+    public ContentEncodingFilter kafkaRestContentEncodingFilter(KafkaRestProperties kafkaRestProperties, ObjectProvider<KafkaRestMetrics> kafkaRestMetrics) {
+        return new ContentEncodingFilter(kafkaRestProperties.getCompression(), kafkaRestMetrics.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.streaming-consume", name = "enabled")
+    public StreamingConsumerRegistry kafkaRestStreamingConsumerRegistry(KafkaRestProperties kafkaRestProperties, KafkaRestConfig kafkaRestConfig, KafkaRestExecutors kafkaRestExecutors) {
+        return new StreamingConsumerRegistry(kafkaRestProperties.getStreamingConsume(), kafkaRestConfig,
+                kafkaRestProperties.getConsumerInstanceTimeoutMillis(), kafkaRestExecutors);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.streaming-consume", name = "enabled")
+    public StreamingConsumeResource kafkaRestStreamingConsumeResource(StreamingConsumerRegistry registry, KafkaRestJackson kafkaRestJackson, KafkaRestProperties kafkaRestProperties) {
+        return new StreamingConsumeResource(registry, kafkaRestJackson.getObjectMapper(), kafkaRestProperties.getStreamingConsume().getHeartbeatInterval());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.affinity", name = "enabled")
+    public ConsumerAffinityFilter kafkaRestConsumerAffinityFilter(KafkaRestProperties kafkaRestProperties, KafkaRestJackson kafkaRestJackson, ObjectProvider<KafkaRestMetrics> kafkaRestMetrics) {
+        return new ConsumerAffinityFilter(kafkaRestProperties.getAffinity(), kafkaRestProperties.getId(), kafkaRestJackson.getObjectMapper(), kafkaRestMetrics.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.consumer-instances", name = "enabled")
+    public ConsumerInstanceRegistry kafkaRestConsumerInstanceRegistry(KafkaRestProperties kafkaRestProperties, KafkaRestConfig kafkaRestConfig, ObjectProvider<KafkaRestMetrics> kafkaRestMetrics) {
+        return new ConsumerInstanceRegistry(kafkaRestProperties.getConsumerInstances(), kafkaRestConfig,
+                kafkaRestProperties.getConsumerInstanceTimeoutMillis(), kafkaRestMetrics.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.consumer-instances", name = "enabled")
+    public ConsumerInstanceLimitFilter kafkaRestConsumerInstanceLimitFilter(ConsumerInstanceRegistry registry, KafkaRestJackson kafkaRestJackson) {
+        return new ConsumerInstanceLimitFilter(registry, kafkaRestJackson.getObjectMapper());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.prefetch", name = "enabled")
+    public PrefetchingConsumerBinder kafkaRestPrefetchingConsumerBinder(KafkaRestProperties kafkaRestProperties, KafkaRestConfig kafkaRestConfig, KafkaRestExecutors kafkaRestExecutors) {
+        return new PrefetchingConsumerBinder(kafkaRestProperties.getPrefetch(), kafkaRestConfig, kafkaRestExecutors);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.schema-cache", name = "enabled")
+    public SchemaRegistryCache kafkaRestSchemaRegistryCache(KafkaRestProperties kafkaRestProperties, KafkaRestJackson kafkaRestJackson,
+                                                            KafkaRestExecutors kafkaRestExecutors, ObjectProvider<KafkaRestMetrics> kafkaRestMetrics) throws IOException {
+        return new SchemaRegistryCache(kafkaRestProperties.getSchemaCache(), kafkaRestProperties.getSchemaRegistryUrl(),
+                kafkaRestJackson.getObjectMapper(), kafkaRestExecutors, kafkaRestMetrics.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.concurrency-limit", name = "enabled")
+    public ConcurrencyLimitFilter kafkaRestConcurrencyLimitFilter(KafkaRestProperties kafkaRestProperties, ObjectProvider<KafkaRestMetrics> kafkaRestMetrics) {
+        return new ConcurrencyLimitFilter(kafkaRestProperties.getConcurrencyLimit(), kafkaRestMetrics.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.bulkheads", name = "enabled")
+    public BulkheadFilter kafkaRestBulkheadFilter(KafkaRestProperties kafkaRestProperties, ObjectProvider<KafkaRestMetrics> kafkaRestMetrics) {
+        return new BulkheadFilter(kafkaRestProperties.getBulkheads(), kafkaRestMetrics.getIfAvailable());
     }
 
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.warmup", name = "enabled")
+    public KafkaRestWarmup kafkaRestWarmup(KafkaRestProperties kafkaRestProperties, ConfigurableApplicationContext applicationContext,
+                                           KafkaRestJackson kafkaRestJackson, ObjectProvider<KafkaRestMetrics> kafkaRestMetrics) {
+        return new KafkaRestWarmup(kafkaRestProperties.getWarmup(), applicationContext, kafkaRestJackson.getObjectMapper(), kafkaRestMetrics.getIfAvailable());
+    }
 
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.reload", name = "enabled")
+    public KafkaRestReconfigurer kafkaRestReconfigurer(KafkaRestProperties kafkaRestProperties, ConfigurableEnvironment environment,
+                                                       KafkaRestConfig kafkaRestConfig, KafkaRestExecutors kafkaRestExecutors,
+                                                       ObjectProvider<RateLimitFilter> rateLimitFilter) {
+        return new KafkaRestReconfigurer(kafkaRestProperties, environment, (ReloadableKafkaRestConfig) kafkaRestConfig,
+                kafkaRestExecutors, rateLimitFilter.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.reload", name = "enabled")
+    @ConditionalOnAvailableEndpoint(endpoint = KafkaRestReconfigurationEndpoint.class)
+    public KafkaRestReconfigurationEndpoint kafkaRestReconfigurationEndpoint(KafkaRestReconfigurer kafkaRestReconfigurer) {
+        return new KafkaRestReconfigurationEndpoint(kafkaRestReconfigurer);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.timing", name = "enabled")
+    public RequestTimingListener kafkaRestRequestTimingListener(KafkaRestProperties kafkaRestProperties) {
+        return new RequestTimingListener(kafkaRestProperties.getTiming());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kafka.restproxy.metrics", name = "enabled", matchIfMissing = true)
+    public KafkaRestMetrics kafkaRestMetrics(ObjectProvider<MeterRegistry> meterRegistry, KafkaRestProperties kafkaRestProperties) {
+        return new KafkaRestMetrics(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry), kafkaRestProperties.getMetrics());
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "org.apache.catalina.startup.Tomcat")
+    @ConditionalOnProperty(prefix = "kafka.restproxy.executors.container", name = "type")
+    static class ContainerExecutorConfiguration {
+
+        @Bean
+        public TomcatProtocolHandlerCustomizer<ProtocolHandler> kafkaRestContainerExecutorCustomizer(KafkaRestExecutors kafkaRestExecutors) {
+            return protocolHandler -> protocolHandler.setExecutor(kafkaRestExecutors.get(KafkaRestExecutors.CONTAINER));
+        }
+    }
+
+    @Configuration
+    @Conditional(OnClustersCondition.class)
+    static class ClustersConfiguration {
+
+        @Bean
+        public KafkaClusters kafkaRestClusters(KafkaRestProperties kafkaRestProperties, KafkaRestConfig kafkaRestConfig) {
+            return new KafkaClusters(kafkaRestProperties.getClusters(), kafkaRestConfig);
+        }
+
+        @Bean
+        public ClusterRoutingFilter kafkaRestClusterRoutingFilter(KafkaClusters kafkaClusters, ObjectProvider<KafkaRestMetrics> kafkaRestMetrics) {
+            return new ClusterRoutingFilter(kafkaClusters, kafkaRestMetrics.getIfAvailable());
+        }
+
+        @Bean
+        public KafkaClustersBinder kafkaRestClustersBinder(KafkaClusters kafkaClusters) {
+            return new KafkaClustersBinder(kafkaClusters);
+        }
+    }
+
+    /**
+     * Matches when at least one cluster is configured under {@code kafka.restproxy.clusters}.
+     */
+    static class OnClustersCondition extends SpringBootCondition {
+
+        @Override
+        public ConditionOutcome getMatchOutcome(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            boolean configured = Binder.get(context.getEnvironment())
+                    .bind("kafka.restproxy.clusters", Bindable.mapOf(String.class, ClusterProperties.class))
+                    .map(clusters -> !clusters.isEmpty())
+                    .orElse(false);
+            return configured
+                    ? ConditionOutcome.match("kafka.restproxy.clusters is configured")
+                    : ConditionOutcome.noMatch("kafka.restproxy.clusters is empty");
+        }
+    }
 }
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.affinity;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import com.github.jeremylford.spring.kafkarestproxy.properties.AffinityProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Routes v2 consumer instance requests, and streaming consume requests, to the proxy node that owns the instance, so
+ * a fleet of proxies can sit behind a load balancer without sticky sessions.
+ * <p>
+ * Instances created without a name are created on whichever node receives the request, which spreads them like any
+ * other request. kafka-rest names them {@code rest-consumer-<id>-<uuid>}, so their owner is read back from the
+ * instance ID. Instances named by the client are placed on a consistent hash ring of the nodes, and their creation is
+ * routed like every later request.
+ * <p>
+ * Requests are either forwarded to the owner over pooled keep-alive connections, their bodies streamed through, or
+ * redirected to it. Forwarded requests carry {@link #FORWARDED_BY} and the nodes' shared {@link #SECRET} and are
+ * always handled by the node receiving them, which rules out loops when nodes disagree about membership. Clients cannot
+ * pin a request to a node that way: both headers are removed from requests without the secret, which are then routed
+ * as usual.
+ */
+@PreMatching
+@Priority(Priorities.AUTHENTICATION - 100)
+public class ConsumerAffinityFilter implements ContainerRequestFilter {
+
+    public static final String FORWARDED_BY = "X-Kafka-Rest-Forwarded-By";
+    public static final String SECRET = "X-Kafka-Rest-Forwarding-Secret";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConsumerAffinityFilter.class);
+
+    private static final Pattern CREATE_PATH = Pattern.compile("/?consumers/([^/]+)/?");
+    private static final Pattern INSTANCE_PATH = Pattern.compile("/?consumers/([^/]+)/(?:instances|streams)/([^/]+)(?:/.*)?");
+    private static final String GENERATED_PREFIX = "rest-consumer-";
+    private static final String BASE_URI = "base_uri";
+
+    /**
+     * Hop-by-hop headers, and the headers {@link HttpClient} sets itself.
+     */
+    private static final Set<String> UNFORWARDED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        UNFORWARDED_HEADERS.addAll(Arrays.asList("Connection", "Content-Length", "Date", "Expect", "From", "Host",
+                "Keep-Alive", "Proxy-Authenticate", "Proxy-Authorization", "Proxy-Connection", "TE", "Trailer",
+                "Transfer-Encoding", "Upgrade", "Via", "Warning"));
+    }
+
+    private final AffinityProperties properties;
+    private final ObjectMapper objectMapper;
+    private final byte[] secret;
+    private final Node self;
+    private final List<Node> nodesByIdLength;
+    private final ConsistentHashRing<Node> ring;
+    private final HttpClient httpClient;
+
+    private final Counter local;
+    private final Counter forwarded;
+    private final Counter redirected;
+    private final Counter failed;
+
+    public ConsumerAffinityFilter(AffinityProperties properties, String nodeId, ObjectMapper objectMapper, KafkaRestMetrics metrics) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+
+        Map<String, Node> nodes = new LinkedHashMap<>();
+        properties.getNodes().forEach((id, baseUri) -> nodes.put(id, new Node(id, baseUri)));
+        if (nodeId == null || nodeId.isEmpty() || !nodes.containsKey(nodeId)) {
+            throw new IllegalArgumentException("kafka.restproxy.id must name one of the kafka.restproxy.affinity.nodes " + nodes.keySet());
+        }
+        if (properties.getMode() == AffinityProperties.Mode.FORWARD
+                && (properties.getSecret() == null || properties.getSecret().isEmpty())) {
+            throw new IllegalArgumentException("kafka.restproxy.affinity.secret is required to forward requests between nodes");
+        }
+        this.secret = properties.getSecret() != null ? properties.getSecret().getBytes(StandardCharsets.UTF_8) : null;
+        this.self = nodes.get(nodeId);
+        // longest first, so a node ID that extends another one's is matched before it
+        this.nodesByIdLength = nodes.values().stream()
+                .sorted(Comparator.comparingInt((Node node) -> node.id.length()).reversed())
+                .collect(Collectors.toList());
+        this.ring = new ConsistentHashRing<>(nodes, properties.getVirtualNodes());
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(properties.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+
+        MeterRegistry registry = metrics != null ? metrics.getRegistry() : null;
+        this.local = counter(registry, "local");
+        this.forwarded = counter(registry, "forwarded");
+        this.redirected = counter(registry, "redirected");
+        this.failed = counter(registry, "failed");
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        if (requestContext.getHeaderString(FORWARDED_BY) != null || requestContext.getHeaderString(SECRET) != null) {
+            boolean fromPeer = fromPeer(requestContext);
+            requestContext.getHeaders().remove(SECRET);
+            if (fromPeer) {
+                return;
+            }
+            requestContext.getHeaders().remove(FORWARDED_BY);
+        }
+
+        String path = requestContext.getUriInfo().getPath();
+        String group;
+        String instance;
+        boolean create = false;
+        Matcher matcher = INSTANCE_PATH.matcher(path);
+        if (matcher.matches()) {
+            group = matcher.group(1);
+            instance = matcher.group(2);
+        } else if (HttpMethod.POST.equals(requestContext.getMethod()) && (matcher = CREATE_PATH.matcher(path)).matches()) {
+            group = matcher.group(1);
+            instance = requestedName(requestContext);
+            create = true;
+            if (instance == null) {
+                increment(local);
+                return;
+            }
+        } else {
+            return;
+        }
+
+        Node owner = owner(group, instance);
+        if (owner == self) {
+            increment(local);
+            return;
+        }
+
+        URI target = owner.resolve(requestContext.getUriInfo().getPath(false), requestContext.getUriInfo().getRequestUri().getRawQuery());
+        if (properties.getMode() == AffinityProperties.Mode.REDIRECT) {
+            increment(redirected);
+            requestContext.abortWith(Response.temporaryRedirect(target).build());
+            return;
+        }
+
+        try {
+            requestContext.abortWith(forward(requestContext, owner, target, create));
+            increment(forwarded);
+        } catch (IOException e) {
+            increment(failed);
+            LOG.warn("Unable to forward {} {} to node {}: {}", requestContext.getMethod(), path, owner.id, e.toString());
+            requestContext.abortWith(error(Response.Status.BAD_GATEWAY, "Node " + owner.id + " owning consumer instance " + instance + " is unavailable"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            increment(failed);
+            requestContext.abortWith(error(Response.Status.SERVICE_UNAVAILABLE, "Interrupted while forwarding to node " + owner.id));
+        }
+    }
+
+    private boolean fromPeer(ContainerRequestContext requestContext) {
+        String sent = requestContext.getHeaderString(SECRET);
+        return secret != null && sent != null
+                && MessageDigest.isEqual(secret, sent.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the node owning {@code instance} of {@code group}
+     */
+    Node owner(String group, String instance) {
+        if (instance.startsWith(GENERATED_PREFIX)) {
+            for (Node node : nodesByIdLength) {
+                if (instance.startsWith(node.id + '-', GENERATED_PREFIX.length())) {
+                    return node;
+                }
+            }
+        }
+        return ring.get(group + '/' + instance);
+    }
+
+    private Response forward(ContainerRequestContext requestContext, Node owner, URI target, boolean create)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(target)
+                .timeout(properties.getForwardTimeout());
+        requestContext.getHeaders().forEach((name, values) -> {
+            if (!UNFORWARDED_HEADERS.contains(name)) {
+                values.forEach(value -> request.header(name, value));
+            }
+        });
+        request.header(FORWARDED_BY, self.id);
+        request.header(SECRET, properties.getSecret());
+        request.method(requestContext.getMethod(), body(requestContext));
+
+        HttpResponse<InputStream> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        Response.ResponseBuilder builder = Response.status(response.statusCode());
+        copyHeaders(response.headers(), builder);
+
+        if (create && response.statusCode() == Response.Status.OK.getStatusCode()) {
+            // the owner built base_uri from the URL it was called with, point it back at the address the client used
+            JsonNode created;
+            try (InputStream in = response.body()) {
+                created = objectMapper.readTree(in);
+            }
+            JsonNode baseUri = created != null ? created.get(BASE_URI) : null;
+            String ownerBaseUri = owner.baseUri.toString();
+            if (baseUri != null && baseUri.isTextual() && baseUri.asText().startsWith(ownerBaseUri)) {
+                String clientBaseUri = requestContext.getUriInfo().getBaseUri().toString();
+                ((ObjectNode) created).put(BASE_URI, clientBaseUri + baseUri.asText().substring(ownerBaseUri.length()));
+            }
+            ByteArrayOutputStream entity = new ByteArrayOutputStream();
+            objectMapper.writeValue(entity, created);
+            return builder.entity(entity.toByteArray()).build();
+        }
+
+        InputStream in = response.body();
+        StreamingOutput entity = out -> {
+            try (InputStream upstream = in) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = upstream.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                    // streaming consume responses must reach the client as they arrive
+                    out.flush();
+                }
+            }
+        };
+        return builder.entity(entity).build();
+    }
+
+    /**
+     * @return the request body, read from the client as the owner takes it
+     */
+    private static HttpRequest.BodyPublisher body(ContainerRequestContext requestContext) {
+        if (!requestContext.hasEntity()) {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+        InputStream in = requestContext.getEntityStream();
+        HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.ofInputStream(() -> in);
+        int length = requestContext.getLength();
+        // without a length the body is sent chunked
+        return length >= 0 ? HttpRequest.BodyPublishers.fromPublisher(publisher, length) : publisher;
+    }
+
+    private String requestedName(ContainerRequestContext requestContext) throws IOException {
+        if (!requestContext.hasEntity()) {
+            return null;
+        }
+        byte[] body = requestContext.getEntityStream().readAllBytes();
+        requestContext.setEntityStream(new ByteArrayInputStream(body));
+        JsonNode request;
+        try {
+            request = objectMapper.readTree(body);
+        } catch (IOException e) {
+            // left to kafka-rest to reject
+            return null;
+        }
+        // kafka-rest prefers the deprecated "id" over "name"
+        String name = text(request, "id");
+        return name != null ? name : text(request, "name");
+    }
+
+    private static String text(JsonNode request, String field) {
+        JsonNode value = request != null ? request.get(field) : null;
+        return value != null && value.isTextual() ? value.asText() : null;
+    }
+
+    private static void copyHeaders(HttpHeaders headers, Response.ResponseBuilder builder) {
+        headers.map().forEach((name, values) -> {
+            if (!name.startsWith(":") && !UNFORWARDED_HEADERS.contains(name)) {
+                values.forEach(value -> builder.header(name, value));
+            }
+        });
+    }
+
+    private static Response error(Response.Status status, String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error_code", status.getStatusCode());
+        error.put("message", message);
+        return Response.status(status)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(error)
+                .build();
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private static Counter counter(MeterRegistry registry, String outcome) {
+        if (registry == null) {
+            return null;
+        }
+        return Counter.builder("kafka.restproxy.affinity.requests")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    static final class Node {
+
+        final String id;
+        final URI baseUri;
+
+        Node(String id, String baseUri) {
+            this.id = id;
+            this.baseUri = URI.create(baseUri.endsWith("/") ? baseUri : baseUri + "/");
+        }
+
+        /**
+         * @return the URI of {@code rawPath}, relative to the application path, on this node
+         */
+        URI resolve(String rawPath, String rawQuery) {
+            String relative = rawPath.startsWith("/") ? rawPath.substring(1) : rawPath;
+            return URI.create(baseUri + relative + (rawQuery != null ? "?" + rawQuery : ""));
+        }
+
+        @Override
+        public String toString() {
+            return id;
+        }
+    }
+}
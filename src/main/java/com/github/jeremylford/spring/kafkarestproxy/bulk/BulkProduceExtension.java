@@ -0,0 +1,40 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.bulk;
+
+import io.confluent.kafkarest.KafkaRestConfig;
+import io.confluent.kafkarest.extension.RestResourceExtension;
+
+import javax.ws.rs.core.Configurable;
+
+/**
+ * Adds the binary bulk produce endpoint, {@link BulkProduceResource}. Enabled with
+ * {@code kafka.restproxy.bulk-produce.enabled}, or by listing it in {@code kafka.rest.resource.extension.class}.
+ */
+public class BulkProduceExtension implements RestResourceExtension {
+
+    @Override
+    public void register(Configurable<?> config, KafkaRestConfig appConfig) {
+        config.register(BulkProduceResource.class);
+    }
+
+    @Override
+    public void clean() {
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.bulk;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The framed binary format of the bulk produce endpoint. All integers are zig-zag varints, as in the Kafka record
+ * format, and lengths of -1 stand for null.
+ * <p>
+ * A request is a sequence of records up to the end of the body, each framed as
+ * <pre>
+ * partition     varint, -1 lets the producer's partitioner choose
+ * keyLength     varint, followed by the key bytes
+ * valueLength   varint, followed by the value bytes
+ * headerCount   varint, followed per header by
+ *     nameLength    varint, followed by the UTF-8 name
+ *     valueLength   varint, followed by the value bytes
+ * </pre>
+ * The response holds the record count followed by one result per record, in request order
+ * <pre>
+ * partition     varint, -1 if the record failed before it was assigned one
+ * offset        varlong, -1 if the record failed
+ * errorCode     varint, the Kafka protocol error code or 0 on success
+ * messageLength varint, followed by the UTF-8 error message, only present if errorCode is not 0
+ * </pre>
+ * With response mode {@code summary} the response is instead a single result for the whole request
+ * <pre>
+ * count         varint, the number of records in the request
+ * failed        varint, the number of records that failed
+ * errorCode     varint, the Kafka protocol error code of one of the failed records, or 0 if none failed
+ * messageLength varint, followed by the UTF-8 error message, only present if errorCode is not 0
+ * </pre>
+ */
+public final class BulkProduceFormat {
+
+    public static final String MEDIA_TYPE = "application/vnd.kafka.bulk.v1+octet-stream";
+
+    private static final int MAX_HEADERS = 1 << 16;
+
+    private BulkProduceFormat() {
+    }
+
+    /**
+     * Reads the next record of a request.
+     *
+     * @return the record, or null at the end of the request
+     * @throws EOFException if the request ends within a record
+     * @throws IllegalArgumentException if the record is malformed or a key, value or header exceeds {@code maxLength}
+     */
+    public static ProducerRecord<byte[], byte[]> readRecord(InputStream in, String topic, int maxLength) throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return null;
+        }
+
+        int partition = readVarint(in, first);
+        if (partition < -1) {
+            throw new IllegalArgumentException("Invalid partition " + partition);
+        }
+        byte[] key = readBytes(in, maxLength);
+        byte[] value = readBytes(in, maxLength);
+
+        int headerCount = readVarint(in, in.read());
+        if (headerCount < 0 || headerCount > MAX_HEADERS) {
+            throw new IllegalArgumentException("Invalid header count " + headerCount);
+        }
+        RecordHeaders headers = new RecordHeaders();
+        for (int i = 0; i < headerCount; i++) {
+            byte[] name = readBytes(in, maxLength);
+            if (name == null) {
+                throw new IllegalArgumentException("Header names must not be null");
+            }
+            headers.add(new RecordHeader(new String(name, StandardCharsets.UTF_8), readBytes(in, maxLength)));
+        }
+
+        return new ProducerRecord<>(topic, partition < 0 ? null : partition, null, key, value, headers);
+    }
+
+    public static void writeRecord(OutputStream out, Integer partition, byte[] key, byte[] value, Iterable<Header> headers) throws IOException {
+        writeVarint(out, partition != null ? partition : -1);
+        writeBytes(out, key);
+        writeBytes(out, value);
+        int headerCount = 0;
+        if (headers != null) {
+            for (Header ignored : headers) {
+                headerCount++;
+            }
+        }
+        writeVarint(out, headerCount);
+        if (headers != null) {
+            for (Header header : headers) {
+                writeBytes(out, header.key().getBytes(StandardCharsets.UTF_8));
+                writeBytes(out, header.value());
+            }
+        }
+    }
+
+    public static void writeResult(OutputStream out, int partition, long offset, int errorCode, String message) throws IOException {
+        writeVarint(out, partition);
+        writeVarlong(out, offset);
+        writeVarint(out, errorCode);
+        if (errorCode != 0) {
+            writeBytes(out, (message != null ? message : "").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public static void writeSummary(OutputStream out, int count, int failed, int errorCode, String message) throws IOException {
+        writeVarint(out, count);
+        writeVarint(out, failed);
+        writeVarint(out, errorCode);
+        if (errorCode != 0) {
+            writeBytes(out, (message != null ? message : "").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public static void writeVarint(OutputStream out, int value) throws IOException {
+        int v = (value << 1) ^ (value >> 31);
+        while ((v & 0xffffff80) != 0) {
+            out.write((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    public static void writeVarlong(OutputStream out, long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & 0xffffffffffffff80L) != 0) {
+            out.write(((int) v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static void writeBytes(OutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            writeVarint(out, -1);
+        } else {
+            writeVarint(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(InputStream in, int maxLength) throws IOException {
+        int length = readVarint(in, in.read());
+        if (length < -1 || length > maxLength) {
+            throw new IllegalArgumentException("Invalid length " + length);
+        }
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(bytes, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Record truncated");
+            }
+            read += n;
+        }
+        return bytes;
+    }
+
+    private static int readVarint(InputStream in, int first) throws IOException {
+        int b = first;
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            if (b < 0) {
+                throw new EOFException("Record truncated");
+            }
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+            shift += 7;
+            if (shift > 28) {
+                throw new IllegalArgumentException("Varint is too long");
+            }
+            b = in.read();
+        }
+    }
+}
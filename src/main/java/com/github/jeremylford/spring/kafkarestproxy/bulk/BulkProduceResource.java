@@ -0,0 +1,161 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.bulk;
+
+import com.github.jeremylford.spring.kafkarestproxy.produce.ProduceResponseMode;
+import io.confluent.kafkarest.KafkaRestConfig;
+import io.confluent.kafkarest.controllers.TopicManager;
+import io.confluent.kafkarest.entities.Topic;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Response;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Produces a request in {@link BulkProduceFormat} to one topic. Records are handed to the producer as they are read
+ * from the body, so the request is never held in memory as a whole, and the response is sent once every record has
+ * been acknowledged.
+ * <p>
+ * The response always reports only partitions and offsets, so {@link ProduceResponseMode#ACKS} is the same as the
+ * default. {@link ProduceResponseMode#SUMMARY} replaces the per-record results with a single summary.
+ * <p>
+ * The cluster and topic are looked up with kafka-rest's {@link TopicManager} before the body is read, so unknown ones
+ * fail with 404 as on the other v3 endpoints. A malformed record fails the request with 400, but the records before it
+ * have already been sent.
+ */
+@Path("/v3/clusters/{clusterId}/topics/{topicName}/records:bulk")
+public final class BulkProduceResource {
+
+    public static final String MAX_RECORDS_CONFIG = "bulk.produce.max.records";
+    public static final String MAX_RECORD_BYTES_CONFIG = "bulk.produce.max.record.bytes";
+
+    static final int MAX_RECORDS_DEFAULT = 100000;
+    static final int MAX_RECORD_BYTES_DEFAULT = 1048576;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Provider<Producer<byte[], byte[]>> producer;
+    private final Provider<TopicManager> topicManager;
+    private final int maxRecords;
+    private final int maxRecordBytes;
+
+    @Inject
+    public BulkProduceResource(Provider<Producer<byte[], byte[]>> producer, Provider<TopicManager> topicManager,
+                               KafkaRestConfig config) {
+        this.producer = producer;
+        this.topicManager = topicManager;
+        this.maxRecords = intConfig(config, MAX_RECORDS_CONFIG, MAX_RECORDS_DEFAULT);
+        this.maxRecordBytes = intConfig(config, MAX_RECORD_BYTES_CONFIG, MAX_RECORD_BYTES_DEFAULT);
+    }
+
+    @POST
+    @Consumes(BulkProduceFormat.MEDIA_TYPE)
+    @Produces(BulkProduceFormat.MEDIA_TYPE)
+    public void produce(
+            @Suspended AsyncResponse asyncResponse,
+            @PathParam("clusterId") String clusterId,
+            @PathParam("topicName") String topicName,
+            @HeaderParam(ProduceResponseMode.HEADER) String modeHeader,
+            @QueryParam(ProduceResponseMode.QUERY_PARAMETER) String modeParameter,
+            InputStream body
+    ) throws IOException {
+        ProduceResponseMode mode;
+        try {
+            mode = ProduceResponseMode.of(modeHeader, modeParameter);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage(), e);
+        }
+        checkTopic(clusterId, topicName);
+
+        Producer<byte[], byte[]> producer = this.producer.get();
+        BulkProduceResults[] results = new BulkProduceResults[1];
+        results[0] = new BulkProduceResults(mode == ProduceResponseMode.SUMMARY, () -> asyncResponse.resume(
+                Response.ok(results[0].response(), BulkProduceFormat.MEDIA_TYPE).build()));
+
+        InputStream in = new BufferedInputStream(body, BUFFER_SIZE);
+        try {
+            ProducerRecord<byte[], byte[]> record;
+            while ((record = BulkProduceFormat.readRecord(in, topicName, maxRecordBytes)) != null) {
+                if (results[0].count() == maxRecords) {
+                    throw new IllegalArgumentException("A request holds at most " + maxRecords + " records");
+                }
+                Callback callback = results[0].next();
+                try {
+                    producer.send(record, callback);
+                } catch (KafkaException e) {
+                    callback.onCompletion(null, e);
+                }
+            }
+        } catch (IllegalArgumentException | EOFException e) {
+            throw new BadRequestException("Invalid record " + results[0].count() + ", the records before it were sent: "
+                    + e.getMessage(), e);
+        }
+        results[0].sealed();
+    }
+
+    /**
+     * @throws NotFoundException if the cluster or the topic does not exist
+     */
+    private void checkTopic(String clusterId, String topicName) {
+        Optional<Topic> topic;
+        try {
+            topic = topicManager.get().getTopic(clusterId, topicName).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UnknownTopicOrPartitionException) {
+                topic = Optional.empty();
+            } else if (cause instanceof RuntimeException) {
+                // e.g. the NotFoundException for an unknown cluster, left to kafka-rest's exception mappers
+                throw (RuntimeException) cause;
+            } else {
+                throw e;
+            }
+        }
+        if (!topic.isPresent()) {
+            throw new NotFoundException("Topic " + topicName + " cannot be found.");
+        }
+    }
+
+    private static int intConfig(KafkaRestConfig config, String name, int defaultValue) {
+        Object value = config.originals().get(name);
+        return value != null ? Integer.parseInt(value.toString()) : defaultValue;
+    }
+}
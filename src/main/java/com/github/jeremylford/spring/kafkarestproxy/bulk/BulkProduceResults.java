@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.bulk;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.protocol.Errors;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Collects the send results of one bulk request, in request order, without locking. Results are stored in fixed-size
+ * chunks allocated by the reading thread, so producer callbacks only ever write into a chunk they were handed and never
+ * race with the request growing.
+ * <p>
+ * For a summary response only the number of failures and the first error are kept, and every record shares one
+ * callback, so nothing is allocated per record.
+ */
+final class BulkProduceResults {
+
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private final List<Chunk> chunks = new ArrayList<>();
+    // one for the reading thread plus one per record in flight
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final Runnable onComplete;
+    private final Callback summaryCallback;
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicReference<Exception> firstError = new AtomicReference<>();
+    private int count;
+
+    BulkProduceResults(boolean summary, Runnable onComplete) {
+        this.onComplete = onComplete;
+        this.summaryCallback = summary ? this::summarize : null;
+    }
+
+    /**
+     * Reserves the next result and returns the producer callback that fills it in.
+     */
+    Callback next() {
+        if (summaryCallback != null) {
+            count++;
+            pending.incrementAndGet();
+            return summaryCallback;
+        }
+        int index = count++;
+        if ((index & (CHUNK_SIZE - 1)) == 0) {
+            chunks.add(new Chunk());
+        }
+        Chunk chunk = chunks.get(index >>> CHUNK_SHIFT);
+        int slot = index & (CHUNK_SIZE - 1);
+        chunk.partitions[slot] = -1;
+        chunk.offsets[slot] = -1;
+        pending.incrementAndGet();
+        return (metadata, exception) -> {
+            if (exception != null) {
+                chunk.errors[slot] = exception;
+            } else {
+                chunk.partitions[slot] = metadata.partition();
+                chunk.offsets[slot] = metadata.offset();
+            }
+            release();
+        };
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * Called by the reading thread once the whole request has been sent. The completion callback runs when the last
+     * send completes, which may be right away.
+     */
+    void sealed() {
+        release();
+    }
+
+    StreamingOutput response() {
+        if (summaryCallback != null) {
+            return output -> {
+                Exception error = firstError.get();
+                if (error == null) {
+                    BulkProduceFormat.writeSummary(output, count, 0, 0, null);
+                } else {
+                    BulkProduceFormat.writeSummary(output, count, failed.get(), Errors.forException(error).code(), error.getMessage());
+                }
+                output.flush();
+            };
+        }
+        return output -> {
+            OutputStream out = new BufferedOutputStream(output, 8192);
+            BulkProduceFormat.writeVarint(out, count);
+            for (int i = 0; i < count; i++) {
+                Chunk chunk = chunks.get(i >>> CHUNK_SHIFT);
+                int slot = i & (CHUNK_SIZE - 1);
+                Exception error = chunk.errors[slot];
+                if (error == null) {
+                    BulkProduceFormat.writeResult(out, chunk.partitions[slot], chunk.offsets[slot], 0, null);
+                } else {
+                    BulkProduceFormat.writeResult(out, chunk.partitions[slot], -1, Errors.forException(error).code(), error.getMessage());
+                }
+            }
+            out.flush();
+        };
+    }
+
+    private void summarize(RecordMetadata metadata, Exception exception) {
+        if (exception != null) {
+            failed.incrementAndGet();
+            firstError.compareAndSet(null, exception);
+        }
+        release();
+    }
+
+    private void release() {
+        if (pending.decrementAndGet() == 0) {
+            onComplete.run();
+        }
+    }
+
+    private static final class Chunk {
+        final int[] partitions = new int[CHUNK_SIZE];
+        final long[] offsets = new long[CHUNK_SIZE];
+        final Exception[] errors = new Exception[CHUNK_SIZE];
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.cache;
+
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import com.github.jeremylford.spring.kafkarestproxy.properties.MetadataCacheProperties;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serialized metadata responses, bounded and expired per {@link MetadataResource}. Each entry carries a strong ETag
+ * over its bytes so that hits and conditional GETs never touch the Admin client or Jackson.
+ * <p>
+ * Concurrent misses for the same key wait for a single load. Loads that started before an invalidation of their
+ * resource are handed to the waiting requests but not stored.
+ */
+public class MetadataCache {
+
+    public static final String REQUESTS = "kafka.restproxy.metadata.cache.requests";
+    public static final String SIZE = "kafka.restproxy.metadata.cache.size";
+    public static final String INVALIDATIONS = "kafka.restproxy.metadata.cache.invalidations";
+
+    private final Map<MetadataResource, Cache<String, Entry>> caches = new EnumMap<>(MetadataResource.class);
+    private final Map<MetadataResource, AtomicLong> generations = new EnumMap<>(MetadataResource.class);
+    private final Map<String, CompletableFuture<Entry>> loads = new ConcurrentHashMap<>();
+    private final long coalesceTimeoutNanos;
+
+    private final Map<MetadataResource, Counter[]> requests = new EnumMap<>(MetadataResource.class);
+    private final Map<MetadataResource, Counter> invalidations = new EnumMap<>(MetadataResource.class);
+
+    public MetadataCache(MetadataCacheProperties properties, KafkaRestMetrics metrics) {
+        this.coalesceTimeoutNanos = properties.getCoalesceTimeout().toNanos();
+        caches.put(MetadataResource.CLUSTERS, cache(properties.getClusters()));
+        caches.put(MetadataResource.BROKERS, cache(properties.getBrokers()));
+        caches.put(MetadataResource.TOPICS, cache(properties.getTopics()));
+        caches.put(MetadataResource.PARTITIONS, cache(properties.getPartitions()));
+
+        MeterRegistry registry = metrics != null ? metrics.getRegistry() : null;
+        for (MetadataResource resource : MetadataResource.values()) {
+            generations.put(resource, new AtomicLong());
+            if (registry != null) {
+                Counter[] counters = new Counter[Result.values().length];
+                for (Result result : Result.values()) {
+                    counters[result.ordinal()] = Counter.builder(REQUESTS)
+                            .tag("resource", resource.tag())
+                            .tag("result", result.tag)
+                            .register(registry);
+                }
+                requests.put(resource, counters);
+                invalidations.put(resource, Counter.builder(INVALIDATIONS)
+                        .tag("resource", resource.tag())
+                        .register(registry));
+                Cache<String, Entry> cache = caches.get(resource);
+                if (cache != null) {
+                    Gauge.builder(SIZE, cache, Cache::size)
+                            .tag("resource", resource.tag())
+                            .register(registry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks {@code key} up and, on a miss, either waits for a concurrent load of the same key or starts one.
+     *
+     * @return the cached or coalesced entry, a {@link Load} the caller must complete, or null if the resource is not
+     * cached or the concurrent load failed
+     */
+    Object lookup(MetadataResource resource, String key) {
+        Cache<String, Entry> cache = caches.get(resource);
+        if (cache == null) {
+            return null;
+        }
+
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null) {
+            record(resource, Result.HIT);
+            return entry;
+        }
+
+        Load load = new Load(resource, key, generations.get(resource).get());
+        CompletableFuture<Entry> pending = loads.putIfAbsent(key, load.future);
+        if (pending == null) {
+            record(resource, Result.MISS);
+            return load;
+        }
+
+        try {
+            entry = pending.get(coalesceTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // load it independently
+        } catch (TimeoutException e) {
+            // the load was lost, let the next miss start a new one
+            loads.remove(key, pending);
+        }
+        record(resource, entry != null ? Result.COALESCED : Result.MISS);
+        return entry;
+    }
+
+    /**
+     * Stores the loaded entry and releases the requests waiting for it. A null entry releases them to load on their own.
+     */
+    void complete(Load load, Entry entry) {
+        if (entry != null && generations.get(load.resource).get() == load.generation) {
+            caches.get(load.resource).put(load.key, entry);
+        }
+        loads.remove(load.key, load.future);
+        load.future.complete(entry);
+    }
+
+    void recordNotModified(MetadataResource resource) {
+        record(resource, Result.NOT_MODIFIED);
+    }
+
+    /**
+     * Drops every cached response of {@code resource}, including loads in flight.
+     */
+    public void invalidate(MetadataResource resource) {
+        generations.get(resource).incrementAndGet();
+        Cache<String, Entry> cache = caches.get(resource);
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+        Counter counter = invalidations.get(resource);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    public void invalidateAll() {
+        for (MetadataResource resource : MetadataResource.values()) {
+            invalidate(resource);
+        }
+    }
+
+    private void record(MetadataResource resource, Result result) {
+        Counter[] counters = requests.get(resource);
+        if (counters != null) {
+            counters[result.ordinal()].increment();
+        }
+    }
+
+    private static Cache<String, Entry> cache(MetadataCacheProperties.Resource properties) {
+        Duration ttl = properties.getTtl();
+        if (ttl == null || ttl.isZero() || ttl.isNegative() || properties.getMaxSize() <= 0) {
+            return null;
+        }
+        return CacheBuilder.newBuilder()
+                .expireAfterWrite(ttl.toNanos(), TimeUnit.NANOSECONDS)
+                .maximumSize(properties.getMaxSize())
+                .build();
+    }
+
+    private enum Result {
+        HIT("hit"),
+        NOT_MODIFIED("not_modified"),
+        COALESCED("coalesced"),
+        MISS("miss");
+
+        private final String tag;
+
+        Result(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    static final class Load {
+
+        final MetadataResource resource;
+        final String key;
+        final long generation;
+        final CompletableFuture<Entry> future = new CompletableFuture<>();
+
+        Load(MetadataResource resource, String key, long generation) {
+            this.resource = resource;
+            this.key = key;
+            this.generation = generation;
+        }
+    }
+
+    static final class Entry {
+
+        final byte[] body;
+        final String mediaType;
+        final String etag;
+
+        Entry(byte[] body, String mediaType) {
+            this.body = body;
+            this.mediaType = mediaType;
+            this.etag = etag(body);
+        }
+
+        boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                candidate = candidate.trim();
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals("*") || candidate.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static String etag(byte[] body) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+                byte[] etag = Base64.getUrlEncoder().withoutPadding().encode(Arrays.copyOf(digest, 16));
+                return '"' + new String(etag, StandardCharsets.US_ASCII) + '"';
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
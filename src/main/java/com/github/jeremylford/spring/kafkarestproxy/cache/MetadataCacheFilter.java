@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.cache;
+
+import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.Principal;
+
+/**
+ * Serves the cluster, broker, topic and partition GET endpoints from the {@link MetadataCache}, answering matching
+ * {@code If-None-Match} requests with 304, and invalidates the cache when the proxy creates, deletes or alters
+ * topics. Runs after authentication and authorization so cached responses are only served to allowed callers.
+ */
+@Priority(Priorities.USER)
+public class MetadataCacheFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    private static final String LOAD_PROPERTY = MetadataCacheFilter.class.getName() + ".load";
+
+    /**
+     * Headers a response may vary by, the forwarded ones in case they are not already applied to the base uri.
+     */
+    private static final String[] KEY_HEADERS = {
+            HttpHeaders.ACCEPT, "Forwarded", "X-Forwarded-Host", "X-Forwarded-Port", "X-Forwarded-Proto", "X-Forwarded-Prefix"
+    };
+
+    private final MetadataCache cache;
+
+    public MetadataCacheFilter(MetadataCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        if (!HttpMethod.GET.equals(requestContext.getMethod())) {
+            return;
+        }
+        MetadataResource resource = MetadataResource.of(requestContext.getUriInfo().getPath());
+        if (resource == null) {
+            return;
+        }
+
+        Object cached = cache.lookup(resource, key(requestContext));
+        if (cached instanceof MetadataCache.Load) {
+            requestContext.setProperty(LOAD_PROPERTY, cached);
+        } else if (cached != null) {
+            MetadataCache.Entry entry = (MetadataCache.Entry) cached;
+            if (entry.matches(requestContext.getHeaderString(HttpHeaders.IF_NONE_MATCH))) {
+                cache.recordNotModified(resource);
+                requestContext.abortWith(Response.notModified()
+                        .header(HttpHeaders.ETAG, entry.etag)
+                        .build());
+            } else {
+                requestContext.abortWith(Response.ok(entry.body, entry.mediaType)
+                        .header(HttpHeaders.ETAG, entry.etag)
+                        .build());
+            }
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        Object load = requestContext.getProperty(LOAD_PROPERTY);
+        if (load != null) {
+            if (responseContext.getStatus() != Response.Status.OK.getStatusCode() || !responseContext.hasEntity()) {
+                requestContext.removeProperty(LOAD_PROPERTY);
+                cache.complete((MetadataCache.Load) load, null);
+            }
+            return;
+        }
+
+        String method = requestContext.getMethod();
+        if (!HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method)
+                && responseContext.getStatusInfo().getFamily() == Response.Status.Family.SUCCESSFUL) {
+            for (MetadataResource resource : MetadataResource.changedBy(requestContext.getUriInfo().getPath())) {
+                cache.invalidate(resource);
+            }
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        Object load = context.getProperty(LOAD_PROPERTY);
+        if (load == null) {
+            context.proceed();
+            return;
+        }
+
+        context.removeProperty(LOAD_PROPERTY);
+        OutputStream outputStream = context.getOutputStream();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        MetadataCache.Entry entry = null;
+        context.setOutputStream(buffer);
+        try {
+            context.proceed();
+            MediaType mediaType = context.getMediaType();
+            entry = new MetadataCache.Entry(buffer.toByteArray(), mediaType != null ? mediaType.toString() : null);
+            // nothing has been written to the real stream yet, so the headers are still open
+            context.getHeaders().putSingle(HttpHeaders.ETAG, entry.etag);
+            outputStream.write(entry.body);
+        } finally {
+            context.setOutputStream(outputStream);
+            cache.complete((MetadataCache.Load) load, entry);
+        }
+    }
+
+    private static String key(ContainerRequestContext requestContext) {
+        // the related links in the bodies are built from the base uri the caller used
+        UriInfo uriInfo = requestContext.getUriInfo();
+        StringBuilder key = new StringBuilder(128)
+                .append(uriInfo.getBaseUri())
+                .append(uriInfo.getPath());
+        String query = uriInfo.getRequestUri().getRawQuery();
+        if (query != null) {
+            key.append('?').append(query);
+        }
+        for (String header : KEY_HEADERS) {
+            String value = requestContext.getHeaderString(header);
+            key.append('\n').append(value != null ? value : "");
+        }
+
+        // responses may depend on the caller's ACLs
+        SecurityContext securityContext = requestContext.getSecurityContext();
+        Principal principal = securityContext != null ? securityContext.getUserPrincipal() : null;
+        if (principal != null) {
+            key.append('\n').append(principal.getName());
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The metadata endpoints whose GET responses are cached, recognized by path shape for both the v2 and v3 APIs.
+ */
+public enum MetadataResource {
+
+    CLUSTERS,
+    BROKERS,
+    TOPICS,
+    PARTITIONS;
+
+    private final String tag = name().toLowerCase();
+
+    public String tag() {
+        return tag;
+    }
+
+    /**
+     * @return the resource served by a GET of {@code path}, or null if the path is not a cached metadata endpoint
+     */
+    static MetadataResource of(String path) {
+        List<String> segments = segments(path);
+        int size = segments.size();
+        if (size == 0) {
+            return null;
+        }
+
+        if ("v3".equals(segments.get(0))) {
+            if (size < 2 || !"clusters".equals(segments.get(1))) {
+                return null;
+            }
+            if (size <= 3) {
+                return CLUSTERS;
+            }
+            String collection = segments.get(3);
+            if ("brokers".equals(collection) && size <= 5) {
+                return BROKERS;
+            }
+            if ("topics".equals(collection)) {
+                if (size <= 5) {
+                    return TOPICS;
+                }
+                if ("partitions".equals(segments.get(5)) && size <= 7) {
+                    return PARTITIONS;
+                }
+            }
+            return null;
+        }
+
+        // v2 resources live at the root
+        String collection = segments.get(0);
+        if ("brokers".equals(collection) && size == 1) {
+            return BROKERS;
+        }
+        if ("topics".equals(collection)) {
+            if (size <= 2) {
+                return TOPICS;
+            }
+            if ("partitions".equals(segments.get(2)) && size <= 4) {
+                return PARTITIONS;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the resources a successful non-GET request to {@code path} may have changed
+     */
+    static MetadataResource[] changedBy(String path) {
+        List<String> segments = segments(path);
+        int size = segments.size();
+        // only v3 alters metadata, v2 writes to topics and partitions are produce requests
+        if (size < 4 || !"v3".equals(segments.get(0)) || !"clusters".equals(segments.get(1))
+                || isProduce(segments.get(size - 1))) {
+            return new MetadataResource[0];
+        }
+        switch (segments.get(3)) {
+            case "topics":
+                return new MetadataResource[]{TOPICS, PARTITIONS};
+            case "brokers":
+                return new MetadataResource[]{BROKERS, PARTITIONS};
+            default:
+                return new MetadataResource[0];
+        }
+    }
+
+    /**
+     * Matches the records endpoint and its custom methods, such as {@code records:bulk}.
+     */
+    private static boolean isProduce(String lastSegment) {
+        return "records".equals(lastSegment) || lastSegment.startsWith("records:");
+    }
+
+    private static List<String> segments(String path) {
+        List<String> segments = new ArrayList<>(8);
+        int start = 0;
+        int length = path.length();
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                segments.add(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return segments;
+    }
+}
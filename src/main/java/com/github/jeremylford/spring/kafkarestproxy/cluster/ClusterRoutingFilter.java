@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.cluster;
+
+import com.github.jeremylford.spring.kafkarestproxy.concurrency.Bulkhead;
+import com.github.jeremylford.spring.kafkarestproxy.concurrency.BulkheadFilter;
+import com.github.jeremylford.spring.kafkarestproxy.concurrency.ConcurrencyLimitFilter;
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Routes each request to a {@link KafkaCluster} by the cluster id in its {@code /v3/clusters/{clusterId}} path and
+ * holds it to that cluster's bulkhead. The cluster is left in the {@link #CLUSTER_PROPERTY} request property, from
+ * where {@link KafkaClustersBinder} hands its clients to kafka-rest.
+ * <p>
+ * Runs before matching and before the {@link ConcurrencyLimitFilter}, which keeps its limits per routed cluster, so
+ * requests waiting for a slow cluster's bulkhead hold neither its adaptive permits nor those of the
+ * {@link BulkheadFilter} groups.
+ */
+@PreMatching
+@Priority(Priorities.USER - 450)
+public class ClusterRoutingFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    public static final String CLUSTER_PROPERTY = ClusterRoutingFilter.class.getName() + ".cluster";
+
+    public static final String AVAILABLE = "kafka.restproxy.cluster.bulkhead.available";
+    public static final String QUEUED = "kafka.restproxy.cluster.bulkhead.queued";
+    public static final String WAIT = "kafka.restproxy.cluster.bulkhead.wait";
+    public static final String REJECTIONS = "kafka.restproxy.cluster.bulkhead.rejections";
+
+    private static final String PERMIT_PROPERTY = ClusterRoutingFilter.class.getName() + ".permit";
+    private static final Pattern CLUSTER_PATH = Pattern.compile("/?v3/clusters/([^/]+)(/.*)?");
+
+    private final KafkaClusters clusters;
+    private final Map<KafkaCluster, Timer> waits = new HashMap<>();
+    private final Map<KafkaCluster, Counter[]> rejections = new HashMap<>();
+
+    public ClusterRoutingFilter(KafkaClusters clusters, KafkaRestMetrics metrics) {
+        this.clusters = clusters;
+
+        MeterRegistry registry = metrics != null ? metrics.getRegistry() : null;
+        if (registry != null) {
+            for (KafkaCluster cluster : clusters.getClusters()) {
+                Bulkhead bulkhead = cluster.getBulkhead();
+                if (bulkhead.isUnbounded()) {
+                    continue;
+                }
+                String name = cluster.getName();
+                Gauge.builder(AVAILABLE, bulkhead, Bulkhead::getAvailable)
+                        .tag("cluster", name)
+                        .register(registry);
+                Gauge.builder(QUEUED, bulkhead, Bulkhead::getQueued)
+                        .tag("cluster", name)
+                        .register(registry);
+                waits.put(cluster, Timer.builder(WAIT)
+                        .tag("cluster", name)
+                        .register(registry));
+                rejections.put(cluster, new Counter[]{
+                        Counter.builder(REJECTIONS).tag("cluster", name).tag("reason", "queue_full").register(registry),
+                        Counter.builder(REJECTIONS).tag("cluster", name).tag("reason", "timeout").register(registry)
+                });
+            }
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        Matcher matcher = CLUSTER_PATH.matcher(requestContext.getUriInfo().getPath());
+        KafkaCluster cluster = matcher.matches() ? clusters.forClusterId(matcher.group(1)) : clusters.getDefault();
+        requestContext.setProperty(CLUSTER_PROPERTY, cluster);
+
+        Bulkhead bulkhead = cluster.getBulkhead();
+        if (bulkhead.isUnbounded()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        Bulkhead.Outcome outcome;
+        try {
+            outcome = bulkhead.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome = Bulkhead.Outcome.TIMEOUT;
+        }
+        Timer wait = waits.get(cluster);
+        if (wait != null) {
+            wait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        if (outcome == Bulkhead.Outcome.ACQUIRED) {
+            requestContext.setProperty(PERMIT_PROPERTY, bulkhead);
+            return;
+        }
+
+        Counter[] counters = rejections.get(cluster);
+        if (counters != null) {
+            counters[outcome == Bulkhead.Outcome.QUEUE_FULL ? 0 : 1].increment();
+        }
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error_code", Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        error.put("message", "Too many concurrent requests to cluster '" + cluster.getName() + "'");
+        requestContext.setProperty(ConcurrencyLimitFilter.REJECTED_PROPERTY, Boolean.TRUE);
+        requestContext.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, 1)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(error)
+                .build());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        Object bulkhead = requestContext.getProperty(PERMIT_PROPERTY);
+        if (bulkhead != null) {
+            requestContext.removeProperty(PERMIT_PROPERTY);
+            ((Bulkhead) bulkhead).release();
+        }
+    }
+
+    /**
+     * @return the name of the cluster the request was routed to, "default" if it was not routed
+     */
+    public static String clusterName(ContainerRequestContext requestContext) {
+        Object cluster = requestContext.getProperty(CLUSTER_PROPERTY);
+        return cluster instanceof KafkaCluster ? ((KafkaCluster) cluster).getName() : KafkaClusters.DEFAULT;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.cluster;
+
+import com.github.jeremylford.spring.kafkarestproxy.concurrency.Bulkhead;
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaClientMetricsReporter;
+import com.github.jeremylford.spring.kafkarestproxy.properties.BulkheadProperties;
+import io.confluent.kafkarest.KafkaRestConfig;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The clients of one Kafka cluster: an admin client and a fixed pool of producers, created on first use and shared by
+ * all requests routed to the cluster, plus the {@link Bulkhead} that bounds those requests.
+ */
+public final class KafkaCluster implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaCluster.class);
+
+    private static final long DISCOVERY_RETRY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+
+    private final String name;
+    private final Map<String, Object> adminConfigs;
+    private final Map<String, Object> producerConfigs;
+    private final AtomicReferenceArray<Producer<byte[], byte[]>> producers;
+    private final AtomicInteger nextProducer = new AtomicInteger();
+    private final Bulkhead bulkhead;
+    private final AtomicBoolean discovering = new AtomicBoolean();
+
+    private volatile Admin admin;
+    private volatile String clusterId;
+    private volatile long nextDiscovery = System.nanoTime();
+    private volatile boolean closed;
+
+    KafkaCluster(String name, String clusterId, KafkaRestConfig config, int producers, BulkheadProperties.Group requests) {
+        this.name = name;
+        this.clusterId = clusterId;
+        this.adminConfigs = withCluster(config.getAdminConfigs(), name);
+        this.producerConfigs = withCluster(config.getProducerConfigs(), name);
+        this.producers = new AtomicReferenceArray<>(producers);
+        this.bulkhead = new Bulkhead(requests);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the id of the cluster, or null while it has not been discovered
+     */
+    public String getClusterId() {
+        return clusterId;
+    }
+
+    Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    Admin admin() {
+        Admin admin = this.admin;
+        if (admin == null) {
+            synchronized (this) {
+                admin = this.admin;
+                if (admin == null) {
+                    checkOpen();
+                    admin = Admin.create(adminConfigs);
+                    this.admin = admin;
+                }
+            }
+        }
+        return admin;
+    }
+
+    /**
+     * @return the next producer of the pool, round-robin
+     */
+    Producer<byte[], byte[]> producer() {
+        int index = Math.floorMod(nextProducer.getAndIncrement(), producers.length());
+        Producer<byte[], byte[]> producer = producers.get(index);
+        if (producer == null) {
+            synchronized (this) {
+                producer = producers.get(index);
+                if (producer == null) {
+                    checkOpen();
+                    producer = new KafkaProducer<>(producerConfigs, new ByteArraySerializer(), new ByteArraySerializer());
+                    producers.set(index, producer);
+                }
+            }
+        }
+        return producer;
+    }
+
+    /**
+     * Asks the cluster for its id unless it is known, a request is already underway, or the last one failed recently.
+     * Never blocks.
+     */
+    void discover() {
+        if (clusterId != null || closed || System.nanoTime() - nextDiscovery < 0 || !discovering.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            admin().describeCluster().clusterId().whenComplete((id, error) -> {
+                if (id != null) {
+                    LOG.info("Discovered id {} of cluster '{}'", id, name);
+                    clusterId = id;
+                    discovering.set(false);
+                } else {
+                    discoveryFailed(error);
+                }
+            });
+        } catch (RuntimeException e) {
+            discoveryFailed(e);
+        }
+    }
+
+    private void discoveryFailed(Throwable error) {
+        LOG.warn("Could not discover the id of cluster '{}', retrying in {}s", name,
+                TimeUnit.NANOSECONDS.toSeconds(DISCOVERY_RETRY_NANOS), error);
+        nextDiscovery = System.nanoTime() + DISCOVERY_RETRY_NANOS;
+        discovering.set(false);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (int i = 0; i < producers.length(); i++) {
+            Producer<byte[], byte[]> producer = producers.getAndSet(i, null);
+            if (producer != null) {
+                producer.close(CLOSE_TIMEOUT);
+            }
+        }
+        if (admin != null) {
+            admin.close(CLOSE_TIMEOUT);
+            admin = null;
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Cluster '" + name + "' is closed");
+        }
+    }
+
+    private static Map<String, Object> withCluster(Map<String, Object> configs, String name) {
+        Map<String, Object> result = new HashMap<>(configs);
+        result.put(KafkaClientMetricsReporter.CLUSTER_CONFIG, name);
+        return result;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.cluster;
+
+import com.github.jeremylford.spring.kafkarestproxy.properties.BulkheadProperties;
+import com.github.jeremylford.spring.kafkarestproxy.properties.ClusterProperties;
+import io.confluent.kafkarest.KafkaRestConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Kafka clusters served by the proxy: the default cluster configured at the top level of
+ * {@code kafka.restproxy} and the named ones under {@code kafka.restproxy.clusters}. Each has its own clients, so a
+ * cluster that is slow or down only affects the requests routed to it.
+ */
+public class KafkaClusters implements AutoCloseable {
+
+    /**
+     * Name of the cluster configured at the top level, which serves every request that names no other cluster.
+     */
+    public static final String DEFAULT = "default";
+
+    private final KafkaCluster defaultCluster;
+    private final List<KafkaCluster> clusters;
+
+    public KafkaClusters(Map<String, ClusterProperties> properties, KafkaRestConfig defaultConfig) {
+        this.defaultCluster = new KafkaCluster(DEFAULT, null, defaultConfig, 1, new BulkheadProperties.Group());
+
+        List<KafkaCluster> clusters = new ArrayList<>(properties.size());
+        Set<String> clusterIds = new HashSet<>();
+        for (Map.Entry<String, ClusterProperties> entry : properties.entrySet()) {
+            String name = entry.getKey();
+            ClusterProperties cluster = entry.getValue();
+            if (name.equals(DEFAULT)) {
+                throw new IllegalArgumentException("kafka.restproxy.clusters." + DEFAULT + " is reserved for the top-level cluster");
+            }
+            if (cluster.getClusterId() != null && !clusterIds.add(cluster.getClusterId())) {
+                throw new IllegalArgumentException("kafka.restproxy.clusters." + name + ".cluster-id " + cluster.getClusterId() + " is used by another cluster");
+            }
+            KafkaRestConfig config = new KafkaRestConfig(cluster.asProperties(name, defaultConfig.originals()));
+            clusters.add(new KafkaCluster(name, cluster.getClusterId(), config, cluster.getProducers(), cluster.getRequests()));
+        }
+        this.clusters = Collections.unmodifiableList(clusters);
+
+        clusters.forEach(KafkaCluster::discover);
+    }
+
+    public KafkaCluster getDefault() {
+        return defaultCluster;
+    }
+
+    /**
+     * @return the named clusters, without the default one
+     */
+    public List<KafkaCluster> getClusters() {
+        return clusters;
+    }
+
+    /**
+     * @return the named cluster with the given id, or the default cluster if there is none, which then decides
+     * whether the id is its own
+     */
+    public KafkaCluster forClusterId(String clusterId) {
+        for (KafkaCluster cluster : clusters) {
+            if (clusterId.equals(cluster.getClusterId())) {
+                return cluster;
+            }
+        }
+        // the id may belong to a cluster that has not been reached yet
+        for (KafkaCluster cluster : clusters) {
+            cluster.discover();
+        }
+        return defaultCluster;
+    }
+
+    @Override
+    public void close() {
+        for (KafkaCluster cluster : clusters) {
+            cluster.close();
+        }
+        defaultCluster.close();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.cluster;
+
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.producer.Producer;
+import org.glassfish.jersey.internal.inject.AbstractBinder;
+import org.glassfish.jersey.server.ContainerRequest;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.ws.rs.core.GenericType;
+import java.util.function.Supplier;
+
+/**
+ * Replaces kafka-rest's {@link Admin} and {@link Producer} with the clients of the {@link KafkaCluster} the current
+ * request was routed to by the {@link ClusterRoutingFilter}. kafka-rest looks both up per request, so every request
+ * gets the clients of its own cluster. Lookups outside a request get the default cluster's clients.
+ */
+public class KafkaClustersBinder extends AbstractBinder {
+
+    private final KafkaClusters clusters;
+
+    public KafkaClustersBinder(KafkaClusters clusters) {
+        this.clusters = clusters;
+    }
+
+    @Override
+    protected void configure() {
+        bind(clusters).to(KafkaClusters.class);
+        // ranked above the bindings of BackendsModule, the clients belong to KafkaClusters and are never disposed here
+        bindFactory(AdminSupplier.class, Singleton.class)
+                .to(Admin.class)
+                .ranked(1);
+        bindFactory(ProducerSupplier.class, Singleton.class)
+                .to(new GenericType<Producer<byte[], byte[]>>() {
+                })
+                .ranked(1);
+    }
+
+    private static KafkaCluster current(KafkaClusters clusters, Provider<ContainerRequest> request) {
+        Object cluster;
+        try {
+            cluster = request.get().getProperty(ClusterRoutingFilter.CLUSTER_PROPERTY);
+        } catch (RuntimeException e) {
+            // not inside a request scope
+            return clusters.getDefault();
+        }
+        return cluster instanceof KafkaCluster ? (KafkaCluster) cluster : clusters.getDefault();
+    }
+
+    public static final class AdminSupplier implements Supplier<Admin> {
+
+        private final KafkaClusters clusters;
+        private final Provider<ContainerRequest> request;
+
+        @Inject
+        public AdminSupplier(KafkaClusters clusters, Provider<ContainerRequest> request) {
+            this.clusters = clusters;
+            this.request = request;
+        }
+
+        @Override
+        public Admin get() {
+            return current(clusters, request).admin();
+        }
+    }
+
+    public static final class ProducerSupplier implements Supplier<Producer<byte[], byte[]>> {
+
+        private final KafkaClusters clusters;
+        private final Provider<ContainerRequest> request;
+
+        @Inject
+        public ProducerSupplier(KafkaClusters clusters, Provider<ContainerRequest> request) {
+            this.clusters = clusters;
+            this.request = request;
+        }
+
+        @Override
+        public Producer<byte[], byte[]> get() {
+            return current(clusters, request).producer();
+        }
+    }
+}
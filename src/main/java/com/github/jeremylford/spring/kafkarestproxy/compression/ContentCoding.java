@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.compression;
+
+import com.github.jeremylford.spring.kafkarestproxy.properties.CompressionProperties;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The supported HTTP content codings. zstd and lz4 use the libraries kafka-clients ships for record compression and
+ * are only available if they load, their native code in particular.
+ */
+public enum ContentCoding {
+
+    GZIP("gzip") {
+        @Override
+        OutputStream encoder(OutputStream out, CompressionProperties properties) throws IOException {
+            return new LeveledGzipOutputStream(out, properties.getGzipLevel());
+        }
+
+        @Override
+        InputStream decoder(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+    ZSTD("zstd") {
+        @Override
+        OutputStream encoder(OutputStream out, CompressionProperties properties) throws IOException {
+            return Zstd.encoder(out, properties.getZstdLevel());
+        }
+
+        @Override
+        InputStream decoder(InputStream in) throws IOException {
+            return Zstd.decoder(in);
+        }
+    },
+    LZ4("lz4") {
+        @Override
+        OutputStream encoder(OutputStream out, CompressionProperties properties) throws IOException {
+            return Lz4.encoder(out);
+        }
+
+        @Override
+        InputStream decoder(InputStream in) throws IOException {
+            return Lz4.decoder(in);
+        }
+    };
+
+    private static final Logger LOG = LoggerFactory.getLogger(ContentCoding.class);
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String token;
+    private volatile Boolean available;
+
+    ContentCoding(String token) {
+        this.token = token;
+    }
+
+    public String token() {
+        return token;
+    }
+
+    /**
+     * Whether the coding works on this platform, checked once by compressing a few bytes.
+     */
+    public boolean isAvailable() {
+        Boolean result = available;
+        if (result == null) {
+            try (OutputStream out = encoder(new ByteArrayOutputStream(), new CompressionProperties())) {
+                out.write(token.getBytes(StandardCharsets.US_ASCII));
+                result = true;
+            } catch (IOException | RuntimeException | LinkageError e) {
+                LOG.info("Content coding {} is not available: {}", token, e.toString());
+                result = false;
+            }
+            available = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the coding for an HTTP content coding token, or null if it is not supported
+     */
+    public static ContentCoding forToken(String token) {
+        for (ContentCoding coding : values()) {
+            if (coding.token.equalsIgnoreCase(token)) {
+                return coding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A compressing stream whose {@code flush} pushes everything written so far to {@code out}.
+     */
+    abstract OutputStream encoder(OutputStream out, CompressionProperties properties) throws IOException;
+
+    abstract InputStream decoder(InputStream in) throws IOException;
+
+    private static final class LeveledGzipOutputStream extends GZIPOutputStream {
+
+        LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE, true);
+            def.setLevel(level);
+        }
+    }
+
+    // kept in their own classes so the optional libraries are only loaded when the coding is used
+    private static final class Zstd {
+
+        static OutputStream encoder(OutputStream out, int level) throws IOException {
+            return new ZstdOutputStream(out, level);
+        }
+
+        static InputStream decoder(InputStream in) throws IOException {
+            return new ZstdInputStream(in);
+        }
+    }
+
+    private static final class Lz4 {
+
+        static OutputStream encoder(OutputStream out) throws IOException {
+            return new LZ4FrameOutputStream(out);
+        }
+
+        static InputStream decoder(InputStream in) throws IOException {
+            return new LZ4FrameInputStream(in);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.compression;
+
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import com.github.jeremylford.spring.kafkarestproxy.properties.CompressionProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.glassfish.jersey.server.ChunkedOutput;
+
+import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.NotSupportedException;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Negotiates response compression from {@code Accept-Encoding} and decompresses request bodies sent with a
+ * {@code Content-Encoding}. Compression is streaming: a response is buffered only up to min-response-size, to decide
+ * whether it is worth compressing, and flushes of streamed responses reach the client right away.
+ * <p>
+ * Compressed responses get a weak ETag, since their bytes differ from the identity representation. {@link ChunkedOutput}
+ * responses, such as v3 streaming produce, are never compressed: Jersey writes each chunk through the writer
+ * interceptors separately, so there is no single stream to encode.
+ */
+@Priority(Priorities.ENTITY_CODER)
+public class ContentEncodingFilter implements ContainerResponseFilter, WriterInterceptor, ReaderInterceptor {
+
+    public static final String RATIO = "kafka.restproxy.compression.ratio";
+    public static final String TIME = "kafka.restproxy.compression.time";
+
+    private static final String CODING_PROPERTY = ContentEncodingFilter.class.getName() + ".coding";
+    private static final String STREAMING_PROPERTY = ContentEncodingFilter.class.getName() + ".streaming";
+    private static final String IDENTITY = "identity";
+
+    private final CompressionProperties properties;
+    private final List<ContentCoding> offered = new ArrayList<>();
+    private final Map<ContentCoding, Meters> requestMeters = new EnumMap<>(ContentCoding.class);
+    private final Map<ContentCoding, Meters> responseMeters = new EnumMap<>(ContentCoding.class);
+
+    public ContentEncodingFilter(CompressionProperties properties, KafkaRestMetrics metrics) {
+        this.properties = properties;
+        for (String encoding : properties.getEncodings()) {
+            ContentCoding coding = ContentCoding.forToken(encoding);
+            if (coding == null) {
+                throw new IllegalArgumentException("Unsupported content coding '" + encoding + "'");
+            }
+            if (coding.isAvailable() && !offered.contains(coding)) {
+                offered.add(coding);
+            }
+        }
+
+        MeterRegistry registry = metrics != null ? metrics.getRegistry() : null;
+        if (registry != null) {
+            for (ContentCoding coding : ContentCoding.values()) {
+                requestMeters.put(coding, new Meters(registry, coding, "request"));
+                responseMeters.put(coding, new Meters(registry, coding, "response"));
+            }
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        if (!responseContext.hasEntity() || HttpMethod.HEAD.equals(requestContext.getMethod())
+                || responseContext.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            return;
+        }
+        Object entity = responseContext.getEntity();
+        if (entity instanceof ChunkedOutput) {
+            return;
+        }
+        responseContext.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        if (entity instanceof byte[] && ((byte[]) entity).length < properties.getMinResponseSize()) {
+            return;
+        }
+        ContentCoding coding = negotiate(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+        if (coding != null) {
+            requestContext.setProperty(CODING_PROPERTY, coding);
+            if (entity instanceof StreamingOutput) {
+                requestContext.setProperty(STREAMING_PROPERTY, Boolean.TRUE);
+            }
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        Object coding = context.getProperty(CODING_PROPERTY);
+        if (coding == null) {
+            context.proceed();
+            return;
+        }
+
+        context.removeProperty(CODING_PROPERTY);
+        OutputStream outputStream = context.getOutputStream();
+        int threshold = context.getProperty(STREAMING_PROPERTY) != null ? 0 : properties.getMinResponseSize();
+        EncodingOutputStream encoding = new EncodingOutputStream(outputStream, (ContentCoding) coding, context.getHeaders(), threshold);
+        context.setOutputStream(encoding);
+        try {
+            context.proceed();
+            encoding.finish();
+        } finally {
+            context.setOutputStream(outputStream);
+        }
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+        String contentEncoding = context.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (contentEncoding == null || IDENTITY.equalsIgnoreCase(contentEncoding.trim())) {
+            return context.proceed();
+        }
+
+        ContentCoding coding = ContentCoding.forToken(contentEncoding.trim());
+        if (coding == null || !coding.isAvailable()) {
+            throw new NotSupportedException("Unsupported Content-Encoding '" + contentEncoding + "'");
+        }
+        context.getHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+
+        CountingInputStream encoded = new CountingInputStream(context.getInputStream(), Long.MAX_VALUE);
+        CountingInputStream decoded = new CountingInputStream(coding.decoder(encoded), properties.getMaxRequestSize());
+        context.setInputStream(decoded);
+        try {
+            return context.proceed();
+        } finally {
+            Meters meters = requestMeters.get(coding);
+            if (meters != null && encoded.count > 0) {
+                meters.record(decoded.count, encoded.count, decoded.nanos);
+            }
+        }
+    }
+
+    /**
+     * Picks the offered coding with the highest q-value in {@code Accept-Encoding}, ties going to the server's order.
+     */
+    ContentCoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+
+        double wildcard = 0;
+        Map<ContentCoding, Double> accepted = new EnumMap<>(ContentCoding.class);
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String token = parts[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if ("*".equals(token)) {
+                wildcard = q;
+            } else {
+                ContentCoding coding = ContentCoding.forToken(token);
+                if (coding != null) {
+                    accepted.put(coding, q);
+                }
+            }
+        }
+
+        ContentCoding best = null;
+        double bestQ = 0;
+        for (ContentCoding coding : offered) {
+            double q = accepted.getOrDefault(coding, wildcard);
+            if (q > bestQ) {
+                best = coding;
+                bestQ = q;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Buffers up to the threshold and then switches to compressing, setting the response headers while they can still
+     * be changed. Nothing reaches the underlying stream before that decision.
+     */
+    private final class EncodingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final ContentCoding coding;
+        private final MultivaluedMap<String, Object> headers;
+        private final byte[] buffer;
+        private int buffered;
+
+        private CountingOutputStream compressed;
+        private OutputStream encoder;
+        private long uncompressed;
+        private long nanos;
+
+        EncodingOutputStream(OutputStream out, ContentCoding coding, MultivaluedMap<String, Object> headers, int threshold) {
+            this.out = out;
+            this.coding = coding;
+            this.headers = headers;
+            this.buffer = new byte[threshold];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (encoder == null) {
+                if (buffered + len <= buffer.length) {
+                    System.arraycopy(b, off, buffer, buffered, len);
+                    buffered += len;
+                    return;
+                }
+                startEncoding();
+            }
+            long start = System.nanoTime();
+            encoder.write(b, off, len);
+            nanos += System.nanoTime() - start;
+            uncompressed += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // a flush below the threshold means a streamed response, only those have a threshold of 0
+            if (encoder == null && buffer.length == 0) {
+                startEncoding();
+            }
+            if (encoder != null) {
+                long start = System.nanoTime();
+                encoder.flush();
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        void finish() throws IOException {
+            if (encoder == null) {
+                out.write(buffer, 0, buffered);
+                return;
+            }
+            long start = System.nanoTime();
+            encoder.close();
+            nanos += System.nanoTime() - start;
+
+            Meters meters = responseMeters.get(coding);
+            if (meters != null && compressed.count > 0) {
+                meters.record(uncompressed, compressed.count, nanos);
+            }
+        }
+
+        private void startEncoding() throws IOException {
+            headers.putSingle(HttpHeaders.CONTENT_ENCODING, coding.token());
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            Object etag = headers.getFirst(HttpHeaders.ETAG);
+            if (etag != null && !etag.toString().startsWith("W/")) {
+                headers.putSingle(HttpHeaders.ETAG, "W/" + etag);
+            }
+
+            compressed = new CountingOutputStream(out);
+            encoder = coding.encoder(compressed, properties);
+            if (buffered > 0) {
+                long start = System.nanoTime();
+                encoder.write(buffer, 0, buffered);
+                nanos += System.nanoTime() - start;
+                uncompressed += buffered;
+            }
+        }
+    }
+
+    /**
+     * Counts the compressed bytes. Closing it only flushes, the container owns the response stream.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Counts bytes and the time spent reading them, failing with 413 once {@code limit} is exceeded.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long count;
+        private long nanos;
+
+        CountingInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int read = super.read();
+            nanos += System.nanoTime() - start;
+            if (read >= 0) {
+                count(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int read = super.read(b, off, len);
+            nanos += System.nanoTime() - start;
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        private void count(long bytes) {
+            count += bytes;
+            if (count > limit) {
+                throw new WebApplicationException("Request body exceeds " + limit + " bytes after decompression",
+                        Response.Status.REQUEST_ENTITY_TOO_LARGE);
+            }
+        }
+    }
+
+    private static final class Meters {
+
+        private final DistributionSummary ratio;
+        private final Timer time;
+
+        Meters(MeterRegistry registry, ContentCoding coding, String direction) {
+            this.ratio = DistributionSummary.builder(RATIO)
+                    .description("Uncompressed size divided by compressed size")
+                    .tag("encoding", coding.token())
+                    .tag("direction", direction)
+                    .register(registry);
+            this.time = Timer.builder(TIME)
+                    .tag("encoding", coding.token())
+                    .tag("direction", direction)
+                    .register(registry);
+        }
+
+        void record(long uncompressed, long compressed, long nanos) {
+            ratio.record((double) uncompressed / compressed);
+            time.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
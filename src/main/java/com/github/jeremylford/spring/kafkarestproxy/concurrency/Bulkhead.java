@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.concurrency;
+
+import com.github.jeremylford.spring.kafkarestproxy.properties.BulkheadProperties;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed number of permits with a bounded number of waiters. Requests that find no permit wait up to the queue
+ * timeout, unless the queue is full, so a saturated group holds at most {@code maxConcurrent + maxQueued} request
+ * threads.
+ */
+public final class Bulkhead {
+
+    public enum Outcome {
+        ACQUIRED,
+        QUEUE_FULL,
+        TIMEOUT
+    }
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long queueTimeoutNanos;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public Bulkhead(BulkheadProperties.Group properties) {
+        this.maxConcurrent = properties.getMaxConcurrent();
+        this.maxQueued = Math.max(0, properties.getMaxQueued());
+        this.queueTimeoutNanos = properties.getQueueTimeout().toNanos();
+        this.permits = new Semaphore(Math.max(0, maxConcurrent), true);
+    }
+
+    public boolean isUnbounded() {
+        return maxConcurrent <= 0;
+    }
+
+    public Outcome acquire() throws InterruptedException {
+        // barging is fine when nobody waits, and keeps the uncontended path to one CAS
+        if (queued.get() == 0 && permits.tryAcquire()) {
+            return Outcome.ACQUIRED;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            return Outcome.QUEUE_FULL;
+        }
+        try {
+            return permits.tryAcquire(queueTimeoutNanos, TimeUnit.NANOSECONDS) ? Outcome.ACQUIRED : Outcome.TIMEOUT;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getAvailable() {
+        return permits.availablePermits();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+}
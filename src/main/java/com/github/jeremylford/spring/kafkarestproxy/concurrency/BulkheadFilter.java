@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.concurrency;
+
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import com.github.jeremylford.spring.kafkarestproxy.properties.BulkheadProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Isolates produce, consume and admin requests from each other with a {@link Bulkhead} per group, so a burst of slow
+ * admin calls or long-polling consumes cannot take the request threads produce traffic needs. Requests that get no
+ * permit within their group's queue timeout, or find its queue full, are rejected with 503 and {@code Retry-After}.
+ * <p>
+ * Runs before matching, after the {@link ConcurrencyLimitFilter}, so requests shed by the adaptive limit never queue
+ * here.
+ */
+@PreMatching
+@Priority(Priorities.USER - 300)
+public class BulkheadFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    public static final String AVAILABLE = "kafka.restproxy.bulkhead.available";
+    public static final String QUEUED = "kafka.restproxy.bulkhead.queued";
+    public static final String WAIT = "kafka.restproxy.bulkhead.wait";
+    public static final String REJECTIONS = "kafka.restproxy.bulkhead.rejections";
+
+    private static final String PERMIT_PROPERTY = BulkheadFilter.class.getName() + ".permit";
+
+    private final Map<EndpointClass, Bulkhead> bulkheads = new EnumMap<>(EndpointClass.class);
+    private final Map<EndpointClass, Timer> waits = new EnumMap<>(EndpointClass.class);
+    private final Map<EndpointClass, Counter[]> rejections = new EnumMap<>(EndpointClass.class);
+
+    public BulkheadFilter(BulkheadProperties properties, KafkaRestMetrics metrics) {
+        bulkheads.put(EndpointClass.PRODUCE, new Bulkhead(properties.getProduce()));
+        bulkheads.put(EndpointClass.CONSUME, new Bulkhead(properties.getConsume()));
+        bulkheads.put(EndpointClass.ADMIN, new Bulkhead(properties.getAdmin()));
+
+        MeterRegistry registry = metrics != null ? metrics.getRegistry() : null;
+        if (registry != null) {
+            for (Map.Entry<EndpointClass, Bulkhead> entry : bulkheads.entrySet()) {
+                String group = entry.getKey().tag();
+                Bulkhead bulkhead = entry.getValue();
+                if (bulkhead.isUnbounded()) {
+                    continue;
+                }
+                Gauge.builder(AVAILABLE, bulkhead, Bulkhead::getAvailable)
+                        .tag("group", group)
+                        .register(registry);
+                Gauge.builder(QUEUED, bulkhead, Bulkhead::getQueued)
+                        .tag("group", group)
+                        .register(registry);
+                waits.put(entry.getKey(), Timer.builder(WAIT)
+                        .tag("group", group)
+                        .register(registry));
+                rejections.put(entry.getKey(), new Counter[]{
+                        Counter.builder(REJECTIONS).tag("group", group).tag("reason", "queue_full").register(registry),
+                        Counter.builder(REJECTIONS).tag("group", group).tag("reason", "timeout").register(registry)
+                });
+            }
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        EndpointClass group = EndpointClass.of(requestContext.getMethod(), requestContext.getUriInfo().getPath());
+        if (group == null) {
+            return;
+        }
+        Bulkhead bulkhead = bulkheads.get(group);
+        if (bulkhead.isUnbounded()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        Bulkhead.Outcome outcome;
+        try {
+            outcome = bulkhead.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome = Bulkhead.Outcome.TIMEOUT;
+        }
+        Timer wait = waits.get(group);
+        if (wait != null) {
+            wait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        if (outcome == Bulkhead.Outcome.ACQUIRED) {
+            requestContext.setProperty(PERMIT_PROPERTY, bulkhead);
+            return;
+        }
+
+        Counter[] counters = rejections.get(group);
+        if (counters != null) {
+            counters[outcome == Bulkhead.Outcome.QUEUE_FULL ? 0 : 1].increment();
+        }
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error_code", Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        error.put("message", "Too many concurrent " + group.tag() + " requests");
+        requestContext.setProperty(ConcurrencyLimitFilter.REJECTED_PROPERTY, Boolean.TRUE);
+        requestContext.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, 1)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(error)
+                .build());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        Object bulkhead = requestContext.getProperty(PERMIT_PROPERTY);
+        if (bulkhead != null) {
+            requestContext.removeProperty(PERMIT_PROPERTY);
+            ((Bulkhead) bulkhead).release();
+        }
+    }
+}
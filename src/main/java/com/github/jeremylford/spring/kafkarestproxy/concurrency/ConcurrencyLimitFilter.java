@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.concurrency;
+
+import com.github.jeremylford.spring.kafkarestproxy.cluster.ClusterRoutingFilter;
+import com.github.jeremylford.spring.kafkarestproxy.cluster.KafkaClusters;
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import com.github.jeremylford.spring.kafkarestproxy.properties.ConcurrencyLimitProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Sheds load before it queues: produce, consume and admin requests to each cluster get an adaptive
+ * {@link GradientLimit} on their in-flight count, and requests above it are rejected immediately with 503 and {@code Retry-After} rather than
+ * waiting for servlet threads or producer buffer memory that a slow backend is holding.
+ * <p>
+ * Limits are kept per cluster, as named by {@link ClusterRoutingFilter#clusterName}, so one slow cluster shrinks only
+ * its own limits instead of shedding requests to the healthy ones.
+ * <p>
+ * Streams and v2 fetches are not limited, their duration is set by the client and the topic rather than the backend.
+ * <p>
+ * Runs before matching, so rejected requests cost neither matching nor reading the body, and after the
+ * {@link ClusterRoutingFilter}, which has picked the cluster and waited for its bulkhead, so time spent queueing for a
+ * busy cluster is not mistaken for backend latency.
+ */
+@PreMatching
+@Priority(Priorities.USER - 400)
+public class ConcurrencyLimitFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    public static final String LIMIT = "kafka.restproxy.concurrency.limit";
+    public static final String IN_FLIGHT = "kafka.restproxy.concurrency.inflight";
+    public static final String REJECTIONS = "kafka.restproxy.concurrency.rejections";
+
+    /**
+     * Set by later filters before they abort a request they rejected themselves, so its 503 releases the permit
+     * without counting as a backend drop.
+     */
+    public static final String REJECTED_PROPERTY = ConcurrencyLimitFilter.class.getName() + ".rejected";
+
+    private static final String PERMIT_PROPERTY = ConcurrencyLimitFilter.class.getName() + ".permit";
+
+    private final ConcurrencyLimitProperties properties;
+    private final MeterRegistry registry;
+    private final ConcurrentMap<String, ClusterLimits> clusters = new ConcurrentHashMap<>();
+    private final long retryAfterSeconds;
+
+    public ConcurrencyLimitFilter(ConcurrencyLimitProperties properties, KafkaRestMetrics metrics) {
+        this.properties = properties;
+        this.registry = metrics != null ? metrics.getRegistry() : null;
+        this.retryAfterSeconds = Math.max(1, properties.getRetryAfter().getSeconds());
+        limits(KafkaClusters.DEFAULT);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        String method = requestContext.getMethod();
+        String path = requestContext.getUriInfo().getPath();
+        EndpointClass endpointClass = EndpointClass.of(method, path);
+        // on a quiet topic every fetch takes the full timeout, which the gradient would read as congestion
+        if (endpointClass == null || EndpointClass.isLongPoll(method, path)) {
+            return;
+        }
+
+        String cluster = ClusterRoutingFilter.clusterName(requestContext);
+        ClusterLimits limits = limits(cluster);
+        GradientLimit limit = limits.limits.get(endpointClass);
+        int inFlight = limit.tryAcquire();
+        if (inFlight > 0) {
+            requestContext.setProperty(PERMIT_PROPERTY, new Permit(limit, inFlight, System.nanoTime()));
+            return;
+        }
+
+        Counter counter = limits.rejections.get(endpointClass);
+        if (counter != null) {
+            counter.increment();
+        }
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error_code", Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        error.put("message", "Too many concurrent " + endpointClass.tag() + " requests to cluster '" + cluster + "'");
+        requestContext.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(error)
+                .build());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        Object permit = requestContext.getProperty(PERMIT_PROPERTY);
+        if (permit == null) {
+            return;
+        }
+        requestContext.removeProperty(PERMIT_PROPERTY);
+        ((Permit) permit).release(responseContext.getStatus(), requestContext.getProperty(REJECTED_PROPERTY) != null);
+    }
+
+    private ClusterLimits limits(String cluster) {
+        // cluster names come from configuration, so the map stays bounded
+        return clusters.computeIfAbsent(cluster, name -> new ClusterLimits(name, properties, registry));
+    }
+
+    private static final class ClusterLimits {
+
+        private final Map<EndpointClass, GradientLimit> limits = new EnumMap<>(EndpointClass.class);
+        private final Map<EndpointClass, Counter> rejections = new EnumMap<>(EndpointClass.class);
+
+        ClusterLimits(String cluster, ConcurrencyLimitProperties properties, MeterRegistry registry) {
+            for (EndpointClass endpointClass : EndpointClass.values()) {
+                GradientLimit limit = new GradientLimit(properties);
+                limits.put(endpointClass, limit);
+                if (registry != null) {
+                    Gauge.builder(LIMIT, limit, GradientLimit::getLimit)
+                            .tag("endpoint", endpointClass.tag())
+                            .tag("cluster", cluster)
+                            .register(registry);
+                    Gauge.builder(IN_FLIGHT, limit, GradientLimit::getInFlight)
+                            .tag("endpoint", endpointClass.tag())
+                            .tag("cluster", cluster)
+                            .register(registry);
+                    rejections.put(endpointClass, Counter.builder(REJECTIONS)
+                            .tag("endpoint", endpointClass.tag())
+                            .tag("cluster", cluster)
+                            .register(registry));
+                }
+            }
+        }
+    }
+
+    private static final class Permit {
+
+        private final GradientLimit limit;
+        private final int inFlight;
+        private final long start;
+
+        Permit(GradientLimit limit, int inFlight, long start) {
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.start = start;
+        }
+
+        void release(int status, boolean rejected) {
+            if (rejected || (status >= 400 && status < 500)) {
+                // rejected by the proxy or kafka-rest, latency says nothing about the backend
+                limit.release();
+                return;
+            }
+            boolean dropped = status == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()
+                    || status == Response.Status.GATEWAY_TIMEOUT.getStatusCode();
+            limit.release(start, inFlight, dropped);
+        }
+    }
+}
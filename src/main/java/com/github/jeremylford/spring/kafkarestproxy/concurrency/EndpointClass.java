@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.concurrency;
+
+import javax.ws.rs.HttpMethod;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Groups of endpoints whose latency depends on the same part of the backend, each with its own concurrency limit and bulkhead.
+ */
+enum EndpointClass {
+    PRODUCE,
+    CONSUME,
+    ADMIN;
+
+    private static final Pattern PRODUCE_PATH = Pattern.compile("/?(topics/[^/]+(/partitions/[^/]+)?|v3/clusters/[^/]+/topics/[^/]+/records(:bulk)?)/?");
+    private static final Pattern CONSUME_PATH = Pattern.compile("/?consumers/.*");
+    private static final Pattern STREAM_PATH = Pattern.compile("/?consumers/[^/]+/streams/.*");
+    private static final Pattern FETCH_PATH = Pattern.compile("/?consumers/[^/]+/instances/[^/]+/records/?");
+
+    /**
+     * @return the class of the request, or null for requests that are not limited
+     */
+    static EndpointClass of(String method, String path) {
+        if (CONSUME_PATH.matcher(path).matches()) {
+            // streams stay open for as long as the client reads, their duration says nothing about the backend
+            return STREAM_PATH.matcher(path).matches() ? null : CONSUME;
+        }
+        if (HttpMethod.POST.equals(method) && PRODUCE_PATH.matcher(path).matches()) {
+            return PRODUCE;
+        }
+        return ADMIN;
+    }
+
+    /**
+     * Whether the request is a v2 fetch, which waits up to the consumer's request timeout for records, so its
+     * duration depends on how busy the topic is rather than on how loaded the backend is.
+     */
+    static boolean isLongPoll(String method, String path) {
+        return HttpMethod.GET.equals(method) && FETCH_PATH.matcher(path).matches();
+    }
+
+    String tag() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.concurrency;
+
+import com.github.jeremylford.spring.kafkarestproxy.properties.ConcurrencyLimitProperties;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrency limit that follows the gradient between unloaded and current latency. While latency stays within the
+ * tolerance of the unloaded latency the limit grows by a queue allowance of {@code sqrt(limit)}; once requests queue
+ * in the backend, latency rises and the limit shrinks in proportion, down to half per sample.
+ * <p>
+ * The unloaded latency is the lowest latency seen. Under sustained load every request queues, so it cannot be
+ * observed directly when the backend gets slower: every {@code probeInterval} requests on average, the limit is
+ * halved until the requests admitted since have completed, which drains the queue the limit allowed, and their
+ * latency becomes the new baseline. At the minimum limit the latency is taken as unloaded as well.
+ * <p>
+ * Acquiring is a CAS on the in-flight count. Samples update the estimate under a lock, which is far cheaper than the
+ * requests they measure.
+ */
+final class GradientLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final int probeInterval;
+    private final LongSupplier clock;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    // guarded by this
+    private double estimatedLimit;
+    private long baselineRttNanos;
+    private long samples;
+    private long nextProbe;
+    private long probeStart;
+    private int probeLimit;
+    private int probeSamples;
+    private long probeMinRttNanos;
+
+    GradientLimit(ConcurrencyLimitProperties properties) {
+        this(properties, System::nanoTime);
+    }
+
+    /**
+     * @param clock source of the times passed to {@link #release(long, int, boolean)}, {@link System#nanoTime()} outside tests
+     */
+    GradientLimit(ConcurrencyLimitProperties properties, LongSupplier clock) {
+        this.clock = clock;
+        this.minLimit = Math.max(1, properties.getMinLimit());
+        this.maxLimit = Math.max(minLimit, properties.getMaxLimit());
+        this.tolerance = Math.max(1.0, properties.getRttTolerance());
+        this.smoothing = Math.min(1.0, Math.max(0.01, properties.getSmoothing()));
+        this.probeInterval = Math.max(1, properties.getProbeInterval());
+        this.estimatedLimit = Math.min(maxLimit, Math.max(minLimit, properties.getInitialLimit()));
+        this.limit = (int) estimatedLimit;
+        this.nextProbe = jitter(probeInterval);
+    }
+
+    /**
+     * @return the number of requests in flight including this one, or 0 if the limit has been reached
+     */
+    int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return 0;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * Returns a permit and feeds the request's latency into the estimate.
+     *
+     * @param start the time of the clock the permit was acquired at
+     * @param inFlightAtStart the value {@link #tryAcquire} returned
+     * @param dropped whether the backend failed the request in a way that signals overload, such as a timeout
+     */
+    void release(long start, int inFlightAtStart, boolean dropped) {
+        inFlight.decrementAndGet();
+        update(start, Math.max(1, clock.getAsLong() - start), inFlightAtStart, dropped);
+    }
+
+    /**
+     * Returns a permit without a latency sample, for requests that ended before reaching the backend.
+     */
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    private synchronized void update(long start, long rttNanos, int inFlightAtStart, boolean dropped) {
+        if (probeStart != 0) {
+            // only requests admitted under the halved limit show the drained latency
+            if (start - probeStart < 0 || inFlightAtStart > probeLimit) {
+                return;
+            }
+            probeMinRttNanos = Math.min(probeMinRttNanos, rttNanos);
+            if (++probeSamples >= probeLimit) {
+                baselineRttNanos = probeMinRttNanos;
+                probeStart = 0;
+                limit = (int) estimatedLimit;
+            }
+            return;
+        }
+
+        if (baselineRttNanos == 0 || rttNanos < baselineRttNanos || limit <= minLimit) {
+            baselineRttNanos = rttNanos;
+        }
+        if (++samples >= nextProbe) {
+            nextProbe = samples + jitter(probeInterval);
+            probeStart = clock.getAsLong();
+            probeLimit = Math.max(minLimit, (int) (estimatedLimit / 2));
+            probeSamples = 0;
+            probeMinRttNanos = Long.MAX_VALUE;
+            limit = probeLimit;
+            return;
+        }
+
+        double next;
+        if (dropped) {
+            next = estimatedLimit * 0.9;
+        } else if (inFlightAtStart < estimatedLimit / 2) {
+            // too little traffic to tell whether a higher limit would hold
+            return;
+        } else {
+            double gradient = Math.max(0.5, Math.min(1.0, tolerance * baselineRttNanos / rttNanos));
+            next = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        }
+        estimatedLimit = Math.min(maxLimit, Math.max(minLimit, estimatedLimit * (1 - smoothing) + next * smoothing));
+        limit = (int) estimatedLimit;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    private static long jitter(int interval) {
+        return interval / 2 + ThreadLocalRandom.current().nextLong(interval + 1);
+    }
+}
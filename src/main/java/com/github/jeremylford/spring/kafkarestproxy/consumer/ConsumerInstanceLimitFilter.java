@@ -0,0 +1,197 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.consumer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.jeremylford.spring.kafkarestproxy.concurrency.ConcurrencyLimitFilter;
+import io.confluent.kafkarest.v2.KafkaConsumerManager;
+import org.glassfish.jersey.server.spi.Container;
+import org.glassfish.jersey.server.spi.ContainerLifecycleListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies the {@link ConsumerInstanceRegistry} limits to kafka-rest's v2 consumer endpoints: creations are admitted,
+ * evicting idle instances through kafka-rest's consumer manager if needed, and every instance request marks its
+ * instance as in use. A creation that exceeds its group's limit is rejected with 429, one that exceeds the node's
+ * instance or memory limit with 503 and {@code Retry-After}.
+ */
+@Priority(Priorities.USER - 100)
+public class ConsumerInstanceLimitFilter implements ContainerRequestFilter, ContainerResponseFilter, ContainerLifecycleListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConsumerInstanceLimitFilter.class);
+
+    private static final Pattern CREATE_PATH = Pattern.compile("/?consumers/([^/]+)/?");
+    private static final Pattern INSTANCE_PATH = Pattern.compile("/?consumers/([^/]+)/instances/([^/]+)(/.*)?");
+
+    private static final String RESERVED_PROPERTY = ConsumerInstanceLimitFilter.class.getName() + ".reserved";
+    private static final String INSTANCE_PROPERTY = ConsumerInstanceLimitFilter.class.getName() + ".instance";
+
+    private final ConsumerInstanceRegistry registry;
+    private final ObjectMapper objectMapper;
+    private volatile KafkaConsumerManager consumerManager;
+
+    public ConsumerInstanceLimitFilter(ConsumerInstanceRegistry registry, ObjectMapper objectMapper) {
+        this.registry = registry;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void onStartup(Container container) {
+        consumerManager = container.getApplicationHandler().getInjectionManager().getInstance(KafkaConsumerManager.class);
+        if (consumerManager == null) {
+            LOG.warn("kafka-rest's consumer manager is not available, idle consumer instances cannot be evicted");
+        }
+    }
+
+    @Override
+    public void onReload(Container container) {
+        onStartup(container);
+    }
+
+    @Override
+    public void onShutdown(Container container) {
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        String path = requestContext.getUriInfo().getPath();
+        long now = System.nanoTime();
+
+        Matcher matcher = INSTANCE_PATH.matcher(path);
+        if (matcher.matches()) {
+            ConsumerInstanceRegistry.Instance instance = registry.use(matcher.group(1), matcher.group(2), now);
+            if (instance != null) {
+                requestContext.setProperty(INSTANCE_PROPERTY, instance);
+            }
+            return;
+        }
+
+        if (!HttpMethod.POST.equals(requestContext.getMethod()) || !(matcher = CREATE_PATH.matcher(path)).matches()) {
+            return;
+        }
+        String group = matcher.group(1);
+        List<ConsumerInstanceRegistry.Instance> evicted = new ArrayList<>();
+        ConsumerInstanceRegistry.Rejection rejection = registry.reserve(group, now, evicted);
+        for (ConsumerInstanceRegistry.Instance instance : evicted) {
+            evict(instance);
+        }
+        if (rejection == null) {
+            requestContext.setProperty(RESERVED_PROPERTY, group);
+        } else if (rejection == ConsumerInstanceRegistry.Rejection.GROUP) {
+            requestContext.abortWith(error(Response.Status.TOO_MANY_REQUESTS,
+                    "Too many consumer instances in group " + group, null));
+        } else {
+            requestContext.setProperty(ConcurrencyLimitFilter.REJECTED_PROPERTY, Boolean.TRUE);
+            long retryAfterSeconds = TimeUnit.NANOSECONDS.toSeconds(registry.retryAfterNanos(now) + 999_999_999L);
+            requestContext.abortWith(error(Response.Status.SERVICE_UNAVAILABLE, rejection == ConsumerInstanceRegistry.Rejection.MEMORY
+                    ? "Consumer instance memory budget exhausted" : "Too many consumer instances", retryAfterSeconds));
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        long now = System.nanoTime();
+        Object group = requestContext.getProperty(RESERVED_PROPERTY);
+        if (group != null) {
+            requestContext.removeProperty(RESERVED_PROPERTY);
+            String instance = responseContext.getStatus() == Response.Status.OK.getStatusCode() ? instanceId(responseContext) : null;
+            if (instance != null) {
+                registry.created((String) group, instance, now);
+            } else {
+                registry.release((String) group);
+            }
+            return;
+        }
+
+        Object instance = requestContext.getProperty(INSTANCE_PROPERTY);
+        if (instance != null) {
+            requestContext.removeProperty(INSTANCE_PROPERTY);
+            ConsumerInstanceRegistry.Instance state = (ConsumerInstanceRegistry.Instance) instance;
+            state.done(now);
+            Matcher matcher = INSTANCE_PATH.matcher(requestContext.getUriInfo().getPath());
+            boolean deleted = HttpMethod.DELETE.equals(requestContext.getMethod())
+                    && matcher.matches() && matcher.group(3) == null
+                    && responseContext.getStatusInfo().getFamily() == Response.Status.Family.SUCCESSFUL;
+            if (deleted || responseContext.getStatus() == Response.Status.NOT_FOUND.getStatusCode()) {
+                registry.deleted(state.group, state.id);
+            }
+        }
+    }
+
+    private String instanceId(ContainerResponseContext responseContext) {
+        if (!responseContext.hasEntity()) {
+            return null;
+        }
+        try {
+            JsonNode response = objectMapper.valueToTree(responseContext.getEntity());
+            JsonNode instanceId = response.get("instance_id");
+            return instanceId != null && instanceId.isTextual() ? instanceId.asText() : null;
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Unable to read the consumer instance ID from {}", responseContext.getEntity().getClass().getName());
+            return null;
+        }
+    }
+
+    private void evict(ConsumerInstanceRegistry.Instance instance) {
+        KafkaConsumerManager consumerManager = this.consumerManager;
+        if (consumerManager == null) {
+            return;
+        }
+        try {
+            consumerManager.deleteConsumer(instance.group, instance.id);
+            LOG.info("Evicted idle consumer instance {} of group {}", instance.id, instance.group);
+        } catch (RuntimeException e) {
+            // most likely expired by kafka-rest in the meantime
+            LOG.debug("Unable to evict consumer instance {} of group {}", instance.id, instance.group, e);
+        }
+    }
+
+    private static Response error(Response.Status status, String message, Long retryAfterSeconds) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error_code", status.getStatusCode());
+        error.put("message", message);
+        Response.ResponseBuilder response = Response.status(status)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(error);
+        if (retryAfterSeconds != null) {
+            response.header(HttpHeaders.RETRY_AFTER, Math.max(1, retryAfterSeconds));
+        }
+        return response.build();
+    }
+}
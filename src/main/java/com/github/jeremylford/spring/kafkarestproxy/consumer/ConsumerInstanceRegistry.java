@@ -0,0 +1,321 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.consumer;
+
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import com.github.jeremylford.spring.kafkarestproxy.properties.ConsumerInstancesProperties;
+import io.confluent.kafkarest.KafkaRestConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Accounts for kafka-rest's v2 consumer instances on this node, which kafka-rest itself only bounds by their idle
+ * timeout. Creations reserve an instance slot and its estimated memory up front. When a limit would be exceeded, idle
+ * instances are evicted least recently used first, and the creation is rejected if that cannot free enough.
+ * <p>
+ * Instances idle for longer than {@code consumerInstanceTimeoutMillis} are forgotten, as kafka-rest expires them on
+ * the same clock.
+ */
+public class ConsumerInstanceRegistry implements AutoCloseable {
+
+    public static final String INSTANCES = "kafka.restproxy.consumer.instances";
+    public static final String INSTANCES_TOTAL = "kafka.restproxy.consumer.instances.total";
+    public static final String MEMORY = "kafka.restproxy.consumer.memory.estimated";
+    public static final String EVICTIONS = "kafka.restproxy.consumer.evictions";
+    public static final String REJECTIONS = "kafka.restproxy.consumer.rejections";
+
+    private static final int DEFAULT_RECEIVE_BUFFER_BYTES = 64 * 1024;
+
+    private final ConsumerInstancesProperties properties;
+    private final long instanceBytes;
+    private final long evictableAfterNanos;
+    private final long instanceTimeoutNanos;
+    private final MeterRegistry registry;
+    private final Map<String, Instance> instances = new ConcurrentHashMap<>();
+    private final Map<String, Group> groups = new HashMap<>();
+    private final ScheduledExecutorService reaper;
+
+    // guarded by this, volatile for the gauges
+    private volatile int count;
+    private volatile long bytes;
+
+    private final Counter evictions;
+    private final Map<Rejection, Counter> rejections = new HashMap<>();
+
+    public ConsumerInstanceRegistry(ConsumerInstancesProperties properties, KafkaRestConfig kafkaRestConfig,
+                                    long instanceTimeoutMillis, KafkaRestMetrics metrics) {
+        this.properties = properties;
+        this.instanceBytes = estimateBytes(kafkaRestConfig.getConsumerConfigs());
+        this.evictableAfterNanos = properties.getEvictableAfter().toNanos();
+        this.instanceTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(instanceTimeoutMillis);
+        this.registry = metrics != null ? metrics.getRegistry() : null;
+
+        if (registry != null) {
+            Gauge.builder(INSTANCES_TOTAL, this, self -> self.count)
+                    .register(registry);
+            Gauge.builder(MEMORY, this, self -> self.bytes)
+                    .baseUnit("bytes")
+                    .register(registry);
+            this.evictions = Counter.builder(EVICTIONS).register(registry);
+            for (Rejection rejection : Rejection.values()) {
+                rejections.put(rejection, Counter.builder(REJECTIONS)
+                        .tag("reason", rejection.tag)
+                        .register(registry));
+            }
+        } else {
+            this.evictions = null;
+        }
+
+        this.reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-rest-consumer-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reaper.scheduleWithFixedDelay(this::reap, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Reserves room for a new instance of {@code group}, choosing idle instances to evict if needed. The reservation
+     * must be followed by {@link #created} or {@link #release}.
+     *
+     * @param evicted receives the instances the caller must delete from kafka-rest
+     * @return null if the instance was admitted, otherwise why it was not
+     */
+    synchronized Rejection reserve(String group, long now, List<Instance> evicted) {
+        Group state = groups.get(group);
+        int groupCount = state != null ? state.count : 0;
+        long maxBytes = properties.getMaxMemoryBytes();
+
+        List<Instance> victims = new ArrayList<>();
+        while (groupCount >= properties.getMaxInstancesPerGroup()) {
+            Instance victim = leastRecentlyUsed(group, now, victims);
+            if (victim == null) {
+                return reject(Rejection.GROUP);
+            }
+            victims.add(victim);
+            groupCount--;
+        }
+        int newCount = count - victims.size();
+        long newBytes = bytes - victims.size() * instanceBytes;
+        while (newCount >= properties.getMaxInstances() || (maxBytes > 0 && newBytes + instanceBytes > maxBytes)) {
+            Instance victim = leastRecentlyUsed(null, now, victims);
+            if (victim == null) {
+                return reject(newCount >= properties.getMaxInstances() ? Rejection.INSTANCES : Rejection.MEMORY);
+            }
+            victims.add(victim);
+            newCount--;
+            newBytes -= instanceBytes;
+        }
+
+        for (Instance victim : victims) {
+            remove(victim);
+            if (evictions != null) {
+                evictions.increment();
+            }
+        }
+        evicted.addAll(victims);
+        adjust(group, 1);
+        return null;
+    }
+
+    /**
+     * Completes a reservation with the ID kafka-rest assigned to the instance.
+     */
+    void created(String group, String instance, long now) {
+        instances.put(key(group, instance), new Instance(group, instance, now));
+    }
+
+    /**
+     * Returns a reservation whose creation failed.
+     */
+    synchronized void release(String group) {
+        adjust(group, -1);
+    }
+
+    /**
+     * @return the instance, now marked in use until {@link Instance#done}, or null if it is not known
+     */
+    Instance use(String group, String instance, long now) {
+        // under the lock eviction and reaping take, so an instance is never evicted between lookup and use
+        synchronized (this) {
+            Instance state = instances.get(key(group, instance));
+            if (state != null) {
+                state.inFlight.incrementAndGet();
+                state.lastUsed = now;
+            }
+            return state;
+        }
+    }
+
+    void deleted(String group, String instance) {
+        Instance state = instances.get(key(group, instance));
+        if (state != null) {
+            synchronized (this) {
+                remove(state);
+            }
+        }
+    }
+
+    /**
+     * @return nanoseconds until the least recently used instance becomes evictable, at least one second
+     */
+    long retryAfterNanos(long now) {
+        long wait = evictableAfterNanos;
+        for (Instance instance : instances.values()) {
+            if (instance.inFlight.get() == 0) {
+                wait = Math.min(wait, evictableAfterNanos - (now - instance.lastUsed));
+            }
+        }
+        return Math.max(TimeUnit.SECONDS.toNanos(1), wait);
+    }
+
+    private Instance leastRecentlyUsed(String group, long now, List<Instance> excluded) {
+        Instance lru = null;
+        for (Instance instance : instances.values()) {
+            if ((group == null || group.equals(instance.group))
+                    && instance.inFlight.get() == 0
+                    && now - instance.lastUsed >= evictableAfterNanos
+                    && (lru == null || instance.lastUsed - lru.lastUsed < 0)
+                    && !excluded.contains(instance)) {
+                lru = instance;
+            }
+        }
+        return lru;
+    }
+
+    private void remove(Instance instance) {
+        if (instances.remove(key(instance.group, instance.id), instance)) {
+            adjust(instance.group, -1);
+        }
+    }
+
+    private void adjust(String group, int delta) {
+        count += delta;
+        bytes += delta * instanceBytes;
+        Group state = groups.get(group);
+        if (state == null) {
+            state = new Group();
+            if (registry != null) {
+                state.gauge = Gauge.builder(INSTANCES, state, g -> g.count)
+                        .tag("group", group)
+                        .register(registry);
+            }
+            groups.put(group, state);
+        }
+        state.count += delta;
+        if (state.count <= 0) {
+            groups.remove(group);
+            if (state.gauge != null) {
+                registry.remove(state.gauge);
+            }
+        }
+    }
+
+    private Rejection reject(Rejection rejection) {
+        Counter counter = rejections.get(rejection);
+        if (counter != null) {
+            counter.increment();
+        }
+        return rejection;
+    }
+
+    private void reap() {
+        long now = System.nanoTime();
+        for (Instance instance : instances.values()) {
+            if (instance.inFlight.get() == 0 && now - instance.lastUsed > instanceTimeoutNanos) {
+                synchronized (this) {
+                    // it may have been used since the unlocked check
+                    if (instance.inFlight.get() == 0 && now - instance.lastUsed > instanceTimeoutNanos) {
+                        remove(instance);
+                    }
+                }
+            }
+        }
+    }
+
+    private static long estimateBytes(Map<String, Object> consumerConfigs) {
+        return longConfig(consumerConfigs, ConsumerConfig.FETCH_MAX_BYTES_CONFIG, ConsumerConfig.DEFAULT_FETCH_MAX_BYTES)
+                + longConfig(consumerConfigs, ConsumerConfig.RECEIVE_BUFFER_CONFIG, DEFAULT_RECEIVE_BUFFER_BYTES);
+    }
+
+    private static long longConfig(Map<String, Object> configs, String name, long defaultValue) {
+        Object value = configs.get(name);
+        // a receive buffer of -1 uses the OS default, which is small compared to the fetch size
+        long parsed = value != null ? Long.parseLong(value.toString().trim()) : defaultValue;
+        return Math.max(0, parsed);
+    }
+
+    private static String key(String group, String instance) {
+        return group + '\u0000' + instance;
+    }
+
+    @Override
+    public void close() {
+        reaper.shutdownNow();
+    }
+
+    enum Rejection {
+        GROUP("group"),
+        INSTANCES("instances"),
+        MEMORY("memory");
+
+        private final String tag;
+
+        Rejection(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    static final class Instance {
+
+        final String group;
+        final String id;
+        final AtomicInteger inFlight = new AtomicInteger();
+        volatile long lastUsed;
+
+        Instance(String group, String id, long now) {
+            this.group = group;
+            this.id = id;
+            this.lastUsed = now;
+        }
+
+        void done(long now) {
+            lastUsed = now;
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private static final class Group {
+
+        volatile int count;
+        Gauge gauge;
+    }
+}
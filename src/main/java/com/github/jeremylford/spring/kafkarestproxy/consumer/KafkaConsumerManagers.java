@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.consumer;
+
+import io.confluent.kafkarest.KafkaRestConfig;
+import io.confluent.kafkarest.v2.KafkaConsumerManager;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Creates kafka-rest {@link KafkaConsumerManager}s whose consumer instances come from a factory of the proxy's own.
+ */
+public final class KafkaConsumerManagers {
+
+    private KafkaConsumerManagers() {
+    }
+
+    /**
+     * @throws IllegalStateException if this version of kafka-rest does not accept a consumer factory
+     */
+    public static KafkaConsumerManager create(KafkaRestConfig kafkaRestConfig, KafkaConsumerManager.ConsumerFactory<?, ?> consumerFactory) {
+        // kafka-rest only lets its own tests pass a consumer factory
+        try {
+            Constructor<KafkaConsumerManager> constructor = KafkaConsumerManager.class.getDeclaredConstructor(
+                    KafkaRestConfig.class, KafkaConsumerManager.ConsumerFactory.class);
+            constructor.setAccessible(true);
+            return constructor.newInstance(kafkaRestConfig, consumerFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("This version of kafka-rest does not accept a consumer factory", e);
+        }
+    }
+}
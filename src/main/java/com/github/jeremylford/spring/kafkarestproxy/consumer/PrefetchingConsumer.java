@@ -0,0 +1,636 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.consumer;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * A v2 consumer instance's Kafka consumer that keeps polling on its own thread into a byte-bounded buffer, so a consume
+ * request returns records fetched while the client was still processing the previous batch. {@link #poll} serves from
+ * the buffer and only waits when it is empty.
+ * <p>
+ * The Kafka consumer is not thread-safe, so the poll thread and request threads take turns on a fair lock, and a
+ * request waits at most one background poll. Polling stops while the buffer is full, which also means an instance whose
+ * client went away leaves its group after {@code max.poll.interval.ms}, as it does without prefetch.
+ * <p>
+ * Records buffered but not yet returned are never treated as consumed: {@link #position} and the commits without
+ * explicit offsets use the first buffered offset of each partition, and auto-commit, which the Kafka consumer would
+ * apply to its own position, is disabled on it and done here instead. The buffer is dropped for partitions that are
+ * sought, paused, unassigned or revoked.
+ */
+final class PrefetchingConsumer<K, V> implements Consumer<K, V>, Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PrefetchingConsumer.class);
+
+    private static final ConsumerRebalanceListener NO_LISTENER = new ConsumerRebalanceListener() {
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        }
+    };
+
+    private final Consumer<K, V> consumer;
+    private final long bufferBytes;
+    private final Duration pollTimeout;
+    private final int maxPollRecords;
+    private final long autoCommitIntervalNanos;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    // records were buffered, the background poll failed, or the consumer was woken up or closed
+    private final Condition available = lock.newCondition();
+    // the buffer has room again, or the subscription or assignment changed
+    private final Condition changed = lock.newCondition();
+
+    // guarded by lock
+    private final ArrayDeque<ConsumerRecord<K, V>> buffer = new ArrayDeque<>();
+    private long bufferedBytes;
+    private RuntimeException failure;
+    private long lastCommit;
+
+    private volatile boolean woken;
+    private volatile boolean closed;
+
+    /**
+     * @param autoCommitInterval the interval to commit returned records at, or null if the client commits itself
+     */
+    PrefetchingConsumer(Consumer<K, V> consumer, long bufferBytes, Duration pollTimeout, int maxPollRecords, Duration autoCommitInterval) {
+        this.consumer = consumer;
+        this.bufferBytes = bufferBytes;
+        this.pollTimeout = pollTimeout;
+        this.maxPollRecords = maxPollRecords;
+        this.autoCommitIntervalNanos = autoCommitInterval != null ? autoCommitInterval.toNanos() : -1;
+        this.lastCommit = System.nanoTime();
+    }
+
+    @Override
+    public void run() {
+        while (!closed) {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                if (bufferedBytes >= bufferBytes || failure != null
+                        || (consumer.subscription().isEmpty() && consumer.assignment().isEmpty())) {
+                    changed.await(pollTimeout.toNanos(), TimeUnit.NANOSECONDS);
+                    continue;
+                }
+
+                try {
+                    ConsumerRecords<K, V> records = consumer.poll(pollTimeout);
+                    for (ConsumerRecord<K, V> record : records) {
+                        buffer.add(record);
+                        bufferedBytes += size(record);
+                    }
+                    if (!records.isEmpty()) {
+                        available.signalAll();
+                    }
+                } catch (WakeupException e) {
+                    // wakeup() is handled by the waiting request, not by the Kafka consumer
+                } catch (RuntimeException e) {
+                    // surfaces in the next request, as it would have without prefetch
+                    failure = e;
+                    available.signalAll();
+                }
+                autoCommit();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public ConsumerRecords<K, V> poll(Duration timeout) {
+        long remaining = timeout.toNanos();
+        lock.lock();
+        try {
+            while (buffer.isEmpty()) {
+                if (woken) {
+                    woken = false;
+                    throw new WakeupException();
+                }
+                if (failure != null) {
+                    RuntimeException e = failure;
+                    failure = null;
+                    changed.signalAll();
+                    throw e;
+                }
+                if (consumer.subscription().isEmpty() && consumer.assignment().isEmpty()) {
+                    throw new IllegalStateException("Consumer is not subscribed to any topics or assigned any partitions");
+                }
+                if (remaining <= 0 || closed) {
+                    return ConsumerRecords.empty();
+                }
+                remaining = available.awaitNanos(remaining);
+            }
+
+            Map<TopicPartition, List<ConsumerRecord<K, V>>> records = new LinkedHashMap<>();
+            for (int i = 0; i < maxPollRecords && !buffer.isEmpty(); i++) {
+                ConsumerRecord<K, V> record = buffer.poll();
+                bufferedBytes -= size(record);
+                records.computeIfAbsent(new TopicPartition(record.topic(), record.partition()), partition -> new ArrayList<>()).add(record);
+            }
+            changed.signalAll();
+            return new ConsumerRecords<>(records);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @Deprecated
+    public ConsumerRecords<K, V> poll(long timeoutMs) {
+        return poll(Duration.ofMillis(timeoutMs));
+    }
+
+    @Override
+    public void subscribe(Collection<String> topics) {
+        subscribe(topics, NO_LISTENER);
+    }
+
+    @Override
+    public void subscribe(Collection<String> topics, ConsumerRebalanceListener listener) {
+        locked(() -> consumer.subscribe(topics, new RebalanceListener(listener)));
+    }
+
+    @Override
+    public void subscribe(Pattern pattern) {
+        subscribe(pattern, NO_LISTENER);
+    }
+
+    @Override
+    public void subscribe(Pattern pattern, ConsumerRebalanceListener listener) {
+        locked(() -> consumer.subscribe(pattern, new RebalanceListener(listener)));
+    }
+
+    @Override
+    public void unsubscribe() {
+        locked(() -> {
+            consumer.unsubscribe();
+            discard(partition -> true, false);
+        });
+    }
+
+    @Override
+    public void assign(Collection<TopicPartition> partitions) {
+        locked(() -> {
+            discard(partition -> !partitions.contains(partition), false);
+            consumer.assign(partitions);
+        });
+    }
+
+    @Override
+    public Set<TopicPartition> assignment() {
+        return locked(consumer::assignment);
+    }
+
+    @Override
+    public Set<String> subscription() {
+        return locked(consumer::subscription);
+    }
+
+    @Override
+    public void seek(TopicPartition partition, long offset) {
+        locked(() -> {
+            discard(partition::equals, false);
+            consumer.seek(partition, offset);
+        });
+    }
+
+    @Override
+    public void seek(TopicPartition partition, OffsetAndMetadata offsetAndMetadata) {
+        locked(() -> {
+            discard(partition::equals, false);
+            consumer.seek(partition, offsetAndMetadata);
+        });
+    }
+
+    @Override
+    public void seekToBeginning(Collection<TopicPartition> partitions) {
+        locked(() -> {
+            // an empty collection means all assigned partitions
+            discard(partition -> partitions.isEmpty() || partitions.contains(partition), false);
+            consumer.seekToBeginning(partitions);
+        });
+    }
+
+    @Override
+    public void seekToEnd(Collection<TopicPartition> partitions) {
+        locked(() -> {
+            discard(partition -> partitions.isEmpty() || partitions.contains(partition), false);
+            consumer.seekToEnd(partitions);
+        });
+    }
+
+    @Override
+    public long position(TopicPartition partition) {
+        return locked(() -> {
+            long first = firstBuffered(partition);
+            return first >= 0 ? first : consumer.position(partition);
+        });
+    }
+
+    @Override
+    public long position(TopicPartition partition, Duration timeout) {
+        return locked(() -> {
+            long first = firstBuffered(partition);
+            return first >= 0 ? first : consumer.position(partition, timeout);
+        });
+    }
+
+    @Override
+    public OptionalLong currentLag(TopicPartition partition) {
+        return locked(() -> {
+            OptionalLong lag = consumer.currentLag(partition);
+            long first = firstBuffered(partition);
+            if (lag.isPresent() && first >= 0) {
+                return OptionalLong.of(lag.getAsLong() + consumer.position(partition) - first);
+            }
+            return lag;
+        });
+    }
+
+    @Override
+    public void pause(Collection<TopicPartition> partitions) {
+        locked(() -> {
+            consumer.pause(partitions);
+            // a paused partition returns nothing, so its buffered records are fetched again on resume
+            discard(partitions::contains, true);
+        });
+    }
+
+    @Override
+    public void resume(Collection<TopicPartition> partitions) {
+        locked(() -> consumer.resume(partitions));
+    }
+
+    @Override
+    public Set<TopicPartition> paused() {
+        return locked(consumer::paused);
+    }
+
+    @Override
+    public void commitSync() {
+        locked(() -> consumer.commitSync(consumed(partition -> true)));
+    }
+
+    @Override
+    public void commitSync(Duration timeout) {
+        locked(() -> consumer.commitSync(consumed(partition -> true), timeout));
+    }
+
+    @Override
+    public void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        locked(() -> consumer.commitSync(offsets));
+    }
+
+    @Override
+    public void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets, Duration timeout) {
+        locked(() -> consumer.commitSync(offsets, timeout));
+    }
+
+    @Override
+    public void commitAsync() {
+        commitAsync(null);
+    }
+
+    @Override
+    public void commitAsync(OffsetCommitCallback callback) {
+        locked(() -> consumer.commitAsync(consumed(partition -> true), callback));
+    }
+
+    @Override
+    public void commitAsync(Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
+        locked(() -> consumer.commitAsync(offsets, callback));
+    }
+
+    @Override
+    @Deprecated
+    public OffsetAndMetadata committed(TopicPartition partition) {
+        return committed(partition, null);
+    }
+
+    @Override
+    @Deprecated
+    public OffsetAndMetadata committed(TopicPartition partition, Duration timeout) {
+        Set<TopicPartition> partitions = Set.of(partition);
+        return (timeout != null ? committed(partitions, timeout) : committed(partitions)).get(partition);
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndMetadata> committed(Set<TopicPartition> partitions) {
+        return locked(() -> consumer.committed(partitions));
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndMetadata> committed(Set<TopicPartition> partitions, Duration timeout) {
+        return locked(() -> consumer.committed(partitions, timeout));
+    }
+
+    @Override
+    public Map<MetricName, ? extends Metric> metrics() {
+        return consumer.metrics();
+    }
+
+    @Override
+    public List<PartitionInfo> partitionsFor(String topic) {
+        return locked(() -> consumer.partitionsFor(topic));
+    }
+
+    @Override
+    public List<PartitionInfo> partitionsFor(String topic, Duration timeout) {
+        return locked(() -> consumer.partitionsFor(topic, timeout));
+    }
+
+    @Override
+    public Map<String, List<PartitionInfo>> listTopics() {
+        return locked(() -> consumer.listTopics());
+    }
+
+    @Override
+    public Map<String, List<PartitionInfo>> listTopics(Duration timeout) {
+        return locked(() -> consumer.listTopics(timeout));
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(Map<TopicPartition, Long> timestampsToSearch) {
+        return locked(() -> consumer.offsetsForTimes(timestampsToSearch));
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(Map<TopicPartition, Long> timestampsToSearch, Duration timeout) {
+        return locked(() -> consumer.offsetsForTimes(timestampsToSearch, timeout));
+    }
+
+    @Override
+    public Map<TopicPartition, Long> beginningOffsets(Collection<TopicPartition> partitions) {
+        return locked(() -> consumer.beginningOffsets(partitions));
+    }
+
+    @Override
+    public Map<TopicPartition, Long> beginningOffsets(Collection<TopicPartition> partitions, Duration timeout) {
+        return locked(() -> consumer.beginningOffsets(partitions, timeout));
+    }
+
+    @Override
+    public Map<TopicPartition, Long> endOffsets(Collection<TopicPartition> partitions) {
+        return locked(() -> consumer.endOffsets(partitions));
+    }
+
+    @Override
+    public Map<TopicPartition, Long> endOffsets(Collection<TopicPartition> partitions, Duration timeout) {
+        return locked(() -> consumer.endOffsets(partitions, timeout));
+    }
+
+    @Override
+    public ConsumerGroupMetadata groupMetadata() {
+        return locked(consumer::groupMetadata);
+    }
+
+    @Override
+    public void enforceRebalance() {
+        locked(() -> consumer.enforceRebalance());
+    }
+
+    @Override
+    public void enforceRebalance(String reason) {
+        locked(() -> consumer.enforceRebalance(reason));
+    }
+
+    @Override
+    public void close() {
+        close(consumer::close);
+    }
+
+    @Override
+    public void close(Duration timeout) {
+        close(() -> consumer.close(timeout));
+    }
+
+    @Override
+    public void wakeup() {
+        woken = true;
+        lock.lock();
+        try {
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void close(Runnable close) {
+        // the poll thread notices within one poll timeout and exits without touching the consumer again
+        closed = true;
+        lock.lock();
+        try {
+            if (autoCommitIntervalNanos >= 0) {
+                try {
+                    consumer.commitSync(consumed(partition -> true));
+                } catch (RuntimeException e) {
+                    LOG.warn("Unable to commit offsets while closing a prefetching consumer", e);
+                }
+            }
+            buffer.clear();
+            bufferedBytes = 0;
+            changed.signalAll();
+            available.signalAll();
+            close.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void autoCommit() {
+        long now = System.nanoTime();
+        if (autoCommitIntervalNanos < 0 || now - lastCommit < autoCommitIntervalNanos) {
+            return;
+        }
+        lastCommit = now;
+        consumer.commitAsync(consumed(partition -> true), (offsets, exception) -> {
+            if (exception != null) {
+                LOG.warn("Unable to auto-commit offsets of a prefetching consumer", exception);
+            }
+        });
+    }
+
+    /**
+     * The offsets the Kafka consumer would commit itself if nothing had been fetched ahead.
+     */
+    private Map<TopicPartition, OffsetAndMetadata> consumed(Predicate<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : consumer.assignment()) {
+            if (!partitions.test(partition)) {
+                continue;
+            }
+            long first = firstBuffered(partition);
+            if (first >= 0) {
+                offsets.put(partition, new OffsetAndMetadata(first));
+                continue;
+            }
+            try {
+                offsets.put(partition, new OffsetAndMetadata(consumer.position(partition, Duration.ZERO)));
+            } catch (KafkaException e) {
+                // no position yet, so nothing to commit
+            }
+        }
+        return offsets;
+    }
+
+    private long firstBuffered(TopicPartition partition) {
+        for (ConsumerRecord<K, V> record : buffer) {
+            if (record.partition() == partition.partition() && record.topic().equals(partition.topic())) {
+                return record.offset();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Drops the buffered records of some partitions, optionally seeking the Kafka consumer back so they are fetched again.
+     */
+    private void discard(Predicate<TopicPartition> partitions, boolean rewind) {
+        Map<TopicPartition, Long> first = new HashMap<>();
+        for (Iterator<ConsumerRecord<K, V>> iterator = buffer.iterator(); iterator.hasNext(); ) {
+            ConsumerRecord<K, V> record = iterator.next();
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            if (partitions.test(partition)) {
+                iterator.remove();
+                bufferedBytes -= size(record);
+                first.putIfAbsent(partition, record.offset());
+            }
+        }
+        if (rewind) {
+            Set<TopicPartition> assignment = consumer.assignment();
+            first.forEach((partition, offset) -> {
+                if (assignment.contains(partition)) {
+                    consumer.seek(partition, offset);
+                }
+            });
+        }
+        changed.signalAll();
+    }
+
+    private void locked(Runnable action) {
+        lock.lock();
+        try {
+            action.run();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private <T> T locked(Supplier<T> action) {
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long size(ConsumerRecord<?, ?> record) {
+        long size = Math.max(0, record.serializedKeySize()) + Math.max(0, record.serializedValueSize());
+        for (Header header : record.headers()) {
+            size += header.key().length() + (header.value() != null ? header.value().length : 0);
+        }
+        return size;
+    }
+
+    /**
+     * Drops revoked partitions from the buffer before the instance's own listener runs, committing first if the
+     * instance auto-commits, like the Kafka consumer does.
+     */
+    private final class RebalanceListener implements ConsumerRebalanceListener {
+
+        private final ConsumerRebalanceListener listener;
+
+        RebalanceListener(ConsumerRebalanceListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            if (autoCommitIntervalNanos >= 0 && !partitions.isEmpty()) {
+                try {
+                    consumer.commitSync(consumed(partitions::contains));
+                } catch (RuntimeException e) {
+                    LOG.warn("Unable to commit offsets of revoked partitions {}", partitions, e);
+                }
+            }
+            discard(partitions::contains, false);
+            listener.onPartitionsRevoked(partitions);
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            listener.onPartitionsAssigned(partitions);
+        }
+
+        @Override
+        public void onPartitionsLost(Collection<TopicPartition> partitions) {
+            discard(partitions::contains, false);
+            listener.onPartitionsLost(partitions);
+        }
+    }
+}
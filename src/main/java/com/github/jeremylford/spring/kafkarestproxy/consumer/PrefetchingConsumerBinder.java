@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.consumer;
+
+import com.github.jeremylford.spring.kafkarestproxy.executor.KafkaRestExecutors;
+import com.github.jeremylford.spring.kafkarestproxy.properties.PrefetchProperties;
+import io.confluent.kafkarest.KafkaRestConfig;
+import io.confluent.kafkarest.v2.KafkaConsumerManager;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.glassfish.jersey.internal.inject.AbstractBinder;
+import org.glassfish.jersey.internal.inject.DisposableSupplier;
+
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Replaces kafka-rest's {@link KafkaConsumerManager} with one whose consumer instances are {@link PrefetchingConsumer}s.
+ */
+public class PrefetchingConsumerBinder extends AbstractBinder {
+
+    private final PrefetchProperties properties;
+    private final KafkaRestConfig kafkaRestConfig;
+    private final ThreadFactory threadFactory;
+
+    public PrefetchingConsumerBinder(PrefetchProperties properties, KafkaRestConfig kafkaRestConfig, KafkaRestExecutors executors) {
+        this.properties = properties;
+        this.kafkaRestConfig = kafkaRestConfig;
+        this.threadFactory = executors.threadFactory(KafkaRestExecutors.PREFETCH);
+    }
+
+    @Override
+    protected void configure() {
+        // ranked above the binding of BackendsModule
+        bindFactory(new ConsumerManagerSupplier())
+                .to(KafkaConsumerManager.class)
+                .in(Singleton.class)
+                .ranked(1);
+    }
+
+    private <K, V> Consumer<K, V> createConsumer(Properties props) {
+        // the Kafka consumer would count prefetched records as consumed, so auto-commit is left to the prefetcher
+        boolean autoCommit = Boolean.parseBoolean(String.valueOf(props.getOrDefault(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "true")));
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        Duration autoCommitInterval = autoCommit
+                ? Duration.ofMillis(Long.parseLong(String.valueOf(props.getOrDefault(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG, "5000"))))
+                : null;
+        int maxPollRecords = Integer.parseInt(String.valueOf(props.getOrDefault(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "500")));
+
+        PrefetchingConsumer<K, V> consumer = new PrefetchingConsumer<>(new KafkaConsumer<>(props), properties.getBufferBytes(),
+                properties.getPollTimeout(), maxPollRecords, autoCommitInterval);
+        threadFactory.newThread(consumer).start();
+        return consumer;
+    }
+
+    private final class ConsumerManagerSupplier implements DisposableSupplier<KafkaConsumerManager> {
+
+        @Override
+        public KafkaConsumerManager get() {
+            return KafkaConsumerManagers.create(kafkaRestConfig, PrefetchingConsumerBinder.this::createConsumer);
+        }
+
+        @Override
+        public void dispose(KafkaConsumerManager instance) {
+            instance.shutdown();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.executor;
+
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import com.github.jeremylford.spring.kafkarestproxy.properties.ExecutorProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Named executors configured under {@code kafka.restproxy.executors.<name>}. Each name is created on first use with
+ * its own strategy, so virtual and platform executors can be mixed in one deployment.
+ */
+public class KafkaRestExecutors implements AutoCloseable {
+
+    /**
+     * Executor for Jersey resources and callbacks marked {@code @ManagedAsync}.
+     */
+    public static final String ASYNC = "async";
+
+    /**
+     * Executor for the servlet container's request threads. Only applied when configured explicitly.
+     */
+    public static final String CONTAINER = "container";
+
+    /**
+     * Threads for the poll loops of streaming consumers, one long-lived thread per consumer instance.
+     */
+    public static final String STREAM = "stream";
+
+    /**
+     * Threads for the background polls of prefetching v2 consumer instances, one long-lived thread per instance.
+     */
+    public static final String PREFETCH = "prefetch";
+
+    /**
+     * Executor for the requests kafka-rest sends to the loopback endpoint of the schema registry cache.
+     */
+    public static final String SCHEMA_CACHE = "schema-cache";
+
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaRestExecutors.class);
+
+    private final MeterRegistry registry;
+    private final Map<String, ExecutorService> executors = new ConcurrentHashMap<>();
+    private final Map<String, ExecutorProperties> createdWith = new ConcurrentHashMap<>();
+
+    private volatile Map<String, ExecutorProperties> properties;
+
+    public KafkaRestExecutors(Map<String, ExecutorProperties> properties, KafkaRestMetrics metrics) {
+        this.properties = properties;
+        this.registry = metrics != null ? metrics.getRegistry() : null;
+    }
+
+    public ExecutorService get(String name) {
+        return executors.computeIfAbsent(name, this::create);
+    }
+
+    /**
+     * A factory for threads of the kind configured for {@code name}, for work that owns its thread for a long time and
+     * so does not fit a bounded pool.
+     */
+    public ThreadFactory threadFactory(String name) {
+        ExecutorProperties executorProperties = properties.getOrDefault(name, new ExecutorProperties());
+        String threadPrefix = "kafka-rest-" + name + "-";
+        if (isVirtual(executorProperties)) {
+            return VirtualThreads.factory(threadPrefix);
+        }
+        return new NamedThreadFactory(threadPrefix);
+    }
+
+    /**
+     * Applies new settings to the executors created so far and to those created later. Platform pools are resized in
+     * place and limited virtual executors get their new limit. Changes that would need a new executor, such as another
+     * type, queue capacity or rejection policy, are refused before any executor is touched.
+     *
+     * @throws IllegalArgumentException if the settings cannot be applied in place
+     */
+    public synchronized void reconfigure(Map<String, ExecutorProperties> properties) {
+        List<String> errors = new ArrayList<>();
+        for (Map.Entry<String, ExecutorService> entry : executors.entrySet()) {
+            String name = entry.getKey();
+            ExecutorProperties current = createdWith.get(name);
+            ExecutorProperties next = properties.getOrDefault(name, new ExecutorProperties());
+            if (isVirtual(next) != isVirtual(current)) {
+                errors.add(name + ": type cannot change");
+            } else if (entry.getValue() instanceof ThreadPerTaskExecutorService) {
+                ThreadPerTaskExecutorService executor = (ThreadPerTaskExecutorService) entry.getValue();
+                if ((next.getMaxSize() > 0) != executor.isLimited()) {
+                    errors.add(name + ": max-size cannot change between limited and unlimited");
+                }
+                if (executor.isLimited() && next.getQueueCapacity() != current.getQueueCapacity()) {
+                    errors.add(name + ": queue-capacity cannot change");
+                }
+            } else {
+                if (next.getQueueCapacity() != current.getQueueCapacity()) {
+                    errors.add(name + ": queue-capacity cannot change");
+                }
+                if (next.getRejectionPolicy() != current.getRejectionPolicy()) {
+                    errors.add(name + ": rejection-policy cannot change");
+                }
+                if (next.getCoreSize() < 0 || Math.max(next.getCoreSize(), next.getMaxSize()) < 1) {
+                    errors.add(name + ": core-size must not be negative and max-size must be positive");
+                }
+                if (next.getKeepAlive() == null || next.getKeepAlive().isNegative()) {
+                    errors.add(name + ": keep-alive must not be negative");
+                }
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Executors cannot be reconfigured in place: " + String.join(", ", errors));
+        }
+
+        for (Map.Entry<String, ExecutorService> entry : executors.entrySet()) {
+            String name = entry.getKey();
+            ExecutorProperties next = properties.getOrDefault(name, new ExecutorProperties());
+            if (entry.getValue() instanceof ThreadPerTaskExecutorService) {
+                ThreadPerTaskExecutorService executor = (ThreadPerTaskExecutorService) entry.getValue();
+                if (executor.isLimited()) {
+                    executor.setMaxConcurrency(next.getMaxSize());
+                    LOG.info("Resized executor '{}' to max concurrency {}", name, next.getMaxSize());
+                }
+            } else {
+                ThreadPoolExecutor executor = (ThreadPoolExecutor) entry.getValue();
+                int coreSize = next.getCoreSize();
+                int maxSize = Math.max(coreSize, next.getMaxSize());
+                // the pool rejects a core size above its max and a max below its core, so grow max first and shrink it last
+                if (maxSize >= executor.getMaximumPoolSize()) {
+                    executor.setMaximumPoolSize(maxSize);
+                    executor.setCorePoolSize(coreSize);
+                } else {
+                    executor.setCorePoolSize(coreSize);
+                    executor.setMaximumPoolSize(maxSize);
+                }
+                executor.setKeepAliveTime(next.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS);
+                LOG.info("Resized executor '{}' to {}-{} threads", name, coreSize, maxSize);
+            }
+            createdWith.put(name, next);
+        }
+        this.properties = properties;
+    }
+
+    private static boolean isVirtual(ExecutorProperties executorProperties) {
+        ExecutorProperties.Type type = executorProperties.getType();
+        return type == ExecutorProperties.Type.VIRTUAL
+                || (type == ExecutorProperties.Type.AUTO && VirtualThreads.isAvailable());
+    }
+
+    private ExecutorService create(String name) {
+        ExecutorProperties executorProperties = properties.getOrDefault(name, new ExecutorProperties());
+        String threadPrefix = "kafka-rest-" + name + "-";
+        createdWith.put(name, executorProperties);
+
+        if (isVirtual(executorProperties)) {
+            ThreadPerTaskExecutorService executor = new ThreadPerTaskExecutorService(
+                    VirtualThreads.factory(threadPrefix),
+                    executorProperties.getMaxSize(),
+                    executorProperties.getQueueCapacity(),
+                    executorProperties.getRejectionPolicy() == ExecutorProperties.RejectionPolicy.CALLER_RUNS
+            );
+            if (registry != null) {
+                Tags tags = tags(name, "virtual");
+                Gauge.builder("kafka.restproxy.executor.active", executor, ThreadPerTaskExecutorService::getActiveCount)
+                        .tags(tags)
+                        .register(registry);
+                Gauge.builder("kafka.restproxy.executor.queued", executor, ThreadPerTaskExecutorService::getQueuedCount)
+                        .tags(tags)
+                        .register(registry);
+            }
+            LOG.info("Using virtual threads for executor '{}' with max concurrency {} and a queue of {}",
+                    name, executorProperties.getMaxSize(), executor.isLimited() ? executorProperties.getQueueCapacity() : 0);
+            return executor;
+        }
+
+        int queueCapacity = executorProperties.getQueueCapacity();
+        BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                executorProperties.getCoreSize(),
+                Math.max(executorProperties.getCoreSize(), executorProperties.getMaxSize()),
+                executorProperties.getKeepAlive().toMillis(),
+                TimeUnit.MILLISECONDS,
+                queue,
+                new NamedThreadFactory(threadPrefix),
+                rejectionHandler(name, executorProperties.getRejectionPolicy())
+        );
+        if (registry != null) {
+            Tags tags = tags(name, "platform");
+            Gauge.builder("kafka.restproxy.executor.active", executor, ThreadPoolExecutor::getActiveCount)
+                    .tags(tags)
+                    .register(registry);
+            Gauge.builder("kafka.restproxy.executor.pool.size", executor, ThreadPoolExecutor::getPoolSize)
+                    .tags(tags)
+                    .register(registry);
+            Gauge.builder("kafka.restproxy.executor.queued", queue, BlockingQueue::size)
+                    .tags(tags)
+                    .register(registry);
+        }
+        LOG.info("Using platform threads for executor '{}' with {}-{} threads and a queue of {}",
+                name, executor.getCorePoolSize(), executor.getMaximumPoolSize(), queueCapacity);
+        return executor;
+    }
+
+    private RejectedExecutionHandler rejectionHandler(String name, ExecutorProperties.RejectionPolicy policy) {
+        RejectedExecutionHandler handler;
+        switch (policy) {
+            case CALLER_RUNS:
+                handler = new ThreadPoolExecutor.CallerRunsPolicy();
+                break;
+            case DISCARD_OLDEST:
+                handler = new ThreadPoolExecutor.DiscardOldestPolicy();
+                break;
+            default:
+                handler = new ThreadPoolExecutor.AbortPolicy();
+        }
+        if (registry == null) {
+            return handler;
+        }
+
+        Counter rejected = Counter.builder("kafka.restproxy.executor.rejected")
+                .tags(tags(name, "platform"))
+                .register(registry);
+        return (runnable, executor) -> {
+            rejected.increment();
+            handler.rejectedExecution(runnable, executor);
+        };
+    }
+
+    private static Tags tags(String name, String type) {
+        return Tags.of("name", name, "type", type);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        for (ExecutorService executor : executors.values()) {
+            executor.shutdown();
+        }
+        for (Map.Entry<String, ExecutorService> entry : executors.entrySet()) {
+            if (!entry.getValue().awaitTermination(10, TimeUnit.SECONDS)) {
+                LOG.warn("Executor '{}' did not terminate, interrupting remaining tasks", entry.getKey());
+                entry.getValue().shutdownNow();
+            }
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
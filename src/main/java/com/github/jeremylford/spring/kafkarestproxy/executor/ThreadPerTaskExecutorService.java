@@ -0,0 +1,223 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a new thread for every task, meant for virtual threads. An optional limit caps the number of tasks running
+ * at once; submissions above it wait in a bounded queue, like they would in a platform pool, and only once that is
+ * full are they rejected or run on the caller.
+ */
+class ThreadPerTaskExecutorService extends AbstractExecutorService {
+
+    private final ThreadFactory threadFactory;
+    private final ResizableSemaphore permits;
+    private final BlockingQueue<Runnable> queue;
+    private final boolean callerRuns;
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private final Object termination = new Object();
+
+    private volatile int maxConcurrency;
+    private volatile boolean shutdown;
+
+    /**
+     * @param queueCapacity the number of tasks a limited executor queues while at its limit, 0 for none
+     */
+    ThreadPerTaskExecutorService(ThreadFactory threadFactory, int maxConcurrency, int queueCapacity, boolean callerRuns) {
+        this.threadFactory = threadFactory;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = maxConcurrency > 0 ? new ResizableSemaphore(maxConcurrency) : null;
+        this.queue = maxConcurrency > 0 && queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : null;
+        this.callerRuns = callerRuns;
+    }
+
+    int getActiveCount() {
+        return threads.size();
+    }
+
+    int getQueuedCount() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    boolean isLimited() {
+        return permits != null;
+    }
+
+    /**
+     * Changes the limit of a limited executor. Tasks already running above a lowered limit are not affected, new ones
+     * are only started once enough of them have finished.
+     */
+    synchronized void setMaxConcurrency(int maxConcurrency) {
+        if (permits == null || maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Only a limited executor can be resized, and only to another limit");
+        }
+        int delta = maxConcurrency - this.maxConcurrency;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta);
+        }
+        this.maxConcurrency = maxConcurrency;
+        drain();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor has been shut down");
+        }
+        if (permits != null && !permits.tryAcquire()) {
+            if (queue != null && queue.offer(command)) {
+                // every running task may have finished before the offer, leaving nobody to take it
+                drain();
+                return;
+            }
+            if (callerRuns) {
+                command.run();
+                return;
+            }
+            throw new RejectedExecutionException("Executor is running its maximum of " + maxConcurrency + " tasks");
+        }
+        start(command);
+    }
+
+    /**
+     * Starts {@code command} on a new thread, holding a permit if the executor is limited.
+     */
+    private void start(Runnable command) {
+        Thread thread = threadFactory.newThread(() -> {
+            try {
+                command.run();
+            } finally {
+                // the permit passes straight to the next queued task, which starts before this thread is gone
+                Runnable next = queue != null ? queue.poll() : null;
+                try {
+                    if (next != null) {
+                        start(next);
+                    } else if (permits != null) {
+                        permits.release();
+                        drain();
+                    }
+                } finally {
+                    threads.remove(Thread.currentThread());
+                    if (isTerminated()) {
+                        synchronized (termination) {
+                            termination.notifyAll();
+                        }
+                    }
+                }
+            }
+        });
+        threads.add(thread);
+        try {
+            thread.start();
+        } catch (RuntimeException | Error e) {
+            threads.remove(thread);
+            if (permits != null) {
+                permits.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Starts queued tasks for as long as there are permits.
+     */
+    private void drain() {
+        while (queue != null && !queue.isEmpty() && permits.tryAcquire()) {
+            Runnable next = queue.poll();
+            if (next == null) {
+                permits.release();
+                return;
+            }
+            start(next);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (isTerminated()) {
+            synchronized (termination) {
+                termination.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        List<Runnable> queued = new ArrayList<>();
+        if (queue != null) {
+            queue.drainTo(queued);
+        }
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        return queued;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && threads.isEmpty() && (queue == null || queue.isEmpty());
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (termination) {
+            while (!isTerminated()) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                termination.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    private static final class ResizableSemaphore extends Semaphore {
+
+        ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import io.confluent.kafkarest.entities.v3.ProduceResponse;
+
+import java.io.IOException;
+
+/**
+ * Wraps the serializer of v3 {@link ProduceResponse}s so that, when a write carries
+ * {@link KafkaRestJackson#ACKS_ONLY_ATTRIBUTE}, only {@code partition_id} and {@code offset} are written.
+ */
+final class AcksOnlySerializerModifier extends BeanSerializerModifier {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public JsonSerializer<?> modifySerializer(SerializationConfig config, BeanDescription beanDesc, JsonSerializer<?> serializer) {
+        if (ProduceResponse.class.isAssignableFrom(beanDesc.getBeanClass())) {
+            return new AcksOnlySerializer((JsonSerializer<Object>) serializer);
+        }
+        return serializer;
+    }
+
+    private static final class AcksOnlySerializer extends StdSerializer<ProduceResponse> implements ContextualSerializer, ResolvableSerializer {
+
+        private final JsonSerializer<Object> delegate;
+
+        AcksOnlySerializer(JsonSerializer<Object> delegate) {
+            super(ProduceResponse.class);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void serialize(ProduceResponse value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            if (provider.getAttribute(KafkaRestJackson.ACKS_ONLY_ATTRIBUTE) == null) {
+                delegate.serialize(value, gen, provider);
+                return;
+            }
+            gen.writeStartObject();
+            gen.writeNumberField("partition_id", value.getPartitionId());
+            gen.writeNumberField("offset", value.getOffset());
+            gen.writeEndObject();
+        }
+
+        @Override
+        public void serializeWithType(ProduceResponse value, JsonGenerator gen, SerializerProvider provider, TypeSerializer typeSer) throws IOException {
+            delegate.serializeWithType(value, gen, provider, typeSer);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property) throws JsonMappingException {
+            if (delegate instanceof ContextualSerializer) {
+                JsonSerializer<?> contextual = ((ContextualSerializer) delegate).createContextual(provider, property);
+                if (contextual != delegate) {
+                    return new AcksOnlySerializer((JsonSerializer<Object>) contextual);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public void resolve(SerializerProvider provider) throws JsonMappingException {
+            if (delegate instanceof ResolvableSerializer) {
+                ((ResolvableSerializer) delegate).resolve(provider);
+            }
+        }
+    }
+}
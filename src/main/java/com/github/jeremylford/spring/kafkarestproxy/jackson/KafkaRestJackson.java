@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.datatype.guava.GuavaModule;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import io.confluent.kafkarest.entities.v2.BinaryConsumerRecord;
+import io.confluent.kafkarest.entities.v2.JsonConsumerRecord;
+import io.confluent.kafkarest.entities.v2.SchemaConsumerRecord;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Holds the single {@link ObjectMapper} used by every JSON reader and writer of the proxy. The serializers and
+ * deserializers of the produce and consume entities are resolved up front, into the caches of the mapper that the JSON
+ * provider reads and writes with, so the first requests do not pay for introspection.
+ * <p>
+ * The mapper is deliberately not exposed as an {@link ObjectMapper} bean, so it never competes with the
+ * application's own.
+ */
+public class KafkaRestJackson {
+
+    /**
+     * Writer attribute that reduces v3 produce responses to their partition and offset.
+     */
+    public static final String ACKS_ONLY_ATTRIBUTE = KafkaRestJackson.class.getName() + ".acksOnly";
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private static final List<Class<?>> ENTITY_TYPES = Arrays.asList(
+            io.confluent.kafkarest.entities.v2.ProduceRequest.class,
+            io.confluent.kafkarest.entities.v2.ProduceResponse.class,
+            io.confluent.kafkarest.entities.v3.ProduceRequest.class,
+            io.confluent.kafkarest.entities.v3.ProduceResponse.class
+    );
+
+    private static final List<Class<?>> CONSUMER_RECORD_TYPES = Arrays.asList(
+            BinaryConsumerRecord.class,
+            JsonConsumerRecord.class,
+            SchemaConsumerRecord.class
+    );
+
+    private final ObjectMapper objectMapper;
+
+    public KafkaRestJackson(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+
+        // readers and writers fetch their root (de)serializers eagerly, which the mapper keeps for every later one
+        TypeFactory typeFactory = objectMapper.getTypeFactory();
+        for (Class<?> type : ENTITY_TYPES) {
+            objectMapper.readerFor(type);
+            objectMapper.writerFor(type);
+        }
+        for (Class<?> type : CONSUMER_RECORD_TYPES) {
+            JavaType list = typeFactory.constructCollectionType(List.class, type);
+            objectMapper.writerFor(list);
+        }
+    }
+
+    /**
+     * The defaults of the proxy's mapper, before any {@link KafkaRestJacksonCustomizer} is applied.
+     */
+    public static Jackson2ObjectMapperBuilder builder() {
+        return new Jackson2ObjectMapperBuilder()
+                .modules(
+                        new GuavaModule(),
+                        new Jdk8Module(),
+                        new JavaTimeModule(),
+                        new BlackbirdModule()
+                )
+                .serializerByType(Date.class, new DateSerializer())
+                .deserializerByType(Date.class, new DateDeserializer())
+                .timeZone(TimeZone.getTimeZone(ZoneOffset.UTC))
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                // Jackson2ObjectMapperBuilder relaxes these by default, keep plain ObjectMapper behavior
+                .featuresToEnable(
+                        DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES,
+                        MapperFeature.DEFAULT_VIEW_INCLUSION
+                )
+                // applied after the modules, so customizers replacing the module list keep it
+                .postConfigurer(objectMapper -> objectMapper.setSerializerFactory(
+                        objectMapper.getSerializerFactory().withSerializerModifier(new AcksOnlySerializerModifier())));
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    private static final class DateSerializer extends JsonSerializer<Date> {
+
+        @Override
+        public void serialize(Date value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeString(DATE_FORMAT.format(value.toInstant()));
+        }
+
+        @Override
+        public Class<Date> handledType() {
+            return Date.class;
+        }
+    }
+
+    private static final class DateDeserializer extends JsonDeserializer<Date> {
+
+        @Override
+        public Date deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            String text = p.getValueAsString();
+            if (text == null || text.isEmpty()) {
+                return null;
+            }
+            try {
+                return Date.from(Instant.from(DATE_FORMAT.parse(text)));
+            } catch (DateTimeException e) {
+                return (Date) ctxt.handleWeirdStringValue(Date.class, text, e.getMessage());
+            }
+        }
+
+        @Override
+        public Class<?> handledType() {
+            return Date.class;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.jackson;
+
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Callback for customizing the proxy's {@link com.fasterxml.jackson.databind.ObjectMapper} before it is built. Beans
+ * of this type are applied in order. Unlike Spring Boot's Jackson2ObjectMapperBuilderCustomizer, they only affect the
+ * mapper used for the Kafka REST endpoints.
+ */
+@FunctionalInterface
+public interface KafkaRestJacksonCustomizer {
+
+    void customize(Jackson2ObjectMapperBuilder builder);
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.KafkaMetric;
+import org.apache.kafka.common.metrics.MetricsContext;
+import org.apache.kafka.common.metrics.MetricsReporter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Kafka {@link MetricsReporter} that bridges producer, consumer and admin client metrics into the
+ * {@link MeterRegistry} of the active {@link KafkaRestMetrics}. Partition level metrics are not bridged and topic
+ * level metrics are limited to the topics allowed by {@link TopicTags}. Every meter is tagged with the name of the
+ * cluster the client belongs to, taken from the {@link #CLUSTER_LABEL} metrics context label.
+ * <p>
+ * Some Kafka metrics exist with and without a {@code topic} tag under the same name, which Prometheus rejects. All
+ * meters of one name keep the same tag keys: the most specific variant wins, and the client-wide one, which is only an
+ * aggregate of it, is dropped.
+ */
+public class KafkaClientMetricsReporter implements MetricsReporter {
+
+    /**
+     * Metrics context label naming the cluster a client connects to, "default" when absent.
+     */
+    public static final String CLUSTER_LABEL = "kafka.restproxy.cluster";
+
+    /**
+     * Client config setting {@link #CLUSTER_LABEL}, in the {@code metrics.context.} namespace Kafka hands to reporters.
+     */
+    public static final String CLUSTER_CONFIG = CommonClientConfigs.METRICS_CONTEXT_PREFIX + CLUSTER_LABEL;
+
+    private static final String DEFAULT_CLUSTER = "default";
+
+    // reporters of all clients share the registry, so the tag keys of a name are checked and registered atomically
+    private static final Object REGISTRATION = new Object();
+
+    private final Map<MetricName, Meter> meters = new ConcurrentHashMap<>();
+
+    private volatile KafkaRestMetrics metrics;
+    private volatile String cluster = DEFAULT_CLUSTER;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        this.metrics = KafkaRestMetrics.current();
+    }
+
+    @Override
+    public void contextChange(MetricsContext metricsContext) {
+        // called by the client before init, with the metrics.context. configs as labels
+        String cluster = metricsContext.contextLabels().get(CLUSTER_LABEL);
+        if (cluster != null) {
+            this.cluster = cluster;
+        }
+    }
+
+    @Override
+    public void init(List<KafkaMetric> kafkaMetrics) {
+        for (KafkaMetric kafkaMetric : kafkaMetrics) {
+            metricChange(kafkaMetric);
+        }
+    }
+
+    @Override
+    public void metricChange(KafkaMetric kafkaMetric) {
+        KafkaRestMetrics metrics = this.metrics;
+        if (metrics == null || !(kafkaMetric.metricValue() instanceof Number)) {
+            return;
+        }
+
+        MetricName metricName = kafkaMetric.metricName();
+        if (metricName.tags().containsKey("partition")) {
+            return;
+        }
+
+        List<Tag> tags = new ArrayList<>();
+        tags.add(Tag.of("cluster", cluster));
+        for (Map.Entry<String, String> entry : metricName.tags().entrySet()) {
+            if (entry.getKey().equals("topic")) {
+                String topic = metrics.getTopicTags().tag(entry.getValue());
+                if (topic.equals(TopicTags.OTHER)) {
+                    return;
+                }
+            }
+            tags.add(Tag.of(entry.getKey(), entry.getValue()));
+        }
+
+        String name = meterName(metricName);
+        MeterRegistry registry = metrics.getRegistry();
+        synchronized (REGISTRATION) {
+            // registering the same id again would return the existing gauge, which still reads the replaced metric
+            Meter previous = meters.remove(metricName);
+            if (previous != null) {
+                registry.remove(previous);
+            }
+
+            Set<String> keys = keys(tags);
+            for (Meter other : registry.find(name).meters()) {
+                Set<String> otherKeys = keys(other.getId().getTags());
+                if (otherKeys.equals(keys)) {
+                    continue;
+                }
+                if (!keys.containsAll(otherKeys)) {
+                    return;
+                }
+                registry.remove(other);
+            }
+
+            Meter meter = Gauge.builder(name, kafkaMetric, KafkaClientMetricsReporter::value)
+                    .tags(tags)
+                    .description(metricName.description())
+                    .strongReference(true)
+                    .register(registry);
+            meters.put(metricName, meter);
+        }
+    }
+
+    @Override
+    public void metricRemoval(KafkaMetric kafkaMetric) {
+        Meter meter = meters.remove(kafkaMetric.metricName());
+        KafkaRestMetrics metrics = this.metrics;
+        if (meter != null && metrics != null) {
+            metrics.getRegistry().remove(meter);
+        }
+    }
+
+    @Override
+    public void close() {
+        KafkaRestMetrics metrics = this.metrics;
+        if (metrics != null) {
+            meters.values().forEach(metrics.getRegistry()::remove);
+        }
+        meters.clear();
+    }
+
+    /**
+     * Maps e.g. {@code producer-topic-metrics / record-send-rate} to {@code kafka.producer.topic.record.send.rate}.
+     */
+    static String meterName(MetricName metricName) {
+        String group = metricName.group();
+        if (group.endsWith("-metrics")) {
+            group = group.substring(0, group.length() - "-metrics".length());
+        }
+        return ("kafka." + group + "." + metricName.name()).replace('-', '.');
+    }
+
+    private static Set<String> keys(List<Tag> tags) {
+        Set<String> keys = new HashSet<>();
+        for (Tag tag : tags) {
+            keys.add(tag.getKey());
+        }
+        return keys;
+    }
+
+    private static double value(KafkaMetric kafkaMetric) {
+        Object value = kafkaMetric.metricValue();
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.metrics;
+
+import com.github.jeremylford.spring.kafkarestproxy.properties.MetricsProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Entry point for the proxy's metrics. Kafka instantiates {@link KafkaClientMetricsReporter} reflectively, so the
+ * active instance is also published statically for the reporters to pick up.
+ */
+public class KafkaRestMetrics implements AutoCloseable {
+
+    private static volatile KafkaRestMetrics current;
+
+    private final MeterRegistry registry;
+    private final MetricsProperties properties;
+    private final TopicTags topicTags;
+
+    public KafkaRestMetrics(MeterRegistry registry, MetricsProperties properties) {
+        this.registry = registry;
+        this.properties = properties;
+        this.topicTags = new TopicTags(properties.getTopics(), properties.getMaxTopicTags());
+        current = this;
+    }
+
+    static KafkaRestMetrics current() {
+        return current;
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public MetricsProperties getProperties() {
+        return properties;
+    }
+
+    public TopicTags getTopicTags() {
+        return topicTags;
+    }
+
+    @Override
+    public void close() {
+        if (current == this) {
+            current = null;
+        }
+    }
+}
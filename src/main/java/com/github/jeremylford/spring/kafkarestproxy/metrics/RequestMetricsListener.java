@@ -0,0 +1,248 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.metrics;
+
+import com.github.jeremylford.spring.kafkarestproxy.cluster.ClusterRoutingFilter;
+import com.github.jeremylford.spring.kafkarestproxy.properties.MetricsProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.glassfish.jersey.uri.UriTemplate;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records latency, in-flight requests and request/response sizes for every proxy endpoint. The uri tag is the
+ * matched resource template, never the raw path, the topic tag is bounded by {@link TopicTags} and the cluster tag
+ * names the cluster the {@link ClusterRoutingFilter} routed the request to.
+ * <p>
+ * A request is counted from the moment Jersey starts processing it until Jersey reports it finished, which happens
+ * for every request, including those failing with an unmapped exception or whose client went away before the
+ * response was written. Latency therefore includes serialization, and for chunked responses lasts until the last chunk.
+ */
+@Priority(Priorities.USER - 500)
+public class RequestMetricsListener implements ApplicationEventListener, ReaderInterceptor, WriterInterceptor {
+
+    public static final String REQUESTS = "kafka.restproxy.requests";
+    public static final String ACTIVE_REQUESTS = "kafka.restproxy.requests.active";
+    public static final String REQUEST_SIZE = "kafka.restproxy.request.size";
+    public static final String RESPONSE_SIZE = "kafka.restproxy.response.size";
+
+    private static final String REQUEST_STREAM_PROPERTY = RequestMetricsListener.class.getName() + ".requestStream";
+    private static final String RESPONSE_BYTES_PROPERTY = RequestMetricsListener.class.getName() + ".responseBytes";
+
+    private final MeterRegistry registry;
+    private final MetricsProperties properties;
+    private final TopicTags topicTags;
+    private final AtomicInteger active;
+
+    public RequestMetricsListener(KafkaRestMetrics metrics) {
+        this.registry = metrics.getRegistry();
+        this.properties = metrics.getProperties();
+        this.topicTags = metrics.getTopicTags();
+        this.active = registry.gauge(ACTIVE_REQUESTS, new AtomicInteger());
+    }
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        long start = System.nanoTime();
+        active.incrementAndGet();
+        return event -> {
+            if (event.getType() == RequestEvent.Type.FINISHED) {
+                finished(event, start);
+            }
+        };
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+        CountingInputStream inputStream = new CountingInputStream(context.getInputStream());
+        context.setInputStream(inputStream);
+        context.setProperty(REQUEST_STREAM_PROPERTY, inputStream);
+        return context.proceed();
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        // chunked responses come through here once per chunk
+        AtomicLong responseBytes = (AtomicLong) context.getProperty(RESPONSE_BYTES_PROPERTY);
+        if (responseBytes == null) {
+            responseBytes = new AtomicLong();
+            context.setProperty(RESPONSE_BYTES_PROPERTY, responseBytes);
+        }
+        context.setOutputStream(new CountingOutputStream(context.getOutputStream(), responseBytes));
+        context.proceed();
+    }
+
+    private void finished(RequestEvent event, long start) {
+        active.decrementAndGet();
+
+        ContainerRequest request = event.getContainerRequest();
+        ContainerResponse response = event.getContainerResponse();
+        int status = response != null ? response.getStatus() : 500;
+        Tags tags = tags(request, status);
+
+        Timer.builder(REQUESTS)
+                .tags(tags)
+                .tag("status", String.valueOf(status))
+                .publishPercentiles(properties.getPercentiles())
+                .publishPercentileHistogram(properties.isPercentileHistogram())
+                .register(registry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        Object requestStream = request.getProperty(REQUEST_STREAM_PROPERTY);
+        if (requestStream instanceof CountingInputStream) {
+            DistributionSummary.builder(REQUEST_SIZE)
+                    .baseUnit("bytes")
+                    .tags(tags)
+                    .register(registry)
+                    .record(((CountingInputStream) requestStream).count);
+        }
+        Object responseBytes = request.getProperty(RESPONSE_BYTES_PROPERTY);
+        if (responseBytes instanceof AtomicLong) {
+            DistributionSummary.builder(RESPONSE_SIZE)
+                    .baseUnit("bytes")
+                    .tags(tags)
+                    .register(registry)
+                    .record(((AtomicLong) responseBytes).get());
+        }
+    }
+
+    private Tags tags(ContainerRequest request, int status) {
+        UriInfo uriInfo = request.getUriInfo();
+        MultivaluedMap<String, String> pathParameters = uriInfo.getPathParameters();
+        String topic = pathParameters.getFirst("topicName");
+        if (topic == null) {
+            topic = pathParameters.getFirst("topic");
+        }
+
+        return Tags.of(
+                "method", request.getMethod(),
+                "uri", uri(uriInfo, status),
+                "topic", topicTags.tag(topic),
+                "cluster", ClusterRoutingFilter.clusterName(request)
+        );
+    }
+
+    static String uri(UriInfo uriInfo, int status) {
+        if (uriInfo instanceof ExtendedUriInfo) {
+            List<UriTemplate> templates = ((ExtendedUriInfo) uriInfo).getMatchedTemplates();
+            if (!templates.isEmpty()) {
+                StringBuilder uri = new StringBuilder();
+                for (int i = templates.size() - 1; i >= 0; i--) {
+                    String template = templates.get(i).getTemplate();
+                    if (!template.startsWith("/")) {
+                        uri.append('/');
+                    }
+                    uri.append(template);
+                }
+                String result = uri.toString().replaceAll("/+", "/");
+                return result.length() > 1 && result.endsWith("/") ? result.substring(0, result.length() - 1) : result;
+            }
+        }
+        if (status == 404) {
+            return "NOT_FOUND";
+        }
+        return "UNKNOWN";
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private final AtomicLong count;
+
+        CountingOutputStream(OutputStream out, AtomicLong count) {
+            super(out);
+            this.count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count.addAndGet(len);
+        }
+    }
+}
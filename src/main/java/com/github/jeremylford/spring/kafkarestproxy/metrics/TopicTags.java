@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.metrics;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounds the number of distinct values used for the {@code topic} tag. Configured topics are always tagged by name,
+ * the remaining slots are handed out to the first topics seen and everything after that is tagged as {@link #OTHER}.
+ */
+public class TopicTags {
+
+    public static final String NONE = "none";
+    public static final String OTHER = "other";
+
+    private final Set<String> tagged = ConcurrentHashMap.newKeySet();
+    private final int maxTags;
+
+    public TopicTags(Collection<String> topics, int maxTags) {
+        this.tagged.addAll(topics);
+        this.maxTags = Math.max(maxTags, this.tagged.size());
+    }
+
+    public String tag(String topic) {
+        if (topic == null || topic.isEmpty()) {
+            return NONE;
+        }
+        if (tagged.contains(topic)) {
+            return topic;
+        }
+        if (tagged.size() >= maxTags) {
+            return OTHER;
+        }
+        synchronized (tagged) {
+            if (tagged.contains(topic) || tagged.size() < maxTags) {
+                tagged.add(topic);
+                return topic;
+            }
+        }
+        return OTHER;
+    }
+}
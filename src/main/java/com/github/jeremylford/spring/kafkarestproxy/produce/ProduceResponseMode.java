@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.produce;
+
+import java.util.Locale;
+
+/**
+ * How much a produce response reports per record, chosen per request with the {@value #HEADER} header or the
+ * {@value #QUERY_PARAMETER} query parameter.
+ */
+public enum ProduceResponseMode {
+
+    /**
+     * kafka-rest's own response.
+     */
+    FULL,
+
+    /**
+     * Only the partition and offset of each record.
+     */
+    ACKS,
+
+    /**
+     * A single result for the whole request: how many records were sent and how many failed. Only the bulk endpoint
+     * supports it.
+     */
+    SUMMARY;
+
+    public static final String HEADER = "X-Kafka-Rest-Response-Mode";
+    public static final String QUERY_PARAMETER = "response_mode";
+
+    /**
+     * @param header          the value of {@link #HEADER}, which takes precedence, or null
+     * @param queryParameter  the value of {@link #QUERY_PARAMETER}, or null
+     * @throws IllegalArgumentException if the mode is not one of full, acks or summary
+     */
+    public static ProduceResponseMode of(String header, String queryParameter) {
+        String value = header != null ? header : queryParameter;
+        if (value == null || value.isEmpty()) {
+            return FULL;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown response mode '" + value + "', expected full, acks or summary");
+        }
+    }
+}
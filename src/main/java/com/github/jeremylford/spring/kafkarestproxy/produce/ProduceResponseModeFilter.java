@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.produce;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.jaxrs.cfg.EndpointConfigBase;
+import com.fasterxml.jackson.jaxrs.cfg.ObjectWriterInjector;
+import com.fasterxml.jackson.jaxrs.cfg.ObjectWriterModifier;
+import com.github.jeremylford.spring.kafkarestproxy.jackson.KafkaRestJackson;
+
+import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Applies {@link ProduceResponseMode#ACKS} to v3 produce requests. kafka-rest still creates its response for each
+ * record, but only the partition and offset are serialized: every chunk written for the request is flagged with
+ * {@link KafkaRestJackson#ACKS_ONLY_ATTRIBUTE}, which the proxy's mapper checks when it writes a produce response.
+ * <p>
+ * The bulk endpoint reads the mode itself, since it also supports {@link ProduceResponseMode#SUMMARY}.
+ */
+@Priority(Priorities.USER)
+public class ProduceResponseModeFilter implements ContainerRequestFilter, WriterInterceptor {
+
+    private static final String ACKS_PROPERTY = ProduceResponseModeFilter.class.getName() + ".acks";
+
+    private static final ObjectWriterModifier ACKS_ONLY = new ObjectWriterModifier() {
+        @Override
+        public ObjectWriter modify(EndpointConfigBase<?> endpoint, MultivaluedMap<String, Object> responseHeaders,
+                                   Object valueToWrite, ObjectWriter writer, JsonGenerator generator) {
+            return writer.withAttribute(KafkaRestJackson.ACKS_ONLY_ATTRIBUTE, Boolean.TRUE);
+        }
+    };
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        if (!HttpMethod.POST.equals(requestContext.getMethod()) || !requestContext.getUriInfo().getPath().endsWith("/records")) {
+            return;
+        }
+
+        ProduceResponseMode mode;
+        try {
+            mode = ProduceResponseMode.of(requestContext.getHeaderString(ProduceResponseMode.HEADER),
+                    requestContext.getUriInfo().getQueryParameters().getFirst(ProduceResponseMode.QUERY_PARAMETER));
+        } catch (IllegalArgumentException e) {
+            badRequest(requestContext, e.getMessage());
+            return;
+        }
+        if (mode == ProduceResponseMode.ACKS) {
+            requestContext.setProperty(ACKS_PROPERTY, Boolean.TRUE);
+        } else if (mode == ProduceResponseMode.SUMMARY) {
+            badRequest(requestContext, "Response mode summary is only supported by the bulk produce endpoint");
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        if (context.getProperty(ACKS_PROPERTY) == null) {
+            context.proceed();
+            return;
+        }
+        ObjectWriterInjector.set(ACKS_ONLY);
+        try {
+            context.proceed();
+        } finally {
+            // not consumed if the entity was written by something other than the Jackson provider
+            ObjectWriterInjector.getAndClear();
+        }
+    }
+
+    private static void badRequest(ContainerRequestContext requestContext, String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error_code", Response.Status.BAD_REQUEST.getStatusCode());
+        error.put("message", message);
+        requestContext.abortWith(Response.status(Response.Status.BAD_REQUEST)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(error)
+                .build());
+    }
+}
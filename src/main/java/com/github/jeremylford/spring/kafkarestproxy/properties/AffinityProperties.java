@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class AffinityProperties {
+
+    /**
+     * Whether to route consumer instance requests to the proxy node that owns the instance. This node is identified by kafka.restproxy.id, which must be one of the nodes.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Base URL of every proxy node including this one, including the Jersey application path, keyed by the node's kafka.restproxy.id.
+     */
+    private Map<String, String> nodes = new LinkedHashMap<>();
+
+    /**
+     * How requests for instances owned by another node are handled.
+     */
+    private Mode mode = Mode.FORWARD;
+
+    /**
+     * Secret shared by all nodes and sent with forwarded requests, so that only other nodes can have a request handled locally. Required in forward mode.
+     */
+    private String secret;
+
+    /**
+     * Points per node on the consistent hash ring, which places instances whose ID does not name their node.
+     */
+    private int virtualNodes = 128;
+
+    /**
+     * Timeout for opening a connection to another node.
+     */
+    private Duration connectTimeout = Duration.ofSeconds(2);
+
+    /**
+     * How long a forwarded request waits for the owning node's response headers.
+     */
+    private Duration forwardTimeout = Duration.ofSeconds(60);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Map<String, String> getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(Map<String, String> nodes) {
+        this.nodes = nodes;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public String getSecret() {
+        return secret;
+    }
+
+    public void setSecret(String secret) {
+        this.secret = secret;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    public void setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Duration getForwardTimeout() {
+        return forwardTimeout;
+    }
+
+    public void setForwardTimeout(Duration forwardTimeout) {
+        this.forwardTimeout = forwardTimeout;
+    }
+
+    public enum Mode {
+        /**
+         * Proxy the request to the owning node over a pooled keep-alive connection.
+         */
+        FORWARD,
+        /**
+         * Answer with a 307 redirect to the owning node, which clients must be able to reach.
+         */
+        REDIRECT
+    }
+}
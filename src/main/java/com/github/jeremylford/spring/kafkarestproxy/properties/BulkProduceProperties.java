@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+public class BulkProduceProperties {
+
+    /**
+     * Whether to enable the binary bulk produce endpoint at /v3/clusters/{clusterId}/topics/{topicName}/records:bulk.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of records in one bulk produce request.
+     */
+    private int maxRecords = 100000;
+
+    /**
+     * Maximum size of a single key, value or header value in a bulk produce request.
+     */
+    private int maxRecordBytes = 1048576;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxRecords() {
+        return maxRecords;
+    }
+
+    public void setMaxRecords(int maxRecords) {
+        this.maxRecords = maxRecords;
+    }
+
+    public int getMaxRecordBytes() {
+        return maxRecordBytes;
+    }
+
+    public void setMaxRecordBytes(int maxRecordBytes) {
+        this.maxRecordBytes = maxRecordBytes;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import java.time.Duration;
+
+public class BulkheadProperties {
+
+    /**
+     * Whether to isolate produce, consume and admin requests from each other. Requests wait on the container's request threads, so the container needs at least as many threads as all groups' max-concurrent plus max-queued for the isolation to hold.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Bulkhead for the v2 and v3 produce endpoints.
+     */
+    private Group produce = new Group(100, 20, Duration.ofMillis(500));
+
+    /**
+     * Bulkhead for the v2 consumer endpoints, including long-polling record reads.
+     */
+    private Group consume = new Group(40, 10, Duration.ofSeconds(1));
+
+    /**
+     * Bulkhead for every other endpoint: clusters, brokers, topics, configs and consumer group metadata.
+     */
+    private Group admin = new Group(20, 10, Duration.ofSeconds(2));
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Group getProduce() {
+        return produce;
+    }
+
+    public void setProduce(Group produce) {
+        this.produce = produce;
+    }
+
+    public Group getConsume() {
+        return consume;
+    }
+
+    public void setConsume(Group consume) {
+        this.consume = consume;
+    }
+
+    public Group getAdmin() {
+        return admin;
+    }
+
+    public void setAdmin(Group admin) {
+        this.admin = admin;
+    }
+
+    public static class Group {
+
+        /**
+         * Maximum number of requests of the group handled at once. 0 leaves the group unbounded.
+         */
+        private int maxConcurrent;
+
+        /**
+         * Maximum number of requests waiting for one of the group's permits. Requests beyond it are rejected immediately.
+         */
+        private int maxQueued;
+
+        /**
+         * How long a request waits for a permit before it is rejected.
+         */
+        private Duration queueTimeout;
+
+        public Group() {
+            this(0, 0, Duration.ofSeconds(1));
+        }
+
+        Group(int maxConcurrent, int maxQueued, Duration queueTimeout) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+            this.queueTimeout = queueTimeout;
+        }
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public int getMaxQueued() {
+            return maxQueued;
+        }
+
+        public void setMaxQueued(int maxQueued) {
+            this.maxQueued = maxQueued;
+        }
+
+        public Duration getQueueTimeout() {
+            return queueTimeout;
+        }
+
+        public void setQueueTimeout(Duration queueTimeout) {
+            this.queueTimeout = queueTimeout;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import io.confluent.kafkarest.KafkaRestConfig;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static com.github.jeremylford.spring.kafkarestproxy.properties.PropertySupport.putArray;
+import static com.github.jeremylford.spring.kafkarestproxy.properties.PropertySupport.putClientConfigs;
+
+public class ClusterProperties {
+
+    /**
+     * Id of the Kafka cluster, as used in /v3/clusters/{clusterId} paths. Discovered from the cluster when unset, in which case requests for it go to the default cluster until it has been reached once.
+     */
+    private String clusterId;
+
+    /**
+     * Host/port pairs used to establish the initial connection to the cluster.
+     */
+    private String[] bootstrapServers = new String[0];
+
+    /**
+     * Configs applied to every Kafka client of this cluster. Take precedence over the top-level client configs.
+     */
+    private Map<String, String> client = new HashMap<>();
+
+    /**
+     * Kafka producer configs for this cluster. Take precedence over the top-level producer configs and client.
+     */
+    private Map<String, String> producer = new HashMap<>();
+
+    /**
+     * Kafka consumer configs for this cluster. Take precedence over the top-level consumer configs and client.
+     */
+    private Map<String, String> consumer = new HashMap<>();
+
+    /**
+     * Kafka admin client configs for this cluster. Take precedence over the top-level admin configs and client.
+     */
+    private Map<String, String> admin = new HashMap<>();
+
+    /**
+     * Number of producers shared by all produce requests to this cluster. Requests are spread over them round-robin.
+     */
+    private int producers = 1;
+
+    /**
+     * Requests to this cluster handled at once, so a slow cluster cannot take the request threads of the others. A max-concurrent of 0 leaves the cluster unbounded.
+     */
+    private BulkheadProperties.Group requests = new BulkheadProperties.Group();
+
+    public String getClusterId() {
+        return clusterId;
+    }
+
+    public void setClusterId(String clusterId) {
+        this.clusterId = clusterId;
+    }
+
+    public String[] getBootstrapServers() {
+        return bootstrapServers;
+    }
+
+    public void setBootstrapServers(String[] bootstrapServers) {
+        this.bootstrapServers = bootstrapServers;
+    }
+
+    public Map<String, String> getClient() {
+        return client;
+    }
+
+    public void setClient(Map<String, String> client) {
+        this.client = client;
+    }
+
+    public Map<String, String> getProducer() {
+        return producer;
+    }
+
+    public void setProducer(Map<String, String> producer) {
+        this.producer = producer;
+    }
+
+    public Map<String, String> getConsumer() {
+        return consumer;
+    }
+
+    public void setConsumer(Map<String, String> consumer) {
+        this.consumer = consumer;
+    }
+
+    public Map<String, String> getAdmin() {
+        return admin;
+    }
+
+    public void setAdmin(Map<String, String> admin) {
+        this.admin = admin;
+    }
+
+    public int getProducers() {
+        return producers;
+    }
+
+    public void setProducers(int producers) {
+        this.producers = producers;
+    }
+
+    public BulkheadProperties.Group getRequests() {
+        return requests;
+    }
+
+    public void setRequests(BulkheadProperties.Group requests) {
+        this.requests = requests;
+    }
+
+    /**
+     * The kafka-rest configuration of the cluster {@code name}: the proxy's own configuration {@code base} with this
+     * cluster's bootstrap servers and client configs laid over it.
+     */
+    public Properties asProperties(String name, Map<String, Object> base) {
+        Properties properties = new Properties();
+        properties.putAll(base);
+
+        List<String> errors = new ArrayList<>();
+        if (this.bootstrapServers == null || this.bootstrapServers.length == 0) {
+            errors.add("bootstrap-servers must not be empty");
+        }
+        if (this.producers < 1) {
+            errors.add("producers must be positive");
+        }
+        putArray(properties, KafkaRestConfig.BOOTSTRAP_SERVERS_CONFIG, this.bootstrapServers);
+
+        Set<String> clientConfigs = new HashSet<>(ProducerConfig.configNames());
+        clientConfigs.addAll(ConsumerConfig.configNames());
+        clientConfigs.addAll(AdminClientConfig.configNames());
+
+        putOverridingClientConfigs(properties, "client", this.client, clientConfigs, errors);
+        putOverridingClientConfigs(properties, "producer", this.producer, ProducerConfig.configNames(), errors);
+        putOverridingClientConfigs(properties, "consumer", this.consumer, ConsumerConfig.configNames(), errors);
+        putOverridingClientConfigs(properties, "admin", this.admin, AdminClientConfig.configNames(), errors);
+
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Invalid configuration under kafka.restproxy.clusters." + name + ": " + String.join(", ", errors));
+        }
+        return properties;
+    }
+
+    private static void putOverridingClientConfigs(Properties properties, String prefix, Map<String, String> values, Set<String> knownConfigs, List<String> errors) {
+        if (values != null) {
+            values.keySet().forEach(key -> properties.remove(prefix + "." + key));
+        }
+        putClientConfigs(properties, prefix, values, knownConfigs, errors);
+    }
+}
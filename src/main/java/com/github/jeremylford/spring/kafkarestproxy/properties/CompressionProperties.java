@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CompressionProperties {
+
+    /**
+     * Whether to compress responses for clients that accept it and to decompress compressed request bodies.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Content codings offered for responses, in order of preference when a client accepts several equally. gzip is always available, zstd and lz4 only when their libraries load on this platform.
+     */
+    private List<String> encodings = new ArrayList<>(Arrays.asList("zstd", "gzip", "lz4"));
+
+    /**
+     * Responses smaller than this are sent uncompressed. Streamed responses are always compressed.
+     */
+    private int minResponseSize = 1024;
+
+    /**
+     * gzip compression level, from 1 (fastest) to 9 (smallest).
+     */
+    private int gzipLevel = 6;
+
+    /**
+     * zstd compression level, from 1 (fastest) to 22 (smallest).
+     */
+    private int zstdLevel = 3;
+
+    /**
+     * Maximum size of a request body after decompression.
+     */
+    private long maxRequestSize = 64 * 1024 * 1024;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<String> getEncodings() {
+        return encodings;
+    }
+
+    public void setEncodings(List<String> encodings) {
+        this.encodings = encodings;
+    }
+
+    public int getMinResponseSize() {
+        return minResponseSize;
+    }
+
+    public void setMinResponseSize(int minResponseSize) {
+        this.minResponseSize = minResponseSize;
+    }
+
+    public int getGzipLevel() {
+        return gzipLevel;
+    }
+
+    public void setGzipLevel(int gzipLevel) {
+        this.gzipLevel = gzipLevel;
+    }
+
+    public int getZstdLevel() {
+        return zstdLevel;
+    }
+
+    public void setZstdLevel(int zstdLevel) {
+        this.zstdLevel = zstdLevel;
+    }
+
+    public long getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
+    public void setMaxRequestSize(long maxRequestSize) {
+        this.maxRequestSize = maxRequestSize;
+    }
+}
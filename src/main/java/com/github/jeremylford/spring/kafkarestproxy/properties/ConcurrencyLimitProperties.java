@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import java.time.Duration;
+
+public class ConcurrencyLimitProperties {
+
+    /**
+     * Whether to limit in-flight produce, consume and admin requests to a limit learned from their latency, rejecting requests above it with 503.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Limit of each endpoint class before any latency has been measured.
+     */
+    private int initialLimit = 20;
+
+    /**
+     * Lowest limit the estimate may fall to.
+     */
+    private int minLimit = 4;
+
+    /**
+     * Highest limit the estimate may grow to.
+     */
+    private int maxLimit = 1000;
+
+    /**
+     * How much latency above the unloaded latency is tolerated before the limit is reduced, as a ratio.
+     */
+    private double rttTolerance = 1.5;
+
+    /**
+     * Weight of each new estimate in the limit, between 0 and 1. Lower values react more slowly but are steadier.
+     */
+    private double smoothing = 0.2;
+
+    /**
+     * Average number of requests between probes, which briefly halve the limit to measure the unloaded latency again.
+     */
+    private int probeInterval = 1000;
+
+    /**
+     * Retry-After sent with rejected requests.
+     */
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public double getRttTolerance() {
+        return rttTolerance;
+    }
+
+    public void setRttTolerance(double rttTolerance) {
+        this.rttTolerance = rttTolerance;
+    }
+
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    public void setSmoothing(double smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    public int getProbeInterval() {
+        return probeInterval;
+    }
+
+    public void setProbeInterval(int probeInterval) {
+        this.probeInterval = probeInterval;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+}
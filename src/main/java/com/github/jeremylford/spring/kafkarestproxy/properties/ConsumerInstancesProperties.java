@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import java.time.Duration;
+
+public class ConsumerInstancesProperties {
+
+    /**
+     * Whether to bound the number and estimated memory of kafka-rest's v2 consumer instances.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of consumer instances on this node.
+     */
+    private int maxInstances = 1000;
+
+    /**
+     * Maximum number of consumer instances per consumer group on this node.
+     */
+    private int maxInstancesPerGroup = 100;
+
+    /**
+     * Maximum estimated memory of all consumer instances, in bytes. An instance is estimated at its fetch.max.bytes plus receive.buffer.bytes. 0 disables the memory budget.
+     */
+    private long maxMemoryBytes = 0;
+
+    /**
+     * How long an instance must have been idle before it may be evicted to make room for a new one.
+     */
+    private Duration evictableAfter = Duration.ofSeconds(30);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxInstances() {
+        return maxInstances;
+    }
+
+    public void setMaxInstances(int maxInstances) {
+        this.maxInstances = maxInstances;
+    }
+
+    public int getMaxInstancesPerGroup() {
+        return maxInstancesPerGroup;
+    }
+
+    public void setMaxInstancesPerGroup(int maxInstancesPerGroup) {
+        this.maxInstancesPerGroup = maxInstancesPerGroup;
+    }
+
+    public long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+
+    public void setMaxMemoryBytes(long maxMemoryBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    public Duration getEvictableAfter() {
+        return evictableAfter;
+    }
+
+    public void setEvictableAfter(Duration evictableAfter) {
+        this.evictableAfter = evictableAfter;
+    }
+}
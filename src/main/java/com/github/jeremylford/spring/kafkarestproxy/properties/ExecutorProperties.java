@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import java.time.Duration;
+
+public class ExecutorProperties {
+
+    /**
+     * Kind of threads the executor runs tasks on. AUTO uses virtual threads when running on JDK 21 or later and a bounded platform pool otherwise.
+     */
+    private Type type = Type.AUTO;
+
+    /**
+     * Number of threads kept in a platform pool, even when idle.
+     */
+    private int coreSize = 8;
+
+    /**
+     * Maximum number of threads in a platform pool, or the maximum number of concurrently running tasks with virtual threads. The value of -1 denotes no limit for virtual threads.
+     */
+    private int maxSize = 64;
+
+    /**
+     * Number of tasks a platform pool queues once all core threads are busy, before growing towards max-size. A limited virtual executor queues as many once max-size tasks are running.
+     */
+    private int queueCapacity = 1024;
+
+    /**
+     * How long threads above core-size may stay idle before they are stopped.
+     */
+    private Duration keepAlive = Duration.ofSeconds(60);
+
+    /**
+     * What to do with a task that the executor cannot accept.
+     */
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.ABORT;
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public int getCoreSize() {
+        return coreSize;
+    }
+
+    public void setCoreSize(int coreSize) {
+        this.coreSize = coreSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public Duration getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(Duration keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    public enum Type {
+        AUTO,
+        PLATFORM,
+        VIRTUAL
+    }
+
+    public enum RejectionPolicy {
+        /**
+         * Fail the submission with a RejectedExecutionException.
+         */
+        ABORT,
+        /**
+         * Run the task on the submitting thread.
+         */
+        CALLER_RUNS,
+        /**
+         * Drop the oldest queued task and retry the submission.
+         */
+        DISCARD_OLDEST
+    }
+}
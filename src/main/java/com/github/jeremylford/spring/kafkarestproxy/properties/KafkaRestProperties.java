@@ -18,19 +18,40 @@
  */
 package com.github.jeremylford.spring.kafkarestproxy.properties;
 
+import com.github.jeremylford.spring.kafkarestproxy.bulk.BulkProduceExtension;
+import com.github.jeremylford.spring.kafkarestproxy.bulk.BulkProduceResource;
 import io.confluent.kafkarest.KafkaRestConfig;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import static com.github.jeremylford.spring.kafkarestproxy.properties.PropertySupport.putArray;
+import static com.github.jeremylford.spring.kafkarestproxy.properties.PropertySupport.putBoolean;
+import static com.github.jeremylford.spring.kafkarestproxy.properties.PropertySupport.putClientConfigs;
 import static com.github.jeremylford.spring.kafkarestproxy.properties.PropertySupport.putInteger;
+import static com.github.jeremylford.spring.kafkarestproxy.properties.PropertySupport.putList;
 import static com.github.jeremylford.spring.kafkarestproxy.properties.PropertySupport.putLong;
 import static com.github.jeremylford.spring.kafkarestproxy.properties.PropertySupport.putString;
 
 @ConfigurationProperties("kafka.restproxy")
 public class KafkaRestProperties {
 
+    private static final String RATE_LIMIT_ENABLE_CONFIG = "rate.limit.enable";
+    private static final String RATE_LIMIT_PERMITS_PER_SEC_CONFIG = "rate.limit.permits.per.sec";
+    private static final String RATE_LIMIT_TIMEOUT_MS_CONFIG = "rate.limit.timeout.ms";
+    private static final String RATE_LIMIT_DEFAULT_COST_CONFIG = "rate.limit.default.cost";
+    private static final String RATE_LIMIT_COSTS_CONFIG = "rate.limit.costs";
+
     /**
      * Unique ID for this REST server instance. This is used in generating unique IDs for consumers that do not specify their ID. The ID is empty by default, which makes a single server setup easier to get up and running, but is not safe for multi-server deployments where automatic consumer IDs are used.
      */
@@ -113,6 +134,116 @@ public class KafkaRestProperties {
      */
     private long simpleConsumerPoolTimeoutMillis = Long.parseLong(KafkaRestConfig.SIMPLE_CONSUMER_POOL_TIMEOUT_MS_DEFAULT);
 
+    /**
+     * Tuning preset for the producer and consumer configs. Keys set explicitly under client, producer or consumer take precedence over the preset.
+     */
+    private TuningPreset preset;
+
+    /**
+     * Configs applied to every Kafka client created by the proxy, such as security settings. Passed through with the "client." prefix.
+     */
+    private Map<String, String> client = new HashMap<>();
+
+    /**
+     * Kafka producer configs, such as linger.ms, batch.size, compression.type or buffer.memory. Passed through with the "producer." prefix and take precedence over client.
+     */
+    private Map<String, String> producer = new HashMap<>();
+
+    /**
+     * Kafka consumer configs, such as fetch.max.bytes or max.partition.fetch.bytes. Passed through with the "consumer." prefix and take precedence over client.
+     */
+    private Map<String, String> consumer = new HashMap<>();
+
+    /**
+     * Kafka admin client configs, such as request.timeout.ms or default.api.timeout.ms. Passed through with the "admin." prefix and take precedence over client.
+     */
+    private Map<String, String> admin = new HashMap<>();
+
+    /**
+     * Named executors used by the proxy, such as "async" for Jersey managed async work or "container" for the servlet container's request threads. The container executor is only replaced when configured here.
+     */
+    private Map<String, ExecutorProperties> executors = new HashMap<>();
+
+    /**
+     * Request and byte rate limits.
+     */
+    private RateLimitProperties rateLimit = new RateLimitProperties();
+
+    /**
+     * Binary bulk produce endpoint.
+     */
+    private BulkProduceProperties bulkProduce = new BulkProduceProperties();
+
+    /**
+     * Request and response compression.
+     */
+    private CompressionProperties compression = new CompressionProperties();
+
+    /**
+     * Push-based streaming consume endpoint.
+     */
+    private StreamingConsumeProperties streamingConsume = new StreamingConsumeProperties();
+
+    /**
+     * Caching of cluster, broker, topic and partition metadata responses.
+     */
+    private MetadataCacheProperties metadataCache = new MetadataCacheProperties();
+
+    /**
+     * Warm-up run before the application reports readiness.
+     */
+    private WarmupProperties warmup = new WarmupProperties();
+
+    /**
+     * Routing of consumer instance requests between proxy nodes.
+     */
+    private AffinityProperties affinity = new AffinityProperties();
+
+    /**
+     * Limits on the number and memory of v2 consumer instances.
+     */
+    private ConsumerInstancesProperties consumerInstances = new ConsumerInstancesProperties();
+
+    /**
+     * Caching of schema registry lookups.
+     */
+    private SchemaCacheProperties schemaCache = new SchemaCacheProperties();
+
+    /**
+     * Adaptive limits on concurrent produce, consume and admin requests.
+     */
+    private ConcurrencyLimitProperties concurrencyLimit = new ConcurrencyLimitProperties();
+
+    /**
+     * Isolation of produce, consume and admin requests from each other.
+     */
+    private BulkheadProperties bulkheads = new BulkheadProperties();
+
+    /**
+     * Per-stage request timing for Java Flight Recorder and the Server-Timing header.
+     */
+    private TimingProperties timing = new TimingProperties();
+
+    /**
+     * Runtime changes to executor sizes, rate limits and consumer settings.
+     */
+    private ReloadProperties reload = new ReloadProperties();
+
+    /**
+     * Background read-ahead for v2 consumer instances.
+     */
+    private PrefetchProperties prefetch = new PrefetchProperties();
+
+    /**
+     * Additional Kafka clusters served next to the one configured above, keyed by a name used in metric tags. v3 requests are routed by the cluster id in their path, everything else goes to the default cluster.
+     */
+    private Map<String, ClusterProperties> clusters = new LinkedHashMap<>();
+
+    /**
+     * Request and Kafka client metrics.
+     */
+    private MetricsProperties metrics = new MetricsProperties();
+
     public String getId() {
         return id;
     }
@@ -241,6 +372,182 @@ public class KafkaRestProperties {
         this.simpleConsumerPoolTimeoutMillis = simpleConsumerPoolTimeoutMillis;
     }
 
+    public TuningPreset getPreset() {
+        return preset;
+    }
+
+    public void setPreset(TuningPreset preset) {
+        this.preset = preset;
+    }
+
+    public Map<String, String> getClient() {
+        return client;
+    }
+
+    public void setClient(Map<String, String> client) {
+        this.client = client;
+    }
+
+    public Map<String, String> getProducer() {
+        return producer;
+    }
+
+    public void setProducer(Map<String, String> producer) {
+        this.producer = producer;
+    }
+
+    public Map<String, String> getConsumer() {
+        return consumer;
+    }
+
+    public void setConsumer(Map<String, String> consumer) {
+        this.consumer = consumer;
+    }
+
+    public Map<String, String> getAdmin() {
+        return admin;
+    }
+
+    public void setAdmin(Map<String, String> admin) {
+        this.admin = admin;
+    }
+
+    public Map<String, ExecutorProperties> getExecutors() {
+        return executors;
+    }
+
+    public void setExecutors(Map<String, ExecutorProperties> executors) {
+        this.executors = executors;
+    }
+
+    public RateLimitProperties getRateLimit() {
+        return rateLimit;
+    }
+
+    public void setRateLimit(RateLimitProperties rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    public BulkProduceProperties getBulkProduce() {
+        return bulkProduce;
+    }
+
+    public void setBulkProduce(BulkProduceProperties bulkProduce) {
+        this.bulkProduce = bulkProduce;
+    }
+
+    public CompressionProperties getCompression() {
+        return compression;
+    }
+
+    public void setCompression(CompressionProperties compression) {
+        this.compression = compression;
+    }
+
+    public StreamingConsumeProperties getStreamingConsume() {
+        return streamingConsume;
+    }
+
+    public void setStreamingConsume(StreamingConsumeProperties streamingConsume) {
+        this.streamingConsume = streamingConsume;
+    }
+
+    public MetadataCacheProperties getMetadataCache() {
+        return metadataCache;
+    }
+
+    public void setMetadataCache(MetadataCacheProperties metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+
+    public WarmupProperties getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(WarmupProperties warmup) {
+        this.warmup = warmup;
+    }
+
+    public AffinityProperties getAffinity() {
+        return affinity;
+    }
+
+    public void setAffinity(AffinityProperties affinity) {
+        this.affinity = affinity;
+    }
+
+    public ConsumerInstancesProperties getConsumerInstances() {
+        return consumerInstances;
+    }
+
+    public void setConsumerInstances(ConsumerInstancesProperties consumerInstances) {
+        this.consumerInstances = consumerInstances;
+    }
+
+    public SchemaCacheProperties getSchemaCache() {
+        return schemaCache;
+    }
+
+    public void setSchemaCache(SchemaCacheProperties schemaCache) {
+        this.schemaCache = schemaCache;
+    }
+
+    public ConcurrencyLimitProperties getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public void setConcurrencyLimit(ConcurrencyLimitProperties concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    public BulkheadProperties getBulkheads() {
+        return bulkheads;
+    }
+
+    public void setBulkheads(BulkheadProperties bulkheads) {
+        this.bulkheads = bulkheads;
+    }
+
+    public TimingProperties getTiming() {
+        return timing;
+    }
+
+    public void setTiming(TimingProperties timing) {
+        this.timing = timing;
+    }
+
+    public ReloadProperties getReload() {
+        return reload;
+    }
+
+    public void setReload(ReloadProperties reload) {
+        this.reload = reload;
+    }
+
+    public PrefetchProperties getPrefetch() {
+        return prefetch;
+    }
+
+    public void setPrefetch(PrefetchProperties prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public Map<String, ClusterProperties> getClusters() {
+        return clusters;
+    }
+
+    public void setClusters(Map<String, ClusterProperties> clusters) {
+        this.clusters = clusters;
+    }
+
+    public MetricsProperties getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(MetricsProperties metrics) {
+        this.metrics = metrics;
+    }
+
     public Properties asProperties() {
         Properties properties = new Properties();
 
@@ -261,8 +568,66 @@ public class KafkaRestProperties {
         putInteger(properties, KafkaRestConfig.SIMPLE_CONSUMER_MAX_POOL_SIZE_CONFIG, this.simpleConsumerMaxPoolSize);
         putLong(properties, KafkaRestConfig.SIMPLE_CONSUMER_POOL_TIMEOUT_MS_CONFIG, this.simpleConsumerPoolTimeoutMillis);
 
+        putRateLimitConfigs(properties);
+        if (this.bulkProduce.isEnabled()) {
+            putString(properties, KafkaRestConfig.KAFKA_REST_RESOURCE_EXTENSION_CONFIG, BulkProduceExtension.class.getName());
+            putInteger(properties, BulkProduceResource.MAX_RECORDS_CONFIG, this.bulkProduce.getMaxRecords());
+            putInteger(properties, BulkProduceResource.MAX_RECORD_BYTES_CONFIG, this.bulkProduce.getMaxRecordBytes());
+        }
+        putKafkaClientConfigs(properties);
+
         return properties;
     }
 
+    private void putRateLimitConfigs(Properties properties) {
+        RateLimitProperties.Endpoint endpoint = this.rateLimit.getEndpoint();
+        if (endpoint.getEnabled() != null) {
+            putBoolean(properties, RATE_LIMIT_ENABLE_CONFIG, endpoint.getEnabled());
+        }
+        putInteger(properties, RATE_LIMIT_PERMITS_PER_SEC_CONFIG, endpoint.getPermitsPerSecond());
+        if (endpoint.getTimeout() != null) {
+            putLong(properties, RATE_LIMIT_TIMEOUT_MS_CONFIG, endpoint.getTimeout().toMillis());
+        }
+        putInteger(properties, RATE_LIMIT_DEFAULT_COST_CONFIG, endpoint.getDefaultCost());
+        if (endpoint.getCosts() != null) {
+            List<String> costs = new ArrayList<>();
+            endpoint.getCosts().forEach((name, cost) -> costs.add(name + "=" + cost));
+            putList(properties, RATE_LIMIT_COSTS_CONFIG, costs);
+        }
+    }
+
+    private void putKafkaClientConfigs(Properties properties) {
+        Map<String, String> producer = new HashMap<>();
+        Map<String, String> consumer = new HashMap<>();
+        if (this.preset != null) {
+            producer.putAll(this.preset.getProducer());
+            consumer.putAll(this.preset.getConsumer());
+            if (this.client != null) {
+                producer.keySet().removeAll(this.client.keySet());
+                consumer.keySet().removeAll(this.client.keySet());
+            }
+        }
+        if (this.producer != null) {
+            producer.putAll(this.producer);
+        }
+        if (this.consumer != null) {
+            consumer.putAll(this.consumer);
+        }
+
+        Set<String> clientConfigs = new HashSet<>(ProducerConfig.configNames());
+        clientConfigs.addAll(ConsumerConfig.configNames());
+        clientConfigs.addAll(AdminClientConfig.configNames());
+
+        List<String> errors = new ArrayList<>();
+        putClientConfigs(properties, "client", this.client, clientConfigs, errors);
+        putClientConfigs(properties, "producer", producer, ProducerConfig.configNames(), errors);
+        putClientConfigs(properties, "consumer", consumer, ConsumerConfig.configNames(), errors);
+        putClientConfigs(properties, "admin", this.admin, AdminClientConfig.configNames(), errors);
+
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Invalid Kafka client configuration under kafka.restproxy: " + String.join(", ", errors));
+        }
+    }
+
 
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import java.time.Duration;
+
+public class MetadataCacheProperties {
+
+    /**
+     * Whether to cache the responses of the cluster, broker, topic and partition GET endpoints.
+     */
+    private boolean enabled = false;
+
+    /**
+     * How long a request waits for a concurrent identical request to load the response before loading it itself.
+     */
+    private Duration coalesceTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Cache for the cluster endpoints.
+     */
+    private Resource clusters = new Resource(Duration.ofSeconds(30), 100);
+
+    /**
+     * Cache for the broker endpoints.
+     */
+    private Resource brokers = new Resource(Duration.ofSeconds(30), 1000);
+
+    /**
+     * Cache for the topic endpoints.
+     */
+    private Resource topics = new Resource(Duration.ofSeconds(10), 1000);
+
+    /**
+     * Cache for the partition endpoints.
+     */
+    private Resource partitions = new Resource(Duration.ofSeconds(10), 10000);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getCoalesceTimeout() {
+        return coalesceTimeout;
+    }
+
+    public void setCoalesceTimeout(Duration coalesceTimeout) {
+        this.coalesceTimeout = coalesceTimeout;
+    }
+
+    public Resource getClusters() {
+        return clusters;
+    }
+
+    public void setClusters(Resource clusters) {
+        this.clusters = clusters;
+    }
+
+    public Resource getBrokers() {
+        return brokers;
+    }
+
+    public void setBrokers(Resource brokers) {
+        this.brokers = brokers;
+    }
+
+    public Resource getTopics() {
+        return topics;
+    }
+
+    public void setTopics(Resource topics) {
+        this.topics = topics;
+    }
+
+    public Resource getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(Resource partitions) {
+        this.partitions = partitions;
+    }
+
+    public static class Resource {
+
+        /**
+         * How long a response is served from the cache. 0 disables caching for the resource.
+         */
+        private Duration ttl;
+
+        /**
+         * Maximum number of cached responses.
+         */
+        private long maxSize;
+
+        public Resource() {
+            this(Duration.ofSeconds(10), 1000);
+        }
+
+        Resource(Duration ttl, long maxSize) {
+            this.ttl = ttl;
+            this.maxSize = maxSize;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(long maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MetricsProperties {
+
+    /**
+     * Whether to record metrics for the proxy endpoints and the Kafka clients it creates.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Whether to bridge the metrics of the Kafka producer, consumer and admin clients created by the proxy into the MeterRegistry.
+     */
+    private boolean kafkaClients = true;
+
+    /**
+     * Percentiles published for the request latency timers.
+     */
+    private double[] percentiles = {0.5, 0.95, 0.99};
+
+    /**
+     * Whether to publish a percentile histogram for the request latency timers, for monitoring systems that aggregate percentiles themselves.
+     */
+    private boolean percentileHistogram = false;
+
+    /**
+     * Topics that are always tagged by name. They count towards max-topic-tags.
+     */
+    private List<String> topics = new ArrayList<>();
+
+    /**
+     * Maximum number of distinct topic tag values. Once reached, requests for any further topic are tagged as "other" and per-topic Kafka client metrics for it are not bridged.
+     */
+    private int maxTopicTags = 50;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isKafkaClients() {
+        return kafkaClients;
+    }
+
+    public void setKafkaClients(boolean kafkaClients) {
+        this.kafkaClients = kafkaClients;
+    }
+
+    public double[] getPercentiles() {
+        return percentiles;
+    }
+
+    public void setPercentiles(double[] percentiles) {
+        this.percentiles = percentiles;
+    }
+
+    public boolean isPercentileHistogram() {
+        return percentileHistogram;
+    }
+
+    public void setPercentileHistogram(boolean percentileHistogram) {
+        this.percentileHistogram = percentileHistogram;
+    }
+
+    public List<String> getTopics() {
+        return topics;
+    }
+
+    public void setTopics(List<String> topics) {
+        this.topics = topics;
+    }
+
+    public int getMaxTopicTags() {
+        return maxTopicTags;
+    }
+
+    public void setMaxTopicTags(int maxTopicTags) {
+        this.maxTopicTags = maxTopicTags;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import java.time.Duration;
+
+public class PrefetchProperties {
+
+    /**
+     * Whether v2 consumer instances keep polling in the background, so records are ready when the next consume request arrives.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Bytes of records fetched ahead per consumer instance. Prefetching stops while the buffer holds this much, so it can exceed this by one poll, and resumes once requests have drained it.
+     */
+    private long bufferBytes = 4 * 1024 * 1024;
+
+    /**
+     * How long a single background poll of the Kafka consumer blocks. Other requests to the same instance wait at most this long for the consumer.
+     */
+    private Duration pollTimeout = Duration.ofMillis(50);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getBufferBytes() {
+        return bufferBytes;
+    }
+
+    public void setBufferBytes(long bufferBytes) {
+        this.bufferBytes = bufferBytes;
+    }
+
+    public Duration getPollTimeout() {
+        return pollTimeout;
+    }
+
+    public void setPollTimeout(Duration pollTimeout) {
+        this.pollTimeout = pollTimeout;
+    }
+}
@@ -18,12 +18,26 @@
  */
 package com.github.jeremylford.spring.kafkarestproxy.properties;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @SuppressWarnings("unchecked")
 class PropertySupport {
 
+    /**
+     * Client configs the proxy sets itself and that therefore cannot be passed through.
+     */
+    private static final Set<String> MANAGED_CLIENT_CONFIGS = new HashSet<>(Arrays.asList(
+            "bootstrap.servers",
+            "key.serializer",
+            "value.serializer",
+            "key.deserializer",
+            "value.deserializer"
+    ));
+
     static Map putInteger(Map properties, String key, Integer value) {
         if (value != null) {
             properties.put(key, String.valueOf(value));
@@ -83,4 +97,25 @@ class PropertySupport {
 
         return properties;
     }
+
+    static Map putClientConfigs(Map properties, String prefix, Map<String, String> values, Set<String> knownConfigs, List<String> errors) {
+        if (values == null) {
+            return properties;
+        }
+
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String key = prefix + "." + entry.getKey();
+            if (!knownConfigs.contains(entry.getKey())) {
+                errors.add(key + " is not a known " + prefix + " config");
+            } else if (MANAGED_CLIENT_CONFIGS.contains(entry.getKey())) {
+                errors.add(key + " is managed by the proxy and cannot be overridden");
+            } else if (properties.containsKey(key)) {
+                errors.add(key + " conflicts with the proxy config of the same name");
+            } else if (entry.getValue() != null) {
+                properties.put(key, entry.getValue());
+            }
+        }
+
+        return properties;
+    }
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+public class RateLimitProperties {
+
+    /**
+     * Whether to apply the global, cluster, topic and principal limits below.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Limits shared by all requests.
+     */
+    private Limit global = new Limit();
+
+    /**
+     * Limits applied to each cluster separately. v2 requests, which do not name a cluster, share the "default" cluster.
+     */
+    private Limit cluster = new Limit();
+
+    /**
+     * Limits applied to each topic separately.
+     */
+    private Limit topic = new Limit();
+
+    /**
+     * Limits applied to each authenticated principal separately. Unauthenticated requests share the "anonymous" principal.
+     */
+    private Limit principal = new Limit();
+
+    /**
+     * Per-topic limits that replace the topic limits for the named topics.
+     */
+    private Map<String, Limit> topics = new HashMap<>();
+
+    /**
+     * Per-principal limits that replace the principal limits for the named principals.
+     */
+    private Map<String, Limit> principals = new HashMap<>();
+
+    /**
+     * Maximum number of clusters, topics or principals tracked individually per scope. Idle entries are dropped first; beyond that, further keys share a single limit.
+     */
+    private int maxKeys = 10000;
+
+    /**
+     * Settings of kafka-rest's own RateLimitFeature, which limits requests per endpoint.
+     */
+    private Endpoint endpoint = new Endpoint();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Limit getGlobal() {
+        return global;
+    }
+
+    public void setGlobal(Limit global) {
+        this.global = global;
+    }
+
+    public Limit getCluster() {
+        return cluster;
+    }
+
+    public void setCluster(Limit cluster) {
+        this.cluster = cluster;
+    }
+
+    public Limit getTopic() {
+        return topic;
+    }
+
+    public void setTopic(Limit topic) {
+        this.topic = topic;
+    }
+
+    public Limit getPrincipal() {
+        return principal;
+    }
+
+    public void setPrincipal(Limit principal) {
+        this.principal = principal;
+    }
+
+    public Map<String, Limit> getTopics() {
+        return topics;
+    }
+
+    public void setTopics(Map<String, Limit> topics) {
+        this.topics = topics;
+    }
+
+    public Map<String, Limit> getPrincipals() {
+        return principals;
+    }
+
+    public void setPrincipals(Map<String, Limit> principals) {
+        this.principals = principals;
+    }
+
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    public void setMaxKeys(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(Endpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public static class Limit {
+
+        /**
+         * Maximum sustained number of requests per second. 0 disables the request limit.
+         */
+        private double requestsPerSecond = 0;
+
+        /**
+         * Maximum sustained number of request body bytes per second. 0 disables the byte limit.
+         */
+        private long bytesPerSecond = 0;
+
+        /**
+         * How much unused capacity can be saved up for bursts, expressed as time at the sustained rate.
+         */
+        private Duration burst = Duration.ofSeconds(1);
+
+        public double getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        public void setRequestsPerSecond(double requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+        }
+
+        public long getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        public void setBytesPerSecond(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        public Duration getBurst() {
+            return burst;
+        }
+
+        public void setBurst(Duration burst) {
+            this.burst = burst;
+        }
+    }
+
+    public static class Endpoint {
+
+        /**
+         * Whether kafka-rest's per-endpoint rate limiting is enabled. Unset keeps the kafka-rest default.
+         */
+        private Boolean enabled;
+
+        /**
+         * Maximum number of permits per second for each endpoint.
+         */
+        private Integer permitsPerSecond;
+
+        /**
+         * How long a request waits for a permit before it is rejected.
+         */
+        private Duration timeout;
+
+        /**
+         * Permits consumed by a request to an endpoint without an entry in costs.
+         */
+        private Integer defaultCost;
+
+        /**
+         * Permits consumed per request, keyed by kafka-rest endpoint name.
+         */
+        private Map<String, Integer> costs = new HashMap<>();
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Integer getPermitsPerSecond() {
+            return permitsPerSecond;
+        }
+
+        public void setPermitsPerSecond(Integer permitsPerSecond) {
+            this.permitsPerSecond = permitsPerSecond;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public Integer getDefaultCost() {
+            return defaultCost;
+        }
+
+        public void setDefaultCost(Integer defaultCost) {
+            this.defaultCost = defaultCost;
+        }
+
+        public Map<String, Integer> getCosts() {
+            return costs;
+        }
+
+        public void setCosts(Map<String, Integer> costs) {
+            this.costs = costs;
+        }
+    }
+}
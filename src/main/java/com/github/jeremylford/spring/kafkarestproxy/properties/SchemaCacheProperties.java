@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import java.time.Duration;
+
+public class SchemaCacheProperties {
+
+    /**
+     * Whether to put a shared cache between kafka-rest and the schema registry at schemaRegistryUrl.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of schema lookups by ID, subject and version, or schema content that are cached. These never change once they succeeded.
+     */
+    private int maxSize = 10000;
+
+    /**
+     * How long the latest version of a subject is cached.
+     */
+    private Duration latestTtl = Duration.ofSeconds(30);
+
+    /**
+     * How long a lookup waits for a concurrent identical lookup before querying the registry itself.
+     */
+    private Duration coalesceTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Timeout of requests to the schema registry.
+     */
+    private Duration requestTimeout = Duration.ofSeconds(30);
+
+    /**
+     * File the cached lookups are saved to and reloaded from at startup, so a restarted proxy does not query the registry for every schema again. Unset disables the snapshot.
+     */
+    private String snapshot;
+
+    /**
+     * How often the snapshot is written, in addition to shutdown.
+     */
+    private Duration snapshotInterval = Duration.ofMinutes(5);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Duration getLatestTtl() {
+        return latestTtl;
+    }
+
+    public void setLatestTtl(Duration latestTtl) {
+        this.latestTtl = latestTtl;
+    }
+
+    public Duration getCoalesceTimeout() {
+        return coalesceTimeout;
+    }
+
+    public void setCoalesceTimeout(Duration coalesceTimeout) {
+        this.coalesceTimeout = coalesceTimeout;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public String getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(String snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public Duration getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(Duration snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+}
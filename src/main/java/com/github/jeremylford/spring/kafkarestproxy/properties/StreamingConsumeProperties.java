@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import java.time.Duration;
+
+public class StreamingConsumeProperties {
+
+    /**
+     * Whether to enable the streaming consume endpoint at /consumers/{group}/streams/{instance}.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of streaming consumer instances.
+     */
+    private int maxInstances = 1000;
+
+    /**
+     * Bytes of records buffered per instance ahead of the client. Above this, the instance's partitions are paused until the client has read half of it.
+     */
+    private long bufferBytes = 8 * 1024 * 1024;
+
+    /**
+     * How long a single poll of the Kafka consumer blocks.
+     */
+    private Duration pollTimeout = Duration.ofMillis(100);
+
+    /**
+     * Interval of keep-alive messages on an idle stream, which also detect disconnected clients.
+     */
+    private Duration heartbeatInterval = Duration.ofSeconds(15);
+
+    /**
+     * How often offsets of delivered records are committed in the "delivered" commit mode.
+     */
+    private Duration commitInterval = Duration.ofSeconds(1);
+
+    /**
+     * Commit mode for instances created without a commit parameter.
+     */
+    private CommitMode commitMode = CommitMode.DELIVERED;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxInstances() {
+        return maxInstances;
+    }
+
+    public void setMaxInstances(int maxInstances) {
+        this.maxInstances = maxInstances;
+    }
+
+    public long getBufferBytes() {
+        return bufferBytes;
+    }
+
+    public void setBufferBytes(long bufferBytes) {
+        this.bufferBytes = bufferBytes;
+    }
+
+    public Duration getPollTimeout() {
+        return pollTimeout;
+    }
+
+    public void setPollTimeout(Duration pollTimeout) {
+        this.pollTimeout = pollTimeout;
+    }
+
+    public Duration getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(Duration heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public Duration getCommitInterval() {
+        return commitInterval;
+    }
+
+    public void setCommitInterval(Duration commitInterval) {
+        this.commitInterval = commitInterval;
+    }
+
+    public CommitMode getCommitMode() {
+        return commitMode;
+    }
+
+    public void setCommitMode(CommitMode commitMode) {
+        this.commitMode = commitMode;
+    }
+
+    public enum CommitMode {
+        /**
+         * Offsets are committed once records have been written and flushed to the client. Records are delivered at least once.
+         */
+        DELIVERED,
+        /**
+         * The Kafka consumer commits its position periodically, including records still buffered in the proxy. Records may be lost if the proxy fails.
+         */
+        AUTO,
+        /**
+         * Offsets are never committed. Positions survive reconnects to the same instance only.
+         */
+        NONE
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Named sets of producer and consumer defaults. Any key set explicitly under {@code client}, {@code producer} or
+ * {@code consumer} takes precedence over the preset.
+ */
+public enum TuningPreset {
+
+    /**
+     * Larger, compressed batches and fuller fetches at the cost of some latency.
+     */
+    THROUGHPUT(
+            map(
+                    ProducerConfig.LINGER_MS_CONFIG, "20",
+                    ProducerConfig.BATCH_SIZE_CONFIG, "262144",
+                    ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4",
+                    ProducerConfig.BUFFER_MEMORY_CONFIG, "134217728"
+            ),
+            map(
+                    ConsumerConfig.FETCH_MIN_BYTES_CONFIG, "65536",
+                    ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, "100",
+                    ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, "4194304",
+                    ConsumerConfig.FETCH_MAX_BYTES_CONFIG, "104857600"
+            )
+    ),
+
+    /**
+     * Send and fetch as soon as data is available.
+     */
+    LOW_LATENCY(
+            map(
+                    ProducerConfig.LINGER_MS_CONFIG, "0",
+                    ProducerConfig.BATCH_SIZE_CONFIG, "16384",
+                    ProducerConfig.COMPRESSION_TYPE_CONFIG, "none"
+            ),
+            map(
+                    ConsumerConfig.FETCH_MIN_BYTES_CONFIG, "1",
+                    ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, "10"
+            )
+    );
+
+    private final Map<String, String> producer;
+    private final Map<String, String> consumer;
+
+    TuningPreset(Map<String, String> producer, Map<String, String> consumer) {
+        this.producer = producer;
+        this.consumer = consumer;
+    }
+
+    public Map<String, String> getProducer() {
+        return producer;
+    }
+
+    public Map<String, String> getConsumer() {
+        return consumer;
+    }
+
+    private static Map<String, String> map(String... keyValues) {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            map.put(keyValues[i], keyValues[i + 1]);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.properties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+public class WarmupProperties {
+
+    /**
+     * Whether to warm the proxy up before the application reports itself ready to accept traffic.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Topics whose metadata is fetched by the producer and the Admin client during warm-up.
+     */
+    private List<String> topics = new ArrayList<>();
+
+    /**
+     * How many times the synthetic produce and consume entities are read and written, to get the serialization path compiled.
+     */
+    private int serializationIterations = 2000;
+
+    /**
+     * Upper bound for the whole warm-up. Phases that are still running when it expires are abandoned and the application becomes ready regardless.
+     */
+    private Duration timeout = Duration.ofSeconds(60);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<String> getTopics() {
+        return topics;
+    }
+
+    public void setTopics(List<String> topics) {
+        this.topics = topics;
+    }
+
+    public int getSerializationIterations() {
+        return serializationIterations;
+    }
+
+    public void setSerializationIterations(int serializationIterations) {
+        this.serializationIterations = serializationIterations;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+}
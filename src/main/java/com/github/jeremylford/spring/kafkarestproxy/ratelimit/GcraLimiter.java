@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket using the generic cell rate algorithm. The whole state is a single "theoretical arrival
+ * time": every permit pushes it forward by the emission interval, and a request is admitted as long as that time
+ * stays within the burst window ahead of now. Acquiring is one CAS in the common case and allocates nothing.
+ */
+final class GcraLimiter {
+
+    private final double intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrival;
+
+    GcraLimiter(double permitsPerSecond, long burstNanos, long now) {
+        this.intervalNanos = 1_000_000_000d / permitsPerSecond;
+        this.burstNanos = Math.max(burstNanos, (long) Math.ceil(intervalNanos));
+        this.theoreticalArrival = new AtomicLong(now);
+    }
+
+    /**
+     * Takes {@code permits} if they fit within the burst window.
+     *
+     * @return 0 when the permits were taken, otherwise the nanoseconds until they would fit
+     */
+    long tryAcquire(long permits, long now) {
+        long increment = increment(permits);
+        // a request larger than the whole burst is let through once the bucket is full rather than never
+        long window = Math.max(burstNanos, increment);
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + increment;
+            long wait = next - now - window;
+            if (wait > 0) {
+                return wait;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Takes {@code permits} unconditionally, for usage only known after the request was admitted.
+     */
+    void debit(long permits, long now) {
+        long increment = increment(permits);
+        while (true) {
+            long current = theoreticalArrival.get();
+            if (theoreticalArrival.compareAndSet(current, Math.max(current, now) + increment)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns permits taken by a request that was rejected by a later limit.
+     */
+    void refund(long permits) {
+        theoreticalArrival.addAndGet(-increment(permits));
+    }
+
+    /**
+     * Whether the bucket is full, in which case it is indistinguishable from a new one.
+     */
+    boolean isIdle(long now) {
+        return theoreticalArrival.get() - now <= 0;
+    }
+
+    private long increment(long permits) {
+        return (long) (permits * intervalNanos);
+    }
+}
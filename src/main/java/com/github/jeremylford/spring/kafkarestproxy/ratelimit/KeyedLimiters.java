@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.ratelimit;
+
+import com.github.jeremylford.spring.kafkarestproxy.properties.RateLimitProperties;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * One {@link GcraLimiter} per key (cluster, topic or principal) for either requests or bytes. The number of keys is
+ * bounded: idle limiters are dropped when the bound is reached, which is safe because a full bucket behaves exactly
+ * like a new one, and keys that still do not fit share an overflow limiter.
+ */
+final class KeyedLimiters {
+
+    private static final GcraLimiter UNLIMITED = null;
+    private static final long PRUNE_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final RateLimitProperties.Limit defaultLimit;
+    private final Map<String, RateLimitProperties.Limit> overrides;
+    private final ToDoubleFunction<RateLimitProperties.Limit> rate;
+    private final int maxKeys;
+    private final Map<String, GcraLimiter> limiters = new ConcurrentHashMap<>();
+    private final AtomicBoolean pruning = new AtomicBoolean();
+    private volatile long lastPrune;
+    private final GcraLimiter overflow;
+
+    KeyedLimiters(RateLimitProperties.Limit defaultLimit, Map<String, RateLimitProperties.Limit> overrides,
+                  ToDoubleFunction<RateLimitProperties.Limit> rate, int maxKeys, long now) {
+        this(defaultLimit, overrides, rate, maxKeys, now, null);
+    }
+
+    /**
+     * @param previous limiters being replaced, whose state is kept for every key that still has the same rate and
+     *                 burst, or null to start all keys with a full burst
+     */
+    KeyedLimiters(RateLimitProperties.Limit defaultLimit, Map<String, RateLimitProperties.Limit> overrides,
+                  ToDoubleFunction<RateLimitProperties.Limit> rate, int maxKeys, long now, KeyedLimiters previous) {
+        this.defaultLimit = defaultLimit;
+        this.overrides = overrides != null ? overrides : Collections.emptyMap();
+        this.rate = rate;
+        this.maxKeys = maxKeys;
+        this.lastPrune = now - PRUNE_INTERVAL_NANOS;
+        if (previous == null) {
+            this.overflow = create(defaultLimit, now);
+            return;
+        }
+
+        this.overflow = sameLimit(previous.defaultLimit, defaultLimit) ? previous.overflow : create(defaultLimit, now);
+        for (Map.Entry<String, GcraLimiter> entry : previous.limiters.entrySet()) {
+            String key = entry.getKey();
+            if (limiters.size() < maxKeys
+                    && sameLimit(previous.overrides.getOrDefault(key, previous.defaultLimit), this.overrides.getOrDefault(key, defaultLimit))) {
+                limiters.put(key, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the limiter for {@code key}, or null if the key is not limited
+     */
+    GcraLimiter get(String key, long now) {
+        GcraLimiter limiter = limiters.get(key);
+        if (limiter != null) {
+            return limiter;
+        }
+
+        RateLimitProperties.Limit limit = overrides.getOrDefault(key, defaultLimit);
+        if (rate.applyAsDouble(limit) <= 0) {
+            return UNLIMITED;
+        }
+        if (limiters.size() >= maxKeys) {
+            prune(now);
+            if (limiters.size() >= maxKeys && !overrides.containsKey(key)) {
+                return overflow;
+            }
+        }
+        return limiters.computeIfAbsent(key, k -> create(limit, now));
+    }
+
+    private void prune(long now) {
+        if (now - lastPrune >= PRUNE_INTERVAL_NANOS && pruning.compareAndSet(false, true)) {
+            try {
+                limiters.values().removeIf(limiter -> limiter.isIdle(now));
+                lastPrune = now;
+            } finally {
+                pruning.set(false);
+            }
+        }
+    }
+
+    private boolean sameLimit(RateLimitProperties.Limit a, RateLimitProperties.Limit b) {
+        return rate.applyAsDouble(a) == rate.applyAsDouble(b) && a.getBurst().equals(b.getBurst());
+    }
+
+    private GcraLimiter create(RateLimitProperties.Limit limit, long now) {
+        double permitsPerSecond = rate.applyAsDouble(limit);
+        if (permitsPerSecond <= 0) {
+            return UNLIMITED;
+        }
+        return new GcraLimiter(permitsPerSecond, limit.getBurst().toNanos(), now);
+    }
+}
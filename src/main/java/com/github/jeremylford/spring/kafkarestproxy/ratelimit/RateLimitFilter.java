@@ -0,0 +1,311 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.ratelimit;
+
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import com.github.jeremylford.spring.kafkarestproxy.properties.RateLimitProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the request count and byte volume limits configured under {@code kafka.restproxy.rate-limit} globally and
+ * per cluster, topic and principal. Throttled requests get a 429 with {@code Retry-After}.
+ * <p>
+ * Request bodies are charged up front from {@code Content-Length}. Bodies of unknown length are charged as they are
+ * read, so they cannot be rejected themselves but delay the requests that follow.
+ */
+@Priority(Priorities.AUTHORIZATION + 100)
+public class RateLimitFilter implements ContainerRequestFilter, ReaderInterceptor {
+
+    static final String GLOBAL = "*";
+    static final String DEFAULT_CLUSTER = "default";
+    static final String ANONYMOUS = "anonymous";
+
+    private static final String[] SCOPES = {"global", "cluster", "topic", "principal"};
+    private static final String UNCHARGED_BYTES_PROPERTY = RateLimitFilter.class.getName() + ".unchargedBytes";
+
+    private final Counter accepted;
+    private final Counter[] throttledRequests = new Counter[SCOPES.length];
+    private final Counter[] throttledBytes = new Counter[SCOPES.length];
+
+    private volatile Limiters limiters;
+
+    /**
+     * @throws IllegalArgumentException if a limit is invalid
+     */
+    public RateLimitFilter(RateLimitProperties properties, KafkaRestMetrics metrics) {
+        Limiters.validate(properties);
+        this.limiters = new Limiters(properties, System.nanoTime(), null);
+
+        MeterRegistry registry = metrics != null ? metrics.getRegistry() : null;
+        this.accepted = counter(registry, "accepted", "none", "none");
+        for (int i = 0; i < SCOPES.length; i++) {
+            throttledRequests[i] = counter(registry, "throttled", SCOPES[i], "requests");
+            throttledBytes[i] = counter(registry, "throttled", SCOPES[i], "bytes");
+        }
+    }
+
+    /**
+     * Replaces all limits at once. Keys whose rate and burst are unchanged keep their state, the others start over
+     * with a full burst under the new limits.
+     *
+     * @throws IllegalArgumentException if a limit is invalid, leaving the current limits in place
+     */
+    public void reconfigure(RateLimitProperties properties) {
+        Limiters.validate(properties);
+        this.limiters = new Limiters(properties, System.nanoTime(), limiters);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        long now = System.nanoTime();
+        Limiters limiters = this.limiters;
+        KeyedLimiters[] requestLimiters = limiters.requests;
+        KeyedLimiters[] byteLimiters = limiters.bytes;
+        String[] keys = keys(requestContext);
+        int length = requestContext.getLength();
+
+        GcraLimiter[] taken = new GcraLimiter[SCOPES.length * 2];
+        long[] takenPermits = new long[taken.length];
+        int count = 0;
+        List<GcraLimiter> unchargedBytes = null;
+
+        for (int i = 0; i < SCOPES.length; i++) {
+            if (keys[i] == null) {
+                continue;
+            }
+
+            GcraLimiter requests = requestLimiters[i].get(keys[i], now);
+            if (requests != null) {
+                long wait = requests.tryAcquire(1, now);
+                if (wait > 0) {
+                    refund(taken, takenPermits, count);
+                    throttle(requestContext, throttledRequests[i], "Request rate", i, keys[i], wait);
+                    return;
+                }
+                taken[count] = requests;
+                takenPermits[count++] = 1;
+            }
+
+            GcraLimiter bytes = byteLimiters[i].get(keys[i], now);
+            if (bytes != null) {
+                if (length < 0) {
+                    if (unchargedBytes == null) {
+                        unchargedBytes = new ArrayList<>(SCOPES.length);
+                    }
+                    unchargedBytes.add(bytes);
+                } else {
+                    long wait = bytes.tryAcquire(length, now);
+                    if (wait > 0) {
+                        refund(taken, takenPermits, count);
+                        throttle(requestContext, throttledBytes[i], "Byte rate", i, keys[i], wait);
+                        return;
+                    }
+                    taken[count] = bytes;
+                    takenPermits[count++] = length;
+                }
+            }
+        }
+
+        if (unchargedBytes != null) {
+            requestContext.setProperty(UNCHARGED_BYTES_PROPERTY, unchargedBytes);
+        }
+        if (accepted != null) {
+            accepted.increment();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+        Object unchargedBytes = context.getProperty(UNCHARGED_BYTES_PROPERTY);
+        if (unchargedBytes != null) {
+            context.removeProperty(UNCHARGED_BYTES_PROPERTY);
+            context.setInputStream(new ChargingInputStream(context.getInputStream(), (List<GcraLimiter>) unchargedBytes));
+        }
+        return context.proceed();
+    }
+
+    private static String[] keys(ContainerRequestContext requestContext) {
+        MultivaluedMap<String, String> pathParameters = requestContext.getUriInfo().getPathParameters();
+
+        String cluster = pathParameters.getFirst("clusterId");
+        String topic = pathParameters.getFirst("topicName");
+        if (topic == null) {
+            topic = pathParameters.getFirst("topic");
+        }
+
+        SecurityContext securityContext = requestContext.getSecurityContext();
+        Principal principal = securityContext != null ? securityContext.getUserPrincipal() : null;
+
+        return new String[]{
+                GLOBAL,
+                cluster != null ? cluster : DEFAULT_CLUSTER,
+                topic,
+                principal != null ? principal.getName() : ANONYMOUS
+        };
+    }
+
+    private static void refund(GcraLimiter[] taken, long[] takenPermits, int count) {
+        for (int i = 0; i < count; i++) {
+            taken[i].refund(takenPermits[i]);
+        }
+    }
+
+    private static void throttle(ContainerRequestContext requestContext, Counter throttled, String limit, int scope, String key, long waitNanos) {
+        if (throttled != null) {
+            throttled.increment();
+        }
+
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+        String message = limit + " limit exceeded for " + SCOPES[scope] + (scope == 0 ? "" : " '" + key + "'");
+
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error_code", Response.Status.TOO_MANY_REQUESTS.getStatusCode());
+        error.put("message", message);
+
+        requestContext.abortWith(Response.status(Response.Status.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(error)
+                .build());
+    }
+
+    private static Counter counter(MeterRegistry registry, String outcome, String scope, String limit) {
+        if (registry == null) {
+            return null;
+        }
+        return Counter.builder("kafka.restproxy.rate.limit.requests")
+                .tag("outcome", outcome)
+                .tag("scope", scope)
+                .tag("limit", limit)
+                .register(registry);
+    }
+
+    private static final class Limiters {
+
+        private final KeyedLimiters[] requests;
+        private final KeyedLimiters[] bytes;
+
+        Limiters(RateLimitProperties properties, long now, Limiters previous) {
+            int maxKeys = properties.getMaxKeys();
+            this.requests = new KeyedLimiters[]{
+                    new KeyedLimiters(properties.getGlobal(), null, RateLimitProperties.Limit::getRequestsPerSecond, 1, now,
+                            previous != null ? previous.requests[0] : null),
+                    new KeyedLimiters(properties.getCluster(), null, RateLimitProperties.Limit::getRequestsPerSecond, maxKeys, now,
+                            previous != null ? previous.requests[1] : null),
+                    new KeyedLimiters(properties.getTopic(), properties.getTopics(), RateLimitProperties.Limit::getRequestsPerSecond, maxKeys, now,
+                            previous != null ? previous.requests[2] : null),
+                    new KeyedLimiters(properties.getPrincipal(), properties.getPrincipals(), RateLimitProperties.Limit::getRequestsPerSecond, maxKeys, now,
+                            previous != null ? previous.requests[3] : null),
+            };
+            this.bytes = new KeyedLimiters[]{
+                    new KeyedLimiters(properties.getGlobal(), null, RateLimitProperties.Limit::getBytesPerSecond, 1, now,
+                            previous != null ? previous.bytes[0] : null),
+                    new KeyedLimiters(properties.getCluster(), null, RateLimitProperties.Limit::getBytesPerSecond, maxKeys, now,
+                            previous != null ? previous.bytes[1] : null),
+                    new KeyedLimiters(properties.getTopic(), properties.getTopics(), RateLimitProperties.Limit::getBytesPerSecond, maxKeys, now,
+                            previous != null ? previous.bytes[2] : null),
+                    new KeyedLimiters(properties.getPrincipal(), properties.getPrincipals(), RateLimitProperties.Limit::getBytesPerSecond, maxKeys, now,
+                            previous != null ? previous.bytes[3] : null),
+            };
+        }
+
+        private static void validate(RateLimitProperties properties) {
+            List<String> errors = new ArrayList<>();
+            if (properties.getMaxKeys() < 1) {
+                errors.add("max-keys must be positive");
+            }
+            validate(errors, "global", properties.getGlobal());
+            validate(errors, "cluster", properties.getCluster());
+            validate(errors, "topic", properties.getTopic());
+            validate(errors, "principal", properties.getPrincipal());
+            properties.getTopics().forEach((topic, limit) -> validate(errors, "topics." + topic, limit));
+            properties.getPrincipals().forEach((principal, limit) -> validate(errors, "principals." + principal, limit));
+            if (!errors.isEmpty()) {
+                throw new IllegalArgumentException("Invalid rate limits under kafka.restproxy.rate-limit: " + String.join(", ", errors));
+            }
+        }
+
+        private static void validate(List<String> errors, String name, RateLimitProperties.Limit limit) {
+            if (limit.getRequestsPerSecond() < 0 || limit.getBytesPerSecond() < 0) {
+                errors.add(name + " rates must not be negative");
+            }
+            if (limit.getBurst() == null || limit.getBurst().isNegative()) {
+                errors.add(name + ".burst must not be negative");
+            }
+        }
+    }
+
+    private static final class ChargingInputStream extends FilterInputStream {
+
+        private final List<GcraLimiter> limiters;
+
+        ChargingInputStream(InputStream in, List<GcraLimiter> limiters) {
+            super(in);
+            this.limiters = limiters;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                charge(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                charge(read);
+            }
+            return read;
+        }
+
+        private void charge(long bytes) {
+            long now = System.nanoTime();
+            for (GcraLimiter limiter : limiters) {
+                limiter.debit(bytes, now);
+            }
+        }
+    }
+}
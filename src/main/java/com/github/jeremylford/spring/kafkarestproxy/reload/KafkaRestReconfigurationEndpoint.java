@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.reload;
+
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shows and changes the reloadable settings. A write takes a {@code properties} object of property names to new
+ * values, for example {@code {"properties": {"kafka.restproxy.executors.async.max-size": "128"}}}; an empty write
+ * reloads them from the environment.
+ */
+@Endpoint(id = "kafkarestproxy")
+public class KafkaRestReconfigurationEndpoint {
+
+    private final KafkaRestReconfigurer reconfigurer;
+
+    public KafkaRestReconfigurationEndpoint(KafkaRestReconfigurer reconfigurer) {
+        this.reconfigurer = reconfigurer;
+    }
+
+    @ReadOperation
+    public Map<String, Object> settings() {
+        return reconfigurer.settings();
+    }
+
+    @WriteOperation
+    public Map<String, Object> reconfigure(@Nullable Map<String, Object> properties) {
+        Map<String, String> changes = new LinkedHashMap<>();
+        if (properties != null) {
+            properties.forEach((name, value) -> changes.put(name, value != null ? value.toString() : null));
+        }
+        try {
+            return reconfigurer.reconfigure(changes);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+    }
+}
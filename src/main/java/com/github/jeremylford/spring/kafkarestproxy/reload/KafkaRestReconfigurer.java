@@ -0,0 +1,274 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.reload;
+
+import com.github.jeremylford.spring.kafkarestproxy.executor.KafkaRestExecutors;
+import com.github.jeremylford.spring.kafkarestproxy.properties.ExecutorProperties;
+import com.github.jeremylford.spring.kafkarestproxy.properties.KafkaRestProperties;
+import com.github.jeremylford.spring.kafkarestproxy.properties.RateLimitProperties;
+import com.github.jeremylford.spring.kafkarestproxy.ratelimit.RateLimitFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.BindException;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.PropertySourcesPlaceholdersResolver;
+import org.springframework.boot.context.properties.source.ConfigurationPropertyName;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySource;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Applies the reloadable subset of {@link KafkaRestProperties} while the proxy runs: executor sizes, rate limits,
+ * {@code max-poll-records} and {@code consume-request-max-bytes}. Everything else still needs a restart.
+ * <p>
+ * A change is bound from the environment, with the overrides given to {@link #reconfigure(Map)} on top, and then
+ * applied to each component in turn. If a component rejects it, the ones already changed are set back to the
+ * previous values, so a change is applied either completely or not at all. Spring Cloud's
+ * {@code EnvironmentChangeEvent} triggers a reload from the environment when Spring Cloud is present.
+ */
+public class KafkaRestReconfigurer implements ApplicationListener<ApplicationEvent> {
+
+    static final String PREFIX = "kafka.restproxy";
+
+    private static final String ENVIRONMENT_CHANGE_EVENT = "org.springframework.cloud.context.environment.EnvironmentChangeEvent";
+    private static final List<String> RATE_LIMIT_SCOPES = Arrays.asList("global", "cluster", "topic", "principal");
+    private static final List<String> LIMIT_SETTINGS = Arrays.asList("requestspersecond", "bytespersecond", "burst");
+    private static final List<String> EXECUTOR_SETTINGS = Arrays.asList("coresize", "maxsize", "keepalive");
+
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaRestReconfigurer.class);
+
+    private final ConfigurableEnvironment environment;
+    private final ReloadableKafkaRestConfig config;
+    private final KafkaRestExecutors executors;
+    private final RateLimitFilter rateLimitFilter;
+
+    private KafkaRestProperties current;
+    private Map<String, String> overrides = Collections.emptyMap();
+
+    public KafkaRestReconfigurer(KafkaRestProperties properties, ConfigurableEnvironment environment, ReloadableKafkaRestConfig config,
+                                 KafkaRestExecutors executors, RateLimitFilter rateLimitFilter) {
+        this.current = properties;
+        this.environment = environment;
+        this.config = config;
+        this.executors = executors;
+        this.rateLimitFilter = rateLimitFilter;
+    }
+
+    /**
+     * @return the reloadable settings currently in effect, by property name
+     */
+    public synchronized Map<String, Object> settings() {
+        return settings(current);
+    }
+
+    /**
+     * Rebinds the reloadable settings from the environment, with {@code changes} added to the overrides of earlier
+     * calls, and applies them. A null value drops an earlier override.
+     *
+     * @return the settings in effect afterwards
+     * @throws IllegalArgumentException if a change is not reloadable or invalid, in which case nothing is changed
+     */
+    public synchronized Map<String, Object> reconfigure(Map<String, String> changes) {
+        for (String name : changes.keySet()) {
+            if (!isReloadable(name)) {
+                throw new IllegalArgumentException(name + " cannot be changed at runtime");
+            }
+        }
+        Map<String, String> overrides = new LinkedHashMap<>(this.overrides);
+        changes.forEach((name, value) -> {
+            if (value != null) {
+                overrides.put(name, value);
+            } else {
+                overrides.remove(name);
+            }
+        });
+
+        KafkaRestProperties previous = current;
+        KafkaRestProperties next = bind(overrides);
+        validate(next);
+
+        Map<String, Object> before = settings(previous);
+        Map<String, Object> after = settings(next);
+        if (before.equals(after)) {
+            this.overrides = overrides;
+            return after;
+        }
+
+        List<Runnable> rollback = new ArrayList<>();
+        try {
+            config.reload(next.getMaxPollRecords(), next.getConsumeRequestMaxBytes());
+            rollback.add(() -> config.reload(previous.getMaxPollRecords(), previous.getConsumeRequestMaxBytes()));
+
+            executors.reconfigure(next.getExecutors());
+            rollback.add(() -> executors.reconfigure(previous.getExecutors()));
+
+            // rebuilding the limits refills the buckets of changed keys, so leave them alone unless they changed
+            if (rateLimitFilter != null && !rateLimits(before).equals(rateLimits(after))) {
+                rateLimitFilter.reconfigure(next.getRateLimit());
+                rollback.add(() -> rateLimitFilter.reconfigure(previous.getRateLimit()));
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Rejected reconfiguration, rolling back: {}", e.getMessage());
+            for (int i = rollback.size() - 1; i >= 0; i--) {
+                try {
+                    rollback.get(i).run();
+                } catch (RuntimeException rollbackFailure) {
+                    LOG.error("Could not roll back reconfiguration", rollbackFailure);
+                }
+            }
+            throw e instanceof IllegalArgumentException ? e : new IllegalArgumentException(e.getMessage(), e);
+        }
+
+        this.current = next;
+        this.overrides = overrides;
+        after.forEach((name, value) -> {
+            Object old = before.get(name);
+            if (!Objects.equals(old, value)) {
+                LOG.info("Reconfigured {}: {} -> {}", name, old, value);
+            }
+        });
+        return after;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (ENVIRONMENT_CHANGE_EVENT.equals(event.getClass().getName())) {
+            try {
+                reconfigure(Collections.emptyMap());
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Kept the previous settings after an environment change: {}", e.getMessage());
+            }
+        }
+    }
+
+    private KafkaRestProperties bind(Map<String, String> overrides) {
+        List<ConfigurationPropertySource> sources = new ArrayList<>();
+        sources.add(new MapConfigurationPropertySource(overrides));
+        ConfigurationPropertySources.get(environment).forEach(sources::add);
+        Binder binder = new Binder(sources, new PropertySourcesPlaceholdersResolver(environment));
+        try {
+            return binder.bind(PREFIX, Bindable.of(KafkaRestProperties.class)).orElseGet(KafkaRestProperties::new);
+        } catch (BindException e) {
+            String message = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+            Object name = e.getProperty() != null ? e.getProperty().getName() : e.getName();
+            throw new IllegalArgumentException("Could not bind " + name + ": " + message, e);
+        }
+    }
+
+    private static void validate(KafkaRestProperties properties) {
+        List<String> errors = new ArrayList<>();
+        if (properties.getMaxPollRecords() < 1) {
+            errors.add(PREFIX + ".max-poll-records must be positive");
+        }
+        if (properties.getConsumeRequestMaxBytes() < 1) {
+            errors.add(PREFIX + ".consume-request-max-bytes must be positive");
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException(String.join(", ", errors));
+        }
+    }
+
+    private Map<String, Object> settings(KafkaRestProperties properties) {
+        Map<String, Object> settings = new TreeMap<>();
+        settings.put(PREFIX + ".max-poll-records", properties.getMaxPollRecords());
+        settings.put(PREFIX + ".consume-request-max-bytes", properties.getConsumeRequestMaxBytes());
+        properties.getExecutors().forEach((name, executor) -> putExecutor(settings, PREFIX + ".executors." + name, executor));
+        if (rateLimitFilter != null) {
+            RateLimitProperties rateLimit = properties.getRateLimit();
+            String prefix = PREFIX + ".rate-limit";
+            settings.put(prefix + ".max-keys", rateLimit.getMaxKeys());
+            putLimit(settings, prefix + ".global", rateLimit.getGlobal());
+            putLimit(settings, prefix + ".cluster", rateLimit.getCluster());
+            putLimit(settings, prefix + ".topic", rateLimit.getTopic());
+            putLimit(settings, prefix + ".principal", rateLimit.getPrincipal());
+            rateLimit.getTopics().forEach((topic, limit) -> putLimit(settings, prefix + ".topics." + topic, limit));
+            rateLimit.getPrincipals().forEach((principal, limit) -> putLimit(settings, prefix + ".principals." + principal, limit));
+        }
+        return settings;
+    }
+
+    private static Map<String, Object> rateLimits(Map<String, Object> settings) {
+        Map<String, Object> rateLimits = new TreeMap<>();
+        settings.forEach((name, value) -> {
+            if (name.startsWith(PREFIX + ".rate-limit.")) {
+                rateLimits.put(name, value);
+            }
+        });
+        return rateLimits;
+    }
+
+    private static void putExecutor(Map<String, Object> settings, String prefix, ExecutorProperties executor) {
+        settings.put(prefix + ".core-size", executor.getCoreSize());
+        settings.put(prefix + ".max-size", executor.getMaxSize());
+        settings.put(prefix + ".keep-alive", executor.getKeepAlive());
+    }
+
+    private static void putLimit(Map<String, Object> settings, String prefix, RateLimitProperties.Limit limit) {
+        settings.put(prefix + ".requests-per-second", limit.getRequestsPerSecond());
+        settings.put(prefix + ".bytes-per-second", limit.getBytesPerSecond());
+        settings.put(prefix + ".burst", limit.getBurst());
+    }
+
+    /**
+     * Whether {@code name}, in any of the relaxed forms Spring Boot accepts, is one of the reloadable settings.
+     */
+    private boolean isReloadable(String name) {
+        ConfigurationPropertyName property = ConfigurationPropertyName.adapt(name, '.');
+        if (!ConfigurationPropertyName.of(PREFIX).isAncestorOf(property)) {
+            return false;
+        }
+        int size = property.getNumberOfElements();
+        List<String> elements = new ArrayList<>(size - 2);
+        for (int i = 2; i < size; i++) {
+            elements.add(property.getElement(i, ConfigurationPropertyName.Form.UNIFORM));
+        }
+
+        if (elements.size() == 1) {
+            return elements.get(0).equals("maxpollrecords") || elements.get(0).equals("consumerequestmaxbytes");
+        }
+        if (elements.get(0).equals("executors")) {
+            return elements.size() == 3 && EXECUTOR_SETTINGS.contains(elements.get(2));
+        }
+        if (elements.get(0).equals("ratelimit") && rateLimitFilter != null) {
+            if (elements.size() == 2) {
+                return elements.get(1).equals("maxkeys");
+            }
+            if (elements.size() == 3) {
+                return RATE_LIMIT_SCOPES.contains(elements.get(1)) && LIMIT_SETTINGS.contains(elements.get(2));
+            }
+            return elements.size() == 4
+                    && (elements.get(1).equals("topics") || elements.get(1).equals("principals"))
+                    && LIMIT_SETTINGS.contains(elements.get(3));
+        }
+        return false;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.reload;
+
+import io.confluent.kafkarest.KafkaRestConfig;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * {@link KafkaRestConfig} whose consumer settings can be replaced after startup. kafka-rest reads them through the
+ * config's getters whenever it creates a consumer instance or a read task, so new values apply to those created
+ * afterwards while existing consumers keep theirs.
+ */
+public class ReloadableKafkaRestConfig extends KafkaRestConfig {
+
+    private volatile Map<String, Object> reloaded = Collections.emptyMap();
+
+    public ReloadableKafkaRestConfig(Properties properties) {
+        super(properties);
+    }
+
+    void reload(int maxPollRecords, long consumeRequestMaxBytes) {
+        Map<String, Object> reloaded = new HashMap<>();
+        reloaded.put(MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        reloaded.put(CONSUMER_REQUEST_MAX_BYTES_CONFIG, consumeRequestMaxBytes);
+        this.reloaded = reloaded;
+    }
+
+    @Override
+    protected Object get(String key) {
+        Object value = reloaded.get(key);
+        return value != null ? value : super.get(key);
+    }
+}
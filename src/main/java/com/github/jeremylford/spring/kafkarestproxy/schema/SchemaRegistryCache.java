@@ -0,0 +1,440 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.schema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.jeremylford.spring.kafkarestproxy.executor.KafkaRestExecutors;
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import com.github.jeremylford.spring.kafkarestproxy.properties.SchemaCacheProperties;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * A caching schema registry endpoint on the loopback interface, which kafka-rest is pointed at instead of the real
+ * registry. The lookups kafka-rest's serializers make, schemas by ID, subject versions and schema lookups within a
+ * subject, are served from a bounded cache shared by every client of the proxy. Concurrent misses for the same lookup
+ * wait for a single registry request. Everything else, registrations in particular, passes through unchanged.
+ * <p>
+ * Successful lookups never change, apart from the latest version of a subject, requested as "latest" or -1, which is
+ * cached for a short time only.
+ * They are saved to an optional snapshot file and reloaded at startup, so a restarted proxy does not send the registry
+ * a lookup for every schema in use at once.
+ * <p>
+ * Responses are cached per set of credentials, so a lookup is never answered with what another caller was allowed to
+ * see. Lookups made with credentials are left out of the snapshot.
+ */
+public class SchemaRegistryCache implements AutoCloseable {
+
+    public static final String REQUESTS = "kafka.restproxy.schema.cache.requests";
+    public static final String SIZE = "kafka.restproxy.schema.cache.size";
+
+    private static final Logger LOG = LoggerFactory.getLogger(SchemaRegistryCache.class);
+
+    private static final Pattern IMMUTABLE_GET = Pattern.compile("/schemas/ids/\\d+(/schema)?|/subjects/[^/]+/versions/\\d+(/schema)?");
+    private static final Pattern LATEST_GET = Pattern.compile("/subjects/[^/]+/versions/(latest|-1)(/schema)?");
+    private static final Pattern SUBJECT_LOOKUP = Pattern.compile("/subjects/[^/]+/?");
+
+    /**
+     * Hop-by-hop headers, and the headers {@link HttpClient} sets itself.
+     */
+    private static final Set<String> UNFORWARDED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        UNFORWARDED_HEADERS.addAll(Arrays.asList("Connection", "Content-Length", "Date", "Expect", "Host",
+                "Keep-Alive", "TE", "Trailer", "Transfer-Encoding", "Upgrade", "Via"));
+    }
+
+    /**
+     * Headers that identify the caller to the registry.
+     */
+    private static final List<String> CREDENTIAL_HEADERS = Arrays.asList("Authorization", "Proxy-Authorization", "Cookie");
+
+    private static final String CREDENTIALS_KEY = "\ncredentials ";
+
+    private final SchemaCacheProperties properties;
+    private final ObjectMapper objectMapper;
+    private final List<URI> upstreams = new ArrayList<>();
+    private final AtomicInteger upstream = new AtomicInteger();
+    private final HttpClient httpClient;
+    private final Cache<String, Entry> immutable;
+    private final Cache<String, Entry> latest;
+    private final Map<String, CompletableFuture<Entry>> loads = new ConcurrentHashMap<>();
+    private final HttpServer server;
+    private final ScheduledExecutorService snapshots;
+    private final Map<Result, Counter> requests = new EnumMap<>(Result.class);
+
+    public SchemaRegistryCache(SchemaCacheProperties properties, String schemaRegistryUrl, ObjectMapper objectMapper,
+                               KafkaRestExecutors executors, KafkaRestMetrics metrics) throws IOException {
+        if (schemaRegistryUrl == null || schemaRegistryUrl.trim().isEmpty()) {
+            throw new IllegalArgumentException("kafka.restproxy.schema-cache requires kafka.restproxy.schema-registry-url");
+        }
+        for (String url : schemaRegistryUrl.split(",")) {
+            url = url.trim();
+            upstreams.add(URI.create(url.endsWith("/") ? url.substring(0, url.length() - 1) : url));
+        }
+
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(properties.getRequestTimeout())
+                .build();
+        this.immutable = CacheBuilder.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .build();
+        this.latest = CacheBuilder.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfterWrite(properties.getLatestTtl().toNanos(), TimeUnit.NANOSECONDS)
+                .build();
+
+        MeterRegistry registry = metrics != null ? metrics.getRegistry() : null;
+        if (registry != null) {
+            for (Result result : Result.values()) {
+                requests.put(result, Counter.builder(REQUESTS)
+                        .tag("result", result.tag)
+                        .register(registry));
+            }
+            Gauge.builder(SIZE, immutable, Cache::size)
+                    .register(registry);
+        }
+
+        if (properties.getSnapshot() != null) {
+            load(Paths.get(properties.getSnapshot()));
+        }
+
+        Executor executor = executors.get(KafkaRestExecutors.SCHEMA_CACHE);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.setExecutor(exchange -> {
+            try {
+                executor.execute(exchange);
+            } catch (RejectedExecutionException e) {
+                // the server's dispatcher thread would die on the exception, so a full executor slows it down instead
+                exchange.run();
+            }
+        });
+        this.server.createContext("/", this::handle);
+        this.server.start();
+
+        if (properties.getSnapshot() != null) {
+            long interval = properties.getSnapshotInterval().toMillis();
+            this.snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "kafka-rest-schema-cache-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.snapshots.scheduleWithFixedDelay(this::snapshot, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.snapshots = null;
+        }
+    }
+
+    /**
+     * @return the URL kafka-rest uses as its schema registry
+     */
+    public String getUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            URI uri = exchange.getRequestURI();
+            String path = uri.getRawPath();
+            byte[] body = exchange.getRequestBody().readAllBytes();
+
+            Cache<String, Entry> cache = null;
+            if ("GET".equals(method) && IMMUTABLE_GET.matcher(path).matches()) {
+                cache = immutable;
+            } else if ("GET".equals(method) && LATEST_GET.matcher(path).matches()) {
+                cache = latest;
+            } else if ("POST".equals(method) && SUBJECT_LOOKUP.matcher(path).matches()) {
+                cache = immutable;
+            }
+
+            if (cache == null) {
+                Entry response = fetch(exchange, method, uri, body);
+                if (!"GET".equals(method) && response.status < 300) {
+                    // a new version may have been registered
+                    latest.invalidateAll();
+                }
+                record(Result.PASSTHROUGH);
+                respond(exchange, response);
+                return;
+            }
+
+            String key = key(method, uri, body, exchange.getRequestHeaders());
+            Entry entry = cache.getIfPresent(key);
+            if (entry != null) {
+                record(Result.HIT);
+                respond(exchange, entry);
+                return;
+            }
+
+            CompletableFuture<Entry> load = new CompletableFuture<>();
+            CompletableFuture<Entry> pending = loads.putIfAbsent(key, load);
+            if (pending != null) {
+                entry = await(key, pending);
+                if (entry != null) {
+                    record(Result.COALESCED);
+                    respond(exchange, entry);
+                    return;
+                }
+                load = null;
+            }
+
+            record(Result.MISS);
+            try {
+                entry = fetch(exchange, method, uri, body);
+                if (entry.status == 200) {
+                    cache.put(key, entry);
+                }
+            } finally {
+                if (load != null) {
+                    loads.remove(key, load);
+                    load.complete(entry != null && entry.status == 200 ? entry : null);
+                }
+            }
+            respond(exchange, entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(503, -1);
+        } catch (IOException e) {
+            LOG.warn("Schema registry request {} {} failed: {}", exchange.getRequestMethod(), exchange.getRequestURI(), e.toString());
+            exchange.sendResponseHeaders(502, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Entry await(String key, CompletableFuture<Entry> pending) throws InterruptedException {
+        try {
+            return pending.get(properties.getCoalesceTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            return null;
+        } catch (TimeoutException e) {
+            // the load was lost, let the next miss start a new one
+            loads.remove(key, pending);
+            return null;
+        }
+    }
+
+    /**
+     * Sends the request to the registry, failing over to the next configured URL on connection errors.
+     */
+    private Entry fetch(HttpExchange exchange, String method, URI uri, byte[] body) throws IOException, InterruptedException {
+        IOException failure = null;
+        for (int attempt = 0; attempt < upstreams.size(); attempt++) {
+            int index = Math.floorMod(upstream.get(), upstreams.size());
+            URI target = URI.create(upstreams.get(index) + uri.getRawPath() + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : ""));
+            HttpRequest.Builder request = HttpRequest.newBuilder(target)
+                    .timeout(properties.getRequestTimeout())
+                    .method(method, body.length > 0 ? HttpRequest.BodyPublishers.ofByteArray(body) : HttpRequest.BodyPublishers.noBody());
+            exchange.getRequestHeaders().forEach((name, values) -> {
+                if (!UNFORWARDED_HEADERS.contains(name)) {
+                    values.forEach(value -> request.header(name, value));
+                }
+            });
+            try {
+                HttpResponse<byte[]> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+                return new Entry(response.statusCode(), response.headers().firstValue("Content-Type").orElse(null), response.body());
+            } catch (IOException e) {
+                failure = e;
+                upstream.compareAndSet(index, index + 1);
+            }
+        }
+        throw failure;
+    }
+
+    private static void respond(HttpExchange exchange, Entry entry) throws IOException {
+        if (entry.contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", entry.contentType);
+        }
+        exchange.sendResponseHeaders(entry.status, entry.body.length > 0 ? entry.body.length : -1);
+        if (entry.body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(entry.body);
+            }
+        }
+    }
+
+    private static String key(String method, URI uri, byte[] body, Headers headers) {
+        StringBuilder key = new StringBuilder(method).append(' ').append(uri.getRawPath());
+        if (uri.getRawQuery() != null) {
+            key.append('?').append(uri.getRawQuery());
+        }
+        if (body.length > 0) {
+            key.append(' ').append(digest(body));
+        }
+
+        // digested, so the cache holds no usable secret
+        StringBuilder credentials = new StringBuilder();
+        for (String header : CREDENTIAL_HEADERS) {
+            List<String> values = headers.get(header);
+            if (values != null) {
+                credentials.append(header).append(':').append(String.join(",", values)).append('\n');
+            }
+        }
+        if (credentials.length() > 0) {
+            key.append(CREDENTIALS_KEY).append(digest(credentials.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+        return key.toString();
+    }
+
+    private static String digest(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void load(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        try {
+            JsonNode snapshot = objectMapper.readTree(path.toFile());
+            int loaded = 0;
+            for (JsonNode entry : snapshot.path("entries")) {
+                JsonNode contentType = entry.get("content_type");
+                immutable.put(entry.path("key").asText(), new Entry(200, contentType != null ? contentType.asText() : null,
+                        Base64.getDecoder().decode(entry.path("body").asText())));
+                loaded++;
+            }
+            LOG.info("Loaded {} schema lookups from {}", loaded, path);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Ignoring unreadable schema cache snapshot {}: {}", path, e.toString());
+        }
+    }
+
+    private void snapshot() {
+        Path path = Paths.get(properties.getSnapshot());
+        try {
+            ObjectNode snapshot = objectMapper.createObjectNode();
+            ArrayNode entries = snapshot.putArray("entries");
+            immutable.asMap().forEach((key, entry) -> {
+                if (key.contains(CREDENTIALS_KEY)) {
+                    return;
+                }
+                ObjectNode node = entries.addObject();
+                node.put("key", key);
+                node.put("content_type", entry.contentType);
+                node.put("body", Base64.getEncoder().encodeToString(entry.body));
+            });
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path temporary = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+            objectMapper.writeValue(temporary.toFile(), snapshot);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to write schema cache snapshot {}: {}", path, e.toString());
+        }
+    }
+
+    private void record(Result result) {
+        Counter counter = requests.get(result);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        if (snapshots != null) {
+            snapshots.shutdownNow();
+            snapshot();
+        }
+    }
+
+    private enum Result {
+        HIT("hit"),
+        COALESCED("coalesced"),
+        MISS("miss"),
+        PASSTHROUGH("passthrough");
+
+        private final String tag;
+
+        Result(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static final class Entry {
+
+        final int status;
+        final String contentType;
+        final byte[] body;
+
+        Entry(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+}
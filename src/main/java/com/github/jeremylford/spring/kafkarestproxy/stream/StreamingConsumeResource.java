@@ -0,0 +1,249 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.stream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.jeremylford.spring.kafkarestproxy.properties.StreamingConsumeProperties;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Streams the records of a streaming consumer instance as newline delimited JSON or as Server-Sent Events, for as
+ * long as the client stays connected. The first request for an instance creates it from the {@code topics} parameter;
+ * later requests reattach to it and continue after the last record delivered.
+ * <p>
+ * Each record is a JSON object with topic, partition, offset, timestamp, key, value and headers. Keys and values are
+ * base64 for {@code format=binary}, embedded JSON for {@code format=json} and UTF-8 strings for {@code format=string}.
+ * SSE events carry {@code topic:partition:offset} as their id, which browsers send back as {@code Last-Event-ID}.
+ */
+@Path("/consumers/{group}/streams/{instance}")
+public class StreamingConsumeResource {
+
+    public static final String NDJSON = "application/x-ndjson";
+
+    private static final int FLUSH_RECORDS = 1000;
+
+    private final StreamingConsumerRegistry registry;
+    private final ObjectMapper objectMapper;
+    private final Duration heartbeatInterval;
+
+    public StreamingConsumeResource(StreamingConsumerRegistry registry, ObjectMapper objectMapper, Duration heartbeatInterval) {
+        this.registry = registry;
+        this.objectMapper = objectMapper;
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    @GET
+    @Produces({NDJSON, MediaType.SERVER_SENT_EVENTS})
+    public Response stream(
+            @PathParam("group") String group,
+            @PathParam("instance") String instance,
+            @QueryParam("topics") String topics,
+            @QueryParam("commit") String commit,
+            @QueryParam("format") @DefaultValue("binary") String format,
+            @HeaderParam("Last-Event-ID") String lastEventId,
+            @Context HttpHeaders headers
+    ) {
+        Format embeddedFormat = parse(Format.class, "format", format);
+        StreamingConsumeProperties.CommitMode commitMode = commit != null ? parse(StreamingConsumeProperties.CommitMode.class, "commit", commit) : null;
+        List<String> topicList = topics == null ? Collections.emptyList() : Arrays.stream(topics.split(","))
+                .map(String::trim)
+                .filter(topic -> !topic.isEmpty())
+                .collect(Collectors.toList());
+
+        StreamingConsumer consumer;
+        try {
+            consumer = registry.getOrCreate(group, instance, topicList, commitMode);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ServiceUnavailableException(e.getMessage());
+        }
+        boolean sse = isSse(headers);
+        if (!consumer.attach(lastEventId)) {
+            throw new ClientErrorException("Instance " + instance + " is already streaming", Response.Status.CONFLICT);
+        }
+
+        StreamingOutput output = out -> {
+            try {
+                write(consumer, out, sse, embeddedFormat);
+            } finally {
+                consumer.detach();
+            }
+        };
+        return Response.ok(output, sse ? MediaType.SERVER_SENT_EVENTS : NDJSON)
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .build();
+    }
+
+    @DELETE
+    public Response delete(@PathParam("group") String group, @PathParam("instance") String instance) {
+        if (!registry.delete(group, instance)) {
+            throw new NotFoundException("Instance " + instance + " not found");
+        }
+        return Response.noContent().build();
+    }
+
+    private void write(StreamingConsumer consumer, OutputStream out, boolean sse, Format format) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        // an initial flush commits the response headers so the client sees the stream open
+        generator.flush();
+
+        Map<TopicPartition, Long> unflushed = new HashMap<>();
+        int unflushedRecords = 0;
+        long heartbeatNanos = heartbeatInterval.toNanos();
+        try {
+            while (!consumer.isClosed()) {
+                ConsumerRecord<byte[], byte[]> record = consumer.next(unflushed.isEmpty() ? heartbeatNanos : 0, TimeUnit.NANOSECONDS);
+                if (record == null || unflushedRecords >= FLUSH_RECORDS) {
+                    if (record == null && unflushed.isEmpty()) {
+                        generator.writeRaw(sse ? ":\n\n" : "\n");
+                    }
+                    generator.flush();
+                    consumer.delivered(unflushed);
+                    unflushed.clear();
+                    unflushedRecords = 0;
+                    if (record == null) {
+                        continue;
+                    }
+                }
+                writeRecord(generator, record, sse, format);
+                unflushed.put(new TopicPartition(record.topic(), record.partition()), record.offset() + 1);
+                unflushedRecords++;
+            }
+            generator.flush();
+            consumer.delivered(unflushed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private void writeRecord(JsonGenerator generator, ConsumerRecord<byte[], byte[]> record, boolean sse, Format format) throws IOException {
+        if (sse) {
+            generator.writeRaw("id: " + record.topic() + ':' + record.partition() + ':' + record.offset() + "\nevent: record\ndata: ");
+        }
+        generator.writeStartObject();
+        generator.writeStringField("topic", record.topic());
+        generator.writeNumberField("partition", record.partition());
+        generator.writeNumberField("offset", record.offset());
+        generator.writeNumberField("timestamp", record.timestamp());
+        generator.writeFieldName("key");
+        writeData(generator, record.key(), format);
+        generator.writeFieldName("value");
+        writeData(generator, record.value(), format);
+        if (record.headers().iterator().hasNext()) {
+            generator.writeArrayFieldStart("headers");
+            for (Header header : record.headers()) {
+                generator.writeStartObject();
+                generator.writeStringField("key", header.key());
+                generator.writeFieldName("value");
+                writeData(generator, header.value(), Format.BINARY);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+        generator.writeRaw(sse ? "\n\n" : "\n");
+    }
+
+    private void writeData(JsonGenerator generator, byte[] data, Format format) throws IOException {
+        if (data == null) {
+            generator.writeNull();
+            return;
+        }
+        switch (format) {
+            case JSON:
+                try {
+                    generator.writeTree(objectMapper.readTree(data));
+                } catch (JsonProcessingException e) {
+                    // not JSON after all, deliver it rather than failing the stream
+                    generator.writeString(new String(data, StandardCharsets.UTF_8));
+                }
+                break;
+            case STRING:
+                generator.writeString(new String(data, StandardCharsets.UTF_8));
+                break;
+            default:
+                generator.writeBinary(data);
+        }
+    }
+
+    private static boolean isSse(HttpHeaders headers) {
+        for (MediaType mediaType : headers.getAcceptableMediaTypes()) {
+            if (mediaType.isCompatible(MediaType.SERVER_SENT_EVENTS_TYPE) && !mediaType.isWildcardType()) {
+                return true;
+            }
+            if (mediaType.isCompatible(MediaType.valueOf(NDJSON))) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String name, String value) {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid " + name + " '" + value + "'");
+        }
+    }
+
+    enum Format {
+        BINARY,
+        JSON,
+        STRING
+    }
+}
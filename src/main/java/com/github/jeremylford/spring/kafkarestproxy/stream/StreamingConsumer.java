@@ -0,0 +1,328 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.stream;
+
+import com.github.jeremylford.spring.kafkarestproxy.properties.StreamingConsumeProperties;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A consumer instance behind the streaming consume endpoint. Its own thread polls the Kafka consumer into a buffer
+ * that at most one attached stream drains to the client.
+ * <p>
+ * The Kafka consumer is only touched by the poll thread. When the buffer is over the high watermark, or no stream is
+ * attached, all partitions are paused but polling continues, so a slow or disconnected client keeps its group
+ * membership without the proxy buffering more. When a stream detaches, the partitions are rewound to the first record
+ * not yet delivered, so a reconnecting client resumes where the previous stream stopped.
+ */
+final class StreamingConsumer implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingConsumer.class);
+
+    private final String group;
+    private final String instance;
+    private final List<String> topics;
+    private final StreamingConsumeProperties.CommitMode commitMode;
+    private final Consumer<byte[], byte[]> consumer;
+    private final long highWatermark;
+    private final long lowWatermark;
+    private final Duration pollTimeout;
+    private final long commitIntervalNanos;
+
+    private final LinkedBlockingQueue<ConsumerRecord<byte[], byte[]>> buffer = new LinkedBlockingQueue<>();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    // next offset to deliver per partition, published by the stream after each flush
+    private final Map<TopicPartition, Long> delivered = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, Long> seeks = new ConcurrentHashMap<>();
+    private final AtomicBoolean attached = new AtomicBoolean();
+    // notified when a pending rewind is done or the instance closes
+    private final Object rewound = new Object();
+    private volatile boolean rewind;
+    private volatile long detachedAt;
+    private volatile boolean closed;
+
+    // poll thread only
+    private final Map<TopicPartition, Long> firstBuffered = new HashMap<>();
+    private final Map<TopicPartition, Long> committed = new HashMap<>();
+    private boolean paused;
+    private long lastCommit;
+
+    StreamingConsumer(String group, String instance, List<String> topics, StreamingConsumeProperties.CommitMode commitMode,
+                      Consumer<byte[], byte[]> consumer, StreamingConsumeProperties properties) {
+        this.group = group;
+        this.instance = instance;
+        this.topics = topics;
+        this.commitMode = commitMode;
+        this.consumer = consumer;
+        this.highWatermark = properties.getBufferBytes();
+        this.lowWatermark = properties.getBufferBytes() / 2;
+        this.pollTimeout = properties.getPollTimeout();
+        this.commitIntervalNanos = properties.getCommitInterval().toNanos();
+        this.detachedAt = System.nanoTime();
+        this.lastCommit = detachedAt;
+    }
+
+    List<String> getTopics() {
+        return topics;
+    }
+
+    @Override
+    public void run() {
+        try {
+            consumer.subscribe(topics, new RebalanceListener());
+            while (!closed) {
+                if (rewind) {
+                    rewindToDelivered();
+                    synchronized (rewound) {
+                        rewind = false;
+                        rewound.notifyAll();
+                    }
+                }
+                applySeeks();
+
+                long buffered = bufferedBytes.get();
+                boolean pause = !attached.get() || (paused ? buffered > lowWatermark : buffered >= highWatermark);
+                if (pause != paused) {
+                    if (pause) {
+                        consumer.pause(consumer.assignment());
+                    } else {
+                        consumer.resume(consumer.assignment());
+                    }
+                    paused = pause;
+                }
+
+                ConsumerRecords<byte[], byte[]> records = consumer.poll(pollTimeout);
+                for (ConsumerRecord<byte[], byte[]> record : records) {
+                    firstBuffered.putIfAbsent(new TopicPartition(record.topic(), record.partition()), record.offset());
+                    bufferedBytes.addAndGet(size(record));
+                    buffer.add(record);
+                }
+                commit(false);
+            }
+        } catch (WakeupException e) {
+            // closed
+        } catch (RuntimeException e) {
+            LOG.warn("Streaming consumer {} of group {} failed", instance, group, e);
+        } finally {
+            closed = true;
+            synchronized (rewound) {
+                rewound.notifyAll();
+            }
+            try {
+                commit(true);
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to commit the delivered offsets of streaming consumer {} of group {}", instance, group, e);
+            }
+            consumer.close();
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Attaches a stream, optionally resuming the partition of the SSE event id the client received last.
+     *
+     * @return false if another stream is attached or the instance is closed
+     */
+    boolean attach(String lastEventId) {
+        if (closed || !attached.compareAndSet(false, true)) {
+            return false;
+        }
+        if (lastEventId != null) {
+            // topic:partition:offset, topic names cannot contain ':'
+            String[] parts = lastEventId.trim().split(":");
+            if (parts.length == 3) {
+                try {
+                    TopicPartition partition = new TopicPartition(parts[0], Integer.parseInt(parts[1]));
+                    long next = Long.parseLong(parts[2]) + 1;
+                    delivered.put(partition, next);
+                    seeks.put(partition, next);
+                } catch (NumberFormatException e) {
+                    LOG.debug("Ignoring malformed Last-Event-ID {}", lastEventId);
+                }
+            }
+        }
+        return true;
+    }
+
+    void detach() {
+        detachedAt = System.nanoTime();
+        rewind = true;
+        attached.set(false);
+    }
+
+    /**
+     * @return the next buffered record, or null if none arrived within the timeout
+     */
+    ConsumerRecord<byte[], byte[]> next(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (rewind) {
+            // records buffered before the last detach are about to be discarded
+            synchronized (rewound) {
+                while (rewind && !closed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(rewound, remaining);
+                }
+                if (rewind) {
+                    // closed before the rewind, the buffer is about to be dropped as well
+                    return null;
+                }
+            }
+        }
+        ConsumerRecord<byte[], byte[]> record = buffer.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        if (record != null) {
+            bufferedBytes.addAndGet(-size(record));
+        }
+        return record;
+    }
+
+    /**
+     * Records the next offset to deliver for partitions whose records have been flushed to the client.
+     */
+    void delivered(Map<TopicPartition, Long> positions) {
+        delivered.putAll(positions);
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    boolean isExpired(long now, long timeoutNanos) {
+        return !attached.get() && now - detachedAt > timeoutNanos;
+    }
+
+    void close() {
+        closed = true;
+        synchronized (rewound) {
+            rewound.notifyAll();
+        }
+        consumer.wakeup();
+    }
+
+    private void rewindToDelivered() {
+        buffer.clear();
+        bufferedBytes.set(0);
+        for (Map.Entry<TopicPartition, Long> entry : firstBuffered.entrySet()) {
+            TopicPartition partition = entry.getKey();
+            if (consumer.assignment().contains(partition)) {
+                consumer.seek(partition, delivered.getOrDefault(partition, entry.getValue()));
+            }
+        }
+        firstBuffered.clear();
+    }
+
+    private void applySeeks() {
+        if (seeks.isEmpty()) {
+            return;
+        }
+        for (TopicPartition partition : seeks.keySet()) {
+            Long offset = seeks.remove(partition);
+            if (offset != null && consumer.assignment().contains(partition)) {
+                consumer.seek(partition, offset);
+            }
+        }
+    }
+
+    private void commit(boolean sync) {
+        if (commitMode != StreamingConsumeProperties.CommitMode.DELIVERED) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (!sync && now - lastCommit < commitIntervalNanos) {
+            return;
+        }
+        lastCommit = now;
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (Map.Entry<TopicPartition, Long> entry : delivered.entrySet()) {
+            if (!entry.getValue().equals(committed.get(entry.getKey())) && consumer.assignment().contains(entry.getKey())) {
+                offsets.put(entry.getKey(), new OffsetAndMetadata(entry.getValue()));
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+        if (sync) {
+            consumer.commitSync(offsets);
+        } else {
+            consumer.commitAsync(offsets, (result, exception) -> {
+                if (exception != null) {
+                    LOG.warn("Unable to commit offsets of streaming consumer {} of group {}", instance, group, exception);
+                }
+            });
+        }
+        offsets.forEach((partition, offset) -> committed.put(partition, offset.offset()));
+    }
+
+    private static long size(ConsumerRecord<byte[], byte[]> record) {
+        long size = Math.max(0, record.serializedKeySize()) + Math.max(0, record.serializedValueSize());
+        for (Header header : record.headers()) {
+            size += header.key().length() + (header.value() != null ? header.value().length : 0);
+        }
+        return size;
+    }
+
+    private final class RebalanceListener implements ConsumerRebalanceListener {
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            commit(true);
+            buffer.removeIf(record -> {
+                if (partitions.contains(new TopicPartition(record.topic(), record.partition()))) {
+                    bufferedBytes.addAndGet(-size(record));
+                    return true;
+                }
+                return false;
+            });
+            for (TopicPartition partition : partitions) {
+                firstBuffered.remove(partition);
+                delivered.remove(partition);
+                committed.remove(partition);
+            }
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            if (paused) {
+                consumer.pause(partitions);
+            }
+        }
+    }
+}
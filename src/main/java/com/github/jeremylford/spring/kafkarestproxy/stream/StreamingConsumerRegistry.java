@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.stream;
+
+import com.github.jeremylford.spring.kafkarestproxy.executor.KafkaRestExecutors;
+import com.github.jeremylford.spring.kafkarestproxy.properties.StreamingConsumeProperties;
+import io.confluent.kafkarest.KafkaRestConfig;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The streaming consumer instances, keyed by group and instance name. Instances without an attached stream for longer
+ * than {@code consumerInstanceTimeoutMillis} are closed, like kafka-rest's own consumer instances.
+ */
+public class StreamingConsumerRegistry implements AutoCloseable {
+
+    private final StreamingConsumeProperties properties;
+    private final KafkaRestConfig kafkaRestConfig;
+    private final long instanceTimeoutNanos;
+    private final ThreadFactory threadFactory;
+    private final Map<String, StreamingConsumer> consumers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reaper;
+
+    public StreamingConsumerRegistry(StreamingConsumeProperties properties, KafkaRestConfig kafkaRestConfig,
+                                     long instanceTimeoutMillis, KafkaRestExecutors executors) {
+        this.properties = properties;
+        this.kafkaRestConfig = kafkaRestConfig;
+        this.instanceTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(instanceTimeoutMillis);
+        this.threadFactory = executors.threadFactory(KafkaRestExecutors.STREAM);
+        this.reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-rest-stream-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reaper.scheduleWithFixedDelay(this::reap, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns the instance, creating and starting it if it does not exist.
+     *
+     * @param topics the topics to subscribe to, required to create the instance and otherwise checked against it
+     * @throws IllegalArgumentException if the topics are missing or differ from those of the existing instance
+     * @throws IllegalStateException if the maximum number of instances has been reached
+     */
+    StreamingConsumer getOrCreate(String group, String instance, List<String> topics, StreamingConsumeProperties.CommitMode commitMode) {
+        StreamingConsumer consumer = consumers.compute(key(group, instance), (key, existing) -> {
+            if (existing != null && !existing.isClosed()) {
+                if (!topics.isEmpty() && !topics.equals(existing.getTopics())) {
+                    throw new IllegalArgumentException("Instance " + instance + " is subscribed to " + existing.getTopics());
+                }
+                return existing;
+            }
+            if (topics.isEmpty()) {
+                throw new IllegalArgumentException("Instance " + instance + " does not exist, topics are required to create it");
+            }
+            if (consumers.size() >= properties.getMaxInstances()) {
+                throw new IllegalStateException("Too many streaming consumer instances");
+            }
+            return create(group, instance, topics, commitMode != null ? commitMode : properties.getCommitMode());
+        });
+        return consumer;
+    }
+
+    boolean delete(String group, String instance) {
+        StreamingConsumer consumer = consumers.remove(key(group, instance));
+        if (consumer == null) {
+            return false;
+        }
+        consumer.close();
+        return true;
+    }
+
+    private StreamingConsumer create(String group, String instance, List<String> topics, StreamingConsumeProperties.CommitMode commitMode) {
+        Map<String, Object> configs = new HashMap<>(kafkaRestConfig.getConsumerConfigs());
+        configs.putIfAbsent(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaRestConfig.originals().get(KafkaRestConfig.BOOTSTRAP_SERVERS_CONFIG));
+        configs.put(ConsumerConfig.GROUP_ID_CONFIG, group);
+        configs.put(ConsumerConfig.CLIENT_ID_CONFIG, "kafka-rest-stream-" + group + "-" + instance);
+        configs.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, commitMode == StreamingConsumeProperties.CommitMode.AUTO);
+
+        StreamingConsumer consumer = new StreamingConsumer(group, instance, topics, commitMode,
+                new KafkaConsumer<>(configs, new ByteArrayDeserializer(), new ByteArrayDeserializer()), properties);
+        threadFactory.newThread(consumer).start();
+        return consumer;
+    }
+
+    private void reap() {
+        long now = System.nanoTime();
+        consumers.entrySet().removeIf(entry -> {
+            StreamingConsumer consumer = entry.getValue();
+            if (consumer.isClosed() || consumer.isExpired(now, instanceTimeoutNanos)) {
+                consumer.close();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static String key(String group, String instance) {
+        return group + '\u0000' + instance;
+    }
+
+    @Override
+    public void close() {
+        reaper.shutdownNow();
+        consumers.values().forEach(StreamingConsumer::close);
+        consumers.clear();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.timing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A whole proxy request with the time spent in each of its stages, for aggregating in JMC or {@code jfr print}.
+ */
+@Name("kafka.restproxy.Request")
+@Label("Proxy Request")
+@Category({"Kafka REST Proxy"})
+@Description("A proxy request and the time spent in each of its stages")
+@StackTrace(false)
+class ProxyRequestEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Path")
+    String path;
+
+    @Label("Status")
+    int status;
+
+    @Label("Deserialize")
+    @Timespan
+    long deserialize;
+
+    @Label("Schema")
+    @Timespan
+    long schema;
+
+    @Label("Send")
+    @Timespan
+    long send;
+
+    @Label("Ack")
+    @Timespan
+    long ack;
+
+    @Label("Serialize")
+    @Timespan
+    long serialize;
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.timing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One stage of a proxy request: deserialize, schema, send, ack or serialize. Committed on the thread that finished
+ * the stage.
+ */
+@Name("kafka.restproxy.Stage")
+@Label("Proxy Request Stage")
+@Category({"Kafka REST Proxy"})
+@Description("A stage in the processing of a proxy request")
+@StackTrace(false)
+class ProxyStageEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Method")
+    String method;
+
+    @Label("Path")
+    String path;
+
+    ProxyStageEvent(String stage, String method, String path) {
+        this.stage = stage;
+        this.method = method;
+        this.path = path;
+    }
+}
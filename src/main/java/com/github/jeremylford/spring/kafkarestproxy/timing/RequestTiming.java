@@ -0,0 +1,238 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.timing;
+
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEvent.Type;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Stage timings of a single request, only created while a recording has the events enabled or the Server-Timing
+ * header is on.
+ * <p>
+ * Only reading and writing the entity can be timed directly. Everything kafka-rest does in between is split at the
+ * producer's first {@code send} and at the return of the resource method: up to the first send is schema
+ * resolution and record serialization, up to the return is handing the records to the producer, including waits
+ * for buffer memory and metadata, and from there until the response is resumed is waiting for the broker to ack.
+ * Requests that do not produce only report deserialize and serialize.
+ */
+final class RequestTiming implements RequestEventListener {
+
+    static final String PROPERTY = RequestTiming.class.getName();
+
+    static final String DESERIALIZE = "deserialize";
+    static final String SCHEMA = "schema";
+    static final String SEND = "send";
+    static final String ACK = "ack";
+    static final String SERIALIZE = "serialize";
+
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+
+    private final String method;
+    private final String path;
+    private final boolean stageEvents;
+    private final boolean serverTiming;
+    private final ProxyRequestEvent requestEvent;
+    private final long start;
+
+    private ProxyStageEvent stage;
+    private long resourceStart;
+    private long firstSend;
+    private long resourceEnd;
+
+    private long deserialize;
+    private long schema;
+    private long send;
+    private long ack;
+    private long serialize;
+
+    RequestTiming(ContainerRequest request, boolean stageEvents, boolean requestEvents, boolean serverTiming) {
+        this.method = request.getMethod();
+        this.path = request.getPath(true);
+        this.stageEvents = stageEvents;
+        this.serverTiming = serverTiming;
+        this.requestEvent = requestEvents ? new ProxyRequestEvent() : null;
+        if (requestEvent != null) {
+            requestEvent.begin();
+        }
+        this.start = System.nanoTime();
+        request.setProperty(PROPERTY, this);
+    }
+
+    /**
+     * @return the request whose resource method is running on this thread, or null
+     */
+    static RequestTiming current() {
+        return CURRENT.get();
+    }
+
+    @Override
+    public void onEvent(RequestEvent event) {
+        Type type = event.getType();
+        if (type == Type.RESOURCE_METHOD_START) {
+            resourceStarted();
+            CURRENT.set(this);
+        } else if (type == Type.RESOURCE_METHOD_FINISHED) {
+            CURRENT.remove();
+            resourceFinished();
+        } else if (type == Type.RESP_FILTERS_START) {
+            responseStarted(event.getContainerResponse());
+        } else if (type == Type.FINISHED) {
+            finished(event.getContainerResponse());
+        }
+    }
+
+    Object read(ReaderInterceptorContext context) throws IOException {
+        ProxyStageEvent event = stageEvents ? begin(DESERIALIZE) : null;
+        long readStart = System.nanoTime();
+        try {
+            return context.proceed();
+        } finally {
+            long elapsed = System.nanoTime() - readStart;
+            if (event != null) {
+                event.commit();
+            }
+            synchronized (this) {
+                deserialize += elapsed;
+                if (stage != null && firstSend == 0) {
+                    // the entity is read inside the resource method, the schema stage only starts afterwards
+                    stage.begin();
+                }
+            }
+        }
+    }
+
+    void write(WriterInterceptorContext context) throws IOException {
+        ProxyStageEvent event = stageEvents ? begin(SERIALIZE) : null;
+        long writeStart = System.nanoTime();
+        try {
+            context.proceed();
+        } finally {
+            long elapsed = System.nanoTime() - writeStart;
+            if (event != null) {
+                event.commit();
+            }
+            synchronized (this) {
+                serialize += elapsed;
+            }
+        }
+    }
+
+    synchronized void sent() {
+        if (firstSend != 0 || resourceStart == 0) {
+            return;
+        }
+        firstSend = System.nanoTime();
+        schema = Math.max(0, firstSend - resourceStart - deserialize);
+        next(SEND);
+    }
+
+    private synchronized void resourceStarted() {
+        resourceStart = System.nanoTime();
+        if (stageEvents) {
+            stage = begin(SCHEMA);
+        }
+    }
+
+    private synchronized void resourceFinished() {
+        resourceEnd = System.nanoTime();
+        if (firstSend != 0) {
+            send = resourceEnd - firstSend;
+            next(ACK);
+        } else {
+            stage = null;
+        }
+    }
+
+    private void responseStarted(ContainerResponse response) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (firstSend != 0 && resourceEnd != 0) {
+                ack = now - resourceEnd;
+                next(null);
+            }
+            stage = null;
+        }
+        if (serverTiming && response != null) {
+            response.getHeaders().add("Server-Timing", serverTiming(now - start));
+        }
+    }
+
+    private synchronized void finished(ContainerResponse response) {
+        CURRENT.remove();
+        if (requestEvent != null) {
+            requestEvent.end();
+            if (requestEvent.shouldCommit()) {
+                requestEvent.method = method;
+                requestEvent.path = path;
+                requestEvent.status = response != null ? response.getStatus() : 0;
+                requestEvent.deserialize = deserialize;
+                requestEvent.schema = schema;
+                requestEvent.send = send;
+                requestEvent.ack = ack;
+                requestEvent.serialize = serialize;
+                requestEvent.commit();
+            }
+        }
+    }
+
+    /**
+     * Commits the open stage event, if any, and begins the next one.
+     */
+    private void next(String nextStage) {
+        if (stage != null) {
+            stage.commit();
+            stage = nextStage != null ? begin(nextStage) : null;
+        }
+    }
+
+    private ProxyStageEvent begin(String name) {
+        ProxyStageEvent event = new ProxyStageEvent(name, method, path);
+        event.begin();
+        return event;
+    }
+
+    private synchronized String serverTiming(long total) {
+        StringBuilder header = new StringBuilder(96);
+        if (deserialize > 0) {
+            append(header, DESERIALIZE, deserialize);
+        }
+        if (firstSend != 0) {
+            append(header, SCHEMA, schema);
+            append(header, SEND, send);
+            append(header, ACK, ack);
+        }
+        append(header, "total", total);
+        return header.toString();
+    }
+
+    private static void append(StringBuilder header, String name, long nanos) {
+        if (header.length() > 0) {
+            header.append(", ");
+        }
+        header.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.3f", nanos / 1_000_000d));
+    }
+}
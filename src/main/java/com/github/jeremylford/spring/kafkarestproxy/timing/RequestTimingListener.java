@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.timing;
+
+import com.github.jeremylford.spring.kafkarestproxy.properties.TimingProperties;
+import jdk.jfr.EventType;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+
+/**
+ * Breaks each request down into deserialize, schema, send, ack and serialize stages, emitted as the Java Flight
+ * Recorder events {@code kafka.restproxy.Stage} and {@code kafka.restproxy.Request} and, optionally, as a
+ * {@code Server-Timing} response header. Serialize is missing from the header since the headers are sent before
+ * the body is written.
+ * <p>
+ * Whether a request is timed is decided once when it starts. When neither event is enabled in a running recording
+ * and the header is off, nothing is allocated or recorded for it.
+ */
+public class RequestTimingListener implements ApplicationEventListener, ReaderInterceptor, WriterInterceptor {
+
+    private static final EventType STAGE_EVENT = EventType.getEventType(ProxyStageEvent.class);
+    private static final EventType REQUEST_EVENT = EventType.getEventType(ProxyRequestEvent.class);
+
+    private final boolean serverTiming;
+
+    public RequestTimingListener(TimingProperties properties) {
+        this.serverTiming = properties.isServerTiming();
+    }
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        boolean stageEvents = STAGE_EVENT.isEnabled();
+        boolean requestEvents = REQUEST_EVENT.isEnabled();
+        if (!stageEvents && !requestEvents && !serverTiming) {
+            return null;
+        }
+        return new RequestTiming(requestEvent.getContainerRequest(), stageEvents, requestEvents, serverTiming);
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+        Object timing = context.getProperty(RequestTiming.PROPERTY);
+        if (timing == null) {
+            return context.proceed();
+        }
+        return ((RequestTiming) timing).read(context);
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        Object timing = context.getProperty(RequestTiming.PROPERTY);
+        if (timing == null) {
+            context.proceed();
+            return;
+        }
+        ((RequestTiming) timing).write(context);
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import com.github.jeremylford.spring.kafkarestproxy.properties.WarmupProperties;
+import io.confluent.kafkarest.entities.v2.BinaryConsumerRecord;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.producer.Producer;
+import org.glassfish.hk2.api.TypeLiteral;
+import org.glassfish.jersey.internal.inject.InjectionManager;
+import org.glassfish.jersey.message.MessageBodyWorkers;
+import org.glassfish.jersey.server.spi.Container;
+import org.glassfish.jersey.server.spi.ContainerLifecycleListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.web.servlet.JerseyApplicationPath;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Warms the proxy up while the application still refuses traffic. Spring Boot runs application runners before it
+ * publishes {@code ReadinessState.ACCEPTING_TRAFFIC}, so the readiness probe only succeeds once this has finished.
+ * <p>
+ * The phases are:
+ * <ol>
+ * <li>jersey: a loopback request that initializes the Jersey application, the Admin client and cluster metadata</li>
+ * <li>clients: creates kafka-rest's producer and Admin client</li>
+ * <li>metadata: fetches the metadata of the configured topics through the producer, the Admin client and the
+ * partition endpoint, which also fills the metadata cache if enabled</li>
+ * <li>serialization: reads and writes synthetic produce and consume entities through Jersey's message body
+ * providers</li>
+ * </ol>
+ * Phases are best effort. Failures are logged and the next phase runs. Each phase is reported as a startup step,
+ * visible in the startup actuator endpoint with a buffering ApplicationStartup, as a timer and in a summary log line.
+ */
+public class KafkaRestWarmup implements ApplicationRunner, ContainerLifecycleListener {
+
+    public static final String PHASE = "kafka.restproxy.warmup.phase";
+
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaRestWarmup.class);
+
+    private static final MediaType JSON = MediaType.APPLICATION_JSON_TYPE;
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    private static final byte[] V2_PRODUCE_REQUEST = ("{\"records\":[{\"key\":\"a2V5\",\"value\":\"dmFsdWU=\",\"partition\":0}]}")
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] V3_PRODUCE_REQUEST = ("{\"partition_id\":0,"
+            + "\"headers\":[{\"name\":\"warmup\",\"value\":\"dHJ1ZQ==\"}],"
+            + "\"key\":{\"type\":\"STRING\",\"data\":\"key\"},"
+            + "\"value\":{\"type\":\"JSON\",\"data\":{\"id\":1,\"name\":\"warmup\",\"tags\":[\"a\",\"b\"]}}}")
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] V2_CONSUME_RESPONSE = ("[{\"topic\":\"warmup\",\"key\":\"a2V5\",\"value\":\"dmFsdWU=\",\"partition\":0,\"offset\":0},"
+            + "{\"topic\":\"warmup\",\"key\":null,\"value\":\"dmFsdWU=\",\"partition\":1,\"offset\":1}]")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final WarmupProperties properties;
+    private final ConfigurableApplicationContext applicationContext;
+    private final ObjectMapper objectMapper;
+    private final KafkaRestMetrics metrics;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile InjectionManager injectionManager;
+
+    public KafkaRestWarmup(WarmupProperties properties, ConfigurableApplicationContext applicationContext,
+                           ObjectMapper objectMapper, KafkaRestMetrics metrics) {
+        this.properties = properties;
+        this.applicationContext = applicationContext;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onStartup(Container container) {
+        injectionManager = container.getApplicationHandler().getInjectionManager();
+        started.countDown();
+    }
+
+    @Override
+    public void onReload(Container container) {
+        onStartup(container);
+    }
+
+    @Override
+    public void onShutdown(Container container) {
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long deadline = System.nanoTime() + properties.getTimeout().toNanos();
+        Map<String, Long> timings = new LinkedHashMap<>();
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        String[] clusterId = new String[1];
+
+        phase("jersey", timings, () -> {
+            URI uri = uri("/v3/clusters");
+            if (uri == null) {
+                LOG.info("No local web server, skipping the loopback request");
+            } else {
+                JsonNode clusters = objectMapper.readTree(get(httpClient, uri, deadline));
+                clusterId[0] = clusters.path("data").path(0).path("cluster_id").asText(null);
+            }
+        });
+
+        phase("clients", timings, () -> {
+            InjectionManager injectionManager = awaitInjectionManager(deadline);
+            injectionManager.getInstance(new TypeLiteral<Producer<byte[], byte[]>>() {
+            }.getType());
+            injectionManager.getInstance(Admin.class);
+        });
+
+        phase("metadata", timings, () -> {
+            List<String> topics = properties.getTopics();
+            if (topics.isEmpty()) {
+                return;
+            }
+            InjectionManager injectionManager = awaitInjectionManager(deadline);
+            Producer<byte[], byte[]> producer = injectionManager.getInstance(new TypeLiteral<Producer<byte[], byte[]>>() {
+            }.getType());
+            for (String topic : topics) {
+                producer.partitionsFor(topic);
+            }
+            Admin admin = injectionManager.getInstance(Admin.class);
+            admin.describeTopics(topics).allTopicNames().get(remaining(deadline), TimeUnit.NANOSECONDS);
+            if (clusterId[0] != null) {
+                for (String topic : topics) {
+                    URI uri = uri("/v3/clusters/" + clusterId[0] + "/topics/" + topic + "/partitions");
+                    get(httpClient, uri, deadline);
+                }
+            }
+        });
+
+        phase("serialization", timings, () -> {
+            MessageBodyWorkers workers = awaitInjectionManager(deadline).getInstance(MessageBodyWorkers.class);
+            List<Sample> samples = new ArrayList<>(Arrays.asList(
+                    new Sample(io.confluent.kafkarest.entities.v2.ProduceRequest.class, null, V2_PRODUCE_REQUEST),
+                    new Sample(io.confluent.kafkarest.entities.v3.ProduceRequest.class, null, V3_PRODUCE_REQUEST),
+                    new Sample(List.class, new GenericType<List<BinaryConsumerRecord>>() {
+                    }.getType(), V2_CONSUME_RESPONSE)
+            ));
+            // a sample that does not round trip once will not on later iterations either
+            samples.removeIf(sample -> !sample.tryRoundTrip(workers));
+            for (int i = 1; i < properties.getSerializationIterations() && remaining(deadline) > 0; i++) {
+                for (Sample sample : samples) {
+                    sample.roundTrip(workers);
+                }
+            }
+        });
+
+        StringBuilder summary = new StringBuilder();
+        long total = 0;
+        for (Map.Entry<String, Long> timing : timings.entrySet()) {
+            total += timing.getValue();
+            summary.append(summary.length() == 0 ? "" : ", ")
+                    .append(timing.getKey()).append('=').append(TimeUnit.NANOSECONDS.toMillis(timing.getValue())).append("ms");
+        }
+        LOG.info("Warm-up finished in {}ms: {}", TimeUnit.NANOSECONDS.toMillis(total), summary);
+    }
+
+    private void phase(String name, Map<String, Long> timings, Phase phase) {
+        ApplicationStartup applicationStartup = applicationContext.getApplicationStartup();
+        StartupStep step = applicationStartup.start("kafka.restproxy.warmup." + name);
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            phase.run();
+            success = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Warm-up phase {} was interrupted", name);
+        } catch (Exception e) {
+            LOG.warn("Warm-up phase {} failed: {}", name, e.toString());
+            LOG.debug("Warm-up phase {} failed", name, e);
+        } finally {
+            long nanos = System.nanoTime() - start;
+            timings.put(name, nanos);
+            step.tag("success", String.valueOf(success));
+            step.end();
+            if (metrics != null) {
+                Timer.builder(PHASE)
+                        .tag("phase", name)
+                        .tag("success", String.valueOf(success))
+                        .register(metrics.getRegistry())
+                        .record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private InjectionManager awaitInjectionManager(long deadline) throws InterruptedException, TimeoutException {
+        if (!started.await(remaining(deadline), TimeUnit.NANOSECONDS)) {
+            throw new TimeoutException("Jersey application did not start");
+        }
+        return injectionManager;
+    }
+
+    private static byte[] get(HttpClient httpClient, URI uri, long deadline) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofNanos(Math.max(1, remaining(deadline))))
+                .header("Accept", MediaType.APPLICATION_JSON)
+                .GET()
+                .build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException("GET " + uri + " returned " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    /**
+     * @return the loopback URI of a proxy path, or null if there is no local web server
+     */
+    private URI uri(String path) {
+        if (!(applicationContext instanceof WebServerApplicationContext)) {
+            return null;
+        }
+        WebServer webServer = ((WebServerApplicationContext) applicationContext).getWebServer();
+        if (webServer == null || webServer.getPort() <= 0) {
+            return null;
+        }
+        String contextPath = applicationContext.getEnvironment().getProperty("server.servlet.context-path", "");
+        JerseyApplicationPath applicationPath = applicationContext.getBeanProvider(JerseyApplicationPath.class).getIfAvailable();
+        String relativePath = applicationPath != null ? applicationPath.getRelativePath(path) : path;
+        return URI.create("http://localhost:" + webServer.getPort() + contextPath + relativePath);
+    }
+
+    private static long remaining(long deadline) {
+        return deadline - System.nanoTime();
+    }
+
+    @FunctionalInterface
+    private interface Phase {
+        void run() throws Exception;
+    }
+
+    private static final class Sample {
+
+        private final Class<?> type;
+        private final Type genericType;
+        private final byte[] json;
+
+        Sample(Class<?> type, Type genericType, byte[] json) {
+            this.type = type;
+            this.genericType = genericType != null ? genericType : type;
+            this.json = json;
+        }
+
+        boolean tryRoundTrip(MessageBodyWorkers workers) {
+            try {
+                roundTrip(workers);
+                return true;
+            } catch (IOException | RuntimeException e) {
+                LOG.debug("Skipping serialization warm-up of {}", genericType.getTypeName(), e);
+                return false;
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        void roundTrip(MessageBodyWorkers workers) throws IOException {
+            MessageBodyReader reader = workers.getMessageBodyReader(type, genericType, NO_ANNOTATIONS, JSON);
+            MessageBodyWriter writer = workers.getMessageBodyWriter(type, genericType, NO_ANNOTATIONS, JSON);
+            if (reader == null || writer == null) {
+                throw new IOException("No JSON reader or writer for " + genericType.getTypeName());
+            }
+            Object entity = reader.readFrom(type, genericType, NO_ANNOTATIONS, JSON, new MultivaluedHashMap<>(), new ByteArrayInputStream(json));
+            writer.writeTo(entity, type, genericType, NO_ANNOTATIONS, JSON, new MultivaluedHashMap<>(), new ByteArrayOutputStream(json.length * 2));
+        }
+    }
+}
@@ -18,25 +18,33 @@
  */
 package com.github.jeremylford.spring.kafkarestproxy;
 
-import io.confluent.kafkarest.KafkaRestConfig;
 import org.junit.Ignore;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
 import org.testcontainers.redpanda.RedpandaContainer;
 
+/**
+ * Runs the proxy against a Redpanda container, or with {@code --kafka.restproxy.in-memory.enabled=true} against the
+ * in-memory backend, which needs neither Docker nor a broker.
+ */
 @SpringBootApplication
 @Ignore
 public class KafkaRestProxyApplication {
 
-    private static final RedpandaContainer container = new RedpandaContainer("docker.redpanda.com/redpandadata/redpanda:v23.1.2");
-
-
     public static void main(String[] args) {
-        container.start();
-        System.out.println("Bootstrap servers: " + container.getBootstrapServers());
-        System.setProperty("kafka.restproxy.bootstrap-servers", container.getBootstrapServers());
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        if (environment.getProperty("kafka.restproxy.in-memory.enabled", Boolean.class, false)) {
+            // only used to derive the cluster id and to configure the clients the backend replaces
+            System.setProperty("kafka.restproxy.bootstrap-servers", "localhost:9092");
+        } else {
+            RedpandaContainer container = new RedpandaContainer("docker.redpanda.com/redpandadata/redpanda:v23.1.2");
+            container.start();
+            System.out.println("Bootstrap servers: " + container.getBootstrapServers());
+            System.setProperty("kafka.restproxy.bootstrap-servers", container.getBootstrapServers());
+        }
         SpringApplication.run(KafkaRestProxyApplication.class, args);
     }
-
-
 }
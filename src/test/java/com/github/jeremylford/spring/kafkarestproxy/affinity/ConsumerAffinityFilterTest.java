@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.affinity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.jeremylford.spring.kafkarestproxy.properties.AffinityProperties;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
+import java.net.URI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConsumerAffinityFilterTest {
+
+    private static final String PATH = "consumers/group/instances/rest-consumer-b-1234/records";
+
+    private final ConsumerAffinityFilter filter = new ConsumerAffinityFilter(properties(), "a", new ObjectMapper(), null);
+
+    @Test
+    public void forwardedByHeaderFromClientsIsIgnored() throws IOException {
+        MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        headers.putSingle(ConsumerAffinityFilter.FORWARDED_BY, "a");
+        ContainerRequestContext request = request(headers);
+
+        filter.filter(request);
+
+        ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(request).abortWith(response.capture());
+        assertEquals(307, response.getValue().getStatus());
+        assertEquals(URI.create("http://b:8082/" + PATH), response.getValue().getLocation());
+        assertFalse(headers.containsKey(ConsumerAffinityFilter.FORWARDED_BY));
+    }
+
+    @Test
+    public void requestsFromPeersAreHandledLocally() throws IOException {
+        MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        headers.putSingle(ConsumerAffinityFilter.FORWARDED_BY, "b");
+        headers.putSingle(ConsumerAffinityFilter.SECRET, "shared");
+        ContainerRequestContext request = request(headers);
+
+        filter.filter(request);
+
+        verify(request, never()).abortWith(any());
+        assertFalse(headers.containsKey(ConsumerAffinityFilter.SECRET));
+    }
+
+    private static AffinityProperties properties() {
+        AffinityProperties properties = new AffinityProperties();
+        properties.getNodes().put("a", "http://a:8082/");
+        properties.getNodes().put("b", "http://b:8082/");
+        properties.setMode(AffinityProperties.Mode.REDIRECT);
+        properties.setSecret("shared");
+        return properties;
+    }
+
+    private static ContainerRequestContext request(MultivaluedMap<String, String> headers) {
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getPath()).thenReturn(PATH);
+        when(uriInfo.getPath(false)).thenReturn(PATH);
+        when(uriInfo.getRequestUri()).thenReturn(URI.create("http://proxy:8082/" + PATH));
+        ContainerRequestContext request = mock(ContainerRequestContext.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getUriInfo()).thenReturn(uriInfo);
+        when(request.getHeaders()).thenReturn(headers);
+        when(request.getHeaderString(any())).thenAnswer(invocation -> headers.getFirst(invocation.getArgument(0)));
+        return request;
+    }
+}
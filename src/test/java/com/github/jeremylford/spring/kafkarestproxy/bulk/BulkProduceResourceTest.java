@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.bulk;
+
+import io.confluent.kafkarest.KafkaRestConfig;
+import io.confluent.kafkarest.controllers.TopicManager;
+import io.confluent.kafkarest.entities.Topic;
+import org.apache.kafka.clients.producer.Producer;
+import org.junit.Test;
+
+import javax.inject.Provider;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.container.AsyncResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class BulkProduceResourceTest {
+
+    @SuppressWarnings("unchecked")
+    private final Producer<byte[], byte[]> producer = mock(Producer.class);
+    private final TopicManager topicManager = mock(TopicManager.class);
+    private final BulkProduceResource resource;
+
+    public BulkProduceResourceTest() {
+        KafkaRestConfig config = mock(KafkaRestConfig.class);
+        when(config.originals()).thenReturn(Collections.emptyMap());
+        Provider<Producer<byte[], byte[]>> producers = () -> producer;
+        Provider<TopicManager> topicManagers = () -> topicManager;
+        resource = new BulkProduceResource(producers, topicManagers, config);
+    }
+
+    @Test
+    public void unknownTopicIsNotFound() throws IOException {
+        when(topicManager.getTopic("cluster", "orders")).thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+        assertNotFound();
+    }
+
+    @Test
+    public void unknownClusterIsNotFound() throws IOException {
+        CompletableFuture<Optional<Topic>> future = new CompletableFuture<>();
+        future.completeExceptionally(new NotFoundException("Cluster cluster cannot be found."));
+        when(topicManager.getTopic("cluster", "orders")).thenReturn(future);
+
+        assertNotFound();
+    }
+
+    private void assertNotFound() throws IOException {
+        try {
+            resource.produce(mock(AsyncResponse.class), "cluster", "orders", null, null, new ByteArrayInputStream(new byte[0]));
+            fail();
+        } catch (NotFoundException e) {
+            assertEquals(404, e.getResponse().getStatus());
+        }
+        verifyNoInteractions(producer);
+    }
+}
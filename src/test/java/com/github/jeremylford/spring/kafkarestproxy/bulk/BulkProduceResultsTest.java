@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.bulk;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.protocol.Errors;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class BulkProduceResultsTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("orders", 3);
+
+    @Test
+    public void summaryReportsCountFailuresAndTheFirstError() throws IOException {
+        AtomicInteger completed = new AtomicInteger();
+        BulkProduceResults results = new BulkProduceResults(true, completed::incrementAndGet);
+        Callback first = results.next();
+        Callback second = results.next();
+        Callback third = results.next();
+        // every record shares the summary callback
+        assertSame(first, second);
+        assertSame(first, third);
+        results.sealed();
+
+        first.onCompletion(metadata(10), null);
+        second.onCompletion(null, new RecordTooLargeException("too large"));
+        assertEquals(0, completed.get());
+        third.onCompletion(metadata(11), null);
+        assertEquals(1, completed.get());
+
+        InputStream in = write(results);
+        assertEquals(3, readVarint(in));
+        assertEquals(1, readVarint(in));
+        assertEquals(Errors.MESSAGE_TOO_LARGE.code(), readVarint(in));
+        assertEquals("too large", readString(in));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void summaryWithoutFailuresHasNoMessage() throws IOException {
+        BulkProduceResults results = new BulkProduceResults(true, () -> { });
+        for (int i = 0; i < 2000; i++) {
+            results.next().onCompletion(metadata(i), null);
+        }
+        results.sealed();
+
+        InputStream in = write(results);
+        assertEquals(2000, readVarint(in));
+        assertEquals(0, readVarint(in));
+        assertEquals(0, readVarint(in));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void fullResponseHasOneResultPerRecord() throws IOException {
+        BulkProduceResults results = new BulkProduceResults(false, () -> { });
+        Callback first = results.next();
+        Callback second = results.next();
+        results.sealed();
+        second.onCompletion(null, new RecordTooLargeException("too large"));
+        first.onCompletion(metadata(10), null);
+
+        InputStream in = write(results);
+        assertEquals(2, readVarint(in));
+        assertEquals(PARTITION.partition(), readVarint(in));
+        assertEquals(10, readVarlong(in));
+        assertEquals(0, readVarint(in));
+        assertEquals(-1, readVarint(in));
+        assertEquals(-1, readVarlong(in));
+        assertEquals(Errors.MESSAGE_TOO_LARGE.code(), readVarint(in));
+        assertEquals("too large", readString(in));
+        assertEquals(-1, in.read());
+    }
+
+    private static RecordMetadata metadata(long offset) {
+        return new RecordMetadata(PARTITION, offset, 0, 0L, 0, 0);
+    }
+
+    private static InputStream write(BulkProduceResults results) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        results.response().write(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        return (int) readVarlong(in);
+    }
+
+    private static long readVarlong(InputStream in) throws IOException {
+        long raw = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.read();
+            raw |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        byte[] bytes = new byte[readVarint(in)];
+        assertEquals(bytes.length, in.read(bytes));
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
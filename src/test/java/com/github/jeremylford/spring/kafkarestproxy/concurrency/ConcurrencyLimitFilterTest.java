@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.concurrency;
+
+import com.github.jeremylford.spring.kafkarestproxy.metrics.KafkaRestMetrics;
+import com.github.jeremylford.spring.kafkarestproxy.properties.ConcurrencyLimitProperties;
+import com.github.jeremylford.spring.kafkarestproxy.properties.MetricsProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.UriInfo;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConcurrencyLimitFilterTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final ConcurrencyLimitFilter filter =
+            new ConcurrencyLimitFilter(new ConcurrencyLimitProperties(), new KafkaRestMetrics(registry, new MetricsProperties()));
+
+    @Test
+    public void proxyRejectionsDoNotShrinkTheLimit() {
+        for (int i = 0; i < 50; i++) {
+            ContainerRequestContext request = produce();
+            filter.filter(request);
+            // a later filter turns the request away with its own 503
+            request.setProperty(ConcurrencyLimitFilter.REJECTED_PROPERTY, Boolean.TRUE);
+            filter.filter(request, response(503));
+        }
+
+        assertEquals(20, limit(), 0);
+        assertEquals(0, inFlight(), 0);
+    }
+
+    @Test
+    public void backendUnavailableShrinksTheLimit() {
+        for (int i = 0; i < 50; i++) {
+            ContainerRequestContext request = produce();
+            filter.filter(request);
+            filter.filter(request, response(503));
+        }
+
+        assertTrue("limit " + limit(), limit() < 20);
+        assertEquals(0, inFlight(), 0);
+    }
+
+    @Test
+    public void fetchesDoNotTakeAPermit() {
+        ContainerRequestContext fetch = request(HttpMethod.GET, "consumers/group/instances/instance/records");
+        filter.filter(fetch);
+        assertEquals(0, inFlight("consume"), 0);
+
+        ContainerRequestContext commit = request(HttpMethod.POST, "consumers/group/instances/instance/offsets");
+        filter.filter(commit);
+        assertEquals(1, inFlight("consume"), 0);
+        filter.filter(commit, response(200));
+        filter.filter(fetch, response(200));
+        assertEquals(0, inFlight("consume"), 0);
+    }
+
+    private double limit() {
+        return registry.get(ConcurrencyLimitFilter.LIMIT).tag("endpoint", "produce").gauge().value();
+    }
+
+    private double inFlight() {
+        return inFlight("produce");
+    }
+
+    private double inFlight(String endpoint) {
+        return registry.get(ConcurrencyLimitFilter.IN_FLIGHT).tag("endpoint", endpoint).gauge().value();
+    }
+
+    private static ContainerRequestContext produce() {
+        return request(HttpMethod.POST, "topics/orders");
+    }
+
+    private static ContainerRequestContext request(String method, String path) {
+        Map<String, Object> properties = new HashMap<>();
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getPath()).thenReturn(path);
+        ContainerRequestContext request = mock(ContainerRequestContext.class);
+        when(request.getMethod()).thenReturn(method);
+        when(request.getUriInfo()).thenReturn(uriInfo);
+        when(request.getProperty(anyString())).thenAnswer(invocation -> properties.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> properties.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(request).setProperty(anyString(), any());
+        doAnswer(invocation -> properties.remove(invocation.<String>getArgument(0)))
+                .when(request).removeProperty(anyString());
+        return request;
+    }
+
+    private static ContainerResponseContext response(int status) {
+        ContainerResponseContext response = mock(ContainerResponseContext.class);
+        when(response.getStatus()).thenReturn(status);
+        return response;
+    }
+}
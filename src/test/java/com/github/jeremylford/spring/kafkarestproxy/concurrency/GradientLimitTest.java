@@ -0,0 +1,216 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.concurrency;
+
+import com.github.jeremylford.spring.kafkarestproxy.properties.ConcurrencyLimitProperties;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a {@link GradientLimit} in virtual time against a simulated backend that loses most of its capacity halfway
+ * through, under an open-loop load that the degraded backend cannot keep up with.
+ */
+public class GradientLimitTest {
+
+    private static final long MILLIS = 1_000_000L;
+    private static final long SECONDS = 1_000_000_000L;
+
+    private static final long START = SECONDS;
+    private static final long SLOWDOWN = START + 2 * SECONDS;
+    private static final long END = SLOWDOWN + 5 * SECONDS;
+    private static final long ARRIVAL_INTERVAL = 25_000L;
+
+    private long now = START;
+
+    @Test
+    public void keepsAdmittedLatencyBoundedWhenTheBackendSlowsDown() {
+        GradientLimit limit = new GradientLimit(new ConcurrencyLimitProperties(), () -> now);
+        Simulation simulation = new Simulation(limit);
+        simulation.run();
+
+        double limitBefore = simulation.averageLimit(START + SECONDS, SLOWDOWN);
+        double limitAfter = simulation.averageLimit(SLOWDOWN + 3 * SECONDS, END);
+        long p99After = simulation.latencyPercentile(SLOWDOWN + 3 * SECONDS, END, 0.99);
+
+        assertTrue("limit before " + limitBefore + ", after " + limitAfter, limitAfter < limitBefore / 2);
+        assertTrue("p99 latency after the slowdown " + p99After / MILLIS + "ms", p99After < 20 * MILLIS);
+        assertTrue("rejected " + simulation.rejected, simulation.rejected > 0);
+    }
+
+    @Test
+    public void latencyIsUnboundedWithoutTheLimit() {
+        Simulation simulation = new Simulation(null);
+        simulation.run();
+
+        long p99After = simulation.latencyPercentile(SLOWDOWN + 3 * SECONDS, END, 0.99);
+
+        assertTrue("p99 latency after the slowdown " + p99After / MILLIS + "ms", p99After > SECONDS);
+    }
+
+    @Test
+    public void constantLongPollLatencyDoesNotShrinkTheLimit() {
+        GradientLimit limit = new GradientLimit(new ConcurrencyLimitProperties(), () -> now);
+        // consumers fetching back to back from a quiet topic, every fetch waits for the whole request timeout
+        long timeout = 5 * SECONDS;
+        int consumers = 30;
+        // start time, or end time with the fetch's start and in-flight count
+        PriorityQueue<long[]> events = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        for (int i = 0; i < consumers; i++) {
+            events.add(new long[]{START + i * MILLIS});
+        }
+        long rejected = 0;
+        double limitSum = 0;
+        long limitSamples = 0;
+        while (events.peek()[0] < START + 600 * SECONDS) {
+            long[] event = events.poll();
+            now = event[0];
+            if (event.length == 3) {
+                limit.release(event[1], (int) event[2], false);
+                // the consumer fetches again right away
+                events.add(new long[]{now});
+                continue;
+            }
+            if (now >= START + 300 * SECONDS) {
+                limitSum += limit.getLimit();
+                limitSamples++;
+            }
+            int inFlight = limit.tryAcquire();
+            if (inFlight == 0) {
+                if (now >= START + 300 * SECONDS) {
+                    rejected++;
+                }
+                events.add(new long[]{now + SECONDS});
+            } else {
+                events.add(new long[]{now + timeout, now, inFlight});
+            }
+        }
+
+        double averageLimit = limitSum / limitSamples;
+        assertTrue("average limit " + averageLimit, averageLimit >= consumers);
+        assertEquals("fetches rejected once the limit has settled", 0, rejected);
+    }
+
+    /**
+     * 50 workers taking 1ms per request until {@link #SLOWDOWN}, then 10 workers taking 2ms: capacity drops from 50000
+     * to 5000 requests per second while 40000 arrive.
+     */
+    private final class Simulation {
+
+        private final GradientLimit limit;
+        private final Queue<Request> queued = new ArrayDeque<>();
+        private final PriorityQueue<Request> running = new PriorityQueue<>((a, b) -> Long.compare(a.end, b.end));
+        private final List<long[]> latencies = new ArrayList<>();
+        private final List<long[]> limits = new ArrayList<>();
+        private long rejected;
+
+        Simulation(GradientLimit limit) {
+            this.limit = limit;
+        }
+
+        void run() {
+            for (long arrival = START; arrival < END; arrival += ARRIVAL_INTERVAL) {
+                while (!running.isEmpty() && running.peek().end <= arrival) {
+                    complete(running.poll());
+                }
+                now = arrival;
+                arrive();
+            }
+        }
+
+        private void arrive() {
+            int inFlight = 1;
+            if (limit != null) {
+                limits.add(new long[]{now, limit.getLimit()});
+                inFlight = limit.tryAcquire();
+                if (inFlight == 0) {
+                    rejected++;
+                    return;
+                }
+            }
+            queued.add(new Request(now, inFlight));
+            startQueued();
+        }
+
+        private void complete(Request request) {
+            now = request.end;
+            if (limit != null) {
+                limit.release(request.start, request.inFlight, false);
+            }
+            latencies.add(new long[]{request.start, now - request.start});
+            startQueued();
+        }
+
+        private void startQueued() {
+            boolean slow = now >= SLOWDOWN;
+            int workers = slow ? 10 : 50;
+            long serviceTime = slow ? 2 * MILLIS : MILLIS;
+            while (running.size() < workers && !queued.isEmpty()) {
+                Request request = queued.poll();
+                request.end = now + serviceTime;
+                running.add(request);
+            }
+        }
+
+        double averageLimit(long from, long to) {
+            return limits.stream()
+                    .filter(sample -> sample[0] >= from && sample[0] < to)
+                    .mapToLong(sample -> sample[1])
+                    .average()
+                    .orElseThrow(IllegalStateException::new);
+        }
+
+        long latencyPercentile(long from, long to, double percentile) {
+            List<Long> window = new ArrayList<>();
+            for (long[] latency : latencies) {
+                if (latency[0] >= from && latency[0] < to) {
+                    window.add(latency[1]);
+                }
+            }
+            // requests still waiting at the end have taken at least this long
+            for (Request request : queued) {
+                if (request.start >= from && request.start < to) {
+                    window.add(END - request.start);
+                }
+            }
+            Collections.sort(window);
+            return window.get((int) Math.min(window.size() - 1, Math.ceil(window.size() * percentile)));
+        }
+    }
+
+    private static final class Request {
+
+        final long start;
+        final int inFlight;
+        long end;
+
+        Request(long start, int inFlight) {
+            this.start = start;
+            this.inFlight = inFlight;
+        }
+    }
+}
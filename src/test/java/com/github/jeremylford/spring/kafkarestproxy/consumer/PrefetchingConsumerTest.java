@@ -0,0 +1,310 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PrefetchingConsumerTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("orders", 0);
+    private static final TopicPartition OTHER_PARTITION = new TopicPartition("orders", 1);
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(10);
+    private static final int RECORD_BYTES = 10;
+
+    private final RebalancingConsumer kafka = new RebalancingConsumer();
+    private PrefetchingConsumer<byte[], byte[]> consumer;
+    private Thread pollThread;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (consumer != null) {
+            consumer.close();
+            pollThread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    @Test
+    public void positionAndCommitExcludeBufferedRecords() {
+        start(Long.MAX_VALUE, 2, null, PARTITION);
+        addRecords(PARTITION, 0, 5);
+        awaitFetched(PARTITION, 5);
+
+        assertEquals(0, consumer.position(PARTITION));
+        consumer.commitSync();
+        assertEquals(0, kafka.committed(Collections.singleton(PARTITION)).get(PARTITION).offset());
+
+        assertEquals(Arrays.asList(0L, 1L), offsets(consumer.poll(Duration.ofSeconds(5))));
+        assertEquals(2, consumer.position(PARTITION));
+        consumer.commitSync();
+        assertEquals(2, kafka.committed(Collections.singleton(PARTITION)).get(PARTITION).offset());
+    }
+
+    @Test
+    public void seekDiscardsBufferedRecords() {
+        start(Long.MAX_VALUE, 10, null, PARTITION);
+        addRecords(PARTITION, 0, 5);
+        awaitFetched(PARTITION, 5);
+
+        consumer.seek(PARTITION, 3);
+
+        assertEquals(3, consumer.position(PARTITION));
+        assertTrue(consumer.poll(Duration.ZERO).isEmpty());
+    }
+
+    @Test
+    public void assignDiscardsBufferedRecordsOfRemovedPartitions() {
+        start(Long.MAX_VALUE, 10, null, PARTITION, OTHER_PARTITION);
+        addRecords(PARTITION, 0, 3);
+        addRecords(OTHER_PARTITION, 0, 3);
+        awaitFetched(PARTITION, 3);
+        awaitFetched(OTHER_PARTITION, 3);
+
+        consumer.assign(Collections.singleton(OTHER_PARTITION));
+
+        ConsumerRecords<byte[], byte[]> records = consumer.poll(Duration.ofSeconds(5));
+        assertTrue(records.records(PARTITION).isEmpty());
+        assertEquals(3, records.records(OTHER_PARTITION).size());
+    }
+
+    @Test
+    public void revokeDiscardsBufferedRecordsBeforeTheListenerRuns() {
+        List<Long> positionsOnRevoke = new ArrayList<>();
+        consumer = new PrefetchingConsumer<>(kafka, Long.MAX_VALUE, POLL_TIMEOUT, 10, null);
+        consumer.subscribe(Collections.singleton(PARTITION.topic()), new ConsumerRebalanceListener() {
+            @Override
+            public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                if (partitions.contains(PARTITION)) {
+                    positionsOnRevoke.add(consumer.position(PARTITION));
+                }
+            }
+
+            @Override
+            public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            }
+        });
+        kafka.rebalance(Arrays.asList(PARTITION, OTHER_PARTITION));
+        kafka.updateBeginningOffsets(beginning(PARTITION, OTHER_PARTITION));
+        startPolling();
+        addRecords(PARTITION, 0, 3);
+        addRecords(OTHER_PARTITION, 0, 3);
+        awaitFetched(PARTITION, 3);
+        awaitFetched(OTHER_PARTITION, 3);
+
+        // rebalances happen inside the Kafka consumer's poll, on the poll thread
+        kafka.schedulePollTask(() -> kafka.revokeAndRebalance(Collections.singleton(OTHER_PARTITION)));
+        awaitUntil(() -> !positionsOnRevoke.isEmpty());
+
+        // the Kafka consumer's own position, nothing buffered is left for the revoked partition
+        assertEquals(Collections.singletonList(3L), positionsOnRevoke);
+        ConsumerRecords<byte[], byte[]> records = consumer.poll(Duration.ofSeconds(5));
+        assertTrue(records.records(PARTITION).isEmpty());
+        assertEquals(3, records.records(OTHER_PARTITION).size());
+    }
+
+    @Test
+    public void pauseRewindsToTheFirstBufferedRecord() {
+        start(Long.MAX_VALUE, 10, null, PARTITION);
+        addRecords(PARTITION, 0, 5);
+        awaitFetched(PARTITION, 5);
+
+        consumer.pause(Collections.singleton(PARTITION));
+
+        assertEquals(0, kafka.position(PARTITION));
+        assertTrue(consumer.poll(Duration.ZERO).isEmpty());
+
+        consumer.resume(Collections.singleton(PARTITION));
+        addRecords(PARTITION, 0, 5);
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L), offsets(consumer.poll(Duration.ofSeconds(5))));
+    }
+
+    @Test
+    public void stopsPollingWhileTheBufferIsFull() throws InterruptedException {
+        start(3 * RECORD_BYTES, 10, null, PARTITION);
+        addRecords(PARTITION, 0, 5);
+        awaitFetched(PARTITION, 5);
+
+        addRecords(PARTITION, 5, 5);
+        Thread.sleep(20 * POLL_TIMEOUT.toMillis());
+        assertEquals(5, kafka.position(PARTITION));
+
+        assertEquals(5, consumer.poll(Duration.ofSeconds(5)).count());
+        awaitFetched(PARTITION, 10);
+        assertEquals(Arrays.asList(5L, 6L, 7L, 8L, 9L), offsets(consumer.poll(Duration.ofSeconds(5))));
+    }
+
+    @Test
+    public void wakeupInterruptsAWaitingPoll() {
+        start(Long.MAX_VALUE, 10, null, PARTITION);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            scheduler.schedule(consumer::wakeup, 50, TimeUnit.MILLISECONDS);
+            long start = System.nanoTime();
+            try {
+                consumer.poll(Duration.ofSeconds(30));
+                fail("poll was not woken up");
+            } catch (WakeupException expected) {
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+
+        // a wakeup only interrupts one poll
+        addRecords(PARTITION, 0, 1);
+        assertEquals(1, consumer.poll(Duration.ofSeconds(5)).count());
+    }
+
+    @Test
+    public void closeCommitsConsumedOffsetsAndStopsPolling() throws InterruptedException {
+        start(Long.MAX_VALUE, 2, Duration.ofHours(1), PARTITION);
+        addRecords(PARTITION, 0, 5);
+        awaitFetched(PARTITION, 5);
+        assertEquals(2, consumer.poll(Duration.ofSeconds(5)).count());
+
+        consumer.close();
+        pollThread.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertFalse(pollThread.isAlive());
+        assertTrue(kafka.closed());
+        assertEquals(2, kafka.lastCommitted.get(PARTITION).offset());
+        consumer = null;
+    }
+
+    private void start(long bufferBytes, int maxPollRecords, Duration autoCommitInterval, TopicPartition... partitions) {
+        consumer = new PrefetchingConsumer<>(kafka, bufferBytes, POLL_TIMEOUT, maxPollRecords, autoCommitInterval);
+        consumer.assign(Arrays.asList(partitions));
+        kafka.updateBeginningOffsets(beginning(partitions));
+        startPolling();
+    }
+
+    private void startPolling() {
+        pollThread = new Thread(consumer, "prefetch");
+        pollThread.setDaemon(true);
+        pollThread.start();
+    }
+
+    private void addRecords(TopicPartition partition, long offset, int count) {
+        for (long i = offset; i < offset + count; i++) {
+            kafka.addRecord(new ConsumerRecord<>(partition.topic(), partition.partition(), i, 0L, TimestampType.CREATE_TIME,
+                    -1, RECORD_BYTES, null, new byte[RECORD_BYTES], new RecordHeaders(), Optional.empty()));
+        }
+    }
+
+    /**
+     * Waits for the poll thread to have taken records up to {@code position} from the Kafka consumer.
+     */
+    private void awaitFetched(TopicPartition partition, long position) {
+        awaitUntil(() -> kafka.position(partition) >= position);
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                fail("timed out");
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private static Map<TopicPartition, Long> beginning(TopicPartition... partitions) {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            offsets.put(partition, 0L);
+        }
+        return offsets;
+    }
+
+    private static List<Long> offsets(ConsumerRecords<byte[], byte[]> records) {
+        List<Long> offsets = new ArrayList<>();
+        for (ConsumerRecord<byte[], byte[]> record : records) {
+            offsets.add(record.offset());
+        }
+        return offsets;
+    }
+
+    /**
+     * A mock consumer that runs the rebalance listener, which {@link MockConsumer#rebalance} does not, and keeps the
+     * offsets committed last for after it was closed.
+     */
+    private static final class RebalancingConsumer extends MockConsumer<byte[], byte[]> {
+
+        private volatile ConsumerRebalanceListener listener;
+        private volatile Map<TopicPartition, OffsetAndMetadata> lastCommitted = Collections.emptyMap();
+
+        RebalancingConsumer() {
+            super(OffsetResetStrategy.EARLIEST);
+        }
+
+        @Override
+        public synchronized void subscribe(Collection<String> topics, ConsumerRebalanceListener listener) {
+            super.subscribe(topics, listener);
+            this.listener = listener;
+        }
+
+        @Override
+        public synchronized void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+            super.commitSync(offsets);
+            lastCommitted = new HashMap<>(offsets);
+        }
+
+        synchronized void revokeAndRebalance(Collection<TopicPartition> assignment) {
+            List<TopicPartition> revoked = new ArrayList<>(assignment());
+            revoked.removeAll(assignment);
+            listener.onPartitionsRevoked(revoked);
+            rebalance(assignment);
+            listener.onPartitionsAssigned(Collections.emptyList());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.executor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ThreadPerTaskExecutorServiceTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ThreadPerTaskExecutorService executor;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void queuesTasksAboveTheLimitAndRunsThemAsOthersFinish() throws InterruptedException {
+        executor = new ThreadPerTaskExecutorService(Executors.defaultThreadFactory(), 2, 3, false);
+        AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            executor.execute(() -> {
+                await(release);
+                completed.incrementAndGet();
+            });
+        }
+        assertEquals(2, executor.getActiveCount());
+        assertEquals(3, executor.getQueuedCount());
+
+        try {
+            executor.execute(() -> { });
+            fail("a sixth task fits neither the limit nor the queue");
+        } catch (RejectedExecutionException expected) {
+        }
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(5, completed.get());
+    }
+
+    @Test
+    public void raisingTheLimitStartsQueuedTasks() throws InterruptedException {
+        executor = new ThreadPerTaskExecutorService(Executors.defaultThreadFactory(), 1, 10, false);
+        CountDownLatch started = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            executor.execute(() -> {
+                started.countDown();
+                await(release);
+            });
+        }
+        assertEquals(2, executor.getQueuedCount());
+
+        executor.setMaxConcurrency(3);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getQueuedCount());
+    }
+
+    @Test
+    public void unlimitedExecutorNeverQueues() {
+        executor = new ThreadPerTaskExecutorService(Executors.defaultThreadFactory(), -1, 10, false);
+        for (int i = 0; i < 100; i++) {
+            executor.execute(() -> await(release));
+        }
+        assertEquals(100, executor.getActiveCount());
+        assertEquals(0, executor.getQueuedCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
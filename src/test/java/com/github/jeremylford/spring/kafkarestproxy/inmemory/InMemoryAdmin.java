@@ -0,0 +1,215 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.inmemory;
+
+import org.apache.kafka.clients.admin.ConfigEntry;
+import org.apache.kafka.clients.admin.ConsumerGroupDescription;
+import org.apache.kafka.clients.admin.ConsumerGroupListing;
+import org.apache.kafka.clients.admin.CreatePartitionsOptions;
+import org.apache.kafka.clients.admin.CreatePartitionsResult;
+import org.apache.kafka.clients.admin.CreateTopicsOptions;
+import org.apache.kafka.clients.admin.CreateTopicsResult;
+import org.apache.kafka.clients.admin.DeleteTopicsOptions;
+import org.apache.kafka.clients.admin.DeleteTopicsResult;
+import org.apache.kafka.clients.admin.DescribeConsumerGroupsOptions;
+import org.apache.kafka.clients.admin.DescribeConsumerGroupsResult;
+import org.apache.kafka.clients.admin.InMemoryAdminResults;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsOptions;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsResult;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsSpec;
+import org.apache.kafka.clients.admin.ListConsumerGroupsOptions;
+import org.apache.kafka.clients.admin.ListConsumerGroupsResult;
+import org.apache.kafka.clients.admin.ListOffsetsOptions;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.MemberAssignment;
+import org.apache.kafka.clients.admin.MemberDescription;
+import org.apache.kafka.clients.admin.MockAdminClient;
+import org.apache.kafka.clients.admin.NewPartitions;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.ConsumerGroupState;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicCollection;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.apache.kafka.common.config.ConfigResource;
+import org.apache.kafka.common.errors.InvalidPartitionsException;
+import org.apache.kafka.common.internals.KafkaFutureImpl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * kafka-clients' {@link MockAdminClient}, which keeps the topic metadata, kept in step with the logs and consumer groups
+ * of {@link InMemoryKafka}.
+ * <p>
+ * None of the overrides hold the admin client's lock while calling into the backend, because the backend calls the
+ * admin client while holding its own locks.
+ */
+final class InMemoryAdmin extends MockAdminClient {
+
+    private final InMemoryKafka kafka;
+    private final Node coordinator;
+
+    InMemoryAdmin(InMemoryKafka kafka, List<Node> brokers, Node controller) {
+        super(brokers, controller);
+        this.kafka = kafka;
+        this.coordinator = controller;
+    }
+
+    @Override
+    public CreateTopicsResult createTopics(Collection<NewTopic> newTopics, CreateTopicsOptions options) {
+        CreateTopicsResult result = super.createTopics(newTopics, options);
+        kafka.topicsChanged();
+        return result;
+    }
+
+    @Override
+    public DeleteTopicsResult deleteTopics(TopicCollection topics, DeleteTopicsOptions options) {
+        DeleteTopicsResult result = super.deleteTopics(topics, options);
+        if (topics instanceof TopicCollection.TopicNameCollection) {
+            for (String topic : ((TopicCollection.TopicNameCollection) topics).topicNames()) {
+                kafka.topicDeleted(topic);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@link MockAdminClient} cannot add partitions, so the topic's metadata is replaced by one with more partitions.
+     */
+    @Override
+    public CreatePartitionsResult createPartitions(Map<String, NewPartitions> newPartitions, CreatePartitionsOptions options) {
+        Map<String, KafkaFuture<Void>> values = new HashMap<>();
+        List<String> resized = new ArrayList<>();
+        synchronized (this) {
+            newPartitions.forEach((topic, partitions) -> {
+                KafkaFutureImpl<Void> future = new KafkaFutureImpl<>();
+                values.put(topic, future);
+                try {
+                    TopicDescription description = describeTopics(Collections.singleton(topic)).topicNameValues().get(topic).get();
+                    int current = description.partitions().size();
+                    if (partitions.totalCount() <= current) {
+                        throw new InvalidPartitionsException("Topic currently has " + current + " partitions, which is higher than the requested "
+                                + partitions.totalCount() + ".");
+                    }
+                    ConfigResource resource = new ConfigResource(ConfigResource.Type.TOPIC, topic);
+                    Map<String, String> configs = new HashMap<>();
+                    for (ConfigEntry entry : describeConfigs(Collections.singleton(resource)).values().get(resource).get().entries()) {
+                        configs.put(entry.name(), entry.value());
+                    }
+
+                    List<TopicPartitionInfo> partitionInfos = new ArrayList<>(description.partitions());
+                    List<Node> replicas = Collections.singletonList(coordinator);
+                    for (int i = current; i < partitions.totalCount(); i++) {
+                        partitionInfos.add(new TopicPartitionInfo(i, coordinator, replicas, replicas));
+                    }
+                    super.deleteTopics(TopicCollection.ofTopicNames(Collections.singleton(topic)), new DeleteTopicsOptions()).all().get();
+                    addTopic(description.isInternal(), topic, partitionInfos, configs);
+                    resized.add(topic);
+                    future.complete(null);
+                } catch (ExecutionException e) {
+                    future.completeExceptionally(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.completeExceptionally(e);
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+        for (String topic : resized) {
+            kafka.topicResized(topic);
+        }
+        return InMemoryAdminResults.createPartitions(values);
+    }
+
+    @Override
+    public ListOffsetsResult listOffsets(Map<TopicPartition, OffsetSpec> topicPartitionOffsets, ListOffsetsOptions options) {
+        Map<TopicPartition, Long> beginningOffsets = new HashMap<>();
+        Map<TopicPartition, Long> endOffsets = new HashMap<>();
+        for (TopicPartition partition : topicPartitionOffsets.keySet()) {
+            InMemoryPartition log = kafka.partition(partition);
+            if (log != null) {
+                beginningOffsets.put(partition, log.startOffset());
+                endOffsets.put(partition, log.endOffset());
+            }
+        }
+        updateBeginningOffsets(beginningOffsets);
+        updateEndOffsets(endOffsets);
+        return super.listOffsets(topicPartitionOffsets, options);
+    }
+
+    @Override
+    public ListConsumerGroupsResult listConsumerGroups(ListConsumerGroupsOptions options) {
+        List<ConsumerGroupListing> listings = new ArrayList<>();
+        for (InMemoryGroup group : kafka.groups()) {
+            ConsumerGroupState state = state(group.members());
+            if (options.states().isEmpty() || options.states().contains(state)) {
+                listings.add(new ConsumerGroupListing(group.groupId(), false, Optional.of(state)));
+            }
+        }
+        return InMemoryAdminResults.listConsumerGroups(listings);
+    }
+
+    @Override
+    public DescribeConsumerGroupsResult describeConsumerGroups(Collection<String> groupIds, DescribeConsumerGroupsOptions options) {
+        Map<String, KafkaFuture<ConsumerGroupDescription>> descriptions = new HashMap<>();
+        for (String groupId : groupIds) {
+            InMemoryGroup group = kafka.existingGroup(groupId);
+            List<MemberDescription> members = new ArrayList<>();
+            Set<String> memberIds = group != null ? group.members() : Collections.emptySet();
+            ConsumerGroupState state = group != null ? state(memberIds) : ConsumerGroupState.DEAD;
+            for (String memberId : memberIds) {
+                members.add(new MemberDescription(memberId, memberId, coordinator.host(), new MemberAssignment(group.assignment(memberId))));
+            }
+            descriptions.put(groupId, KafkaFuture.completedFuture(new ConsumerGroupDescription(
+                    groupId, false, members, members.isEmpty() ? "" : "range", state, coordinator)));
+        }
+        return new DescribeConsumerGroupsResult(descriptions);
+    }
+
+    @Override
+    public ListConsumerGroupOffsetsResult listConsumerGroupOffsets(Map<String, ListConsumerGroupOffsetsSpec> groupSpecs, ListConsumerGroupOffsetsOptions options) {
+        Map<String, Map<TopicPartition, OffsetAndMetadata>> offsets = new HashMap<>();
+        groupSpecs.forEach((groupId, spec) -> {
+            InMemoryGroup group = kafka.existingGroup(groupId);
+            Map<TopicPartition, OffsetAndMetadata> committed = group != null ? new HashMap<>(group.committed()) : new HashMap<>();
+            if (spec.topicPartitions() != null) {
+                committed.keySet().retainAll(spec.topicPartitions());
+            }
+            offsets.put(groupId, committed);
+        });
+        return InMemoryAdminResults.listConsumerGroupOffsets(offsets);
+    }
+
+    private static ConsumerGroupState state(Set<String> members) {
+        return members.isEmpty() ? ConsumerGroupState.EMPTY : ConsumerGroupState.STABLE;
+    }
+}
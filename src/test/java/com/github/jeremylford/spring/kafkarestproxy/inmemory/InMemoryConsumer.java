@@ -0,0 +1,717 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.inmemory;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.NoOffsetForPartitionException;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.InvalidGroupIdException;
+import org.apache.kafka.common.errors.RecordDeserializationException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * A consumer reading from {@link InMemoryKafka}. Like {@link org.apache.kafka.clients.consumer.KafkaConsumer} it is
+ * not thread-safe apart from {@link #wakeup()}. Group members are rebalanced eagerly: on a new generation every member
+ * has all its partitions revoked and then gets its new assignment, resuming from the committed offsets.
+ */
+final class InMemoryConsumer<K, V> implements Consumer<K, V> {
+
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // positions still to be resolved: null means the committed offset, falling back to auto.offset.reset
+    private static final long EARLIEST = -2;
+    private static final long LATEST = -1;
+
+    private static final ConsumerRebalanceListener NO_LISTENER = new ConsumerRebalanceListener() {
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        }
+    };
+
+    private final InMemoryKafka kafka;
+    private final Deserializer<K> keyDeserializer;
+    private final Deserializer<V> valueDeserializer;
+    private final String groupId;
+    private final String memberId;
+    private final OffsetResetStrategy offsetReset;
+    private final boolean autoCommit;
+    private final long autoCommitIntervalMs;
+    private final int maxPollRecords;
+
+    private final Map<TopicPartition, Long> positions = new LinkedHashMap<>();
+    private final Set<TopicPartition> paused = new HashSet<>();
+    private Set<String> topics;
+    private Pattern pattern;
+    private ConsumerRebalanceListener listener = NO_LISTENER;
+    private boolean assigned;
+    private int generation = -1;
+    private long nextAutoCommitMs;
+    private int rotation;
+    private boolean closed;
+    private volatile boolean woken;
+
+    @SuppressWarnings("unchecked")
+    InMemoryConsumer(InMemoryKafka kafka, Properties props) {
+        this.kafka = kafka;
+        ConsumerConfig config = new ConsumerConfig(props);
+        this.keyDeserializer = config.getConfiguredInstance(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, Deserializer.class);
+        this.keyDeserializer.configure(config.originals(), true);
+        this.valueDeserializer = config.getConfiguredInstance(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, Deserializer.class);
+        this.valueDeserializer.configure(config.originals(), false);
+        this.groupId = config.getString(ConsumerConfig.GROUP_ID_CONFIG);
+        String clientId = config.getString(ConsumerConfig.CLIENT_ID_CONFIG);
+        this.memberId = (clientId.isEmpty() ? "consumer" : clientId) + "-" + UUID.randomUUID();
+        this.offsetReset = OffsetResetStrategy.valueOf(config.getString(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG).toUpperCase(Locale.ROOT));
+        this.autoCommit = groupId != null && config.getBoolean(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG);
+        this.autoCommitIntervalMs = config.getInt(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG);
+        this.maxPollRecords = config.getInt(ConsumerConfig.MAX_POLL_RECORDS_CONFIG);
+        this.nextAutoCommitMs = System.currentTimeMillis() + autoCommitIntervalMs;
+    }
+
+    @Override
+    public Set<TopicPartition> assignment() {
+        ensureOpen();
+        return Collections.unmodifiableSet(new HashSet<>(positions.keySet()));
+    }
+
+    @Override
+    public Set<String> subscription() {
+        ensureOpen();
+        if (pattern != null) {
+            Set<String> matching = new HashSet<>();
+            for (String topic : kafka.topicNames()) {
+                if (pattern.matcher(topic).matches()) {
+                    matching.add(topic);
+                }
+            }
+            return matching;
+        }
+        return topics != null ? Collections.unmodifiableSet(topics) : Collections.emptySet();
+    }
+
+    @Override
+    public void subscribe(Collection<String> topics) {
+        subscribe(topics, NO_LISTENER);
+    }
+
+    @Override
+    public void subscribe(Collection<String> topics, ConsumerRebalanceListener listener) {
+        if (topics.isEmpty()) {
+            unsubscribe();
+            return;
+        }
+        Set<String> subscription = new HashSet<>(topics);
+        join(listener, subscription::contains);
+        this.topics = subscription;
+        this.pattern = null;
+    }
+
+    @Override
+    public void subscribe(Pattern pattern, ConsumerRebalanceListener listener) {
+        join(listener, topic -> pattern.matcher(topic).matches());
+        this.topics = null;
+        this.pattern = pattern;
+    }
+
+    @Override
+    public void subscribe(Pattern pattern) {
+        subscribe(pattern, NO_LISTENER);
+    }
+
+    @Override
+    public void assign(Collection<TopicPartition> partitions) {
+        ensureOpen();
+        if (isSubscribed()) {
+            throw new IllegalStateException("Subscription to topics, partitions and pattern are mutually exclusive");
+        }
+        if (partitions.isEmpty()) {
+            unsubscribe();
+            return;
+        }
+        positions.keySet().retainAll(partitions);
+        paused.retainAll(partitions);
+        for (TopicPartition partition : partitions) {
+            positions.putIfAbsent(partition, null);
+        }
+        assigned = true;
+    }
+
+    @Override
+    public void unsubscribe() {
+        ensureOpen();
+        if (isSubscribed()) {
+            try {
+                listener.onPartitionsRevoked(new HashSet<>(positions.keySet()));
+            } finally {
+                kafka.group(groupId).leave(memberId);
+            }
+        }
+        positions.clear();
+        paused.clear();
+        topics = null;
+        pattern = null;
+        listener = NO_LISTENER;
+        assigned = false;
+        generation = -1;
+    }
+
+    @Override
+    @Deprecated
+    public ConsumerRecords<K, V> poll(long timeoutMs) {
+        return poll(Duration.ofMillis(timeoutMs));
+    }
+
+    @Override
+    public ConsumerRecords<K, V> poll(Duration timeout) {
+        ensureOpen();
+        if (!isSubscribed() && !assigned) {
+            throw new IllegalStateException("Consumer is not subscribed to any topics or assigned any partitions");
+        }
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (true) {
+                checkWakeup();
+                syncGroup();
+                maybeAutoCommit();
+
+                long version = kafka.appendVersion();
+                Map<TopicPartition, Long> advanced = new HashMap<>();
+                Map<TopicPartition, List<ConsumerRecord<K, V>>> records = fetch(advanced);
+                if (!records.isEmpty()) {
+                    InMemoryKafkaProperties.Faults faults = kafka.fetchFaults();
+                    long delay = InMemoryKafka.delayNanos(faults);
+                    if (delay > 0) {
+                        TimeUnit.NANOSECONDS.sleep(delay);
+                    }
+                    if (InMemoryKafka.fails(faults)) {
+                        throw new TimeoutException("Injected fetch failure");
+                    }
+                    positions.putAll(advanced);
+                    return new ConsumerRecords<>(records);
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return ConsumerRecords.empty();
+                }
+                kafka.awaitAppend(version, Math.min(remaining, MAX_WAIT_NANOS));
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptException(e);
+        }
+    }
+
+    @Override
+    public void commitSync() {
+        commitSync(consumed());
+    }
+
+    @Override
+    public void commitSync(Duration timeout) {
+        commitSync();
+    }
+
+    @Override
+    public void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        ensureOpen();
+        group().commit(offsets);
+    }
+
+    @Override
+    public void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets, Duration timeout) {
+        commitSync(offsets);
+    }
+
+    @Override
+    public void commitAsync() {
+        commitAsync(null);
+    }
+
+    @Override
+    public void commitAsync(OffsetCommitCallback callback) {
+        commitAsync(consumed(), callback);
+    }
+
+    @Override
+    public void commitAsync(Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
+        Exception exception = null;
+        try {
+            commitSync(offsets);
+        } catch (RuntimeException e) {
+            exception = e;
+        }
+        if (callback != null) {
+            callback.onComplete(offsets, exception);
+        }
+    }
+
+    @Override
+    public void seek(TopicPartition partition, long offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("seek offset must not be a negative number");
+        }
+        ensureAssigned(partition);
+        positions.put(partition, offset);
+    }
+
+    @Override
+    public void seek(TopicPartition partition, OffsetAndMetadata offsetAndMetadata) {
+        seek(partition, offsetAndMetadata.offset());
+    }
+
+    @Override
+    public void seekToBeginning(Collection<TopicPartition> partitions) {
+        seekTo(partitions, EARLIEST);
+    }
+
+    @Override
+    public void seekToEnd(Collection<TopicPartition> partitions) {
+        seekTo(partitions, LATEST);
+    }
+
+    @Override
+    public long position(TopicPartition partition) {
+        ensureAssigned(partition);
+        return resolve(partition, log(partition));
+    }
+
+    @Override
+    public long position(TopicPartition partition, Duration timeout) {
+        return position(partition);
+    }
+
+    @Override
+    @Deprecated
+    public OffsetAndMetadata committed(TopicPartition partition) {
+        return committed(Collections.singleton(partition)).get(partition);
+    }
+
+    @Override
+    @Deprecated
+    public OffsetAndMetadata committed(TopicPartition partition, Duration timeout) {
+        return committed(partition);
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndMetadata> committed(Set<TopicPartition> partitions) {
+        ensureOpen();
+        Map<TopicPartition, OffsetAndMetadata> committed = group().committed();
+        Map<TopicPartition, OffsetAndMetadata> result = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            result.put(partition, committed.get(partition));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndMetadata> committed(Set<TopicPartition> partitions, Duration timeout) {
+        return committed(partitions);
+    }
+
+    @Override
+    public Map<MetricName, ? extends Metric> metrics() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public List<PartitionInfo> partitionsFor(String topic) {
+        ensureOpen();
+        return kafka.partitionInfos(topic);
+    }
+
+    @Override
+    public List<PartitionInfo> partitionsFor(String topic, Duration timeout) {
+        return partitionsFor(topic);
+    }
+
+    @Override
+    public Map<String, List<PartitionInfo>> listTopics() {
+        ensureOpen();
+        Map<String, List<PartitionInfo>> topics = new HashMap<>();
+        for (String topic : kafka.topicNames()) {
+            topics.put(topic, kafka.partitionInfos(topic));
+        }
+        return topics;
+    }
+
+    @Override
+    public Map<String, List<PartitionInfo>> listTopics(Duration timeout) {
+        return listTopics();
+    }
+
+    @Override
+    public Set<TopicPartition> paused() {
+        ensureOpen();
+        return Collections.unmodifiableSet(new HashSet<>(paused));
+    }
+
+    @Override
+    public void pause(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            ensureAssigned(partition);
+        }
+        paused.addAll(partitions);
+    }
+
+    @Override
+    public void resume(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            ensureAssigned(partition);
+        }
+        paused.removeAll(partitions);
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(Map<TopicPartition, Long> timestampsToSearch) {
+        ensureOpen();
+        Map<TopicPartition, OffsetAndTimestamp> offsets = new HashMap<>();
+        timestampsToSearch.forEach((partition, timestamp) -> {
+            ConsumerRecord<byte[], byte[]> record = log(partition).firstAtOrAfter(timestamp);
+            offsets.put(partition, record != null ? new OffsetAndTimestamp(record.offset(), record.timestamp()) : null);
+        });
+        return offsets;
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(Map<TopicPartition, Long> timestampsToSearch, Duration timeout) {
+        return offsetsForTimes(timestampsToSearch);
+    }
+
+    @Override
+    public Map<TopicPartition, Long> beginningOffsets(Collection<TopicPartition> partitions) {
+        ensureOpen();
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            offsets.put(partition, log(partition).startOffset());
+        }
+        return offsets;
+    }
+
+    @Override
+    public Map<TopicPartition, Long> beginningOffsets(Collection<TopicPartition> partitions, Duration timeout) {
+        return beginningOffsets(partitions);
+    }
+
+    @Override
+    public Map<TopicPartition, Long> endOffsets(Collection<TopicPartition> partitions) {
+        ensureOpen();
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            offsets.put(partition, log(partition).endOffset());
+        }
+        return offsets;
+    }
+
+    @Override
+    public Map<TopicPartition, Long> endOffsets(Collection<TopicPartition> partitions, Duration timeout) {
+        return endOffsets(partitions);
+    }
+
+    @Override
+    public OptionalLong currentLag(TopicPartition partition) {
+        ensureAssigned(partition);
+        Long position = positions.get(partition);
+        InMemoryPartition log = kafka.partition(partition);
+        if (position == null || position < 0 || log == null) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(Math.max(0, log.endOffset() - position));
+    }
+
+    @Override
+    public ConsumerGroupMetadata groupMetadata() {
+        ensureOpen();
+        if (groupId == null) {
+            throw new InvalidGroupIdException("To use the group management or offset commit APIs, you must provide a valid group.id in the consumer configuration.");
+        }
+        return new ConsumerGroupMetadata(groupId, generation, memberId, Optional.empty());
+    }
+
+    @Override
+    public void enforceRebalance() {
+        enforceRebalance(null);
+    }
+
+    @Override
+    public void enforceRebalance(String reason) {
+        ensureOpen();
+        if (!isSubscribed()) {
+            throw new IllegalStateException("Tried to force a rebalance but consumer does not have a group.");
+        }
+        kafka.group(groupId).rebalance();
+    }
+
+    @Override
+    public void close() {
+        close(Duration.ZERO);
+    }
+
+    @Override
+    public void close(Duration timeout) {
+        if (closed) {
+            return;
+        }
+        try {
+            if (autoCommit) {
+                commitSync();
+            }
+            if (isSubscribed()) {
+                listener.onPartitionsRevoked(new HashSet<>(positions.keySet()));
+            }
+        } finally {
+            closed = true;
+            if (isSubscribed()) {
+                kafka.group(groupId).leave(memberId);
+            }
+            keyDeserializer.close();
+            valueDeserializer.close();
+        }
+    }
+
+    @Override
+    public void wakeup() {
+        woken = true;
+    }
+
+    private void join(ConsumerRebalanceListener listener, Predicate<String> subscription) {
+        ensureOpen();
+        if (assigned) {
+            throw new IllegalStateException("Subscription to topics, partitions and pattern are mutually exclusive");
+        }
+        group().join(memberId, subscription);
+        this.listener = listener != null ? listener : NO_LISTENER;
+    }
+
+    private void syncGroup() {
+        if (!isSubscribed()) {
+            return;
+        }
+        InMemoryGroup group = kafka.group(groupId);
+        int current = group.generation(memberId);
+        if (current == generation) {
+            return;
+        }
+
+        Set<TopicPartition> owned = new HashSet<>(positions.keySet());
+        if (autoCommit) {
+            commitSync();
+        }
+        listener.onPartitionsRevoked(owned);
+        positions.clear();
+        paused.clear();
+
+        Set<TopicPartition> assignment = new HashSet<>(group.assignment(memberId));
+        for (TopicPartition partition : assignment) {
+            positions.put(partition, null);
+        }
+        generation = current;
+        listener.onPartitionsAssigned(assignment);
+    }
+
+    private void maybeAutoCommit() {
+        long now = System.currentTimeMillis();
+        if (autoCommit && now >= nextAutoCommitMs) {
+            commitSync();
+            nextAutoCommitMs = now + autoCommitIntervalMs;
+        }
+    }
+
+    private Map<TopicPartition, List<ConsumerRecord<K, V>>> fetch(Map<TopicPartition, Long> advanced) {
+        List<TopicPartition> fetchable = new ArrayList<>(positions.size());
+        for (TopicPartition partition : positions.keySet()) {
+            if (!paused.contains(partition)) {
+                fetchable.add(partition);
+            }
+        }
+
+        Map<TopicPartition, List<ConsumerRecord<K, V>>> records = new HashMap<>();
+        int budget = maxPollRecords;
+        // start at a different partition each time so that a busy partition cannot starve the others
+        int start = fetchable.isEmpty() ? 0 : Math.floorMod(rotation++, fetchable.size());
+        for (int i = 0; i < fetchable.size() && budget > 0; i++) {
+            TopicPartition partition = fetchable.get((start + i) % fetchable.size());
+            InMemoryPartition log = kafka.partition(partition);
+            if (log == null) {
+                continue;
+            }
+            List<ConsumerRecord<byte[], byte[]>> raw = log.read(resolve(partition, log), budget);
+            if (raw.isEmpty()) {
+                continue;
+            }
+            List<ConsumerRecord<K, V>> deserialized = new ArrayList<>(raw.size());
+            for (ConsumerRecord<byte[], byte[]> record : raw) {
+                deserialized.add(deserialize(partition, record));
+            }
+            records.put(partition, deserialized);
+            advanced.put(partition, raw.get(raw.size() - 1).offset() + 1);
+            budget -= raw.size();
+        }
+        return records;
+    }
+
+    private ConsumerRecord<K, V> deserialize(TopicPartition partition, ConsumerRecord<byte[], byte[]> record) {
+        try {
+            return new ConsumerRecord<>(
+                    record.topic(),
+                    record.partition(),
+                    record.offset(),
+                    record.timestamp(),
+                    record.timestampType(),
+                    record.serializedKeySize(),
+                    record.serializedValueSize(),
+                    record.key() != null ? keyDeserializer.deserialize(record.topic(), record.headers(), record.key()) : null,
+                    record.value() != null ? valueDeserializer.deserialize(record.topic(), record.headers(), record.value()) : null,
+                    record.headers(),
+                    record.leaderEpoch());
+        } catch (RuntimeException e) {
+            throw new RecordDeserializationException(partition, record.offset(),
+                    "Error deserializing key/value for partition " + partition + " at offset " + record.offset(), e);
+        }
+    }
+
+    /**
+     * Resolves and stores the position of an assigned partition, resetting it if it is outside the log.
+     */
+    private long resolve(TopicPartition partition, InMemoryPartition log) {
+        Long position = positions.get(partition);
+        long resolved;
+        if (position == null) {
+            OffsetAndMetadata committed = groupId != null ? kafka.group(groupId).committed().get(partition) : null;
+            resolved = committed != null ? committed.offset() : reset(partition, log, offsetReset);
+        } else if (position == EARLIEST) {
+            resolved = log.startOffset();
+        } else if (position == LATEST) {
+            resolved = log.endOffset();
+        } else {
+            resolved = position;
+        }
+        if (resolved < log.startOffset() || resolved > log.endOffset()) {
+            resolved = reset(partition, log, offsetReset);
+        }
+        positions.put(partition, resolved);
+        return resolved;
+    }
+
+    private static long reset(TopicPartition partition, InMemoryPartition log, OffsetResetStrategy strategy) {
+        switch (strategy) {
+            case EARLIEST:
+                return log.startOffset();
+            case LATEST:
+                return log.endOffset();
+            default:
+                throw new NoOffsetForPartitionException(partition);
+        }
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> consumed() {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        positions.forEach((partition, position) -> {
+            if (position != null && position >= 0) {
+                offsets.put(partition, new OffsetAndMetadata(position));
+            }
+        });
+        return offsets;
+    }
+
+    private void seekTo(Collection<TopicPartition> partitions, long position) {
+        ensureOpen();
+        Collection<TopicPartition> targets = partitions.isEmpty() ? new ArrayList<>(positions.keySet()) : partitions;
+        for (TopicPartition partition : targets) {
+            ensureAssigned(partition);
+            positions.put(partition, position);
+        }
+    }
+
+    private InMemoryPartition log(TopicPartition partition) {
+        InMemoryPartition log = kafka.partition(partition);
+        if (log == null) {
+            throw new UnknownTopicOrPartitionException("This server does not host this topic-partition: " + partition);
+        }
+        return log;
+    }
+
+    private InMemoryGroup group() {
+        if (groupId == null) {
+            throw new InvalidGroupIdException("To use the group management or offset commit APIs, you must provide a valid group.id in the consumer configuration.");
+        }
+        return kafka.group(groupId);
+    }
+
+    private boolean isSubscribed() {
+        return topics != null || pattern != null;
+    }
+
+    private void ensureAssigned(TopicPartition partition) {
+        ensureOpen();
+        if (!positions.containsKey(partition)) {
+            throw new IllegalStateException("No current assignment for partition " + partition);
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("This consumer has already been closed.");
+        }
+    }
+
+    private void checkWakeup() {
+        if (woken) {
+            woken = false;
+            throw new WakeupException();
+        }
+    }
+}
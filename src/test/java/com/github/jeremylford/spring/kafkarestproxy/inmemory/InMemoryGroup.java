@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.inmemory;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * A consumer group: committed offsets plus the members subscribed through {@link InMemoryConsumer}. Partitions are
+ * range-assigned per topic among the members subscribed to it. The assignment is recomputed lazily, with a new
+ * generation, after a member joins or leaves or the topics change, and each member picks it up on its next poll.
+ */
+final class InMemoryGroup {
+
+    private final String groupId;
+    private final InMemoryKafka kafka;
+    private final Map<TopicPartition, OffsetAndMetadata> committed = new ConcurrentHashMap<>();
+
+    // guarded by this
+    private final Map<String, Predicate<String>> members = new TreeMap<>();
+    private final Map<String, Set<TopicPartition>> assignment = new HashMap<>();
+    private int generation;
+    private boolean stale;
+    private long topicsVersion = -1;
+
+    InMemoryGroup(String groupId, InMemoryKafka kafka) {
+        this.groupId = groupId;
+        this.kafka = kafka;
+    }
+
+    String groupId() {
+        return groupId;
+    }
+
+    synchronized void join(String memberId, Predicate<String> subscription) {
+        members.put(memberId, subscription);
+        stale = true;
+    }
+
+    synchronized void leave(String memberId) {
+        if (members.remove(memberId) != null) {
+            stale = true;
+        }
+    }
+
+    synchronized void rebalance() {
+        stale = true;
+    }
+
+    synchronized Set<String> members() {
+        return new HashSet<>(members.keySet());
+    }
+
+    synchronized int generation(String memberId) {
+        refresh();
+        return generation;
+    }
+
+    synchronized Set<TopicPartition> assignment(String memberId) {
+        refresh();
+        return assignment.getOrDefault(memberId, Collections.emptySet());
+    }
+
+    Map<TopicPartition, OffsetAndMetadata> committed() {
+        return committed;
+    }
+
+    void commit(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        committed.putAll(offsets);
+    }
+
+    private void refresh() {
+        long version = kafka.topicsVersion();
+        if (!stale && version == topicsVersion) {
+            return;
+        }
+        stale = false;
+        topicsVersion = version;
+        generation++;
+        assignment.clear();
+
+        for (String topic : kafka.topicNames()) {
+            List<String> subscribers = new ArrayList<>();
+            members.forEach((memberId, subscription) -> {
+                if (subscription.test(topic)) {
+                    subscribers.add(memberId);
+                }
+            });
+            if (subscribers.isEmpty()) {
+                continue;
+            }
+            int partitions = kafka.partitionCount(topic);
+            int perMember = partitions / subscribers.size();
+            int extra = partitions % subscribers.size();
+            int partition = 0;
+            for (int i = 0; i < subscribers.size(); i++) {
+                int count = perMember + (i < extra ? 1 : 0);
+                Collection<TopicPartition> assigned = assignment.computeIfAbsent(subscribers.get(i), memberId -> new HashSet<>());
+                for (int j = 0; j < count; j++) {
+                    assigned.add(new TopicPartition(topic, partition++));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.inmemory;
+
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A single-broker Kafka cluster held in memory: partitioned logs, consumer groups and the admin metadata of kafka-clients'
+ * {@link org.apache.kafka.clients.admin.MockAdminClient}, which is the source of truth for which topics exist.
+ * {@link InMemoryKafkaBinder} puts its admin client, producer and consumers in place of the real ones.
+ */
+public class InMemoryKafka implements AutoCloseable {
+
+    private final InMemoryKafkaProperties properties;
+    private final Node broker = new Node(0, "localhost", 9092);
+    private final InMemoryAdmin admin;
+    private final InMemoryProducer producer;
+    private final Map<String, InMemoryPartition[]> topics = new ConcurrentHashMap<>();
+    private final Map<String, InMemoryGroup> groups = new ConcurrentHashMap<>();
+    private final AtomicLong topicsVersion = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+
+    // lets polls wait for appends without a wakeup per record when nobody waits
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Condition appended = appendLock.newCondition();
+    private final AtomicLong appends = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public InMemoryKafka(InMemoryKafkaProperties properties) {
+        this.properties = properties;
+        this.admin = new InMemoryAdmin(this, Collections.singletonList(broker), broker);
+        this.producer = new InMemoryProducer(this);
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "kafka-rest-in-memory-acks");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.scheduler = scheduler;
+        properties.getTopics().forEach(this::createTopic);
+    }
+
+    public Admin admin() {
+        return admin;
+    }
+
+    public Producer<byte[], byte[]> producer() {
+        return producer;
+    }
+
+    /**
+     * A consumer configured like a {@link org.apache.kafka.clients.consumer.KafkaConsumer}, from the same properties.
+     */
+    public <K, V> Consumer<K, V> newConsumer(Properties props) {
+        return new InMemoryConsumer<>(this, props);
+    }
+
+    public synchronized void createTopic(String topic, int partitions) {
+        List<TopicPartitionInfo> partitionInfos = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            partitionInfos.add(new TopicPartitionInfo(i, broker, Collections.singletonList(broker), Collections.singletonList(broker)));
+        }
+        admin.addTopic(false, topic, partitionInfos, Collections.emptyMap());
+        topics.put(topic, newPartitions(new InMemoryPartition[0], partitions));
+        topicsChanged();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        admin.close(Duration.ZERO);
+    }
+
+    /**
+     * @return the partitions of {@code topic}, or null if it does not exist and is not to be created
+     */
+    InMemoryPartition[] partitions(String topic, boolean autoCreate) {
+        InMemoryPartition[] partitions = topics.get(topic);
+        if (partitions != null) {
+            return partitions;
+        }
+        synchronized (this) {
+            partitions = topics.get(topic);
+            if (partitions != null) {
+                return partitions;
+            }
+            // created through the admin client
+            int count = describedPartitions(topic);
+            if (count > 0) {
+                partitions = newPartitions(new InMemoryPartition[0], count);
+                topics.put(topic, partitions);
+                return partitions;
+            }
+            if (autoCreate && properties.isAutoCreateTopics()) {
+                createTopic(topic, properties.getDefaultPartitions());
+                return topics.get(topic);
+            }
+            return null;
+        }
+    }
+
+    InMemoryPartition partition(TopicPartition partition) {
+        InMemoryPartition[] partitions = partitions(partition.topic(), false);
+        return partitions != null && partition.partition() < partitions.length ? partitions[partition.partition()] : null;
+    }
+
+    int partitionCount(String topic) {
+        InMemoryPartition[] partitions = partitions(topic, false);
+        return partitions != null ? partitions.length : 0;
+    }
+
+    List<PartitionInfo> partitionInfos(String topic) {
+        int count = partitionCount(topic);
+        List<PartitionInfo> partitionInfos = new ArrayList<>(count);
+        Node[] replicas = {broker};
+        for (int i = 0; i < count; i++) {
+            partitionInfos.add(new PartitionInfo(topic, i, broker, replicas, replicas));
+        }
+        return partitionInfos;
+    }
+
+    Set<String> topicNames() {
+        try {
+            return admin.listTopics().names().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException(e);
+        } catch (ExecutionException e) {
+            throw new KafkaException(e.getCause());
+        }
+    }
+
+    long topicsVersion() {
+        return topicsVersion.get();
+    }
+
+    void topicsChanged() {
+        topicsVersion.incrementAndGet();
+    }
+
+    synchronized void topicDeleted(String topic) {
+        topics.remove(topic);
+        topicsChanged();
+    }
+
+    synchronized void topicResized(String topic) {
+        InMemoryPartition[] partitions = topics.get(topic);
+        int count = describedPartitions(topic);
+        if (partitions != null && count > partitions.length) {
+            topics.put(topic, newPartitions(partitions, count));
+        }
+        topicsChanged();
+    }
+
+    InMemoryGroup group(String groupId) {
+        return groups.computeIfAbsent(groupId, id -> new InMemoryGroup(id, this));
+    }
+
+    Collection<InMemoryGroup> groups() {
+        return groups.values();
+    }
+
+    /**
+     * @return the group, or null if no consumer or commit has used it
+     */
+    InMemoryGroup existingGroup(String groupId) {
+        return groups.get(groupId);
+    }
+
+    long appendVersion() {
+        return appends.get();
+    }
+
+    void appended() {
+        appends.incrementAndGet();
+        if (waiting.get() > 0) {
+            appendLock.lock();
+            try {
+                appended.signalAll();
+            } finally {
+                appendLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Waits until something was appended after {@code version} was read, or the timeout elapses.
+     */
+    void awaitAppend(long version, long timeoutNanos) throws InterruptedException {
+        appendLock.lock();
+        waiting.incrementAndGet();
+        try {
+            long remaining = timeoutNanos;
+            while (appends.get() == version && remaining > 0) {
+                remaining = appended.awaitNanos(remaining);
+            }
+        } finally {
+            waiting.decrementAndGet();
+            appendLock.unlock();
+        }
+    }
+
+    InMemoryKafkaProperties.Faults produceFaults() {
+        return properties.getProduce();
+    }
+
+    InMemoryKafkaProperties.Faults fetchFaults() {
+        return properties.getFetch();
+    }
+
+    void schedule(Runnable task, long delayNanos) {
+        scheduler.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    static long delayNanos(InMemoryKafkaProperties.Faults faults) {
+        long delay = faults.getLatency().toNanos();
+        long jitter = faults.getJitter().toNanos();
+        return jitter > 0 ? delay + ThreadLocalRandom.current().nextLong(jitter + 1) : delay;
+    }
+
+    static boolean fails(InMemoryKafkaProperties.Faults faults) {
+        return faults.getFailureRate() > 0 && ThreadLocalRandom.current().nextDouble() < faults.getFailureRate();
+    }
+
+    private int describedPartitions(String topic) {
+        try {
+            return admin.describeTopics(Collections.singleton(topic)).topicNameValues().get(topic).get().partitions().size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UnknownTopicOrPartitionException) {
+                return -1;
+            }
+            throw new KafkaException(e.getCause());
+        }
+    }
+
+    private InMemoryPartition[] newPartitions(InMemoryPartition[] existing, int count) {
+        InMemoryPartition[] partitions = Arrays.copyOf(existing, count);
+        for (int i = existing.length; i < count; i++) {
+            partitions[i] = new InMemoryPartition(properties.getMaxRecordsPerPartition());
+        }
+        return partitions;
+    }
+}
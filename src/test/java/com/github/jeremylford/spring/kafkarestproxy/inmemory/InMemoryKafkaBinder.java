@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.inmemory;
+
+import com.github.jeremylford.spring.kafkarestproxy.consumer.KafkaConsumerManagers;
+import io.confluent.kafkarest.KafkaRestConfig;
+import io.confluent.kafkarest.v2.KafkaConsumerManager;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.producer.Producer;
+import org.glassfish.jersey.internal.inject.AbstractBinder;
+import org.glassfish.jersey.internal.inject.DisposableSupplier;
+
+import javax.inject.Singleton;
+import javax.ws.rs.core.GenericType;
+
+/**
+ * Replaces kafka-rest's admin client, producer and v2 consumer manager with those of an {@link InMemoryKafka}.
+ */
+public class InMemoryKafkaBinder extends AbstractBinder {
+
+    // above BackendsModule and the other replacements, such as the prefetching consumer manager
+    private static final int RANK = 100;
+
+    private final InMemoryKafka kafka;
+    private final KafkaRestConfig kafkaRestConfig;
+
+    public InMemoryKafkaBinder(InMemoryKafka kafka, KafkaRestConfig kafkaRestConfig) {
+        this.kafka = kafka;
+        this.kafkaRestConfig = kafkaRestConfig;
+    }
+
+    @Override
+    protected void configure() {
+        bind(kafka.admin())
+                .to(Admin.class)
+                .ranked(RANK);
+        bind(kafka.producer())
+                .to(new GenericType<Producer<byte[], byte[]>>() {
+                })
+                .ranked(RANK);
+        bindFactory(new ConsumerManagerSupplier())
+                .to(KafkaConsumerManager.class)
+                .in(Singleton.class)
+                .ranked(RANK);
+    }
+
+    private final class ConsumerManagerSupplier implements DisposableSupplier<KafkaConsumerManager> {
+
+        @Override
+        public KafkaConsumerManager get() {
+            return KafkaConsumerManagers.create(kafkaRestConfig, kafka::newConsumer);
+        }
+
+        @Override
+        public void dispose(KafkaConsumerManager instance) {
+            instance.shutdown();
+        }
+    }
+}
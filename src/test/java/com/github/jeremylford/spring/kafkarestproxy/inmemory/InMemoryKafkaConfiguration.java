@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.inmemory;
+
+import io.confluent.kafkarest.KafkaRestConfig;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jersey.ResourceConfigCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Runs the proxy against an {@link InMemoryKafka} when {@code kafka.restproxy.in-memory.enabled} is set.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "kafka.restproxy.in-memory", name = "enabled")
+@EnableConfigurationProperties(InMemoryKafkaProperties.class)
+public class InMemoryKafkaConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public InMemoryKafka inMemoryKafka(InMemoryKafkaProperties properties) {
+        return new InMemoryKafka(properties);
+    }
+
+    @Bean
+    public ResourceConfigCustomizer inMemoryKafkaCustomizer(InMemoryKafka kafka, KafkaRestConfig kafkaRestConfig) {
+        return config -> config.register(new InMemoryKafkaBinder(kafka, kafkaRestConfig));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.inmemory;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "kafka.restproxy.in-memory")
+public class InMemoryKafkaProperties {
+
+    /**
+     * Whether to replace Kafka with an in-memory backend, so the proxy runs without a broker.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Topics created at startup, with their number of partitions.
+     */
+    private Map<String, Integer> topics = new LinkedHashMap<>();
+
+    /**
+     * Whether producing to an unknown topic creates it, like auto.create.topics.enable on a broker.
+     */
+    private boolean autoCreateTopics = true;
+
+    /**
+     * Number of partitions of auto-created topics.
+     */
+    private int defaultPartitions = 6;
+
+    /**
+     * Records kept per partition. Older records are dropped, as by retention on a broker.
+     */
+    private int maxRecordsPerPartition = 100_000;
+
+    /**
+     * Latency and failures injected into produce acknowledgements.
+     */
+    private Faults produce = new Faults();
+
+    /**
+     * Latency and failures injected into consumer polls that return records.
+     */
+    private Faults fetch = new Faults();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Map<String, Integer> getTopics() {
+        return topics;
+    }
+
+    public void setTopics(Map<String, Integer> topics) {
+        this.topics = topics;
+    }
+
+    public boolean isAutoCreateTopics() {
+        return autoCreateTopics;
+    }
+
+    public void setAutoCreateTopics(boolean autoCreateTopics) {
+        this.autoCreateTopics = autoCreateTopics;
+    }
+
+    public int getDefaultPartitions() {
+        return defaultPartitions;
+    }
+
+    public void setDefaultPartitions(int defaultPartitions) {
+        this.defaultPartitions = defaultPartitions;
+    }
+
+    public int getMaxRecordsPerPartition() {
+        return maxRecordsPerPartition;
+    }
+
+    public void setMaxRecordsPerPartition(int maxRecordsPerPartition) {
+        this.maxRecordsPerPartition = maxRecordsPerPartition;
+    }
+
+    public Faults getProduce() {
+        return produce;
+    }
+
+    public void setProduce(Faults produce) {
+        this.produce = produce;
+    }
+
+    public Faults getFetch() {
+        return fetch;
+    }
+
+    public void setFetch(Faults fetch) {
+        this.fetch = fetch;
+    }
+
+    public static class Faults {
+
+        /**
+         * Fixed latency added to each operation.
+         */
+        private Duration latency = Duration.ZERO;
+
+        /**
+         * Upper bound of a uniformly distributed random latency added on top of the fixed latency.
+         */
+        private Duration jitter = Duration.ZERO;
+
+        /**
+         * Fraction of operations, between 0 and 1, that fail with a TimeoutException.
+         */
+        private double failureRate = 0;
+
+        public Duration getLatency() {
+            return latency;
+        }
+
+        public void setLatency(Duration latency) {
+            this.latency = latency;
+        }
+
+        public Duration getJitter() {
+            return jitter;
+        }
+
+        public void setJitter(Duration jitter) {
+            this.jitter = jitter;
+        }
+
+        public double getFailureRate() {
+            return failureRate;
+        }
+
+        public void setFailureRate(double failureRate) {
+            this.failureRate = failureRate;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.inmemory;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The log of one partition. Offsets are dense, and the oldest records are dropped in batches once the log holds twice
+ * its retained size, so appends stay amortized constant time.
+ */
+final class InMemoryPartition {
+
+    private final int maxRecords;
+    private final List<ConsumerRecord<byte[], byte[]>> records = new ArrayList<>();
+    private long startOffset;
+    // completion time of the last acknowledgement, which keeps delayed acknowledgements in offset order
+    private long lastAckNanos;
+
+    InMemoryPartition(int maxRecords) {
+        this.maxRecords = maxRecords;
+    }
+
+    synchronized ConsumerRecord<byte[], byte[]> append(ConsumerRecordFactory factory) {
+        ConsumerRecord<byte[], byte[]> record = factory.create(startOffset + records.size());
+        records.add(record);
+        if (records.size() >= 2 * maxRecords) {
+            int dropped = records.size() - maxRecords;
+            records.subList(0, dropped).clear();
+            startOffset += dropped;
+        }
+        return record;
+    }
+
+    /**
+     * @return the records from {@code offset}, or from the start of the log if it has been dropped
+     */
+    synchronized List<ConsumerRecord<byte[], byte[]>> read(long offset, int maxRecords) {
+        int from = (int) Math.max(0, offset - startOffset);
+        if (from >= records.size()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(records.subList(from, Math.min(records.size(), from + maxRecords)));
+    }
+
+    synchronized long startOffset() {
+        return startOffset;
+    }
+
+    synchronized long endOffset() {
+        return startOffset + records.size();
+    }
+
+    /**
+     * @return the first record with a timestamp at or after {@code timestamp}, or null if there is none
+     */
+    synchronized ConsumerRecord<byte[], byte[]> firstAtOrAfter(long timestamp) {
+        for (ConsumerRecord<byte[], byte[]> record : records) {
+            if (record.timestamp() >= timestamp) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    synchronized long scheduleAck(long dueNanos) {
+        lastAckNanos = Math.max(dueNanos, lastAckNanos);
+        return lastAckNanos;
+    }
+
+    interface ConsumerRecordFactory {
+        ConsumerRecord<byte[], byte[]> create(long offset);
+    }
+}
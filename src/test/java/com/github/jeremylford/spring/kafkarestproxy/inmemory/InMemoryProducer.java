@@ -0,0 +1,198 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.inmemory;
+
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.utils.Utils;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Appends records to {@link InMemoryKafka} at send time. Without injected latency the callback runs on the sending
+ * thread, like {@link org.apache.kafka.clients.producer.MockProducer} in auto-complete mode; with latency it runs on
+ * the backend's scheduler, in offset order per partition.
+ */
+final class InMemoryProducer implements Producer<byte[], byte[]> {
+
+    private final InMemoryKafka kafka;
+    private final AtomicInteger roundRobin = new AtomicInteger();
+    private final Set<CompletableFuture<RecordMetadata>> pending = ConcurrentHashMap.newKeySet();
+
+    InMemoryProducer(InMemoryKafka kafka) {
+        this.kafka = kafka;
+    }
+
+    @Override
+    public Future<RecordMetadata> send(ProducerRecord<byte[], byte[]> record) {
+        return send(record, null);
+    }
+
+    @Override
+    public Future<RecordMetadata> send(ProducerRecord<byte[], byte[]> record, Callback callback) {
+        CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
+        InMemoryPartition[] partitions = kafka.partitions(record.topic(), true);
+        if (partitions == null) {
+            complete(future, callback, null, new UnknownTopicOrPartitionException("Topic " + record.topic() + " not present in metadata"));
+            return future;
+        }
+
+        int partition;
+        if (record.partition() != null) {
+            partition = record.partition();
+        } else if (record.key() != null) {
+            partition = Utils.toPositive(Utils.murmur2(record.key())) % partitions.length;
+        } else {
+            partition = Utils.toPositive(roundRobin.getAndIncrement()) % partitions.length;
+        }
+        if (partition < 0 || partition >= partitions.length) {
+            complete(future, callback, null, new TimeoutException("Partition " + partition + " of topic " + record.topic()
+                    + " with partition count " + partitions.length + " is not present in metadata"));
+            return future;
+        }
+
+        InMemoryKafkaProperties.Faults faults = kafka.produceFaults();
+        RecordMetadata metadata = null;
+        Exception exception = null;
+        if (InMemoryKafka.fails(faults)) {
+            exception = new TimeoutException("Injected produce failure");
+        } else {
+            ConsumerRecord<byte[], byte[]> stored = partitions[partition].append(offset -> new ConsumerRecord<>(
+                    record.topic(),
+                    partition,
+                    offset,
+                    record.timestamp() != null ? record.timestamp() : System.currentTimeMillis(),
+                    TimestampType.CREATE_TIME,
+                    record.key() != null ? record.key().length : -1,
+                    record.value() != null ? record.value().length : -1,
+                    record.key(),
+                    record.value(),
+                    new RecordHeaders(record.headers().toArray()),
+                    Optional.empty()));
+            kafka.appended();
+            metadata = new RecordMetadata(new TopicPartition(record.topic(), partition), stored.offset(), 0, stored.timestamp(),
+                    stored.serializedKeySize(), stored.serializedValueSize());
+        }
+
+        long delay = InMemoryKafka.delayNanos(faults);
+        if (delay <= 0) {
+            complete(future, callback, metadata, exception);
+            return future;
+        }
+        long due = partitions[partition].scheduleAck(System.nanoTime() + delay);
+        RecordMetadata result = metadata;
+        Exception error = exception;
+        pending.add(future);
+        kafka.schedule(() -> {
+            pending.remove(future);
+            complete(future, callback, result, error);
+        }, due - System.nanoTime());
+        return future;
+    }
+
+    @Override
+    public void flush() {
+        for (CompletableFuture<RecordMetadata> future : pending.toArray(new CompletableFuture[0])) {
+            future.handle((metadata, exception) -> null).join();
+        }
+    }
+
+    @Override
+    public List<PartitionInfo> partitionsFor(String topic) {
+        return kafka.partitionInfos(topic);
+    }
+
+    @Override
+    public Map<MetricName, ? extends Metric> metrics() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public void close() {
+        // shared by the whole application and closed with the backend
+    }
+
+    @Override
+    public void close(Duration timeout) {
+    }
+
+    @Override
+    public void initTransactions() {
+        throw new UnsupportedOperationException("Transactions are not supported by the in-memory backend");
+    }
+
+    @Override
+    public void beginTransaction() {
+        throw new UnsupportedOperationException("Transactions are not supported by the in-memory backend");
+    }
+
+    @Override
+    @Deprecated
+    public void sendOffsetsToTransaction(Map<TopicPartition, OffsetAndMetadata> offsets, String consumerGroupId) {
+        throw new UnsupportedOperationException("Transactions are not supported by the in-memory backend");
+    }
+
+    @Override
+    public void sendOffsetsToTransaction(Map<TopicPartition, OffsetAndMetadata> offsets, ConsumerGroupMetadata groupMetadata) {
+        throw new UnsupportedOperationException("Transactions are not supported by the in-memory backend");
+    }
+
+    @Override
+    public void commitTransaction() {
+        throw new UnsupportedOperationException("Transactions are not supported by the in-memory backend");
+    }
+
+    @Override
+    public void abortTransaction() {
+        throw new UnsupportedOperationException("Transactions are not supported by the in-memory backend");
+    }
+
+    private static void complete(CompletableFuture<RecordMetadata> future, Callback callback, RecordMetadata metadata, Exception exception) {
+        if (callback != null) {
+            callback.onCompletion(metadata, exception);
+        }
+        if (exception != null) {
+            future.completeExceptionally(exception);
+        } else {
+            future.complete(metadata);
+        }
+    }
+}
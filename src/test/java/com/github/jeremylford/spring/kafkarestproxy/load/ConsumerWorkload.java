@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+/**
+ * One v2 consumer instance: it is created and subscribed, polls on a fixed schedule and commits every few polls, and is
+ * deleted at the end. A consumer instance takes one request at a time, so polls cannot be sent open-loop, but they are
+ * still scheduled at fixed intervals and their latency is measured from the scheduled start: a poll that overruns its
+ * interval delays the next one, and that delay counts.
+ */
+final class ConsumerWorkload implements Runnable {
+
+    private final LoadClient client;
+    private final LoadReport report;
+    private final LoadOptions.Consume options;
+    private final String topic;
+    private final String instance;
+    private final long startNanos;
+    private final long endNanos;
+
+    ConsumerWorkload(LoadClient client, LoadReport report, LoadOptions.Consume options, String topic, String instance,
+                     long startNanos, long endNanos) {
+        this.client = client;
+        this.report = report;
+        this.options = options;
+        this.topic = topic;
+        this.instance = instance;
+        this.startNanos = startNanos;
+        this.endNanos = endNanos;
+    }
+
+    @Override
+    public void run() {
+        String baseUri;
+        try {
+            baseUri = create();
+        } catch (IOException e) {
+            System.err.println("Creating consumer " + instance + " failed: " + e);
+            return;
+        } catch (InterruptedException e) {
+            return;
+        }
+
+        try {
+            send(report.operation("consumer-subscribe"), client.post(baseUri + "/subscription", LoadClient.V2_JSON,
+                    client.objectMapper().createObjectNode().set("topics", client.objectMapper().createArrayNode().add(topic)).toString()),
+                    System.nanoTime(), false);
+            poll(baseUri);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                send(report.operation("consumer-delete"), client.request(baseUri)
+                        .DELETE()
+                        .header("Content-Type", LoadClient.V2_JSON)
+                        .build(), System.nanoTime(), false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private String create() throws IOException, InterruptedException {
+        String body = client.objectMapper().createObjectNode()
+                .put("name", instance)
+                .put("format", "binary")
+                .put("auto.offset.reset", "earliest")
+                .put("auto.commit.enable", "false")
+                .toString();
+        long start = System.nanoTime();
+        HttpResponse<byte[]> response = client.send(client.post("/consumers/" + options.getGroup(), LoadClient.V2_JSON, body));
+        report.operation("consumer-create").record(start, start, System.nanoTime(), LoadClient.isSuccess(response), 0, body.length() + response.body().length);
+        JsonNode created = client.json(response);
+        if (!LoadClient.isSuccess(response) || !created.hasNonNull("base_uri")) {
+            throw new IOException("status " + response.statusCode() + ": " + created);
+        }
+        return created.get("base_uri").asText();
+    }
+
+    private void poll(String baseUri) throws InterruptedException {
+        HttpRequest poll = client.request(baseUri + "/records" + (options.getMaxBytes() != null ? "?max_bytes=" + options.getMaxBytes() : ""))
+                .GET()
+                .header("Accept", LoadClient.V2_BINARY)
+                .build();
+        HttpRequest commit = client.request(baseUri + "/offsets")
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .header("Content-Type", LoadClient.V2_JSON)
+                .build();
+        Operation polls = report.operation("consumer-poll");
+        Operation commits = report.operation("consumer-commit");
+
+        long intervalNanos = options.getPollInterval().toNanos();
+        for (long i = 0; ; i++) {
+            long intended = startNanos + i * intervalNanos;
+            if (intended - endNanos >= 0 || !OpenLoopWorkload.sleepUntil(intended)) {
+                return;
+            }
+            send(polls, poll, intended, true);
+            if (options.getCommitEvery() > 0 && (i + 1) % options.getCommitEvery() == 0) {
+                send(commits, commit, System.nanoTime(), false);
+            }
+        }
+    }
+
+    private void send(Operation operation, HttpRequest request, long intended, boolean countRecords) throws InterruptedException {
+        long sent = System.nanoTime();
+        try {
+            HttpResponse<byte[]> response = client.send(request);
+            long completed = System.nanoTime();
+            boolean success = LoadClient.isSuccess(response);
+            long records = success && countRecords ? client.json(response).size() : 0;
+            operation.record(intended, sent, completed, success, records, response.body().length);
+        } catch (IOException e) {
+            operation.record(intended, sent, System.nanoTime(), false, 0, 0);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The proxy's HTTP API as far as the load workloads use it.
+ */
+final class LoadClient {
+
+    static final String JSON = "application/json";
+    static final String V2_JSON = "application/vnd.kafka.v2+json";
+    static final String V2_BINARY = "application/vnd.kafka.binary.v2+json";
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+
+    LoadClient(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    /**
+     * @param path a path below the base URL, or an absolute URI such as the base URI of a consumer instance
+     */
+    HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(path.startsWith("http") ? path : baseUrl + path))
+                .timeout(REQUEST_TIMEOUT);
+    }
+
+    HttpRequest post(String path, String contentType, String body) {
+        return request(path)
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .header("Content-Type", contentType)
+                .header("Accept", JSON)
+                .build();
+    }
+
+    HttpResponse<byte[]> send(HttpRequest request) throws IOException, InterruptedException {
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    CompletableFuture<HttpResponse<byte[]>> sendAsync(HttpRequest request) {
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Sends a setup request, which has to succeed.
+     */
+    JsonNode expect(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = send(request);
+        if (!isSuccess(response)) {
+            throw new IllegalStateException(request.method() + " " + request.uri() + " failed with " + response.statusCode() + ": "
+                    + new String(response.body(), StandardCharsets.UTF_8));
+        }
+        return json(response);
+    }
+
+    JsonNode json(HttpResponse<byte[]> response) throws IOException {
+        return response.body().length == 0 ? objectMapper.nullNode() : objectMapper.readTree(response.body());
+    }
+
+    /**
+     * The first cluster, which v2 requests also go to.
+     */
+    String clusterId() throws IOException, InterruptedException {
+        return expect(request("/v3/clusters").header("Accept", JSON).GET().build()).path("data").path(0).path("cluster_id").asText();
+    }
+
+    /**
+     * Creates {@code topic} unless it exists.
+     */
+    void createTopic(String clusterId, String topic, int partitions) throws IOException, InterruptedException {
+        String body = objectMapper.createObjectNode()
+                .put("topic_name", topic)
+                .put("partitions_count", partitions)
+                .toString();
+        HttpResponse<byte[]> response = send(post("/v3/clusters/" + clusterId + "/topics", JSON, body));
+        if (!isSuccess(response) && !new String(response.body(), StandardCharsets.UTF_8).contains("already exists")) {
+            throw new IllegalStateException("Creating topic " + topic + " failed with " + response.statusCode() + ": "
+                    + new String(response.body(), StandardCharsets.UTF_8));
+        }
+    }
+
+    static boolean isSuccess(HttpResponse<?> response) {
+        return response.statusCode() >= 200 && response.statusCode() < 300;
+    }
+
+    ObjectMapper objectMapper() {
+        return objectMapper;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.load;
+
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.StringJoiner;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Drives a mixed workload against a running proxy and writes a {@link LoadReport}. Rate-based workloads are sent
+ * open-loop by {@link OpenLoopWorkload}s, v2 consumer instances are run by {@link ConsumerWorkload}s.
+ * <p>
+ * The workload is configured by {@link LoadOptions}, from a properties file given as {@code --scenario=<file>} and from
+ * {@code --name=value} arguments, which take precedence. For example
+ * <pre>
+ * --produce-v2.rate=500 --produce-v2.batch-size=20 --produce-v3.rate=200 --metadata.rate=2 --consume.consumers=3 --duration=2m --label=0.0.1
+ * </pre>
+ * To compare releases, run the same scenario against each on the same hardware, for instance against
+ * {@code KafkaRestProxyApplication} with {@code --kafka.restproxy.in-memory.enabled=true}, and compare the reports.
+ */
+public class LoadMain {
+
+    private static final String SCENARIO = "scenario";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Object> settings = settings(args);
+        LoadOptions options = new Binder(new MapConfigurationPropertySource(settings))
+                .bind("", Bindable.ofInstance(new LoadOptions()))
+                .orElseGet(LoadOptions::new);
+        if (options.getProduceV2().getRate() <= 0 && options.getProduceV3().getRate() <= 0 && options.getMetadata().getRate() <= 0
+                && options.getConsume().getConsumers() <= 0) {
+            throw new IllegalArgumentException("No workload configured, set at least one of produce-v2.rate, produce-v3.rate, metadata.rate and consume.consumers");
+        }
+
+        String label = options.getLabel() != null ? options.getLabel() : LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        LoadReport report = new LoadReport(Paths.get(options.getOutput(), label), options.getReportInterval());
+        LoadClient client = new LoadClient(options.getBaseUrl());
+
+        String clusterId = client.clusterId();
+        client.createTopic(clusterId, options.getTopic(), options.getPartitions());
+
+        report.start(options.getWarmup());
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + options.getWarmup().toNanos() + options.getDuration().toNanos();
+        List<Thread> threads = new ArrayList<>();
+        List<Semaphore> inFlight = new ArrayList<>();
+
+        String value = Base64.getEncoder().encodeToString(randomBytes(options.getRecordSize()));
+        if (options.getProduceV2().getRate() > 0) {
+            StringJoiner records = new StringJoiner(",", "{\"records\":[", "]}");
+            for (int i = 0; i < options.getProduceV2().getBatchSize(); i++) {
+                records.add("{\"value\":\"" + value + "\"}");
+            }
+            HttpRequest request = client.post("/topics/" + options.getTopic(), LoadClient.V2_BINARY, records.toString());
+            threads.add(workload(client, report, "produce-v2", request, records.length(), options.getProduceV2().getBatchSize(),
+                    OpenLoopWorkload::noRecordErrors, options.getProduceV2(), options, inFlight, startNanos, endNanos));
+        }
+        if (options.getProduceV3().getRate() > 0) {
+            String record = "{\"value\":{\"type\":\"BINARY\",\"data\":\"" + value + "\"}}";
+            HttpRequest request = client.post("/v3/clusters/" + clusterId + "/topics/" + options.getTopic() + "/records", LoadClient.JSON, record);
+            threads.add(workload(client, report, "produce-v3", request, record.length(), 1,
+                    response -> true, options.getProduceV3(), options, inFlight, startNanos, endNanos));
+        }
+        if (options.getMetadata().getRate() > 0) {
+            HttpRequest request = client.request("/v3/clusters/" + clusterId + "/topics")
+                    .GET()
+                    .header("Accept", LoadClient.JSON)
+                    .build();
+            threads.add(workload(client, report, "metadata", request, 0, 0,
+                    response -> true, options.getMetadata(), options, inFlight, startNanos, endNanos));
+        }
+        for (int i = 0; i < options.getConsume().getConsumers(); i++) {
+            String instance = "load-" + label + "-" + i;
+            threads.add(new Thread(new ConsumerWorkload(client, report, options.getConsume(), options.getTopic(), instance, startNanos, endNanos),
+                    "load-consumer-" + i));
+        }
+
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Semaphore semaphore : inFlight) {
+            if (!semaphore.tryAcquire(options.getMaxInFlight(), 1, TimeUnit.MINUTES)) {
+                System.err.println("Gave up waiting for outstanding requests");
+            }
+        }
+        report.finish(options.getDuration(), settings);
+    }
+
+    private static Thread workload(LoadClient client, LoadReport report, String name, HttpRequest request, long requestBytes, int records,
+                                   Predicate<HttpResponse<byte[]>> success, LoadOptions.Rate rate,
+                                   LoadOptions options, List<Semaphore> inFlight, long startNanos, long endNanos) {
+        Semaphore semaphore = new Semaphore(options.getMaxInFlight());
+        inFlight.add(semaphore);
+        return new Thread(new OpenLoopWorkload(client, report.operation(name), request, requestBytes, records, success, rate.getRate(),
+                semaphore, startNanos, endNanos), "load-" + name);
+    }
+
+    private static Map<String, Object> settings(String[] args) throws IOException {
+        Map<String, Object> arguments = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            arguments.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        Map<String, Object> settings = new LinkedHashMap<>();
+        Object scenario = arguments.get(SCENARIO);
+        if (scenario != null) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(Path.of(scenario.toString()), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            properties.stringPropertyNames().stream().sorted().forEach(name -> settings.put(name, properties.getProperty(name)));
+        }
+        settings.putAll(arguments);
+        return settings;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        // fixed seed, so that runs compress the same
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.load;
+
+import java.time.Duration;
+
+/**
+ * Settings of a {@link LoadMain} run, bound from a properties file and {@code --name=value} arguments.
+ */
+public class LoadOptions {
+
+    /**
+     * Base URL of the proxy, including the Jersey application path.
+     */
+    private String baseUrl = "http://localhost:8080/proxy";
+
+    /**
+     * Name of the run, used for the report directory. Defaults to the start time.
+     */
+    private String label;
+
+    /**
+     * Directory the report directories are written to.
+     */
+    private String output = "build/reports/load";
+
+    /**
+     * How long requests are measured, after the warmup.
+     */
+    private Duration duration = Duration.ofSeconds(60);
+
+    /**
+     * How long requests are sent before measuring starts.
+     */
+    private Duration warmup = Duration.ofSeconds(10);
+
+    /**
+     * Interval of the histograms in the latency log and of the progress lines.
+     */
+    private Duration reportInterval = Duration.ofSeconds(1);
+
+    /**
+     * Maximum number of outstanding requests per workload. Requests beyond it wait, and the wait counts towards their latency.
+     */
+    private int maxInFlight = 1000;
+
+    /**
+     * Topic produced to and consumed from. It is created if it does not exist.
+     */
+    private String topic = "load-test";
+
+    /**
+     * Partitions of the topic if it has to be created.
+     */
+    private int partitions = 6;
+
+    /**
+     * Size of each record value in bytes.
+     */
+    private int recordSize = 256;
+
+    /**
+     * v2 produce requests, each with batch-size records.
+     */
+    private Rate produceV2 = new Rate();
+
+    /**
+     * v3 produce requests of one record each.
+     */
+    private Rate produceV3 = new Rate();
+
+    /**
+     * Topic listings through the v3 API.
+     */
+    private Rate metadata = new Rate();
+
+    /**
+     * v2 consumer instances that poll and commit in a loop.
+     */
+    private Consume consume = new Consume();
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public void setOutput(String output) {
+        this.output = output;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public void setDuration(Duration duration) {
+        this.duration = duration;
+    }
+
+    public Duration getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(Duration warmup) {
+        this.warmup = warmup;
+    }
+
+    public Duration getReportInterval() {
+        return reportInterval;
+    }
+
+    public void setReportInterval(Duration reportInterval) {
+        this.reportInterval = reportInterval;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(int partitions) {
+        this.partitions = partitions;
+    }
+
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    public void setRecordSize(int recordSize) {
+        this.recordSize = recordSize;
+    }
+
+    public Rate getProduceV2() {
+        return produceV2;
+    }
+
+    public void setProduceV2(Rate produceV2) {
+        this.produceV2 = produceV2;
+    }
+
+    public Rate getProduceV3() {
+        return produceV3;
+    }
+
+    public void setProduceV3(Rate produceV3) {
+        this.produceV3 = produceV3;
+    }
+
+    public Rate getMetadata() {
+        return metadata;
+    }
+
+    public void setMetadata(Rate metadata) {
+        this.metadata = metadata;
+    }
+
+    public Consume getConsume() {
+        return consume;
+    }
+
+    public void setConsume(Consume consume) {
+        this.consume = consume;
+    }
+
+    public static class Rate {
+
+        /**
+         * Requests per second, sent on a fixed schedule whether or not earlier requests have completed. 0 disables the workload.
+         */
+        private double rate = 0;
+
+        /**
+         * Records per request, where a request can carry several.
+         */
+        private int batchSize = 10;
+
+        public double getRate() {
+            return rate;
+        }
+
+        public void setRate(double rate) {
+            this.rate = rate;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    public static class Consume {
+
+        /**
+         * Number of consumer instances. 0 disables the workload.
+         */
+        private int consumers = 0;
+
+        /**
+         * Consumer group the instances join.
+         */
+        private String group = "load-test";
+
+        /**
+         * Time between the scheduled starts of two polls of an instance.
+         */
+        private Duration pollInterval = Duration.ofMillis(100);
+
+        /**
+         * Number of polls between two commits of an instance. 0 disables commits.
+         */
+        private int commitEvery = 10;
+
+        /**
+         * Maximum response size of a poll in bytes. Unset keeps the proxy default.
+         */
+        private Long maxBytes;
+
+        public int getConsumers() {
+            return consumers;
+        }
+
+        public void setConsumers(int consumers) {
+            this.consumers = consumers;
+        }
+
+        public String getGroup() {
+            return group;
+        }
+
+        public void setGroup(String group) {
+            this.group = group;
+        }
+
+        public Duration getPollInterval() {
+            return pollInterval;
+        }
+
+        public void setPollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+        }
+
+        public int getCommitEvery() {
+            return commitEvery;
+        }
+
+        public void setCommitEvery(int commitEvery) {
+            this.commitEvery = commitEvery;
+        }
+
+        public Long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(Long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+    }
+}
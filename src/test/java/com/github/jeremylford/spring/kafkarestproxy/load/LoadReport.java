@@ -0,0 +1,197 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the {@link Operation}s of a run and writes its report directory:
+ * <ul>
+ *     <li>{@code latency.hlog}, the latency histogram of every operation per interval, tagged with the operation name,
+ *     readable with HdrHistogram's HistogramLogProcessor</li>
+ *     <li>{@code <operation>.hgrm} and {@code <operation>-service-time.hgrm}, percentile distributions in milliseconds
+ *     over the whole measured period, which HdrHistogram's plotter can overlay to compare runs</li>
+ *     <li>{@code summary.json} and {@code summary.txt}, throughput, errors and latency percentiles per operation</li>
+ * </ul>
+ * Everything sent during the warmup is discarded.
+ */
+final class LoadReport {
+
+    private static final double MICROS_PER_MILLI = 1000.0;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final Path directory;
+    private final Duration interval;
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "load-report");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final PrintStream log;
+    private final HistogramLogWriter logWriter;
+
+    private long startNanos;
+    // only accessed by the reporting thread, and by the final tick after it stopped
+    private boolean measuring;
+
+    LoadReport(Path directory, Duration interval) {
+        this.directory = directory;
+        this.interval = interval;
+        try {
+            Files.createDirectories(directory);
+            this.log = new PrintStream(Files.newOutputStream(directory.resolve("latency.hlog")), false, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.logWriter = new HistogramLogWriter(log);
+    }
+
+    Operation operation(String name) {
+        return operations.computeIfAbsent(name, Operation::new);
+    }
+
+    /**
+     * Starts reporting, with measurements counted from {@code warmup} on.
+     */
+    void start(Duration warmup) {
+        long now = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+        logWriter.outputLogFormatVersion();
+        logWriter.outputStartTime(now);
+        logWriter.setBaseTime(now);
+        logWriter.outputLegend();
+
+        // an extra tick at the end of the warmup, so that no interval straddles it
+        scheduler.schedule(() -> {
+            tick();
+            measuring = true;
+        }, warmup.toNanos(), TimeUnit.NANOSECONDS);
+        scheduler.scheduleAtFixedRate(this::tick, interval.toNanos(), interval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops reporting and writes the totals of the measured period, which lasted {@code measured}.
+     */
+    void finish(Duration measured, Map<String, Object> settings) throws IOException, InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        tick();
+        log.close();
+
+        double seconds = measured.toNanos() / 1e9;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("started", Instant.ofEpochMilli(logWriter.getBaseTime()).toString());
+        summary.put("measuredSeconds", seconds);
+        summary.put("javaVersion", System.getProperty("java.version"));
+        summary.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        summary.put("settings", settings);
+
+        Map<String, Object> operationSummaries = new LinkedHashMap<>();
+        StringBuilder text = new StringBuilder(String.format(Locale.ROOT, "%-20s %10s %8s %12s %12s %10s %10s %10s %10s %10s%n",
+                "operation", "requests", "errors", "requests/s", "records/s", "MB/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (Operation operation : operations.values().stream().sorted(Comparator.comparing(Operation::name)).toArray(Operation[]::new)) {
+            writeDistribution(operation.name() + ".hgrm", operation.totalLatency());
+            writeDistribution(operation.name() + "-service-time.hgrm", operation.totalServiceTime());
+
+            Map<String, Object> operationSummary = new LinkedHashMap<>();
+            operationSummary.put("requests", operation.totalRequests());
+            operationSummary.put("errors", operation.totalErrors());
+            operationSummary.put("records", operation.totalRecords());
+            operationSummary.put("bytes", operation.totalBytes());
+            operationSummary.put("requestsPerSecond", operation.totalRequests() / seconds);
+            operationSummary.put("recordsPerSecond", operation.totalRecords() / seconds);
+            operationSummary.put("bytesPerSecond", operation.totalBytes() / seconds);
+            operationSummary.put("latencyMillis", percentiles(operation.totalLatency()));
+            operationSummary.put("serviceTimeMillis", percentiles(operation.totalServiceTime()));
+            operationSummaries.put(operation.name(), operationSummary);
+
+            Histogram latency = operation.totalLatency();
+            text.append(String.format(Locale.ROOT, "%-20s %10d %8d %12.1f %12.1f %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                    operation.name(), operation.totalRequests(), operation.totalErrors(),
+                    operation.totalRequests() / seconds, operation.totalRecords() / seconds, operation.totalBytes() / seconds / 1_000_000,
+                    millis(latency, 50), millis(latency, 99), millis(latency, 99.9), latency.getMaxValue() / MICROS_PER_MILLI));
+        }
+        summary.put("operations", operationSummaries);
+
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(directory.resolve("summary.json").toFile(), summary);
+        Files.write(directory.resolve("summary.txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.print(text);
+        System.out.println("Report written to " + directory.toAbsolutePath());
+    }
+
+    private void tick() {
+        boolean measured = measuring;
+        StringBuilder progress = new StringBuilder(String.format(Locale.ROOT, "%6.1fs%s", (System.nanoTime() - startNanos) / 1e9, measured ? "" : " (warmup)"));
+        for (Operation operation : operations.values()) {
+            Histogram histogram = operation.interval(measured);
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            if (measured) {
+                logWriter.outputIntervalHistogram(histogram);
+            }
+            progress.append(String.format(Locale.ROOT, "  %s %d p99=%.1fms", operation.name(), histogram.getTotalCount(), millis(histogram, 99)));
+        }
+        System.out.println(progress);
+    }
+
+    private void writeDistribution(String file, Histogram histogram) throws IOException {
+        try (OutputStream out = Files.newOutputStream(directory.resolve(file));
+             PrintStream printStream = new PrintStream(out, false, StandardCharsets.UTF_8)) {
+            histogram.outputPercentileDistribution(printStream, 5, MICROS_PER_MILLI);
+        }
+    }
+
+    private static Map<String, Double> percentiles(Histogram histogram) {
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        percentiles.put("mean", histogram.getMean() / MICROS_PER_MILLI);
+        for (double percentile : PERCENTILES) {
+            percentiles.put("p" + (percentile == (long) percentile ? String.valueOf((long) percentile) : String.valueOf(percentile)),
+                    millis(histogram, percentile));
+        }
+        percentiles.put("max", histogram.getMaxValue() / MICROS_PER_MILLI);
+        return percentiles;
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.load;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * Sends the same request at a fixed rate, on a schedule that does not depend on how fast earlier requests complete.
+ * Latency is measured from each request's scheduled start, so when the proxy stalls the requests that should have been
+ * sent meanwhile are charged with the stall, instead of the stall being measured once.
+ */
+final class OpenLoopWorkload implements Runnable {
+
+    private final LoadClient client;
+    private final Operation operation;
+    private final HttpRequest request;
+    private final long requestBytes;
+    private final int records;
+    private final Predicate<HttpResponse<byte[]>> success;
+    private final double rate;
+    private final Semaphore inFlight;
+    private final long startNanos;
+    private final long endNanos;
+
+    /**
+     * @param requestBytes size of the request body
+     * @param records      records carried by each request
+     * @param success      whether a response with a 2xx status is successful
+     */
+    OpenLoopWorkload(LoadClient client, Operation operation, HttpRequest request, long requestBytes, int records,
+                     Predicate<HttpResponse<byte[]>> success, double rate, Semaphore inFlight, long startNanos, long endNanos) {
+        this.client = client;
+        this.operation = operation;
+        this.request = request;
+        this.requestBytes = requestBytes;
+        this.records = records;
+        this.success = success;
+        this.rate = rate;
+        this.inFlight = inFlight;
+        this.startNanos = startNanos;
+        this.endNanos = endNanos;
+    }
+
+    /**
+     * Rejects v2 produce responses that report an error for any record despite their 200 status.
+     */
+    static boolean noRecordErrors(HttpResponse<byte[]> response) {
+        return !new String(response.body(), StandardCharsets.ISO_8859_1).contains("\"error\":\"");
+    }
+
+    @Override
+    public void run() {
+        double intervalNanos = 1e9 / rate;
+        for (long i = 0; ; i++) {
+            // computed from the start rather than accumulated, so rounding does not drift the rate
+            long intended = startNanos + (long) (i * intervalNanos);
+            if (intended - endNanos >= 0) {
+                return;
+            }
+            if (!sleepUntil(intended)) {
+                return;
+            }
+            // waiting for a permit delays the request past its scheduled start, which its latency then includes
+            inFlight.acquireUninterruptibly();
+            long sent = System.nanoTime();
+            client.sendAsync(request).whenComplete((response, failure) -> {
+                long completed = System.nanoTime();
+                inFlight.release();
+                boolean succeeded = failure == null && LoadClient.isSuccess(response) && success.test(response);
+                operation.record(intended, sent, completed, succeeded, succeeded ? records : 0,
+                        requestBytes + (response != null ? response.body().length : 0));
+            });
+        }
+    }
+
+    /**
+     * @return false if interrupted
+     */
+    static boolean sleepUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
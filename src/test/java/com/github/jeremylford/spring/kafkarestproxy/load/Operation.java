@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measurements of one kind of request. Latency is taken from the time the request was scheduled to start, so requests
+ * delayed by a slow proxy are charged for the delay (no coordinated omission); service time is taken from the time it
+ * was actually sent. Both are recorded in microseconds.
+ */
+final class Operation {
+
+    private final String name;
+    private final Recorder latency = new Recorder(3);
+    private final Recorder serviceTime = new Recorder(3);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    // measured totals, only touched by the reporting thread
+    private final Histogram totalLatency = new Histogram(3);
+    private final Histogram totalServiceTime = new Histogram(3);
+    private long totalRequests;
+    private long totalErrors;
+    private long totalRecords;
+    private long totalBytes;
+
+    Operation(String name) {
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * @param records records carried by the request or response
+     * @param bytes   bytes of the request and response bodies
+     */
+    void record(long intendedNanos, long sentNanos, long completedNanos, boolean success, long records, long bytes) {
+        latency.recordValue(TimeUnit.NANOSECONDS.toMicros(Math.max(0, completedNanos - intendedNanos)));
+        serviceTime.recordValue(TimeUnit.NANOSECONDS.toMicros(Math.max(0, completedNanos - sentNanos)));
+        requests.increment();
+        if (!success) {
+            errors.increment();
+        }
+        this.records.add(records);
+        this.bytes.add(bytes);
+    }
+
+    /**
+     * Takes the measurements since the last interval, adding them to the totals if {@code measured}.
+     *
+     * @return the latency histogram of the interval
+     */
+    Histogram interval(boolean measured) {
+        Histogram intervalLatency = latency.getIntervalHistogram();
+        Histogram intervalServiceTime = serviceTime.getIntervalHistogram();
+        long intervalRequests = requests.sumThenReset();
+        long intervalErrors = errors.sumThenReset();
+        long intervalRecords = records.sumThenReset();
+        long intervalBytes = bytes.sumThenReset();
+        if (measured) {
+            totalLatency.add(intervalLatency);
+            totalServiceTime.add(intervalServiceTime);
+            totalRequests += intervalRequests;
+            totalErrors += intervalErrors;
+            totalRecords += intervalRecords;
+            totalBytes += intervalBytes;
+        }
+        intervalLatency.setTag(name);
+        return intervalLatency;
+    }
+
+    Histogram totalLatency() {
+        return totalLatency;
+    }
+
+    Histogram totalServiceTime() {
+        return totalServiceTime;
+    }
+
+    long totalRequests() {
+        return totalRequests;
+    }
+
+    long totalErrors() {
+        return totalErrors;
+    }
+
+    long totalRecords() {
+        return totalRecords;
+    }
+
+    long totalBytes() {
+        return totalBytes;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.metrics;
+
+import com.github.jeremylford.spring.kafkarestproxy.properties.MetricsProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.KafkaMetric;
+import org.apache.kafka.common.metrics.KafkaMetricsContext;
+import org.apache.kafka.common.metrics.Metrics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KafkaClientMetricsReporterTest {
+
+    private static final String GROUP = "consumer-fetch-manager-metrics";
+    private static final String METER = "kafka.consumer.fetch.manager.records.lag.max";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final KafkaRestMetrics metrics = new KafkaRestMetrics(registry, new MetricsProperties());
+    private final KafkaClientMetricsReporter reporter = new KafkaClientMetricsReporter();
+    private final Metrics kafka = new Metrics();
+
+    @After
+    public void tearDown() {
+        reporter.close();
+        kafka.close();
+        metrics.close();
+    }
+
+    @Test
+    public void replacedMetricIsReadFromTheNewInstance() {
+        reporter.configure(Collections.emptyMap());
+        MetricName name = kafka.metricName("records-lag-max", GROUP, tags("consumer-1", null));
+        reporter.metricChange(metric(name, 1));
+        reporter.metricChange(metric(name, 2));
+
+        Collection<Gauge> gauges = registry.find(METER).gauges();
+        assertEquals(1, gauges.size());
+        assertEquals(2, gauges.iterator().next().value(), 0);
+    }
+
+    @Test
+    public void meterNameKeepsOneSetOfTagKeys() {
+        reporter.configure(Collections.emptyMap());
+        reporter.metricChange(metric(kafka.metricName("records-lag-max", GROUP, tags("consumer-1", null)), 1));
+        reporter.metricChange(metric(kafka.metricName("records-lag-max", GROUP, tags("consumer-1", "orders")), 2));
+        reporter.metricChange(metric(kafka.metricName("records-lag-max", GROUP, tags("consumer-2", null)), 3));
+
+        Collection<Meter> meters = registry.find(METER).meters();
+        assertEquals(1, meters.size());
+        Meter meter = meters.iterator().next();
+        assertEquals("orders", meter.getId().getTag("topic"));
+        assertEquals("default", meter.getId().getTag("cluster"));
+        assertTrue(registry.find(METER).tag("client-id", "consumer-2").meters().isEmpty());
+    }
+
+    @Test
+    public void clusterIsTakenFromTheMetricsContext() {
+        reporter.configure(Collections.emptyMap());
+        reporter.contextChange(new KafkaMetricsContext("kafka.consumer",
+                Collections.singletonMap(KafkaClientMetricsReporter.CLUSTER_LABEL, "east")));
+        reporter.metricChange(metric(kafka.metricName("records-lag-max", GROUP, tags("consumer-1", null)), 1));
+
+        assertEquals("east", registry.get(METER).gauge().getId().getTag("cluster"));
+    }
+
+    private static Map<String, String> tags(String clientId, String topic) {
+        Map<String, String> tags = new HashMap<>();
+        tags.put("client-id", clientId);
+        if (topic != null) {
+            tags.put("topic", topic);
+        }
+        return tags;
+    }
+
+    /**
+     * A metric with a fixed value, from a registry of its own so the same name can exist more than once.
+     */
+    private static KafkaMetric metric(MetricName name, double value) {
+        Metrics owner = new Metrics();
+        owner.addMetric(name, (config, now) -> value);
+        return owner.metric(name);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.produce;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.github.jeremylford.spring.kafkarestproxy.jackson.KafkaRestJackson;
+import io.confluent.kafkarest.entities.v3.ProduceResponse;
+import org.junit.Test;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProduceResponseModeFilterTest {
+
+    private static final String PATH = "v3/clusters/lkc-1/topics/orders/records";
+    private static final String RESPONSE = "{\"error_code\":200,\"cluster_id\":\"lkc-1\",\"topic_name\":\"orders\","
+            + "\"partition_id\":1,\"offset\":42,\"timestamp\":\"2026-10-18T07:00:00Z\",\"key\":null,\"value\":null}";
+
+    private final ObjectMapper mapper = KafkaRestJackson.builder().build();
+    private final JacksonJsonProvider provider = new JacksonJsonProvider(mapper);
+    private final ProduceResponseModeFilter filter = new ProduceResponseModeFilter();
+
+    @Test
+    public void acksWritesOnlyPartitionAndOffset() throws IOException {
+        Map<String, Object> properties = produce("acks", null);
+
+        JsonNode written = mapper.readTree(write(properties, mapper.readValue(RESPONSE, ProduceResponse.class)));
+
+        assertEquals(mapper.readTree("{\"partition_id\":1,\"offset\":42}"), written);
+    }
+
+    @Test
+    public void acksFromTheQueryParameter() throws IOException {
+        Map<String, Object> properties = produce(null, "acks");
+
+        JsonNode written = mapper.readTree(write(properties, mapper.readValue(RESPONSE, ProduceResponse.class)));
+
+        assertEquals(mapper.readTree("{\"partition_id\":1,\"offset\":42}"), written);
+    }
+
+    @Test
+    public void fullWritesTheWholeResponse() throws IOException {
+        Map<String, Object> properties = produce(null, null);
+
+        JsonNode written = mapper.readTree(write(properties, mapper.readValue(RESPONSE, ProduceResponse.class)));
+
+        assertEquals("lkc-1", written.get("cluster_id").asText());
+        assertEquals("orders", written.get("topic_name").asText());
+        assertEquals(1, written.get("partition_id").asInt());
+        assertEquals(42, written.get("offset").asLong());
+    }
+
+    @Test
+    public void acksLeavesOtherResponsesUntouched() throws IOException {
+        Map<String, Object> properties = produce("acks", null);
+        Map<String, Object> error = new HashMap<>();
+        error.put("error_code", 400);
+        error.put("message", "Invalid record");
+
+        assertEquals(mapper.writeValueAsString(error), write(properties, error));
+    }
+
+    @Test
+    public void summaryIsRejectedOnRecords() {
+        ContainerRequestContext request = request("summary", null, new HashMap<>());
+
+        filter.filter(request);
+
+        verify(request).abortWith(any());
+    }
+
+    private Map<String, Object> produce(String header, String queryParameter) {
+        Map<String, Object> properties = new HashMap<>();
+        filter.filter(request(header, queryParameter, properties));
+        return properties;
+    }
+
+    /**
+     * Writes {@code entity} the way Jersey does, with the interceptor around the Jackson provider.
+     */
+    private String write(Map<String, Object> properties, Object entity) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WriterInterceptorContext context = mock(WriterInterceptorContext.class);
+        when(context.getProperty(anyString())).thenAnswer(invocation -> properties.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> {
+            provider.writeTo(entity, entity.getClass(), entity.getClass(), new Annotation[0], MediaType.APPLICATION_JSON_TYPE,
+                    new MultivaluedHashMap<>(), out);
+            return null;
+        }).when(context).proceed();
+
+        filter.aroundWriteTo(context);
+        return out.toString("UTF-8");
+    }
+
+    private static ContainerRequestContext request(String header, String queryParameter, Map<String, Object> properties) {
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getPath()).thenReturn(PATH);
+        MultivaluedHashMap<String, String> queryParameters = new MultivaluedHashMap<>();
+        if (queryParameter != null) {
+            queryParameters.put(ProduceResponseMode.QUERY_PARAMETER, Collections.singletonList(queryParameter));
+        }
+        when(uriInfo.getQueryParameters()).thenReturn(queryParameters);
+        ContainerRequestContext request = mock(ContainerRequestContext.class);
+        when(request.getMethod()).thenReturn(HttpMethod.POST);
+        when(request.getUriInfo()).thenReturn(uriInfo);
+        when(request.getHeaderString(ProduceResponseMode.HEADER)).thenReturn(header);
+        doAnswer(invocation -> properties.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(request).setProperty(anyString(), any());
+        return request;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.ratelimit;
+
+import com.github.jeremylford.spring.kafkarestproxy.properties.RateLimitProperties;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class KeyedLimitersTest {
+
+    private static final long NOW = 1_000_000_000L;
+
+    @Test
+    public void replacingLimitsKeepsTheStateOfUnchangedKeys() {
+        Map<String, RateLimitProperties.Limit> overrides = new HashMap<>();
+        overrides.put("changed", limit(10));
+        KeyedLimiters previous = new KeyedLimiters(limit(10), overrides, RateLimitProperties.Limit::getRequestsPerSecond, 10, NOW);
+        GcraLimiter unchanged = exhaust(previous, "unchanged");
+        GcraLimiter changed = exhaust(previous, "changed");
+
+        Map<String, RateLimitProperties.Limit> nextOverrides = new HashMap<>();
+        nextOverrides.put("changed", limit(20));
+        KeyedLimiters next = new KeyedLimiters(limit(10), nextOverrides, RateLimitProperties.Limit::getRequestsPerSecond, 10, NOW, previous);
+
+        assertSame(unchanged, next.get("unchanged", NOW));
+        assertTrue(next.get("unchanged", NOW).tryAcquire(1, NOW) > 0);
+        assertNotSame(changed, next.get("changed", NOW));
+        assertEquals(0, next.get("changed", NOW).tryAcquire(1, NOW));
+    }
+
+    @Test
+    public void changingTheDefaultRestartsKeysWithoutOverrides() {
+        KeyedLimiters previous = new KeyedLimiters(limit(10), null, RateLimitProperties.Limit::getRequestsPerSecond, 10, NOW);
+        exhaust(previous, "topic");
+
+        KeyedLimiters next = new KeyedLimiters(limit(5), null, RateLimitProperties.Limit::getRequestsPerSecond, 10, NOW, previous);
+
+        assertEquals(0, next.get("topic", NOW).tryAcquire(1, NOW));
+    }
+
+    private static GcraLimiter exhaust(KeyedLimiters limiters, String key) {
+        GcraLimiter limiter = limiters.get(key, NOW);
+        while (limiter.tryAcquire(1, NOW) == 0) {
+            // drain the burst
+        }
+        return limiter;
+    }
+
+    private static RateLimitProperties.Limit limit(double requestsPerSecond) {
+        RateLimitProperties.Limit limit = new RateLimitProperties.Limit();
+        limit.setRequestsPerSecond(requestsPerSecond);
+        limit.setBurst(Duration.ofSeconds(1));
+        return limit;
+    }
+}
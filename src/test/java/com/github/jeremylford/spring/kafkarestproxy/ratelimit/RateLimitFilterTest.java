@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.ratelimit;
+
+import com.github.jeremylford.spring.kafkarestproxy.properties.RateLimitProperties;
+import org.junit.Test;
+
+public class RateLimitFilterTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLimitsFailAtStartup() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.getTopic().setRequestsPerSecond(-1);
+        new RateLimitFilter(properties, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMaxKeysFailAtStartup() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setMaxKeys(0);
+        new RateLimitFilter(properties, null);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jeremylford.spring.kafkarestproxy.stream;
+
+import com.github.jeremylford.spring.kafkarestproxy.properties.StreamingConsumeProperties;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class StreamingConsumerTest {
+
+    private final StreamingConsumer consumer = new StreamingConsumer("group", "instance", Collections.singletonList("orders"),
+            StreamingConsumeProperties.CommitMode.NONE, new MockConsumer<>(OffsetResetStrategy.EARLIEST), new StreamingConsumeProperties());
+
+    @Test
+    public void nextWaitsForAPendingRewindUntilTheTimeout() throws InterruptedException {
+        consumer.attach(null);
+        consumer.detach();
+
+        long start = System.nanoTime();
+        assertNull(consumer.next(50, TimeUnit.MILLISECONDS));
+        assertFalse(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void closeWakesUpAWaitingNext() throws Exception {
+        consumer.attach(null);
+        consumer.detach();
+
+        CompletableFuture<ConsumerRecord<byte[], byte[]>> next = CompletableFuture.supplyAsync(() -> {
+            try {
+                return consumer.next(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        consumer.close();
+
+        assertNull(next.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Jeremy Ford
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.clients.admin;
+
+import org.apache.kafka.clients.admin.internals.CoordinatorKey;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates the admin results whose constructors are package-private, for the in-memory backend's admin client.
+ */
+public final class InMemoryAdminResults {
+
+    private InMemoryAdminResults() {
+    }
+
+    public static CreatePartitionsResult createPartitions(Map<String, KafkaFuture<Void>> values) {
+        return new CreatePartitionsResult(values);
+    }
+
+    public static ListConsumerGroupsResult listConsumerGroups(Collection<ConsumerGroupListing> listings) {
+        return new ListConsumerGroupsResult(KafkaFuture.completedFuture(new ArrayList<>(listings)));
+    }
+
+    public static ListConsumerGroupOffsetsResult listConsumerGroupOffsets(Map<String, Map<TopicPartition, OffsetAndMetadata>> offsets) {
+        Map<CoordinatorKey, KafkaFuture<Map<TopicPartition, OffsetAndMetadata>>> futures = new HashMap<>();
+        offsets.forEach((groupId, groupOffsets) -> futures.put(CoordinatorKey.byGroupId(groupId), KafkaFuture.completedFuture(groupOffsets)));
+        return new ListConsumerGroupOffsetsResult(futures);
+    }
+}